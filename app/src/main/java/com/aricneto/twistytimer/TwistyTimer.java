@@ -7,10 +7,13 @@ import android.database.sqlite.SQLiteDatabase;
 import androidx.multidex.MultiDexApplication;
 
 import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.SolveWriteQueue;
 import com.aricneto.twistytimer.utils.LocaleUtils;
 
 import net.danlew.android.joda.JodaTimeAndroid;
 
+import java.io.File;
+
 /**
  * Created by Ari on 28/07/2015.
  */
@@ -20,6 +23,16 @@ public class TwistyTimer extends MultiDexApplication {
      */
     private static DatabaseHandler sDBHandler;
 
+    /**
+     * The singleton instance of the queue that writes changes to solves on a background thread.
+     */
+    private static SolveWriteQueue sSolveWriteQueue;
+
+    /**
+     * The name of the file of the journal of changes to solves that have not yet been written.
+     */
+    private static final String SOLVE_JOURNAL_FILE_NAME = "solve_journal";
+
     /**
      * The cached reference to the application context.
      */
@@ -47,6 +60,11 @@ public class TwistyTimer extends MultiDexApplication {
         // database (particularly for the first time) can take some time.
         sDBHandler = new DatabaseHandler();
 
+        // The write queue starts its own thread, which first writes any changes to solves left in
+        // the journal if the process ended before they were committed.
+        sSolveWriteQueue = new SolveWriteQueue(
+                sDBHandler, new File(getFilesDir(), SOLVE_JOURNAL_FILE_NAME));
+
         LocaleUtils.updateLocale(getAppContext());
     }
 
@@ -60,6 +78,18 @@ public class TwistyTimer extends MultiDexApplication {
         return sDBHandler;
     }
 
+    /**
+     * Gets the singleton instance of the queue that writes changes to solves on a background
+     * thread. Changes to solves made from the user interface should use this queue, rather than
+     * the database handler, so the main thread is not blocked and the changes are written in the
+     * order in which they are made.
+     *
+     * @return The solve write queue.
+     */
+    public static SolveWriteQueue getSolveWriteQueue() {
+        return sSolveWriteQueue;
+    }
+
     /**
      * Gets a read-only database handle. Do <i>not</i> close the database when it is no longer
      * needed.
@@ -6,12 +6,14 @@ import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
@@ -36,6 +38,7 @@ import com.aricneto.twistify.BuildConfig;
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
 import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.ReadLatencyBenchmark;
 import com.aricneto.twistytimer.fragment.AlgListFragment;
 import com.aricneto.twistytimer.fragment.TimerFragment;
 import com.aricneto.twistytimer.fragment.TimerFragmentMain;
@@ -47,10 +50,15 @@ import com.aricneto.twistytimer.fragment.dialog.ThemeSelectDialog;
 import com.aricneto.twistytimer.items.Solve;
 import com.aricneto.twistytimer.listener.OnBackPressedInFragmentListener;
 import com.aricneto.twistytimer.puzzle.TrainerScrambler;
+import com.aricneto.twistytimer.utils.CompactBackupReader;
+import com.aricneto.twistytimer.utils.CompactBackupWriter;
 import com.aricneto.twistytimer.utils.ExportImportUtils;
 import com.aricneto.twistytimer.utils.LocaleUtils;
 import com.aricneto.twistytimer.utils.Prefs;
 import com.aricneto.twistytimer.utils.PuzzleUtils;
+import com.aricneto.twistytimer.utils.SolveCsvReader;
+import com.aricneto.twistytimer.utils.SolveCsvWriter;
+import com.aricneto.twistytimer.utils.SolveReader;
 import com.aricneto.twistytimer.utils.StoreUtils;
 import com.aricneto.twistytimer.utils.ThemeUtils;
 import com.mikepenz.materialdrawer.Drawer;
@@ -61,18 +69,14 @@ import com.mikepenz.materialdrawer.model.PrimaryDrawerItem;
 import com.mikepenz.materialdrawer.model.SecondaryDrawerItem;
 import com.mikepenz.materialdrawer.model.SectionDrawerItem;
 import com.mikepenz.materialdrawer.model.interfaces.IDrawerItem;
-import com.opencsv.CSVReader;
 
-import org.joda.time.DateTime;
-
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -86,7 +90,6 @@ import static com.aricneto.twistytimer.database.DatabaseHandler.IDX_SCRAMBLE;
 import static com.aricneto.twistytimer.database.DatabaseHandler.IDX_SUBTYPE;
 import static com.aricneto.twistytimer.database.DatabaseHandler.IDX_TIME;
 import static com.aricneto.twistytimer.database.DatabaseHandler.IDX_TYPE;
-import static com.aricneto.twistytimer.database.DatabaseHandler.ProgressListener;
 import static com.aricneto.twistytimer.utils.TTIntent.ACTION_TIMES_MODIFIED;
 import static com.aricneto.twistytimer.utils.TTIntent.CATEGORY_TIME_DATA_CHANGES;
 import static com.aricneto.twistytimer.utils.TTIntent.broadcast;
@@ -105,6 +108,7 @@ public class MainActivity extends AppCompatActivity
     private static final String TAG = MainActivity.class.getSimpleName();
 
     private static final int DEBUG_ID         = 11;
+    private static final int DEBUG_BENCHMARK_ID = 12;
     private static final int TIMER_ID         = 1;
     private static final int THEME_ID         = 2;
     private static final int SCHEME_ID        = 9;
@@ -125,6 +129,7 @@ public class MainActivity extends AppCompatActivity
 
     private static final int EXPORT_BACKUP      = 50;
     private static final int EXPORT_EXTERNAL    = 51;
+    private static final int EXPORT_COMPACT_BACKUP = 52;
     private static final int IMPORT_BACKUP      = 60;
     private static final int IMPORT_EXTERNAL    = 61;
 
@@ -520,6 +525,27 @@ public class MainActivity extends AppCompatActivity
                                     }
                                 }
                                 break;
+
+                            case DEBUG_BENCHMARK_ID:
+                                if (BuildConfig.DEBUG) {
+                                    new Thread(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            final String summary = ReadLatencyBenchmark.run(
+                                                    TwistyTimer.getDBHandler(),
+                                                    PuzzleUtils.TYPE_333, "Normal", 10000);
+
+                                            runOnUiThread(new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    Toast.makeText(MainActivity.this, summary,
+                                                                   Toast.LENGTH_LONG).show();
+                                                }
+                                            });
+                                        }
+                                    }).start();
+                                }
+                                break;
                         }
                         if (closeDrawer)
                             mDrawerLayout.closeDrawers();
@@ -538,7 +564,14 @@ public class MainActivity extends AppCompatActivity
                             .withIcon(R.drawable.ic_outline_help_outline_24px)
                             .withIconTintingEnabled(true)
                             .withSelectable(false)
-                            .withIdentifier(DEBUG_ID)
+                            .withIdentifier(DEBUG_ID),
+
+                    new PrimaryDrawerItem()
+                            .withName("DEBUG OPTION - READ LATENCY DURING IMPORT")
+                            .withIcon(R.drawable.ic_outline_help_outline_24px)
+                            .withIconTintingEnabled(true)
+                            .withSelectable(false)
+                            .withIdentifier(DEBUG_BENCHMARK_ID)
             );
         }
 
@@ -603,8 +636,8 @@ public class MainActivity extends AppCompatActivity
                 Log.d(TAG, "  Returned from 'Settings'. Will recreate activity.");
             }
             onRecreateRequired();
-        } else if ((requestCode == EXPORT_BACKUP || requestCode == EXPORT_EXTERNAL)
-                && resultCode == Activity.RESULT_OK) {
+        } else if ((requestCode == EXPORT_BACKUP || requestCode == EXPORT_EXTERNAL
+                || requestCode == EXPORT_COMPACT_BACKUP) && resultCode == Activity.RESULT_OK) {
             if (data.getData() != null) {
                 Uri uri = data.getData();
                 Log.d(TAG, "EXPORT : " + uri.toString());
@@ -612,7 +645,9 @@ public class MainActivity extends AppCompatActivity
 
                 new ExportSolves(this,
                         (requestCode == EXPORT_BACKUP ? ExportImportDialog.EXIM_FORMAT_BACKUP
-                                : ExportImportDialog.EXIM_FORMAT_EXTERNAL),
+                                : requestCode == EXPORT_COMPACT_BACKUP
+                                        ? ExportImportDialog.EXIM_FORMAT_COMPACT_BACKUP
+                                        : ExportImportDialog.EXIM_FORMAT_EXTERNAL),
                         uri, mExportPuzzleType, mExportPuzzleCategory)
                         .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
             }
@@ -724,6 +759,11 @@ public class MainActivity extends AppCompatActivity
         mExportPuzzleCategory = puzzleCategory;
 
         if (fileFormat == ExportImportDialog.EXIM_FORMAT_BACKUP) {
+            // A back-up may be in the text or the compact format. The format is detected when the
+            // file is read.
+            intent.setType("*/*");
+            intent.putExtra(Intent.EXTRA_MIME_TYPES,
+                    new String[] { "text/plain", "application/octet-stream" });
             startActivityForResult(intent, IMPORT_BACKUP);
         } else if (fileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL) {
             startActivityForResult(intent, IMPORT_EXTERNAL);
@@ -751,6 +791,22 @@ public class MainActivity extends AppCompatActivity
             mExportPuzzleCategory = "";
 
             startActivityForResult(intent, EXPORT_BACKUP);
+        } else if (fileFormat == ExportImportDialog.EXIM_FORMAT_COMPACT_BACKUP) {
+            // Expect that all other parameters are null, otherwise something is very wrong.
+            if (puzzleType != null || puzzleCategory != null) {
+                throw new RuntimeException("Bug in the export code for the compact back-up format!");
+            }
+
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/octet-stream");
+            intent.putExtra(Intent.EXTRA_TITLE,
+                    ExportImportUtils.getCompactBackupFileNameForExport());
+
+            mExportPuzzleType = "";
+            mExportPuzzleCategory = "";
+
+            startActivityForResult(intent, EXPORT_COMPACT_BACKUP);
         } else if (fileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL) {
             // Expect that all other parameters are non-null, otherwise something is very wrong.
             if (puzzleType == null || puzzleCategory == null) {
@@ -796,6 +852,10 @@ public class MainActivity extends AppCompatActivity
     }
 
     private static class ExportSolves extends AsyncTask<Void, Integer, Boolean> {
+        /**
+         * The minimum time in milliseconds between updates to the progress of the export.
+         */
+        private static final long PROGRESS_INTERVAL = 250;
 
         private final Activity  mContext;
         private final int      mFileFormat;
@@ -805,14 +865,20 @@ public class MainActivity extends AppCompatActivity
 
         private MaterialDialog mProgressDialog;
 
+        /**
+         * The time at which progress was last published.
+         */
+        private long mLastProgressTime;
+
         /**
          * Creates a new task for exporting solve times to a file.
          *
          * @param context
          *     The context required to access resources and to report progress.
          * @param fileFormat
-         *     The solve file format, must be {@link ExportImportDialog#EXIM_FORMAT_EXTERNAL}, or
-         *     {@link ExportImportDialog#EXIM_FORMAT_BACKUP}.
+         *     The solve file format, must be {@link ExportImportDialog#EXIM_FORMAT_EXTERNAL},
+         *     {@link ExportImportDialog#EXIM_FORMAT_BACKUP} or
+         *     {@link ExportImportDialog#EXIM_FORMAT_COMPACT_BACKUP}.
          * @param uri
          *     The uri to which to export the solve times.
          * @param puzzleType
@@ -864,57 +930,72 @@ public class MainActivity extends AppCompatActivity
             try {
                 final DatabaseHandler handler = TwistyTimer.getDBHandler();
                 final OutputStream os = mContext.getContentResolver().openOutputStream(mUri);
-                final OutputStreamWriter out = new OutputStreamWriter(os);
+                final long startTime = SystemClock.elapsedRealtime();
 
                 if (mFileFormat == ExportImportDialog.EXIM_FORMAT_BACKUP) {
-                    String csvHeader
-                            = "Puzzle,Category,Time(millis),Date(millis),Scramble,Penalty,Comment\n";
+                    final SolveCsvWriter out = new SolveCsvWriter(os);
                     Cursor cursor = handler.getAllSolves();
 
                     try {
                         publishProgress(0, cursor.getCount());
-                        out.write(csvHeader);
+                        out.writeBackupHeader();
 
                         while (cursor.moveToNext()) {
-                            out.write('"' + cursor.getString(IDX_TYPE)
-                                    + "\";\"" + cursor.getString(IDX_SUBTYPE)
-                                    + "\";\"" + cursor.getInt(IDX_TIME)
-                                    + "\";\"" + cursor.getLong(IDX_DATE)
-                                    + "\";\"" + cursor.getString(IDX_SCRAMBLE)
-                                    + "\";\"" + cursor.getInt(IDX_PENALTY)
-                                    + "\";\"" + cursor.getString(IDX_COMMENT)
-                                    + "\"\n");
+                            out.writeBackupSolve(
+                                    cursor.getString(IDX_TYPE),
+                                    cursor.getString(IDX_SUBTYPE),
+                                    cursor.getInt(IDX_TIME),
+                                    cursor.getLong(IDX_DATE),
+                                    cursor.getString(IDX_SCRAMBLE),
+                                    cursor.getInt(IDX_PENALTY),
+                                    cursor.getString(IDX_COMMENT));
                             exports++;
-                            publishProgress(exports);
+                            publishThrottledProgress(exports);
                         }
                     } finally {
                         cursor.close();
                         out.close();
                     }
                     returnCode = true;
-                } else if (mFileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL) {
-                    Cursor cursor = handler.getAllSolvesFrom(mPuzzleType, mPuzzleCategory);
+                } else if (mFileFormat == ExportImportDialog.EXIM_FORMAT_COMPACT_BACKUP) {
+                    final CompactBackupWriter out = new CompactBackupWriter(os, true);
+                    Cursor cursor = handler.getAllSolvesByPuzzle();
 
                     try {
                         publishProgress(0, cursor.getCount());
 
                         while (cursor.moveToNext()) {
-                            String csvValues
-                                    = '"' + PuzzleUtils.convertTimeToString(cursor.getInt(IDX_TIME), PuzzleUtils.FORMAT_DEFAULT)
-                                    + "\";\"" + cursor.getString(IDX_SCRAMBLE)
-                                    + "\";\"" + new DateTime(cursor.getLong(IDX_DATE)).toString()
-                                    + '"';
-
-                            // Add optional "DNF" in fourth field.
-                            if (cursor.getInt(IDX_PENALTY) == PuzzleUtils.PENALTY_DNF) {
-                                csvValues += ";\"DNF\"";
-                            }
+                            out.writeSolve(
+                                    cursor.getString(IDX_TYPE),
+                                    cursor.getString(IDX_SUBTYPE),
+                                    cursor.getInt(IDX_TIME),
+                                    cursor.getLong(IDX_DATE),
+                                    cursor.getString(IDX_SCRAMBLE),
+                                    cursor.getInt(IDX_PENALTY),
+                                    cursor.getString(IDX_COMMENT));
+                            exports++;
+                            publishThrottledProgress(exports);
+                        }
+                    } finally {
+                        cursor.close();
+                        out.close();
+                    }
+                    returnCode = true;
+                } else if (mFileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL) {
+                    final SolveCsvWriter out = new SolveCsvWriter(os);
+                    Cursor cursor = handler.getAllSolvesFrom(mPuzzleType, mPuzzleCategory);
 
-                            csvValues += '\n';
+                    try {
+                        publishProgress(0, cursor.getCount());
 
-                            out.write(csvValues);
+                        while (cursor.moveToNext()) {
+                            out.writeExternalSolve(
+                                    cursor.getInt(IDX_TIME),
+                                    cursor.getString(IDX_SCRAMBLE),
+                                    cursor.getLong(IDX_DATE),
+                                    cursor.getInt(IDX_PENALTY) == PuzzleUtils.PENALTY_DNF);
                             exports++;
-                            publishProgress(exports);
+                            publishThrottledProgress(exports);
                         }
                     } finally {
                         cursor.close();
@@ -922,9 +1003,19 @@ public class MainActivity extends AppCompatActivity
                     }
                     returnCode = true;
                 } else {
+                    os.close();
                     Log.e(TAG, "Unknown export file format: " + mFileFormat);
                     returnCode = false;
                 }
+
+                if (returnCode) {
+                    publishProgress(exports);
+
+                    final long elapsed = Math.max(SystemClock.elapsedRealtime() - startTime, 1);
+
+                    Log.i(TAG, "Exported " + exports + " solves in " + elapsed + " ms ("
+                            + (exports * 1_000L / elapsed) + " solves/s).");
+                }
             } catch (IOException e) {
                 returnCode = false;
                 Log.d("ERROR", "IOException: " + e.getMessage());
@@ -933,6 +1024,20 @@ public class MainActivity extends AppCompatActivity
             return returnCode;
         }
 
+        /**
+         * Publishes the number of solves exported so far, unless progress was published less than
+         * {@link #PROGRESS_INTERVAL} milliseconds ago. Updating the progress dialog for every
+         * solve would slow down the export.
+         */
+        private void publishThrottledProgress(int exports) {
+            final long now = SystemClock.elapsedRealtime();
+
+            if (now - mLastProgressTime >= PROGRESS_INTERVAL) {
+                mLastProgressTime = now;
+                publishProgress(exports);
+            }
+        }
+
         @Override
         protected void onPostExecute(Boolean isExported) {
             if (mProgressDialog.isShowing()) {
@@ -968,6 +1073,11 @@ public class MainActivity extends AppCompatActivity
     }
 
     private static class ImportSolves extends AsyncTask<Void, Integer, Void> {
+        /**
+         * The maximum number of solves that are read from the file before they are inserted into
+         * the database. This limits the memory needed to import a file of any size.
+         */
+        private static final int IMPORT_BATCH_SIZE = 500;
 
         private final Context  mContext;
         private final int      mFileFormat;
@@ -980,6 +1090,11 @@ public class MainActivity extends AppCompatActivity
         private int duplicates  = 0;
         private int successes   = 0;
 
+        /**
+         * Indicates if the import was stopped by an error before the end of the file was reached.
+         */
+        private boolean mIsStopped;
+
         /**
          * Creates a new task for importing solve times from a file.
          *
@@ -1032,95 +1147,104 @@ public class MainActivity extends AppCompatActivity
 
         @Override
         protected Void doInBackground(Void... voids) {
-            List<Solve> solveList = new ArrayList<>();
+            final DatabaseHandler handler = TwistyTimer.getDBHandler();
+            final List<Solve> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            AssetFileDescriptor afd = null;
+            InputStream in = null;
+            SolveReader reader = null;
+            DatabaseHandler.SolveInserter inserter = null;
+            int numRead = 0;
 
             try {
-                InputStream is = mContext.getContentResolver().openInputStream(mUri);
-                InputStreamReader isr = new InputStreamReader(is);
-                BufferedReader br = new BufferedReader(isr);
-                CSVReader csvReader = new CSVReader(br, ';', '"', true);
-                String[] line;
+                afd = mContext.getContentResolver().openAssetFileDescriptor(mUri, "r");
+                if (afd == null) {
+                    throw new IOException("Cannot open file: " + mUri);
+                }
+                // The length may be unknown, in which case progress is reported as the number of
+                // solves read so far, i.e., the progress bar is always full.
+                final long length = afd.getLength();
 
-                if (mFileFormat == ExportImportDialog.EXIM_FORMAT_BACKUP) {
-                    // throw away the header
-                    csvReader.readNext();
-
-                    while ((line = csvReader.readNext()) != null) {
-                        try {
-                            solveList.add(new Solve(
-                                Integer.parseInt(line[2]), line[0], line[1], Long.parseLong(line[3]),
-                                line[4], Integer.parseInt(line[5]), line[6], true));
-                        } catch (Exception e) {
-                            parseErrors++;
-                        }
-                    }
-                } else if (mFileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL) {
-                    final long now = DateTime.now().getMillis();
+                in = new BufferedInputStream(afd.createInputStream());
+                // A back-up file may be in the text or the compact format.
+                reader = mFileFormat == ExportImportDialog.EXIM_FORMAT_BACKUP
+                                && CompactBackupReader.isCompactBackup(in)
+                        ? new CompactBackupReader(in)
+                        : new SolveCsvReader(in, mFileFormat, mPuzzleType, mPuzzleCategory);
+                inserter = handler.newSolveInserter(mFileFormat);
 
-                    while ((line = csvReader.readNext()) != null) {
-                        if (line.length <= 4) {
-                            try {
-                                Log.d("IMPORTING EXTERNAL", "time: " + line[0]);
+                Solve solve;
 
-                                int time = PuzzleUtils.parseTime(line[0]);
-                                String scramble = "";
-                                long date = now;
-                                int penalty = PuzzleUtils.NO_PENALTY;
+                do {
+                    solve = reader.next();
 
-                                if (line.length >= 2) {
-                                    scramble = line[1];
-                                }
-                                if (line.length >= 3) {
-                                    try {
-                                        date = DateTime.parse(line[2]).getMillis();
-                                    } catch (Exception e) {
-                                        // "date" remains equal to "now".
-                                        e.printStackTrace();
-                                    }
-                                }
-                                // Optional fourth field (index 3) may contain "DNF". If it is
-                                // something else, ignore it.
-                                if (line.length >= 4 && "DNF".equals(line[3])) {
-                                    penalty = PuzzleUtils.PENALTY_DNF;
-                                }
+                    if (solve != null) {
+                        batch.add(solve);
+                    }
 
-                                solveList.add(new Solve(
-                                        time, mPuzzleType, mPuzzleCategory,
-                                        date, scramble, penalty, "", true));
-                            } catch (Exception e) {
-                                parseErrors++;
-                            }
+                    if (batch.size() == IMPORT_BATCH_SIZE
+                            || (solve == null && !batch.isEmpty())) {
+                        // Perform a bulk insertion of the batch of solves.
+                        successes += inserter.insert(batch);
+                        numRead += batch.size();
+                        duplicates = numRead - successes;
+                        parseErrors = reader.getNumParseErrors();
+                        batch.clear();
+
+                        if (DEBUG_ME) Log.d(TAG, "Imported batch: read=" + numRead
+                                + ", inserted=" + successes + ", errors=" + parseErrors);
+
+                        if (length != AssetFileDescriptor.UNKNOWN_LENGTH) {
+                            publishProgress((int) (reader.getNumBytesRead() / 1_024),
+                                    (int) (length / 1_024));
                         } else {
-                            parseErrors++;
+                            publishProgress(numRead, numRead);
                         }
                     }
-                } else {
-                    Log.e(TAG, "Unknown import file format: " + mFileFormat);
+                } while (solve != null);
+
+                parseErrors = reader.getNumParseErrors();
+            } catch (IOException | RuntimeException e) {
+                // The batches inserted before the error are kept, but the rest of the file is not
+                // imported, so the result must not be reported as a complete import.
+                Log.e(TAG, "Import stopped after " + numRead + " solve(s).", e);
+                mIsStopped = true;
+            } finally {
+                if (inserter != null) {
+                    inserter.close();
+                }
+                // The reader closes the input stream.
+                close(reader != null ? reader : in);
+                if (afd != null) {
+                    try {
+                        afd.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Could not close the imported file.", e);
+                    }
                 }
-
-                final DatabaseHandler handler = TwistyTimer.getDBHandler();
-
-                // Perform a bulk insertion of the solves.
-                successes = handler.addSolves(mFileFormat, solveList, new ProgressListener() {
-                            @Override
-                            public void onProgress(int numCompleted, int total) {
-                                publishProgress(numCompleted, total);
-                            }
-                        });
-                duplicates = solveList.size() - successes;
-            } catch (Exception e) {
-                e.printStackTrace();
             }
 
             return null;
         }
 
+        private static void close(Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not close the imported file.", e);
+                }
+            }
+        }
+
         @Override
         protected void onPostExecute(Void aVoid) {
             if (mProgressDialog.isShowing()) {
                 mProgressDialog.setActionButton(DialogAction.POSITIVE, R.string.action_done);
                 mProgressDialog.setContent(Html.fromHtml(
-                        mContext.getString(R.string.import_progress_content)
+                        (mIsStopped
+                                ? mContext.getString(R.string.import_progress_stopped,
+                                        successes + duplicates)
+                                : mContext.getString(R.string.import_progress_content))
                         + "<br><br><small><tt>"
                         + "<b>" + successes + "</b> "
                         + mContext.getString(R.string.import_progress_content_successful_imports)
@@ -151,7 +151,8 @@ public class SettingsActivity extends AppCompatActivity {
                         R.string.pk_corner_letter_scheme,
                         R.string.pk_corner_buffer,
                         R.string.pk_stat_acceptable_dnf_size,
-                        R.string.pk_timer_animation_duration)) {
+                        R.string.pk_timer_animation_duration,
+                        R.string.pk_scramble_pool_size)) {
 
                     case R.string.pk_inspection_time:
                         createNumberDialog(R.string.inspection_time, R.string.pk_inspection_time);
@@ -210,6 +211,12 @@ public class SettingsActivity extends AppCompatActivity {
                                          R.integer.defaultAnimationDuration,
                                          "%d ms");
                         break;
+                    case R.string.pk_scramble_pool_size:
+                        createSeekDialog(R.string.pk_scramble_pool_size,
+                                         0, 20,
+                                         R.integer.defaultScramblePoolSize,
+                                         "%d");
+                        break;
                     case R.string.pk_stat_trim_size:
                         // This would be a lot cleaner with high-order functions, but I couldn't find a way to get it working for API < 24
                         MaterialDialog trimDialogView = createAverageSeekDialog(R.string.pk_stat_trim_size,
@@ -356,6 +363,7 @@ public class SettingsActivity extends AppCompatActivity {
                     // TODO: this seems to be missing
                     // R.string.pk_stat_acceptable_dnf_size,
                     R.string.pk_timer_animation_duration,
+                    R.string.pk_scramble_pool_size,
                     R.string.pk_corner_letter_scheme,
                     R.string.pk_corner_buffer
             };
@@ -1,7 +1,6 @@
 package com.aricneto.twistytimer.adapter;
 
 import android.content.Context;
-import android.database.Cursor;
 import androidx.fragment.app.FragmentManager;
 import androidx.core.content.ContextCompat;
 import androidx.cardview.widget.CardView;
@@ -19,6 +18,8 @@ import android.widget.TextView;
 
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
+import com.aricneto.twistytimer.database.SolveWriteQueue;
+import com.aricneto.twistytimer.database.TimeListSource;
 import com.aricneto.twistytimer.fragment.TimerListFragment;
 import com.aricneto.twistytimer.fragment.dialog.TimeDialog;
 import com.aricneto.twistytimer.listener.DialogListener;
@@ -37,12 +38,18 @@ import static com.aricneto.twistytimer.utils.TTIntent.*;
 
 /**
  * Created by Ari on 05/06/2015.
+ *
+ * <p>The solve times are read from a {@link TimeListSource} one page at a time, as the list is
+ * scrolled.</p>
  */
 
-public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHolder> implements DialogListener {
+public class TimeListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+        implements DialogListener, TimeListSource.OnPageLoadedListener {
     private final Context           mContext;  // Current context
     private final FragmentManager   mFragmentManager;
 
+    private TimeListSource mSource;
+
     Drawable cardBackground;
     Drawable selectedCardBackground;
 
@@ -55,8 +62,7 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
     // Locks opening new windows until the last one is dismissed
     private boolean isLocked;
 
-    public TimeCursorAdapter(Context context, Cursor cursor, TimerListFragment listFragment) {
-        super(cursor);
+    public TimeListAdapter(Context context, TimerListFragment listFragment) {
         this.mContext = context;
         this.mFragmentManager = listFragment.getFragmentManager();
 
@@ -73,11 +79,38 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
         mDateFormatSpec = context.getString(R.string.shortDateFormat);
     }
 
-    @Override
-    public Cursor swapCursor(Cursor cursor) {
-        super.swapCursor(cursor);
+    /**
+     * Changes the source of the solve times shown by this adapter. The previous source, if any,
+     * is closed, so it will not read any more pages.
+     *
+     * @param source The new source of solve times. May be {@code null} to show no solve times.
+     */
+    public void swapSource(TimeListSource source) {
+        if (source == mSource) {
+            return;
+        }
+        if (mSource != null) {
+            mSource.close();
+        }
+
+        mSource = source;
+
+        if (source != null) {
+            source.setOnPageLoadedListener(this);
+        }
+
+        notifyDataSetChanged();
         unselectAll();
-        return cursor;
+    }
+
+    @Override
+    public void onPageLoaded(int start, int count) {
+        notifyItemRangeInserted(start, count);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSource != null ? mSource.size() : 0;
     }
 
     @Override
@@ -93,14 +126,15 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
     }
 
     @Override
-    public void onBindViewHolderCursor(final RecyclerView.ViewHolder viewHolder, final Cursor cursor) {
+    public void onBindViewHolder(final RecyclerView.ViewHolder viewHolder, final int position) {
         TimeHolder holder = (TimeHolder) viewHolder;
-        handleTime(holder, cursor);
+        handleTime(holder, position);
+        mSource.loadMoreIfNeeded(position);
     }
 
     @Override
     public void onUpdateDialog() {
-        broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+        // Nothing to do. "TimeDialog" broadcasts the details of the change itself.
     }
 
     @Override
@@ -119,8 +153,19 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
     }
 
     public void deleteAllSelected() {
-        TwistyTimer.getDBHandler().deleteSolvesByID(selectedItems, null); // Ignore progress.
-        broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+        final long[] deletedIDs = new long[selectedItems.size()];
+
+        for (int i = 0; i < deletedIDs.length; i++) {
+            deletedIDs[i] = selectedItems.get(i);
+        }
+
+        final SolveWriteQueue writeQueue = TwistyTimer.getSolveWriteQueue();
+
+        for (long id : deletedIDs) {
+            writeQueue.deleteSolve(id);
+        }
+        writeQueue.broadcast(new BroadcastBuilder(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED)
+                .deletedSolves(deletedIDs));
     }
 
     private void toggleSelection(long id, CardView card) {
@@ -140,12 +185,11 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
         }
     }
 
-    private void handleTime(final TimeHolder holder, final Cursor cursor) {
-        final long mId = cursor.getLong(0); // id
-        final int pTime = cursor.getInt(3); // time
-        final int pPenalty = cursor.getInt(6); // penalty
-        final long pDate = cursor.getLong(4); // date
-        final String pComment = cursor.getString(7); // comment
+    private void handleTime(final TimeHolder holder, final int position) {
+        final long mId = mSource.getId(position);
+        final int pTime = mSource.getTime(position);
+        final int pPenalty = mSource.getPenalty(position);
+        final long pDate = mSource.getDate(position);
 
         holder.dateText.setText(new DateTime(pDate).toString(mDateFormatSpec));
 
@@ -163,7 +207,7 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
                     setIsLocked(true);
                     TimeDialog timeDialog = TimeDialog.newInstance(mId);
                     timeDialog.show(mFragmentManager, "time_dialog");
-                    timeDialog.setDialogListener(TimeCursorAdapter.this);
+                    timeDialog.setDialogListener(TimeListAdapter.this);
                 }
             }
         });
@@ -197,7 +241,7 @@ public class TimeCursorAdapter extends CursorRecyclerAdapter<RecyclerView.ViewHo
                 break;
         }
 
-        if (! pComment.equals("")) {
+        if (mSource.hasComment(position)) {
             holder.commentIcon.setVisibility(View.VISIBLE);
         } else {
             // This else is needed because the view recycles.
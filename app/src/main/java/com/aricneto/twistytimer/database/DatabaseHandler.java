@@ -3,15 +3,22 @@ package com.aricneto.twistytimer.database;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
 import com.aricneto.twistytimer.fragment.dialog.ExportImportDialog;
 import com.aricneto.twistytimer.items.Algorithm;
 import com.aricneto.twistytimer.items.Solve;
+import com.aricneto.twistytimer.stats.AverageCalculator;
 import com.aricneto.twistytimer.stats.ChartStatistics;
 import com.aricneto.twistytimer.stats.Statistics;
 import com.aricneto.twistytimer.utils.AlgUtils;
@@ -20,12 +27,19 @@ import com.aricneto.twistytimer.utils.PuzzleUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Ari on 03/06/2015.
  */
 public class DatabaseHandler extends SQLiteOpenHelper {
+    /**
+     * A "tag" to identify this class in log messages.
+     */
+    private static final String TAG = DatabaseHandler.class.getSimpleName();
 
     public static final String TABLE_TIMES = "times";
 
@@ -39,6 +53,10 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     public static final String KEY_PENALTY  = "penalty";
     public static final String KEY_COMMENT  = "comment";
     public static final String KEY_HISTORY  = "history";
+    // The dispatch latencies (in milliseconds) of the input events that started and stopped the
+    // timer for a solve, recorded for diagnostics. Null if not known (e.g., for imported solves).
+    public static final String KEY_START_LATENCY = "start_latency";
+    public static final String KEY_STOP_LATENCY  = "stop_latency";
 
     // Index value of the keys of the "times" table *only* for a full "SELECT * FROM times".
     // Added these to make code in places like "MainActivity" (export/import) a bit more readable,
@@ -53,6 +71,8 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     public static final int IDX_PENALTY  = 6;
     public static final int IDX_COMMENT  = 7;
     public static final int IDX_HISTORY  = 8;
+    public static final int IDX_START_LATENCY = 9;
+    public static final int IDX_STOP_LATENCY  = 10;
 
     // Algs table
     public static final String TABLE_ALGS   = "algs";
@@ -62,6 +82,16 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     public static final String KEY_ALGS     = "algs";
     public static final String KEY_PROGRESS = "progress";
 
+    // Statistics snapshots table
+    public static final String TABLE_STATS_SNAPSHOTS = "stats_snapshots";
+    public static final String KEY_LAST_DATE         = "last_date";
+    public static final String KEY_NUM_SOLVES        = "num_solves";
+    public static final String KEY_DATA              = "data";
+
+    // Full-text search index of the comments of the solves
+    public static final String TABLE_TIMES_FTS = "times_fts";
+    public static final String KEY_DOCID       = "docid";
+
     public static final String SUBSET_OLL = "OLL";
     public static final String SUBSET_PLL = "PLL";
 
@@ -73,10 +103,10 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     private static final String YEL                = "Y";
     private static final String NUL                = "N";
     // Database Version
-    private static final int    DATABASE_VERSION   = 10;
+    private static final int    DATABASE_VERSION   = 14;
     // Database Name
     private static final String DATABASE_NAME      = "databaseManager";
-    private static final String CREATE_TABLE_TIMES =
+    static final String CREATE_TABLE_TIMES =
         "CREATE TABLE " + TABLE_TIMES + "("
             + KEY_ID + " INTEGER PRIMARY KEY,"
             + KEY_TYPE + " TEXT,"
@@ -86,7 +116,9 @@ public class DatabaseHandler extends SQLiteOpenHelper {
             + KEY_SCRAMBLE + " TEXT,"
             + KEY_PENALTY + " INTEGER,"
             + KEY_COMMENT + " TEXT,"
-            + KEY_HISTORY + " BOOLEAN"
+            + KEY_HISTORY + " BOOLEAN,"
+            + KEY_START_LATENCY + " INTEGER,"
+            + KEY_STOP_LATENCY + " INTEGER"
             + ")";
     private static final String CREATE_TABLE_ALGS  =
         "CREATE TABLE " + TABLE_ALGS + "("
@@ -98,6 +130,113 @@ public class DatabaseHandler extends SQLiteOpenHelper {
             + KEY_PROGRESS + " INTEGER"
             + ")";
 
+    // Covering indices for the statistics queries in "readSolves". Both indices hold every
+    // column those queries read, so SQLite never has to visit the table rows. The first index
+    // leads with "history", so the "current session" queries read only the session rows, already
+    // in date order. The second index leads with "date", so the "all time" queries can read the
+    // session and history rows together in date order without a temporary sort. The query plans
+    // are checked by "DatabaseIndexTestCase".
+    //
+    // Measured with 200,000 solves (100,000 for the puzzle read, 2,650 of those in the current
+    // session) on desktop SQLite 3.40, with write-ahead logging:
+    //   - Without "idx_times_date", each chunk of the "all time" read sorts all of the solves
+    //     for the puzzle, so the whole read takes 3,700 ms instead of 103 ms.
+    //   - Without "idx_times_session", the "current session" read takes 20 ms instead of 3 ms.
+    //   - With both indices, importing 200,000 solves in batches of 500 takes 1,670 ms, against
+    //     1,100-1,200 ms with either index alone and 670 ms with none. Adding a single solve in
+    //     its own transaction takes 55 us, against 35 us with either index alone.
+    private static final String INDEX_TIMES_SESSION = "idx_times_session";
+    private static final String INDEX_TIMES_DATE    = "idx_times_date";
+    static final String CREATE_INDEX_TIMES_SESSION =
+        "CREATE INDEX IF NOT EXISTS " + INDEX_TIMES_SESSION + " ON " + TABLE_TIMES + "("
+            + KEY_TYPE + ", " + KEY_SUBTYPE + ", " + KEY_HISTORY + ", " + KEY_DATE + ", "
+            + KEY_TIME + ", " + KEY_PENALTY
+            + ")";
+    static final String CREATE_INDEX_TIMES_DATE =
+        "CREATE INDEX IF NOT EXISTS " + INDEX_TIMES_DATE + " ON " + TABLE_TIMES + "("
+            + KEY_TYPE + ", " + KEY_SUBTYPE + ", " + KEY_DATE + ", " + KEY_HISTORY + ", "
+            + KEY_TIME + ", " + KEY_PENALTY
+            + ")";
+
+    // A snapshot of the "Statistics" loaded by "populateStatisticsIncrementally" for each puzzle
+    // type and subtype. "last_date" is the date of the newest solve included in the snapshot and
+    // "num_solves" is the number of solve records included. A row with a null "data" marks a
+    // snapshot that is being built.
+    private static final String CREATE_TABLE_STATS_SNAPSHOTS =
+        "CREATE TABLE IF NOT EXISTS " + TABLE_STATS_SNAPSHOTS + "("
+            + KEY_TYPE + " TEXT NOT NULL,"
+            + KEY_SUBTYPE + " TEXT NOT NULL,"
+            + KEY_LAST_DATE + " INTEGER,"
+            + KEY_NUM_SOLVES + " INTEGER NOT NULL DEFAULT 0,"
+            + KEY_DATA + " BLOB,"
+            + "PRIMARY KEY (" + KEY_TYPE + ", " + KEY_SUBTYPE + ")"
+            + ")";
+
+    // Triggers that delete the snapshot for a puzzle type and subtype whenever a change is made
+    // to its solves that cannot be applied by replaying newer solves on top of the snapshot:
+    // deletes, edits to any column used by the statistics (including moves to the history) and
+    // inserts of solves that are not newer than the snapshot. Using triggers ensures that every
+    // write path, including bulk operations, keeps the snapshots consistent.
+    private static final String CREATE_TRIGGER_SNAPSHOT_INSERT =
+        "CREATE TRIGGER IF NOT EXISTS trg_stats_snapshot_insert AFTER INSERT ON " + TABLE_TIMES
+            + " BEGIN DELETE FROM " + TABLE_STATS_SNAPSHOTS + " WHERE "
+            + KEY_TYPE + "=NEW." + KEY_TYPE + " AND " + KEY_SUBTYPE + "=NEW." + KEY_SUBTYPE
+            + " AND (" + KEY_LAST_DATE + " IS NULL OR " + KEY_LAST_DATE + ">=NEW." + KEY_DATE + ");"
+            + " END";
+    private static final String CREATE_TRIGGER_SNAPSHOT_UPDATE =
+        "CREATE TRIGGER IF NOT EXISTS trg_stats_snapshot_update AFTER UPDATE OF "
+            + KEY_TYPE + ", " + KEY_SUBTYPE + ", " + KEY_TIME + ", " + KEY_DATE + ", "
+            + KEY_PENALTY + ", " + KEY_HISTORY + " ON " + TABLE_TIMES
+            + " WHEN OLD." + KEY_TYPE + " IS NOT NEW." + KEY_TYPE
+            + " OR OLD." + KEY_SUBTYPE + " IS NOT NEW." + KEY_SUBTYPE
+            + " OR OLD." + KEY_TIME + " IS NOT NEW." + KEY_TIME
+            + " OR OLD." + KEY_DATE + " IS NOT NEW." + KEY_DATE
+            + " OR OLD." + KEY_PENALTY + " IS NOT NEW." + KEY_PENALTY
+            + " OR OLD." + KEY_HISTORY + " IS NOT NEW." + KEY_HISTORY
+            + " BEGIN DELETE FROM " + TABLE_STATS_SNAPSHOTS + " WHERE ("
+            + KEY_TYPE + "=OLD." + KEY_TYPE + " AND " + KEY_SUBTYPE + "=OLD." + KEY_SUBTYPE
+            + ") OR ("
+            + KEY_TYPE + "=NEW." + KEY_TYPE + " AND " + KEY_SUBTYPE + "=NEW." + KEY_SUBTYPE
+            + "); END";
+    private static final String CREATE_TRIGGER_SNAPSHOT_DELETE =
+        "CREATE TRIGGER IF NOT EXISTS trg_stats_snapshot_delete AFTER DELETE ON " + TABLE_TIMES
+            + " BEGIN DELETE FROM " + TABLE_STATS_SNAPSHOTS + " WHERE "
+            + KEY_TYPE + "=OLD." + KEY_TYPE + " AND " + KEY_SUBTYPE + "=OLD." + KEY_SUBTYPE + ";"
+            + " END";
+
+    // A full-text search index of the comments of the solves, used to search the list of times.
+    // The index is an "external content" FTS4 table: it does not hold a copy of the comments, but
+    // reads them from the "times" table. Only solves with a comment are indexed, as most solves
+    // have none. The triggers keep the index in sync with every write to the "times" table. An
+    // entry must be deleted before its row in "times" is changed, as FTS4 reads the old comment
+    // from "times" to find the entry.
+    private static final String CREATE_TABLE_TIMES_FTS =
+        "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_TIMES_FTS + " USING fts4("
+            + "content=\"" + TABLE_TIMES + "\", " + KEY_COMMENT
+            + ")";
+    private static final String CREATE_TRIGGER_FTS_INSERT =
+        "CREATE TRIGGER IF NOT EXISTS trg_times_fts_insert AFTER INSERT ON " + TABLE_TIMES
+            + " WHEN NEW." + KEY_COMMENT + "!=''"
+            + " BEGIN INSERT INTO " + TABLE_TIMES_FTS + "(" + KEY_DOCID + ", " + KEY_COMMENT + ")"
+            + " VALUES (NEW." + KEY_ID + ", NEW." + KEY_COMMENT + "); END";
+    private static final String CREATE_TRIGGER_FTS_BEFORE_UPDATE =
+        "CREATE TRIGGER IF NOT EXISTS trg_times_fts_before_update BEFORE UPDATE OF "
+            + KEY_COMMENT + " ON " + TABLE_TIMES
+            + " WHEN OLD." + KEY_COMMENT + "!=''"
+            + " BEGIN DELETE FROM " + TABLE_TIMES_FTS + " WHERE " + KEY_DOCID + "=OLD." + KEY_ID
+            + "; END";
+    private static final String CREATE_TRIGGER_FTS_AFTER_UPDATE =
+        "CREATE TRIGGER IF NOT EXISTS trg_times_fts_after_update AFTER UPDATE OF "
+            + KEY_COMMENT + " ON " + TABLE_TIMES
+            + " WHEN NEW." + KEY_COMMENT + "!=''"
+            + " BEGIN INSERT INTO " + TABLE_TIMES_FTS + "(" + KEY_DOCID + ", " + KEY_COMMENT + ")"
+            + " VALUES (NEW." + KEY_ID + ", NEW." + KEY_COMMENT + "); END";
+    private static final String CREATE_TRIGGER_FTS_DELETE =
+        "CREATE TRIGGER IF NOT EXISTS trg_times_fts_delete BEFORE DELETE ON " + TABLE_TIMES
+            + " WHEN OLD." + KEY_COMMENT + "!=''"
+            + " BEGIN DELETE FROM " + TABLE_TIMES_FTS + " WHERE " + KEY_DOCID + "=OLD." + KEY_ID
+            + "; END";
+
     /**
      * An interface for notification of the progress of bulk database operations.
      */
@@ -115,18 +254,112 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         void onProgress(int numCompleted, int total);
     }
 
+    /**
+     * An interface for the consumers of the solves read by
+     * {@link #readSolves(String, String, boolean, long, SolveConsumer, CancellationSignal,
+     * ProgressListener)}.
+     */
+    public interface SolveConsumer {
+        /**
+         * Notifies the consumer of the next solve. Solves are read in ascending order of date.
+         *
+         * @param id
+         *     The ID of the solve.
+         * @param time
+         *     The solve time in milliseconds, or {@link AverageCalculator#DNF} if the solve is a
+         *     DNF.
+         * @param date
+         *     The date of the solve in milliseconds since the Unix epoch time.
+         * @param isForCurrentSession
+         *     {@code true} if the solve is in the current session; or {@code false} if it is in
+         *     the history of past sessions.
+         */
+        void addSolve(long id, long time, long date, boolean isForCurrentSession);
+    }
+
+    /**
+     * A value for the "since date" of {@link #readSolves(String, String, boolean, long,
+     * SolveConsumer, CancellationSignal, ProgressListener)} that causes solves of any date to be
+     * read.
+     */
+    public static final long ALL_DATES = Long.MIN_VALUE;
+
+    /**
+     * The maximum number of solves read by each query of {@link #readSolves(String, String,
+     * boolean, long, SolveConsumer, CancellationSignal, ProgressListener)}. Each chunk of solves
+     * fits easily in a single cursor window, so a large history of solves is never re-queried to
+     * refill the window, and cancellation and progress are checked between chunks.
+     */
+    private static final int READ_CHUNK_SIZE = 1_000;
+
+    /**
+     * The maximum number of solves deleted by each statement of {@link #deleteSolvesByID(
+     * Collection, ProgressListener)}. This is within SQLite's default limit of 999 parameters
+     * for each statement.
+     */
+    private static final int DELETE_CHUNK_SIZE = 500;
+
+    /**
+     * The largest ID of any solve in the database or reserved by {@link #reserveSolveID()}, or -1
+     * if it has not yet been read from the database.
+     */
+    private final AtomicLong mLastSolveID = new AtomicLong(-1);
+
     public DatabaseHandler() {
         super(TwistyTimer.getAppContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging, readers see the last committed data and are not blocked while
+        // the writer commits, such as when solves are imported or added after each solve. The
+        // helper also keeps a pool of connections, so queries made outside of a transaction, such
+        // as those of the statistics, chart and time list loaders, run on their own connections
+        // at the same time as each other and as the writer.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // With write-ahead logging, "NORMAL" syncs only at checkpoints, not at every commit. A
+        // commit cannot be lost if the application is killed, only if the device loses power.
+        // Measured with desktop SQLite 3.40 on the same schema, one solve per commit (as written
+        // by "SolveWriteQueue"): 0.1 syncs per commit, against 1.1 with "FULL" (the platform's
+        // default with write-ahead logging) and 5 with the rollback journal used before.
+        //
+        // "cache_size" and "mmap_size" are left at their defaults: a 4 MiB cache or a 32 MiB
+        // memory map made no measurable difference to "ReadLatencyBenchmark" reads of 5,000 or
+        // 30,000 solves.
+        db.execSQL("PRAGMA synchronous=NORMAL");
     }
 
     // Creating Tables
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE_TIMES);
+        db.execSQL(CREATE_INDEX_TIMES_SESSION);
+        db.execSQL(CREATE_INDEX_TIMES_DATE);
+        createStatisticsSnapshots(db);
+        createCommentSearchIndex(db);
         db.execSQL(CREATE_TABLE_ALGS);
         createInitialAlgs(db);
     }
 
+    private void createStatisticsSnapshots(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_STATS_SNAPSHOTS);
+        db.execSQL(CREATE_TRIGGER_SNAPSHOT_INSERT);
+        db.execSQL(CREATE_TRIGGER_SNAPSHOT_UPDATE);
+        db.execSQL(CREATE_TRIGGER_SNAPSHOT_DELETE);
+    }
+
+    private void createCommentSearchIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_TIMES_FTS);
+        db.execSQL(CREATE_TRIGGER_FTS_INSERT);
+        db.execSQL(CREATE_TRIGGER_FTS_BEFORE_UPDATE);
+        db.execSQL(CREATE_TRIGGER_FTS_AFTER_UPDATE);
+        db.execSQL(CREATE_TRIGGER_FTS_DELETE);
+        // Index the comments of any existing solves.
+        db.execSQL("INSERT INTO " + TABLE_TIMES_FTS + "(" + KEY_DOCID + ", " + KEY_COMMENT + ")"
+            + " SELECT " + KEY_ID + ", " + KEY_COMMENT + " FROM " + TABLE_TIMES
+            + " WHERE " + KEY_COMMENT + "!=''");
+    }
+
     // Upgrading database
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
@@ -143,6 +376,22 @@ public class DatabaseHandler extends SQLiteOpenHelper {
                                 Prefs.getInt(R.string.pk_timer_text_size, 10) * 10)
                         .apply();
         }
+
+        // Not part of the "switch" above, as versions 7 and 9 did not fall through it.
+        if (oldVersion < 11) {
+            db.execSQL(CREATE_INDEX_TIMES_SESSION);
+            db.execSQL(CREATE_INDEX_TIMES_DATE);
+        }
+        if (oldVersion < 12) {
+            createStatisticsSnapshots(db);
+        }
+        if (oldVersion < 13) {
+            createCommentSearchIndex(db);
+        }
+        if (oldVersion < 14) {
+            db.execSQL("ALTER TABLE " + TABLE_TIMES + " ADD COLUMN " + KEY_START_LATENCY + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE_TIMES + " ADD COLUMN " + KEY_STOP_LATENCY + " INTEGER");
+        }
     }
 
     private void createAlg(SQLiteDatabase db, String subset, String name, String state, String algs) {
@@ -220,7 +469,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      * @return
      */
     public Cursor getAllSolvesFrom(String type, String subtype) {
-        SQLiteDatabase db = this.getReadableDatabase();
+        SQLiteDatabase db = getReadableDatabase();
 
         String sqlSelection;
         sqlSelection =
@@ -285,45 +534,94 @@ public class DatabaseHandler extends SQLiteOpenHelper {
                                 KEY_PENALTY + " != " + PuzzleUtils.PENALTY_HIDETIME + " AND " +
                                 KEY_TYPE + " =? AND " + KEY_SUBTYPE + " =? AND " + KEY_HISTORY + " =1",
                                 new String[] { type, subtype });
-        db.close();
         return count;
     }
 
+    /**
+     * Reserves the ID of a new solve. Every solve is added with a reserved ID, so an ID can be
+     * given to a new solve before it is written to the database (see {@link SolveWriteQueue}).
+     * IDs are reserved in increasing order and are not reused while the application is running.
+     * The largest ID in the database is read the first time that this is called, unless it has
+     * already been read by {@link #reserveSolveIDsUpTo(long)}. After that, this does not access
+     * the database and does not wait for the database to be opened.
+     *
+     * @return The reserved ID.
+     */
+    public long reserveSolveID() {
+        readLastSolveID();
+        return mLastSolveID.incrementAndGet();
+    }
+
+    /**
+     * Reserves all solve IDs up to the given ID, so they are not given to new solves by
+     * {@link #reserveSolveID()}. The largest ID in the database is read first, if it has not yet
+     * been read.
+     */
+    void reserveSolveIDsUpTo(long solveID) {
+        readLastSolveID();
+
+        while (true) {
+            final long lastSolveID = mLastSolveID.get();
+
+            if (lastSolveID >= solveID || mLastSolveID.compareAndSet(lastSolveID, solveID)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the largest ID of any solve in the database, if it has not yet been read. This is not
+     * synchronized on this handler, as the lock of this handler is held while the database is
+     * opened or upgraded.
+     */
+    private void readLastSolveID() {
+        if (mLastSolveID.get() < 0) {
+            // If another thread reads the ID first, its value is kept, as IDs may since have been
+            // reserved after it.
+            mLastSolveID.compareAndSet(-1, DatabaseUtils.longForQuery(getReadableDatabase(),
+                    "SELECT IFNULL(MAX(" + KEY_ID + "), 0) FROM " + TABLE_TIMES, null));
+        }
+    }
+
+    /**
+     * Indicates if a solve with the given ID is in the database.
+     */
+    boolean solveIDExists(long solveID) {
+        return DatabaseUtils.longForQuery(getReadableDatabase(),
+                "SELECT COUNT(*) FROM " + TABLE_TIMES + " WHERE " + KEY_ID + "=?",
+                new String[] { Long.toString(solveID) }) > 0;
+    }
+
     /**
      * Adds a new solve to the database.
      *
      * @param solve The solve to be added to the database.
-     * @return The new ID of the stored solve record.
+     * @return The new ID of the stored solve record, or -1 if an error occurred.
      */
     public long addSolve(Solve solve) {
-        return addSolveInternal(getWritableDatabase(), solve);
+        return addSolve(solve, -1, -1);
     }
 
     /**
-     * Adds a new solve to the given database.
+     * Adds a new solve to the database with the dispatch latencies of the input events that
+     * started and stopped the timer. The latencies are stored only for diagnostics.
      *
-     * @param db    The database to which to add the solve.
-     * @param solve The solve to be added to the database.
-     * @return The new ID of the stored solve record.
+     * @param solve        The solve to be added to the database.
+     * @param startLatency The dispatch latency of the start in milliseconds, or -1 if not known.
+     * @param stopLatency  The dispatch latency of the stop in milliseconds, or -1 if not known.
+     * @return The new ID of the stored solve record, or -1 if an error occurred.
      */
-    private long addSolveInternal(SQLiteDatabase db, Solve solve) {
-        // Cutting off last digit to fix rounding errors
-        int time = solve.getTime();
-        time = time - (time % 10);
-
-        ContentValues values = new ContentValues();
-
-        values.put(KEY_TYPE, solve.getPuzzle());
-        values.put(KEY_SUBTYPE, solve.getSubtype());
-        values.put(KEY_TIME, time);
-        values.put(KEY_DATE, solve.getDate());
-        values.put(KEY_SCRAMBLE, solve.getScramble());
-        values.put(KEY_PENALTY, solve.getPenalty());
-        values.put(KEY_COMMENT, solve.getComment());
-        values.put(KEY_HISTORY, solve.isHistory());
+    public long addSolve(Solve solve, long startLatency, long stopLatency) {
+        final SolveInserter inserter = newSolveInserter();
 
-        // Inserting Row
-        return db.insert(TABLE_TIMES, null, values);
+        try {
+            return inserter.insert(solve, startLatency, stopLatency);
+        } catch (SQLException e) {
+            Log.e(TAG, "Could not add solve.", e);
+            return -1;
+        } finally {
+            inserter.close();
+        }
     }
 
     /**
@@ -360,16 +658,15 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         int numInserted = 0; // Only those actually inserted (i.e., excludes duplicates).
 
         if (total > 0) {
-            final SQLiteDatabase db = getWritableDatabase();
+            final SolveInserter inserter = newSolveInserter(fileFormat);
+            final SQLiteDatabase db = inserter.mDb;
 
             try{
                 // Wrapping the insertions in a transaction is about 50x faster!
                 db.beginTransaction();
 
                 for (Solve solve : solves) {
-                    // Do not check for duplicates if importing from external
-                    if ((fileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL || !solveExists(solve))) {
-                        addSolveInternal(db, solve);
+                    if (inserter.insert(solve, -1, -1) != -1) {
                         numInserted++;
                     }
 
@@ -381,12 +678,224 @@ public class DatabaseHandler extends SQLiteOpenHelper {
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
+                inserter.close();
             }
         }
 
         return numInserted;
     }
 
+    /**
+     * Creates an inserter that adds batches of new solves to the database, such as when solves
+     * are imported from a file. See {@link SolveInserter} for details.
+     *
+     * @param fileFormat
+     *     The format of the file from which the solves are imported, must be
+     *     {@link ExportImportDialog#EXIM_FORMAT_EXTERNAL}, or
+     *     {@link ExportImportDialog#EXIM_FORMAT_BACKUP}. Duplicates are only detected for the
+     *     latter.
+     *
+     * @return
+     *     The new inserter. It must be closed when it is no longer needed.
+     */
+    public SolveInserter newSolveInserter(int fileFormat) {
+        return new SolveInserter(getWritableDatabase(),
+                fileFormat != ExportImportDialog.EXIM_FORMAT_EXTERNAL);
+    }
+
+    /**
+     * Creates an inserter that adds new solves without checking for duplicates.
+     */
+    SolveInserter newSolveInserter() {
+        return new SolveInserter(getWritableDatabase(), false);
+    }
+
+    /**
+     * Adds batches of new solves to the database. Each batch is added in its own transaction
+     * using the same compiled "INSERT" statement, so a file of any size can be imported by
+     * reading and inserting a bounded number of solves at a time.
+     *
+     * <p>When duplicates are to be skipped, the hashes of the identifying details of all of the
+     * solves in the database are read once, when the first solve is inserted. Only a solve whose
+     * hash matches one of these needs to be checked with {@link #solveExists(Solve)}, so the
+     * database is not searched for every imported solve. The duplicates found are exactly those
+     * that {@code solveExists} would find.</p>
+     */
+    public class SolveInserter {
+        private final SQLiteDatabase mDb;
+        private final SQLiteStatement mInsert;
+        private final boolean mSkipDuplicates;
+
+        /**
+         * The hashes of the solves in the database (see {@link #hashSolve}), or {@code null} if
+         * they have not yet been read.
+         */
+        private Set<Long> mSolveHashes;
+
+        private SolveInserter(SQLiteDatabase db, boolean skipDuplicates) {
+            mDb = db;
+            mSkipDuplicates = skipDuplicates;
+            mInsert = db.compileStatement("INSERT INTO " + TABLE_TIMES + " ("
+                    + KEY_ID + ", " + KEY_TYPE + ", " + KEY_SUBTYPE + ", " + KEY_TIME + ", " + KEY_DATE + ", "
+                    + KEY_SCRAMBLE + ", " + KEY_PENALTY + ", " + KEY_COMMENT + ", " + KEY_HISTORY
+                    + ", " + KEY_START_LATENCY + ", " + KEY_STOP_LATENCY
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+
+        /**
+         * Adds a batch of new solves to the database in a single transaction. Any solve that
+         * matches a solve already in the database is not inserted, unless the solves are being
+         * imported from an "external" file.
+         *
+         * @param solves
+         *     The solves to be added. Must not be {@code null}, but may be empty.
+         *
+         * @return
+         *     The number of solves inserted.
+         */
+        public int insert(Collection<Solve> solves) {
+            int numInserted = 0;
+
+            mDb.beginTransaction();
+            try {
+                for (Solve solve : solves) {
+                    if (insert(solve, -1, -1) != -1) {
+                        numInserted++;
+                    }
+                }
+
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+
+            return numInserted;
+        }
+
+        /**
+         * Adds a new solve to the database, unless it is a duplicate that should be skipped.
+         * Negative latencies are not known and are stored as null.
+         *
+         * @return The new ID of the stored solve record; or -1 if the solve was skipped.
+         */
+        private long insert(Solve solve, long startLatency, long stopLatency) {
+            if (mSkipDuplicates && isDuplicate(solve)) {
+                return -1;
+            }
+
+            return insert(reserveSolveID(), solve, startLatency, stopLatency);
+        }
+
+        /**
+         * Adds a new solve to the database with an ID reserved by {@link #reserveSolveID()}.
+         * Negative latencies are not known and are stored as null.
+         *
+         * @return The ID of the stored solve record.
+         */
+        long insert(long id, Solve solve, long startLatency, long stopLatency) {
+            // Cutting off last digit to fix rounding errors
+            int time = solve.getTime();
+            time = time - (time % 10);
+
+            if (mSolveHashes != null) {
+                mSolveHashes.add(hashSolve(solve.getPuzzle(), solve.getSubtype(), time,
+                        solve.getDate(), solve.getScramble()));
+            }
+
+            mInsert.bindLong(1, id);
+            bindStringOrNull(mInsert, 2, solve.getPuzzle());
+            bindStringOrNull(mInsert, 3, solve.getSubtype());
+            mInsert.bindLong(4, time);
+            mInsert.bindLong(5, solve.getDate());
+            bindStringOrNull(mInsert, 6, solve.getScramble());
+            mInsert.bindLong(7, solve.getPenalty());
+            bindStringOrNull(mInsert, 8, solve.getComment());
+            mInsert.bindLong(9, solve.isHistory() ? 1 : 0);
+            bindLatency(mInsert, 10, startLatency);
+            bindLatency(mInsert, 11, stopLatency);
+
+            return mInsert.executeInsert();
+        }
+
+        /**
+         * Indicates if a solve matches a solve already in the database.
+         */
+        private boolean isDuplicate(Solve solve) {
+            if (mSolveHashes == null) {
+                mSolveHashes = readSolveHashes(mDb);
+            }
+
+            // A hash may match by chance, so a match is confirmed by searching the database.
+            return mSolveHashes.contains(hashSolve(solve.getPuzzle(), solve.getSubtype(),
+                    solve.getTime(), solve.getDate(), solve.getScramble()))
+                    && solveExists(solve);
+        }
+
+        /**
+         * Releases the compiled statement.
+         */
+        public void close() {
+            mInsert.close();
+        }
+    }
+
+    /**
+     * Reads the hashes of the identifying details of all of the solves in the database.
+     */
+    private static Set<Long> readSolveHashes(SQLiteDatabase db) {
+        final Cursor cursor = db.query(TABLE_TIMES,
+                new String[] { KEY_TYPE, KEY_SUBTYPE, KEY_TIME, KEY_DATE, KEY_SCRAMBLE },
+                null, null, null, null, null);
+        final Set<Long> hashes = new HashSet<>(Math.max(16, cursor.getCount() * 4 / 3 + 1));
+
+        try {
+            while (cursor.moveToNext()) {
+                hashes.add(hashSolve(cursor.getString(0), cursor.getString(1), cursor.getLong(2),
+                        cursor.getLong(3), cursor.getString(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Calculates a hash of the details that identify a solve in {@link #solveExists(Solve)}.
+     * {@code null} values are hashed as zero.
+     */
+    private static long hashSolve(
+            String type, String subtype, long time, long date, String scramble) {
+        long hash = type != null ? type.hashCode() : 0;
+
+        hash = 31 * hash + (subtype != null ? subtype.hashCode() : 0);
+        hash = 31 * hash + time;
+        hash = 31 * hash + date;
+        hash = 31 * hash + (scramble != null ? scramble.hashCode() : 0);
+
+        return hash;
+    }
+
+    /**
+     * Binds a string value to a compiled statement. Unlike {@code SQLiteStatement.bindString},
+     * this allows the value to be {@code null}.
+     */
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindLatency(SQLiteStatement statement, int index, long latency) {
+        if (latency < 0) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, latency);
+        }
+    }
+
     public int updateSolve(Solve solve) {
         SQLiteDatabase db = this.getWritableDatabase();
 
@@ -481,49 +990,380 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      *     calculators for all sessions or only the current session. The database read will be
      *     adapted automatically to read the minimum number of rows to satisfy the collection of
      *     the required statistics.
+     * @param signal
+     *     A signal to cancel the read, or {@code null} if it cannot be cancelled.
+     * @param listener
+     *     A listener for the progress of the read, or {@code null} if progress is not required.
+     *
+     * @throws OperationCanceledException
+     *     If the read was cancelled. The statistics will then be incomplete.
      */
     public void populateStatistics(
+            String puzzleType, String puzzleSubtype, Statistics statistics,
+            @Nullable CancellationSignal signal, @Nullable ProgressListener listener) {
+        // Add by solve ID, so that recent solves can later be retracted from the statistics if
+        // they are deleted or their penalties are changed.
+        readSolves(puzzleType, puzzleSubtype, statistics.isForCurrentSessionOnly(), ALL_DATES,
+                (id, time, date, isForCurrentSession)
+                        -> statistics.addSolve(id, time, isForCurrentSession),
+                signal, listener);
+    }
+
+    /**
+     * Populates the collection of statistics in the same way as
+     * {@link #populateStatistics(String, String, Statistics, CancellationSignal,
+     * ProgressListener)}, but starts from the snapshot saved by the last call to this method for
+     * the same puzzle type and subtype. Only the solves added since that snapshot was saved are
+     * read from the database, and a new snapshot is saved afterwards. If there is no valid snapshot
+     * (e.g., if solves were edited, deleted or moved to the history since it was saved, or if the
+     * statistics settings changed), all solves are read.
+     *
+     * @param puzzleType
+     *     The name of the puzzle type.
+     * @param puzzleSubtype
+     *     The name of the puzzle subtype.
+     * @param statistics
+     *     The statistics in which to record the solve times. Any existing state will be replaced.
+     *     These should always be created by the same factory method for a given puzzle type and
+     *     subtype; a snapshot saved from statistics with a different set of average calculators
+     *     cannot be restored and will be rebuilt.
+     * @param signal
+     *     A signal to cancel the read, or {@code null} if it cannot be cancelled.
+     * @param listener
+     *     A listener for the progress of the read, or {@code null} if progress is not required.
+     *
+     * @throws OperationCanceledException
+     *     If the read was cancelled. No new snapshot is saved and the statistics will then be
+     *     incomplete.
+     */
+    public void populateStatisticsIncrementally(
+            String puzzleType, String puzzleSubtype, Statistics statistics,
+            @Nullable CancellationSignal signal, @Nullable ProgressListener listener) {
+        final StatisticsLoad load = beginStatisticsLoad(puzzleType, puzzleSubtype, statistics);
+
+        readSolves(puzzleType, puzzleSubtype,
+                statistics.isForCurrentSessionOnly(), load.getSinceDate(), load, signal, listener);
+        load.finish();
+    }
+
+    /**
+     * Begins an incremental load of statistics. The saved snapshot is restored (or the statistics
+     * are reset if there is no valid snapshot) and the returned load must then be given the solves
+     * dated after {@link StatisticsLoad#getSinceDate()}. This allows the solves to be read in the
+     * same pass as solves for other consumers. See {@link #populateStatisticsIncrementally(String,
+     * String, Statistics, CancellationSignal, ProgressListener)} for more details.
+     *
+     * @param puzzleType
+     *     The name of the puzzle type.
+     * @param puzzleSubtype
+     *     The name of the puzzle subtype.
+     * @param statistics
+     *     The statistics in which to record the solve times.
+     *
+     * @return
+     *     The load, which must be given the remaining solves and then finished by calling
+     *     {@link StatisticsLoad#finish()}.
+     */
+    public StatisticsLoad beginStatisticsLoad(
             String puzzleType, String puzzleSubtype, Statistics statistics) {
-        final boolean isStatisticsForCurrentSessionOnly = statistics.isForCurrentSessionOnly();
-        final String sql;
+        final SQLiteDatabase db = getWritableDatabase();
+        final String[] puzzleArgs = { puzzleType, puzzleSubtype };
+        final Cursor snapshot = db.query(TABLE_STATS_SNAPSHOTS,
+                new String[] { KEY_LAST_DATE, KEY_NUM_SOLVES, KEY_DATA },
+                KEY_TYPE + "=? AND " + KEY_SUBTYPE + "=?", puzzleArgs, null, null, null);
 
-        // Sort into ascending order of date (oldest solves first), so that the "current"
-        // average is, in the end, calculated to be that of the most recent solves.
-        if (isStatisticsForCurrentSessionOnly) {
-            sql = "SELECT " + KEY_TIME + ", " + KEY_PENALTY + " FROM " + TABLE_TIMES
-                    + " WHERE " + KEY_TYPE + "=? AND " + KEY_SUBTYPE + "=? AND "
-                    + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME + " AND "
-                    + KEY_HISTORY + "=0 ORDER BY " + KEY_DATE + " ASC";
-        } else {
-            sql = "SELECT " + KEY_TIME + ", " + KEY_PENALTY + ", " + KEY_HISTORY
-                    + " FROM " + TABLE_TIMES + " WHERE " + KEY_TYPE + "=? AND "
-                    + KEY_SUBTYPE + "=? AND " + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME
-                    + " ORDER BY " + KEY_DATE + " ASC";
+        // The date of the newest solve in the restored snapshot, or "null" if all solves are read.
+        Long sinceDate = null;
+        int numSolves = 0;
+
+        try {
+            if (snapshot.moveToFirst() && !snapshot.isNull(0) && !snapshot.isNull(2)
+                    && statistics.restoreSnapshot(snapshot.getBlob(2))) {
+                sinceDate = snapshot.getLong(0);
+                numSolves = snapshot.getInt(1);
+            }
+        } finally {
+            snapshot.close();
         }
 
-        final Cursor cursor
-                = getReadableDatabase().rawQuery(sql, new String[] { puzzleType, puzzleSubtype });
+        // The triggers should delete any snapshot that is out of date, but check that the snapshot
+        // still accounts for the same solves, so that it cannot cause wrong statistics.
+        if (sinceDate != null
+                && countStatisticsSolves(db, puzzleArgs, statistics, sinceDate) != numSolves) {
+            sinceDate = null;
+            numSolves = 0;
+        }
 
-        try {
-            final int timeCol = cursor.getColumnIndex(KEY_TIME);
-            final int penaltyCol = cursor.getColumnIndex(KEY_PENALTY);
-            final int historyCol
-                    = isStatisticsForCurrentSessionOnly ? -1 : cursor.getColumnIndex(KEY_HISTORY);
+        if (sinceDate == null) {
+            statistics.reset();
 
-            while (cursor.moveToNext()) {
-                final boolean isForCurrentSession
-                        = isStatisticsForCurrentSessionOnly || cursor.getInt(historyCol) == 0;
+            // Mark the snapshot as being built. If the solves are changed while they are being read
+            // the triggers will delete this row and the new snapshot will not be saved below.
+            final ContentValues values = new ContentValues();
+
+            values.put(KEY_TYPE, puzzleType);
+            values.put(KEY_SUBTYPE, puzzleSubtype);
+            values.putNull(KEY_LAST_DATE);
+            values.put(KEY_NUM_SOLVES, 0);
+            values.putNull(KEY_DATA);
+            db.insertWithOnConflict(
+                    TABLE_STATS_SNAPSHOTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+
+        return new StatisticsLoad(
+                puzzleArgs, statistics, sinceDate == null ? ALL_DATES : sinceDate, numSolves);
+    }
+
+    /**
+     * An incremental load of statistics started by {@link #beginStatisticsLoad}. The solves given
+     * to this consumer are added to the statistics and, when finished, a new snapshot is saved.
+     */
+    public class StatisticsLoad implements SolveConsumer {
+        private final String[] mPuzzleArgs;
+        private final Statistics mStatistics;
+        private final long mSinceDate;
+        private final int mNumSolves;
+        private int mNumRead;
+        private long mLastDate;
+
+        private StatisticsLoad(
+                String[] puzzleArgs, Statistics statistics, long sinceDate, int numSolves) {
+            mPuzzleArgs = puzzleArgs;
+            mStatistics = statistics;
+            mSinceDate = sinceDate;
+            mNumSolves = numSolves;
+        }
+
+        /**
+         * Gets the date of the newest solve in the restored snapshot. Only solves dated after
+         * this must be given to this load.
+         *
+         * @return The date, or {@link #ALL_DATES} if no snapshot was restored.
+         */
+        public long getSinceDate() {
+            return mSinceDate;
+        }
+
+        @Override
+        public void addSolve(long id, long time, long date, boolean isForCurrentSession) {
+            // Add by solve ID, so that recent solves can later be retracted from the statistics
+            // if they are deleted or their penalties are changed.
+            mStatistics.addSolve(id, time, isForCurrentSession);
+            mNumRead++;
+            mLastDate = date;
+        }
+
+        /**
+         * Finishes the load, saving a new snapshot of the statistics if any solves were added.
+         */
+        public void finish() {
+            if (mNumRead > 0) {
+                final ContentValues values = new ContentValues();
+
+                values.put(KEY_LAST_DATE, mLastDate);
+                values.put(KEY_NUM_SOLVES, mNumSolves + mNumRead);
+                values.put(KEY_DATA, mStatistics.toSnapshot());
+
+                // Update, not insert: if the row was deleted by a trigger, the snapshot is stale.
+                getWritableDatabase().update(TABLE_STATS_SNAPSHOTS, values,
+                        KEY_TYPE + "=? AND " + KEY_SUBTYPE + "=?", mPuzzleArgs);
+            }
+        }
+    }
+
+    /**
+     * Counts the solves that would be read for the statistics up to and including the given date.
+     */
+    private long countStatisticsSolves(
+            SQLiteDatabase db, String[] puzzleArgs, Statistics statistics, long toDate) {
+        return DatabaseUtils.queryNumEntries(db, TABLE_TIMES,
+                KEY_TYPE + "=? AND " + KEY_SUBTYPE + "=? AND "
+                + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME
+                + (statistics.isForCurrentSessionOnly() ? " AND " + KEY_HISTORY + "=0" : "")
+                + " AND " + KEY_DATE + "<=?",
+                new String[] { puzzleArgs[0], puzzleArgs[1], Long.toString(toDate) });
+    }
 
-                if (cursor.getInt(penaltyCol) == PuzzleUtils.PENALTY_DNF) {
-                    statistics.addDNF(isForCurrentSession);
-                } else {
-                    statistics.addTime(cursor.getLong(timeCol), isForCurrentSession);
+    /**
+     * Reads the solves that count towards statistics (i.e., all solves except those with hidden
+     * times) in ascending order of date, passing each one to the given consumer. A single read can
+     * feed several consumers, such as the statistics table and the chart statistics; see
+     * {@link com.aricneto.twistytimer.stats.SolveLoadPipeline}. The solves are read in chunks,
+     * each starting after the date of the last solve read by the previous chunk, so the read can
+     * be cancelled, and its progress reported, between chunks.
+     *
+     * @param puzzleType
+     *     The name of the puzzle type.
+     * @param puzzleSubtype
+     *     The name of the puzzle subtype.
+     * @param isForCurrentSessionOnly
+     *     {@code true} to read only the solves in the current session; or {@code false} to read
+     *     the solves from all past and current sessions.
+     * @param sinceDate
+     *     Only solves dated after this date are read. Use {@link #ALL_DATES} to read all solves.
+     * @param consumer
+     *     The consumer of the solves that are read.
+     * @param signal
+     *     A signal to cancel the read, or {@code null} if it cannot be cancelled.
+     * @param listener
+     *     A listener that is notified after each chunk of solves is read, or {@code null} if
+     *     progress is not required. The total is counted before the first chunk is read.
+     *
+     * @return The number of solves read.
+     *
+     * @throws OperationCanceledException
+     *     If the read was cancelled. The consumer may have been given some of the solves.
+     */
+    public int readSolves(String puzzleType, String puzzleSubtype,
+                          boolean isForCurrentSessionOnly, long sinceDate, SolveConsumer consumer,
+                          @Nullable CancellationSignal signal,
+                          @Nullable ProgressListener listener) {
+        final SQLiteDatabase db = getReadableDatabase();
+        final String where = getReadSolvesWhere(isForCurrentSessionOnly);
+        final String chunkSQL = getReadSolvesChunkSQL(isForCurrentSessionOnly);
+        final String sameDateSQL = getReadSolvesSelect(isForCurrentSessionOnly)
+                + " AND " + KEY_DATE + "=?";
+        final String[] args = { puzzleType, puzzleSubtype, Long.toString(sinceDate) };
+
+        final int total = listener == null ? 0 : (int) DatabaseUtils.queryNumEntries(
+                db, TABLE_TIMES, where + " AND " + KEY_DATE + ">?", args);
+        int numRead = 0;
+
+        while (true) {
+            final Cursor chunk = queryCancellably(db, chunkSQL, args, signal);
+            final long lastDate;
+
+            try {
+                if (chunk.getCount() < READ_CHUNK_SIZE) {
+                    numRead += consumeSolves(chunk, Long.MAX_VALUE, consumer);
+                    if (listener != null) {
+                        listener.onProgress(numRead, Math.max(numRead, total));
+                    }
+                    return numRead;
                 }
+
+                // More solves may have the same date as the last solve in this chunk, but be
+                // beyond the limit. All solves with that date are read by the next query.
+                chunk.moveToLast();
+                lastDate = chunk.getLong(chunk.getColumnIndex(KEY_DATE));
+                chunk.moveToPosition(-1);
+                numRead += consumeSolves(chunk, lastDate, consumer);
+            } finally {
+                // As elsewhere in this class, assume the cursor is not null.
+                chunk.close();
             }
-        } finally {
-            // As elsewhere in this class, assume "cursor" is not null.
+
+            args[2] = Long.toString(lastDate);
+
+            final Cursor sameDate = queryCancellably(db, sameDateSQL, args, signal);
+
+            try {
+                numRead += consumeSolves(sameDate, Long.MAX_VALUE, consumer);
+            } finally {
+                sameDate.close();
+            }
+
+            if (listener != null) {
+                listener.onProgress(numRead, Math.max(numRead, total));
+            }
+        }
+    }
+
+    /**
+     * Gets the condition on the puzzle, penalty and session of the solves read by
+     * {@link #readSolves}. The arguments are the puzzle type and subtype.
+     */
+    private static String getReadSolvesWhere(boolean isForCurrentSessionOnly) {
+        return KEY_TYPE + "=? AND " + KEY_SUBTYPE + "=? AND "
+                + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME
+                + (isForCurrentSessionOnly ? " AND " + KEY_HISTORY + "=0" : "");
+    }
+
+    /**
+     * Gets the query for the solves read by {@link #readSolves}, with the condition from
+     * {@link #getReadSolvesWhere(boolean)}.
+     */
+    private static String getReadSolvesSelect(boolean isForCurrentSessionOnly) {
+        return "SELECT " + KEY_ID + ", " + KEY_TIME + ", " + KEY_PENALTY + ", "
+                + KEY_DATE + ", " + KEY_HISTORY + " FROM " + TABLE_TIMES
+                + " WHERE " + getReadSolvesWhere(isForCurrentSessionOnly);
+    }
+
+    /**
+     * Gets the query for each chunk of solves read by {@link #readSolves}. The arguments are the
+     * puzzle type and subtype and the date after which to read the solves. This is
+     * package-private, so that its query plan can be tested.
+     */
+    static String getReadSolvesChunkSQL(boolean isForCurrentSessionOnly) {
+        // Sort into ascending order of date (oldest solves first), so that the "current"
+        // average is, in the end, calculated to be that of the most recent solves. The covering
+        // indices are already in order of date, so no sorting is needed. Solves with the same
+        // date are read by a separate query (see "readSolves"), so no "_id" tie-breaker is
+        // needed either, as that would force SQLite to sort each chunk.
+        //
+        // NOTE: A change from the old approach: the "all time" option include those from the
+        // current session, too. This is consistent with the way "all time statistics" are
+        // calculated for the table of statistics.
+        return getReadSolvesSelect(isForCurrentSessionOnly) + " AND " + KEY_DATE + ">? ORDER BY "
+                + KEY_DATE + " ASC LIMIT " + READ_CHUNK_SIZE;
+    }
+
+    /**
+     * Runs a query that can be cancelled. The platform signals cancellation of the query with its
+     * own exception, which is not recognised by the support library's loaders, so it is replaced.
+     */
+    private static Cursor queryCancellably(SQLiteDatabase db, String sql, String[] args,
+                                           @Nullable CancellationSignal signal) {
+        if (signal == null) {
+            return db.rawQuery(sql, args);
+        }
+
+        signal.throwIfCanceled();
+
+        final Cursor cursor = db.rawQuery(sql, args,
+                (android.os.CancellationSignal) signal.getCancellationSignalObject());
+
+        try {
+            // The query is not run until the cursor window is first filled.
+            cursor.getCount();
+            return cursor;
+        } catch (android.os.OperationCanceledException e) {
             cursor.close();
+            throw new OperationCanceledException(e.getMessage());
+        }
+    }
+
+    /**
+     * Passes the solves from a cursor to a consumer, stopping at the first solve that is not
+     * dated before the given date.
+     *
+     * @return The number of solves passed to the consumer.
+     */
+    private static int consumeSolves(Cursor cursor, long beforeDate, SolveConsumer consumer) {
+        final int idCol = cursor.getColumnIndex(KEY_ID);
+        final int timeCol = cursor.getColumnIndex(KEY_TIME);
+        final int penaltyCol = cursor.getColumnIndex(KEY_PENALTY);
+        final int dateCol = cursor.getColumnIndex(KEY_DATE);
+        final int historyCol = cursor.getColumnIndex(KEY_HISTORY);
+        int numRead = 0;
+
+        while (cursor.moveToNext()) {
+            final long date = cursor.getLong(dateCol);
+
+            if (date >= beforeDate) {
+                break;
+            }
+
+            consumer.addSolve(
+                    cursor.getLong(idCol),
+                    cursor.getInt(penaltyCol) == PuzzleUtils.PENALTY_DNF
+                            ? AverageCalculator.DNF : cursor.getLong(timeCol),
+                    date,
+                    cursor.getInt(historyCol) == 0);
+            numRead++;
         }
+
+        return numRead;
     }
 
     /**
@@ -539,48 +1379,20 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      *     The chart statistics in which to record the solve times. This may require solve times for
      *     all sessions or only the current session. The database read will be adapted automatically
      *     to read the minimum number of rows to satisfy the collection of the required statistics.
+     * @param signal
+     *     A signal to cancel the read, or {@code null} if it cannot be cancelled.
+     * @param listener
+     *     A listener for the progress of the read, or {@code null} if progress is not required.
+     *
+     * @throws OperationCanceledException
+     *     If the read was cancelled. The chart statistics will then be incomplete.
      */
     public void populateChartStatistics(
-            String puzzleType, String puzzleSubtype, ChartStatistics statistics) {
-        final boolean isStatisticsForCurrentSessionOnly = statistics.isForCurrentSessionOnly();
-        final String sql;
-
-        // Sort into ascending order of date (oldest solves first), so that the "current"
-        // average is, in the end, calculated to be that of the most recent solves.
-        if (isStatisticsForCurrentSessionOnly) {
-            sql = "SELECT " + KEY_TIME + ", " + KEY_PENALTY + ", " + KEY_DATE
-                    + " FROM " + TABLE_TIMES + " WHERE " + KEY_TYPE + "=? AND "
-                    + KEY_SUBTYPE + "=? AND " + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME
-                    + " AND " + KEY_HISTORY + "=0 ORDER BY " + KEY_DATE + " ASC";
-        } else {
-            // NOTE: A change from the old approach: the "all time" option include those from the
-            // current session, too. This is consistent with the way "all time statistics" are
-            // calculated for the table of statistics.
-            sql = "SELECT " + KEY_TIME + ", " + KEY_PENALTY + ", " + KEY_DATE
-                    + " FROM " + TABLE_TIMES + " WHERE " + KEY_TYPE + "=? AND "
-                    + KEY_SUBTYPE + "=? AND " + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME
-                    + " ORDER BY " + KEY_DATE + " ASC";
-        }
-
-        final Cursor cursor
-                = getReadableDatabase().rawQuery(sql, new String[] { puzzleType, puzzleSubtype });
-
-        try {
-            final int timeCol = cursor.getColumnIndex(KEY_TIME);
-            final int penaltyCol = cursor.getColumnIndex(KEY_PENALTY);
-            final int dateCol = cursor.getColumnIndex(KEY_DATE);
-
-            while (cursor.moveToNext()) {
-                if (cursor.getInt(penaltyCol) == PuzzleUtils.PENALTY_DNF) {
-                    statistics.addDNF(cursor.getLong(dateCol));
-                } else {
-                    statistics.addTime(cursor.getLong(timeCol), cursor.getLong(dateCol));
-                }
-            }
-        } finally {
-            // As elsewhere in this class, assume "cursor" is not null.
-            cursor.close();
-        }
+            String puzzleType, String puzzleSubtype, ChartStatistics statistics,
+            @Nullable CancellationSignal signal, @Nullable ProgressListener listener) {
+        readSolves(puzzleType, puzzleSubtype, statistics.isForCurrentSessionOnly(), ALL_DATES,
+                (id, time, date, isForCurrentSession) -> statistics.addTime(time, date),
+                signal, listener);
     }
 
     /**
@@ -613,17 +1425,19 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
     /**
      * Deletes multiple solves from the database that match the solve record IDs in the given
-     * collection. The solves are deleted in the context of a single database transaction.
+     * collection. The solves are deleted in the context of a single database transaction. The
+     * IDs are deleted in chunks of up to {@link #DELETE_CHUNK_SIZE} with a compiled
+     * "{@code DELETE ... WHERE _id IN (...)}" statement, rather than one at a time.
      *
      * @param solveIDs
      *     The IDs of the solve records in the "times" table of the database to be deleted. Must
      *     not be {@code null}, but may be empty.
      * @param listener
-     *     An optional progress listener that will be notified as each solve is deleted from the
+     *     An optional progress listener that will be notified as the solves are deleted from the
      *     database. Before the first solve is deleted, this will be called to report that zero of
      *     the total number of solves have been deleted (even if {@code solveIDs} is empty).
-     *     Thereafter, it will be notified after each attempted deletion by ID, whether a matching
-     *     solve was found or not. May be {@code null} if no progress reports are required.
+     *     Thereafter, it will be notified after each chunk of IDs is deleted, whether matching
+     *     solves were found or not. May be {@code null} if no progress reports are required.
      *
      * @return
      *     The number of records deleted. If an ID from {@code solveIDs} does not match any record,
@@ -642,29 +1456,69 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
         if (total > 0) {
             final SQLiteDatabase db = getWritableDatabase();
+            // All chunks are full except, perhaps, the last, which needs its own statement.
+            SQLiteStatement delete = null;
+            int chunkSize = 0;
 
             try{
                 // Wrap the bulk delete operations in a transaction; it is *much* faster,
                 db.beginTransaction();
 
                 for (long id : solveIDs) {
-                    // May not change if RNF or if ID is a duplicate and is already deleted.
-                    numDeleted += deleteSolveByIDInternal(db, id);
+                    if (chunkSize == 0) {
+                        final int newChunkSize = Math.min(total - numProcessed, DELETE_CHUNK_SIZE);
+
+                        if (delete == null || newChunkSize != DELETE_CHUNK_SIZE) {
+                            if (delete != null) {
+                                delete.close();
+                            }
+                            delete = compileDeleteByIDs(db, newChunkSize);
+                        }
+                    }
 
-                    if (listener != null) {
-                        listener.onProgress(++numProcessed, total);
+                    delete.bindLong(++chunkSize, id);
+
+                    if (chunkSize == Math.min(total - numProcessed, DELETE_CHUNK_SIZE)) {
+                        // May be fewer than the chunk size if RNF or if IDs are duplicates.
+                        numDeleted += delete.executeUpdateDelete();
+                        numProcessed += chunkSize;
+                        chunkSize = 0;
+
+                        if (listener != null) {
+                            listener.onProgress(numProcessed, total);
+                        }
                     }
                 }
 
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
+
+                if (delete != null) {
+                    delete.close();
+                }
             }
         }
 
         return numDeleted;
     }
 
+    /**
+     * Compiles a statement that deletes the solves matching a number of IDs. The IDs must be
+     * bound to the parameters of the statement before it is executed.
+     */
+    private static SQLiteStatement compileDeleteByIDs(SQLiteDatabase db, int numIDs) {
+        final StringBuilder sql = new StringBuilder(32 + 2 * numIDs)
+                .append("DELETE FROM ").append(TABLE_TIMES)
+                .append(" WHERE ").append(KEY_ID).append(" IN (?");
+
+        for (int i = 1; i < numIDs; i++) {
+            sql.append(",?");
+        }
+
+        return db.compileStatement(sql.append(')').toString());
+    }
+
     /**
      * Deletes a single solve matching the given ID from the database.
      *
@@ -710,10 +1564,24 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     }
 
     public Cursor getAllSolves() {
-        SQLiteDatabase db = this.getReadableDatabase();
+        SQLiteDatabase db = getReadableDatabase();
         return db.rawQuery("SELECT * FROM times WHERE penalty!=" + PuzzleUtils.PENALTY_HIDETIME, null);
     }
 
+    /**
+     * Gets all solves, like {@link #getAllSolves()}, but in order of puzzle type, category and
+     * date. This suits the compact back-up format, which groups the solves of each puzzle type
+     * and category.
+     *
+     * @return A cursor over the solves. The columns are the same as for a full "SELECT * FROM times".
+     */
+    public Cursor getAllSolvesByPuzzle() {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT * FROM " + TABLE_TIMES
+                + " WHERE " + KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME
+                + " ORDER BY " + KEY_TYPE + ", " + KEY_SUBTYPE + ", " + KEY_DATE, null);
+    }
+
     public boolean solveExists(Solve solve) {
         SQLiteDatabase db = this.getReadableDatabase();
 
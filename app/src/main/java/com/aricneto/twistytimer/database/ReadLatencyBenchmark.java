@@ -0,0 +1,154 @@
+package com.aricneto.twistytimer.database;
+
+import android.util.Log;
+
+import com.aricneto.twistytimer.fragment.dialog.ExportImportDialog;
+import com.aricneto.twistytimer.items.Solve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A benchmark of the latency of reads of solves while other solves are imported. It is run from
+ * the debug options of the main activity. The solves are imported on the calling thread in
+ * batches, in the same way as solves imported from a file, while other threads repeatedly read
+ * the solves of a puzzle type and subtype, in the same way as the statistics and chart loaders.
+ * There is more than one reader, so readers that are queued behind each other, not only behind
+ * the writer, show up in the latencies. The imported solves are added to a separate subtype and
+ * are deleted afterwards.
+ *
+ * <p>Running the benchmark on two builds compares the effect of a change to the configuration of
+ * the database on readers that run at the same time as a writer.</p>
+ */
+public class ReadLatencyBenchmark {
+    /**
+     * A "tag" to identify this class in log messages.
+     */
+    private static final String TAG = ReadLatencyBenchmark.class.getSimpleName();
+
+    /**
+     * The subtype to which the solves are imported.
+     */
+    private static final String BENCHMARK_SUBTYPE = "|<<# BENCHMARK #>>|";
+
+    /**
+     * The number of solves imported in each transaction. This is the same as for an import from
+     * a file.
+     */
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    /**
+     * The number of threads that read solves at the same time. This is the same as the number of
+     * loaders that read all of the solves of a puzzle type and subtype when the timer is shown:
+     * those of the statistics and of the chart.
+     */
+    private static final int NUM_READERS = 2;
+
+    private ReadLatencyBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark and logs the results. This must not be called on the main thread.
+     *
+     * @param dbHandler     The database handler.
+     * @param puzzleType    The puzzle type of the solves to be read and imported.
+     * @param puzzleSubtype The puzzle subtype of the solves to be read.
+     * @param numSolves     The number of solves to import.
+     *
+     * @return A summary of the results.
+     */
+    public static String run(final DatabaseHandler dbHandler, final String puzzleType,
+                             final String puzzleSubtype, int numSolves) {
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final int[] numRead = new int[1];
+        final AtomicBoolean isImporting = new AtomicBoolean(true);
+
+        final Thread[] readers = new Thread[NUM_READERS];
+
+        for (int i = 0; i < NUM_READERS; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (isImporting.get()) {
+                        final long startTime = System.nanoTime();
+
+                        numRead[0] = dbHandler.readSolves(puzzleType, puzzleSubtype, false,
+                                DatabaseHandler.ALL_DATES,
+                                (id, time, date, isForCurrentSession) -> { }, null, null);
+                        latencies.add(System.nanoTime() - startTime);
+                    }
+                }
+            }, TAG + i);
+        }
+
+        final Random random = new Random();
+        final List<Solve> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        final DatabaseHandler.SolveInserter inserter
+                = dbHandler.newSolveInserter(ExportImportDialog.EXIM_FORMAT_EXTERNAL);
+        final long now = System.currentTimeMillis();
+        final long startTime = System.nanoTime();
+
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        try {
+            for (int i = 0; i < numSolves; i++) {
+                batch.add(new Solve(30_000 + random.nextInt(6_000), puzzleType, BENCHMARK_SUBTYPE,
+                        now + i, "", 0, "", random.nextBoolean()));
+
+                if (batch.size() == IMPORT_BATCH_SIZE || i == numSolves - 1) {
+                    inserter.insert(batch);
+                    batch.clear();
+                }
+            }
+        } finally {
+            inserter.close();
+        }
+
+        final long importTime = System.nanoTime() - startTime;
+
+        isImporting.set(false);
+        try {
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        dbHandler.deleteSubtype(puzzleType, BENCHMARK_SUBTYPE);
+
+        final long[] sorted = new long[latencies.size()];
+
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+
+        final String summary = "Imported " + numSolves + " solves in " + toMillis(importTime)
+                + " ms; " + sorted.length + " reads by " + NUM_READERS + " threads of "
+                + numRead[0] + " solves: p50 " + toMillis(percentile(sorted, 50)) + " ms, p95 "
+                + toMillis(percentile(sorted, 95)) + " ms, max "
+                + toMillis(percentile(sorted, 100)) + " ms.";
+
+        Log.i(TAG, summary);
+
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000L;
+    }
+}
@@ -0,0 +1,311 @@
+package com.aricneto.twistytimer.database;
+
+import com.aricneto.twistytimer.items.Solve;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes to solves that are waiting to be written to the database
+ * by the {@link SolveWriteQueue}. Each change is appended before it is written. When the process
+ * ends before the queued changes are committed, the changes are read back from the journal and
+ * written when the application is next started. The journal is cleared whenever every change in
+ * it has been committed, so it holds no more than a few records.
+ *
+ * <p>Each record is written with a single call to the file system, so it is held by the operating
+ * system as soon as it is appended, even if the application process is then killed. A record is
+ * written as its length and a CRC-32 checksum of its contents, followed by the contents. A record
+ * that was only partly written, such as the last record before a power failure, does not match
+ * its checksum, so it and anything after it are ignored when the journal is read.</p>
+ */
+public class SolveJournal implements Closeable {
+    /**
+     * The type of a record that adds a new solve.
+     */
+    public static final int OP_ADD = 1;
+
+    /**
+     * The type of a record that updates the details of a solve.
+     */
+    public static final int OP_UPDATE = 2;
+
+    /**
+     * The type of a record that deletes a solve.
+     */
+    public static final int OP_DELETE = 3;
+
+    /**
+     * The type of a record that moves all of the solves of a session to the history.
+     */
+    public static final int OP_MOVE_TO_HISTORY = 4;
+
+    /**
+     * The type of a record that deletes all of the solves of a session that are not in the
+     * history.
+     */
+    public static final int OP_DELETE_SESSION = 5;
+
+    /**
+     * The maximum length of a record in bytes. A longer record indicates that the journal is not
+     * valid.
+     */
+    private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+
+    /**
+     * The stream that appends records to the journal, or {@code null} if it is not open.
+     */
+    private FileOutputStream mOut;
+
+    /**
+     * A buffer for the contents of each record that is appended.
+     */
+    private final ByteArrayOutputStream mRecord = new ByteArrayOutputStream(256);
+
+    /**
+     * A change to a solve that is recorded in the journal.
+     */
+    public static class Entry {
+        public final int op;
+        public final long id;
+
+        /**
+         * The solve that is added or updated, or {@code null} if the solve is deleted. For a
+         * change to a whole session, only the puzzle type and subtype of this solve are used, to
+         * identify the session.
+         */
+        public final Solve solve;
+
+        /**
+         * The dispatch latencies of the start and stop of an added solve in milliseconds, or -1
+         * if not known.
+         */
+        public final long startLatency;
+        public final long stopLatency;
+
+        public Entry(int op, long id, Solve solve, long startLatency, long stopLatency) {
+            this.op = op;
+            this.id = id;
+            this.solve = solve;
+            this.startLatency = startLatency;
+            this.stopLatency = stopLatency;
+        }
+    }
+
+    /**
+     * Creates a journal in the given file. The file is not opened until the first record is
+     * appended.
+     *
+     * @param file The file of the journal.
+     */
+    public SolveJournal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads all of the complete records in the journal, in the order in which they were appended.
+     *
+     * @return
+     *     The entries read from the journal. The list is empty if the journal file does not exist.
+     *
+     * @throws IOException
+     *     If the journal file exists, but cannot be read.
+     */
+    public List<Entry> read() throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+
+        if (!mFile.exists()) {
+            return entries;
+        }
+
+        final DataInputStream in = new DataInputStream(new FileInputStream(mFile));
+        final CRC32 crc = new CRC32();
+
+        try {
+            while (true) {
+                final int length;
+                final long checksum;
+
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt() & 0xFFFFFFFFL;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+
+                final byte[] record = new byte[length];
+
+                if (!readFully(in, record)) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(record, 0, length);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+
+                entries.add(readEntry(new DataInputStream(new ByteArrayInputStream(record))));
+            }
+        } finally {
+            in.close();
+        }
+
+        return entries;
+    }
+
+    private static boolean readFully(InputStream in, byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            final int count = in.read(bytes, offset, bytes.length - offset);
+
+            if (count == -1) {
+                return false;
+            }
+            offset += count;
+        }
+
+        return true;
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        final int op = in.readByte();
+        final long id = in.readLong();
+
+        if (op == OP_DELETE) {
+            return new Entry(op, id, null, -1, -1);
+        }
+
+        final Solve solve = new Solve(id, in.readInt(), readString(in), readString(in),
+                in.readLong(), readString(in), in.readInt(), readString(in), in.readBoolean());
+
+        return new Entry(op, id, solve, in.readLong(), in.readLong());
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+
+        in.readFully(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Appends a record of a change to a solve to the end of the journal.
+     *
+     * @param entry The change to be recorded.
+     *
+     * @throws IOException If the record cannot be appended.
+     */
+    public void append(Entry entry) throws IOException {
+        mRecord.reset();
+
+        final DataOutputStream record = new DataOutputStream(mRecord);
+
+        record.writeByte(entry.op);
+        record.writeLong(entry.id);
+
+        if (entry.op != OP_DELETE) {
+            final Solve solve = entry.solve;
+
+            record.writeInt(solve.getTime());
+            writeString(record, solve.getPuzzle());
+            writeString(record, solve.getSubtype());
+            record.writeLong(solve.getDate());
+            writeString(record, solve.getScramble());
+            record.writeInt(solve.getPenalty());
+            writeString(record, solve.getComment());
+            record.writeBoolean(solve.isHistory());
+            record.writeLong(entry.startLatency);
+            record.writeLong(entry.stopLatency);
+        }
+        record.flush();
+
+        final byte[] contents = mRecord.toByteArray();
+        final byte[] bytes = new byte[8 + contents.length];
+        final CRC32 crc = new CRC32();
+
+        crc.update(contents, 0, contents.length);
+        putInt(bytes, 0, contents.length);
+        putInt(bytes, 4, (int) crc.getValue());
+        System.arraycopy(contents, 0, bytes, 8, contents.length);
+
+        if (mOut == null) {
+            mOut = new FileOutputStream(mFile, true);
+        }
+
+        // One write, so that the record is not split between separate writes.
+        mOut.write(bytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(UTF_8);
+
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Removes all of the records from the journal. This must only be called when every change in
+     * the journal has been committed to the database.
+     *
+     * @throws IOException If the journal cannot be cleared.
+     */
+    public void clear() throws IOException {
+        if (mOut != null) {
+            // The stream appends, so the next record is written at the start of the empty file.
+            mOut.getChannel().truncate(0);
+        } else if (mFile.exists() && !mFile.delete()) {
+            throw new IOException("Could not delete the journal: " + mFile);
+        }
+    }
+
+    /**
+     * Closes the journal file. Any records in the journal are kept.
+     *
+     * @throws IOException If the journal file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mOut != null) {
+            mOut.close();
+            mOut = null;
+        }
+    }
+}
@@ -0,0 +1,670 @@
+package com.aricneto.twistytimer.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.aricneto.twistytimer.items.Solve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.aricneto.twistytimer.database.SolveJournal.OP_ADD;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_DELETE;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_DELETE_SESSION;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_MOVE_TO_HISTORY;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_UPDATE;
+import static com.aricneto.twistytimer.utils.TTIntent.ACTION_TIMES_MODIFIED;
+import static com.aricneto.twistytimer.utils.TTIntent.BroadcastBuilder;
+import static com.aricneto.twistytimer.utils.TTIntent.CATEGORY_TIME_DATA_CHANGES;
+
+/**
+ * A queue of changes to solves that are written to the database on a background thread, so that
+ * the main thread is not blocked by the database when a solve is added, changed or deleted, such
+ * as just after the timer is stopped. All changes to solves made from the user interface should be
+ * made through this queue, so they are written in the order in which they are made.
+ *
+ * <p>A change is accepted at once and the caller never waits for the database or the journal: the
+ * change is only copied and handed to a single writer thread, which writes the changes in the
+ * order in which they are accepted. A new solve is given its ID before it is written, so it can be
+ * updated or deleted straight away. When the writer thread starts, it reads the largest solve ID
+ * (which may wait for the database to be opened or upgraded). Until then, a new solve is given a
+ * provisional, negative ID, which the writer thread replaces with a reserved ID; any change queued
+ * with the provisional ID is applied to the solve with the reserved ID.</p>
+ *
+ * <p>Any changes that are waiting when the writer is ready are committed together in one
+ * transaction of up to {@link #MAX_BATCH_SIZE} changes. Broadcasts queued by
+ * {@link #broadcast(BroadcastBuilder)} are sent only after every change queued before them has
+ * been committed, so a receiver that reads the database will find the changes.</p>
+ *
+ * <p>The writer thread appends each change to a {@link SolveJournal} as soon as it takes it from
+ * the queue, before it is written. If the application process ends before a change is committed,
+ * the change is written from the journal when the queue is next created. Writing a change from the
+ * journal a second time has no further effect, as a new solve is only added if its ID is not
+ * already in the database.</p>
+ *
+ * <p>A batch that cannot be committed is tried again a few times. If it still cannot be
+ * committed, the broadcasts queued after it are not sent and the journal is kept. The whole
+ * journal is then written again each time the queue is empty, until it is committed.</p>
+ */
+public class SolveWriteQueue {
+    /**
+     * Flag to enable debug logging for this class.
+     */
+    private static final boolean DEBUG_ME = false;
+
+    /**
+     * A "tag" to identify this class in log messages.
+     */
+    private static final String TAG = SolveWriteQueue.class.getSimpleName();
+
+    /**
+     * The maximum number of changes committed in one transaction.
+     */
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /**
+     * The number of times that a batch of changes is tried before it is given up.
+     */
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    /**
+     * The time to wait before trying a batch of changes again, in milliseconds. The wait is this
+     * long after the first attempt and longer after each later attempt.
+     */
+    private static final long RETRY_DELAY = 250L;
+
+    /**
+     * The operations on the database used by the queue. These are kept apart from the
+     * {@link DatabaseHandler}, so that the queue can be tested without a database.
+     */
+    interface Store {
+        /**
+         * Reserves all solve IDs up to the given ID and up to the largest ID in the database, so
+         * they are not given to new solves. This may wait for the database to be opened, so it
+         * is only called on the writer thread.
+         */
+        void reserveSolveIDsUpTo(long solveID);
+
+        /**
+         * Reserves the ID of a new solve. This is only called after
+         * {@link #reserveSolveIDsUpTo(long)} has returned, so it must not access the database.
+         */
+        long reserveSolveID();
+
+        /**
+         * Writes changes to solves in one transaction.
+         *
+         * @param entries     The changes to be written.
+         * @param isReplaying {@code true} if the changes are read from the journal, in which case
+         *                    new solves that are already in the database are not added again.
+         *
+         * @throws RuntimeException If the changes cannot be committed.
+         */
+        void write(List<SolveJournal.Entry> entries, boolean isReplaying);
+
+        /**
+         * Notifies the receivers that the solves have been changed, when changes that the
+         * receivers were not told about have been written from the journal.
+         */
+        void broadcastTimesModified();
+    }
+
+    private final Store mStore;
+    private final SolveJournal mJournal;
+    private final Thread mWriter;
+
+    /**
+     * The lock that guards the queue and the provisional solve IDs.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * The changes and broadcasts waiting to be taken by the writer thread, in order. A broadcast
+     * is queued as a {@code Runnable} that sends it.
+     */
+    private final ArrayDeque<Object> mQueue = new ArrayDeque<>();
+
+    /**
+     * Indicates if the largest solve ID has been read, so that new solves can be given reserved
+     * IDs. Until then, they are given provisional IDs.
+     */
+    private boolean mIsIDReserved;
+
+    /**
+     * The next provisional ID to be given to a new solve. Provisional IDs are negative and are
+     * less than -1, which may be taken to mean that a solve has no ID.
+     */
+    private long mNextProvisionalID = -2;
+
+    /**
+     * The reserved IDs that replaced the provisional IDs of new solves, keyed by the provisional
+     * IDs. These are kept while the process is running, as a provisional ID may still be used by
+     * the caller to change the solve. This is only accessed by the writer thread.
+     */
+    private final Map<Long, Long> mReservedIDs = new HashMap<>();
+
+    /**
+     * Indicates if any changes could not be written. The journal is then kept and is written again
+     * when the queue is next empty, or when the queue is next created. This is reset once the
+     * journal has been written. This is only accessed by the writer thread.
+     */
+    private boolean mHasFailed;
+
+    /**
+     * Creates a new write queue and starts its writer thread. Any changes left in the journal
+     * are written first.
+     *
+     * @param dbHandler   The database handler used to write the changes.
+     * @param journalFile The file of the journal of changes that have not yet been committed.
+     */
+    public SolveWriteQueue(DatabaseHandler dbHandler, File journalFile) {
+        this(new DatabaseStore(dbHandler), journalFile);
+    }
+
+    /**
+     * Creates a new write queue that writes to the given store and starts its writer thread.
+     *
+     * @param store       The store to which the changes are written.
+     * @param journalFile The file of the journal of changes that have not yet been committed.
+     */
+    SolveWriteQueue(Store store, File journalFile) {
+        mStore = store;
+        mJournal = new SolveJournal(journalFile);
+
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replayJournal();
+                writeQueuedChanges();
+            }
+        }, "SolveWriteQueue");
+
+        mWriter.setPriority(Thread.NORM_PRIORITY - 1);
+        mWriter.start();
+    }
+
+    /**
+     * Queues a new solve to be added to the database. The solve is copied, so it may be changed
+     * after this returns without affecting the queued solve.
+     *
+     * @param solve        The solve to be added.
+     * @param startLatency The dispatch latency of the start in milliseconds, or -1 if not known.
+     * @param stopLatency  The dispatch latency of the stop in milliseconds, or -1 if not known.
+     *
+     * @return
+     *     The ID of the new solve. If the solve is added before the largest solve ID has been
+     *     read, this is a provisional, negative ID. It identifies the solve to the other methods
+     *     of this queue, but not to the database.
+     */
+    public long addSolve(Solve solve, long startLatency, long stopLatency) {
+        final Solve copy = new Solve(solve);
+
+        synchronized (mLock) {
+            final long id = mIsIDReserved ? mStore.reserveSolveID() : mNextProvisionalID--;
+
+            copy.setId(id);
+            mQueue.add(new SolveJournal.Entry(OP_ADD, id, copy, startLatency, stopLatency));
+            mLock.notifyAll();
+
+            return id;
+        }
+    }
+
+    /**
+     * Queues an update of the details of a solve in the database. The solve is copied, so it may
+     * be changed after this returns without affecting the queued update.
+     *
+     * @param solve The solve to be updated. Its ID identifies the solve in the database.
+     */
+    public void updateSolve(Solve solve) {
+        enqueue(new SolveJournal.Entry(OP_UPDATE, solve.getId(), new Solve(solve), -1, -1));
+    }
+
+    /**
+     * Queues the deletion of a solve from the database.
+     *
+     * @param solve The solve to be deleted. Its ID identifies the solve in the database.
+     */
+    public void deleteSolve(Solve solve) {
+        deleteSolve(solve.getId());
+    }
+
+    /**
+     * Queues the deletion of a solve from the database.
+     *
+     * @param solveID The ID of the solve to be deleted.
+     */
+    public void deleteSolve(long solveID) {
+        enqueue(new SolveJournal.Entry(OP_DELETE, solveID, null, -1, -1));
+    }
+
+    /**
+     * Queues the move of all of the solves of a session to the history.
+     *
+     * @param puzzleType    The type of the puzzle of the session.
+     * @param puzzleSubtype The subtype of the puzzle of the session.
+     */
+    public void moveAllSolvesToHistory(String puzzleType, String puzzleSubtype) {
+        enqueue(new SolveJournal.Entry(OP_MOVE_TO_HISTORY, 0,
+                newSessionSolve(puzzleType, puzzleSubtype), -1, -1));
+    }
+
+    /**
+     * Queues the deletion of all of the solves of a session that are not in the history.
+     *
+     * @param puzzleType    The type of the puzzle of the session.
+     * @param puzzleSubtype The subtype of the puzzle of the session.
+     */
+    public void deleteAllFromSession(String puzzleType, String puzzleSubtype) {
+        enqueue(new SolveJournal.Entry(OP_DELETE_SESSION, 0,
+                newSessionSolve(puzzleType, puzzleSubtype), -1, -1));
+    }
+
+    private static Solve newSessionSolve(String puzzleType, String puzzleSubtype) {
+        return new Solve(0, puzzleType, puzzleSubtype, 0L, null, 0, null, false);
+    }
+
+    /**
+     * Queues a broadcast to be sent once all of the changes queued before it have been committed.
+     * Any solve given to the broadcast is sent as it is when the broadcast is sent, so a copy of a
+     * solve that may be changed should be given.
+     *
+     * @param broadcast The broadcast to be sent.
+     */
+    public void broadcast(final BroadcastBuilder broadcast) {
+        broadcast(new Runnable() {
+            @Override
+            public void run() {
+                broadcast.broadcast();
+            }
+        });
+    }
+
+    /**
+     * Queues a task that is run on the writer thread once all of the changes queued before it
+     * have been committed.
+     *
+     * @param broadcast The task that sends the broadcast.
+     */
+    void broadcast(Runnable broadcast) {
+        enqueue(broadcast);
+    }
+
+    private void enqueue(Object item) {
+        synchronized (mLock) {
+            mQueue.add(item);
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the writer thread. Any changes that have not been written are left in the journal or
+     * in the queue. This is used by tests to end the queue as if the process had ended.
+     */
+    void quit() throws InterruptedException {
+        mWriter.interrupt();
+        mWriter.join();
+    }
+
+    /**
+     * Reserves the IDs of the new solves in the journal and reads the largest solve ID, then
+     * writes the changes left in the journal by a previous process. The changes that are queued
+     * meanwhile are written after this is finished. A broadcast is sent if any changes were found
+     * in the journal, as they may not have been seen by the receivers.
+     */
+    private void replayJournal() {
+        List<SolveJournal.Entry> entries;
+
+        try {
+            entries = mJournal.read();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read the journal.", e);
+            entries = new ArrayList<>();
+        }
+
+        if (DEBUG_ME) Log.d(TAG, "replayJournal(): " + entries.size() + " change(s).");
+
+        // The IDs of new solves in the journal may not be in the database, but must not be
+        // reserved again.
+        long lastSolveID = 0;
+
+        for (SolveJournal.Entry entry : entries) {
+            if (entry.op == OP_ADD) {
+                lastSolveID = Math.max(lastSolveID, entry.id);
+            }
+        }
+
+        reserveSolveIDs(lastSolveID);
+
+        final boolean isWritten = entries.isEmpty() || write(entries, true);
+
+        if (isWritten) {
+            clearJournal();
+        } else {
+            mHasFailed = true;
+        }
+
+        if (isWritten && !entries.isEmpty()) {
+            mStore.broadcastTimesModified();
+        }
+    }
+
+    /**
+     * Reads the largest solve ID, trying again until it can be read, then gives reserved IDs to
+     * the new solves that were given provisional IDs, in the order in which they were added.
+     */
+    private void reserveSolveIDs(long lastSolveID) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                mStore.reserveSolveIDsUpTo(lastSolveID);
+                break;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not read the largest solve ID.", e);
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY * Math.min(attempt, MAX_WRITE_ATTEMPTS));
+            } catch (InterruptedException e) {
+                // The provisional IDs are still replaced, if any changes are written.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        synchronized (mLock) {
+            for (Object item : mQueue) {
+                if (item instanceof SolveJournal.Entry) {
+                    final SolveJournal.Entry entry = (SolveJournal.Entry) item;
+
+                    if (entry.op == OP_ADD) {
+                        mReservedIDs.put(entry.id, mStore.reserveSolveID());
+                    }
+                }
+            }
+            mIsIDReserved = true;
+        }
+    }
+
+    /**
+     * Writes the queued changes and sends the queued broadcasts, in order, for as long as the
+     * process is running.
+     */
+    private void writeQueuedChanges() {
+        // The changes taken from the queue and appended to the journal, but not yet written.
+        final ArrayDeque<Object> accepted = new ArrayDeque<>();
+        final List<SolveJournal.Entry> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        final List<Runnable> broadcasts = new ArrayList<>();
+
+        while (true) {
+            final List<Object> items;
+
+            synchronized (mLock) {
+                while (mQueue.isEmpty() && accepted.isEmpty()) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                items = new ArrayList<>(mQueue);
+                mQueue.clear();
+            }
+
+            for (Object item : items) {
+                if (item instanceof SolveJournal.Entry) {
+                    final SolveJournal.Entry entry = accept((SolveJournal.Entry) item);
+
+                    if (entry != null) {
+                        accepted.add(entry);
+                    }
+                } else {
+                    accepted.add(item);
+                }
+            }
+
+            // A broadcast ends the batch, so it is sent as soon as the changes before it are
+            // committed.
+            while (!accepted.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+                final Object item = accepted.poll();
+
+                if (item instanceof Runnable) {
+                    broadcasts.add((Runnable) item);
+                    break;
+                }
+                batch.add((SolveJournal.Entry) item);
+            }
+
+            if (!batch.isEmpty() && !writeWithRetries(batch)) {
+                Log.e(TAG, "Gave up writing " + batch.size() + " change(s) to solves.");
+                mHasFailed = true;
+                // The changes were not committed, so the broadcasts would be wrong. A broadcast
+                // is sent when the journal is written again.
+                broadcasts.clear();
+            }
+
+            if (accepted.isEmpty()) {
+                // Every change in the journal has been tried, so the journal is written again if
+                // any failed, or is cleared if all were committed.
+                if (mHasFailed) {
+                    rewriteJournal();
+                }
+                if (!mHasFailed) {
+                    clearJournal();
+                }
+            }
+
+            for (Runnable broadcast : broadcasts) {
+                try {
+                    broadcast.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Could not send a broadcast.", e);
+                }
+            }
+
+            batch.clear();
+            broadcasts.clear();
+
+            if (Thread.interrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces any provisional ID of a change with its reserved ID and appends the change to the
+     * journal.
+     *
+     * @return The change to be written, or {@code null} if its solve has no reserved ID.
+     */
+    private SolveJournal.Entry accept(SolveJournal.Entry entry) {
+        if (entry.id < -1) {
+            final Long id = mReservedIDs.get(entry.id);
+
+            if (id == null) {
+                Log.e(TAG, "No solve for provisional ID " + entry.id + ".");
+                return null;
+            }
+            if (entry.solve != null) {
+                // The solve is a copy made when the change was queued.
+                entry.solve.setId(id);
+            }
+            entry = new SolveJournal.Entry(
+                    entry.op, id, entry.solve, entry.startLatency, entry.stopLatency);
+        }
+
+        try {
+            mJournal.append(entry);
+        } catch (IOException e) {
+            // The change is still written, but would be lost if the process ends first.
+            Log.e(TAG, "Could not append to the journal.", e);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Writes a batch of changes, trying again after a short wait if they cannot be committed.
+     *
+     * @return {@code true} if the changes were committed; or {@code false} if they were not.
+     */
+    private boolean writeWithRetries(List<SolveJournal.Entry> entries) {
+        for (int attempt = 1; ; attempt++) {
+            if (write(entries, false)) {
+                return true;
+            }
+            if (attempt == MAX_WRITE_ATTEMPTS) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes all of the changes in the journal again, after some changes could not be written.
+     * This is only called when every change in the journal has been tried. If the journal is
+     * committed, a broadcast is sent, as the receivers have not been told of the changes that
+     * failed.
+     */
+    private void rewriteJournal() {
+        final List<SolveJournal.Entry> entries;
+
+        try {
+            entries = mJournal.read();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read the journal.", e);
+            return;
+        }
+
+        if (DEBUG_ME) Log.d(TAG, "rewriteJournal(): " + entries.size() + " change(s).");
+
+        // The journal holds every change since it was last cleared, in order, so writing it all
+        // again leaves the same solves as writing only the changes that failed.
+        if (write(entries, true)) {
+            mHasFailed = false;
+            mStore.broadcastTimesModified();
+        }
+    }
+
+    /**
+     * Writes a batch of changes to the store in one transaction. Any failure is logged, so that
+     * the writer thread is not ended by an unexpected exception, such as a database that has been
+     * closed.
+     *
+     * @return {@code true} if the changes were committed; or {@code false} if they were not.
+     */
+    private boolean write(List<SolveJournal.Entry> entries, boolean isReplaying) {
+        final long startTime = DEBUG_ME ? System.nanoTime() : 0L;
+
+        try {
+            mStore.write(entries, isReplaying);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not write " + entries.size() + " change(s) to solves.", e);
+            return false;
+        }
+
+        if (DEBUG_ME) Log.d(TAG, "write(): " + entries.size() + " change(s) committed in "
+                + (System.nanoTime() - startTime) / 1_000_000L + " ms.");
+
+        return true;
+    }
+
+    /**
+     * Removes all of the changes from the journal.
+     */
+    private void clearJournal() {
+        try {
+            mJournal.clear();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not clear the journal.", e);
+        }
+    }
+
+    /**
+     * The store that writes the changes to the database through a {@link DatabaseHandler}.
+     */
+    private static class DatabaseStore implements Store {
+        private final DatabaseHandler mDBHandler;
+
+        DatabaseStore(DatabaseHandler dbHandler) {
+            mDBHandler = dbHandler;
+        }
+
+        @Override
+        public void reserveSolveIDsUpTo(long solveID) {
+            mDBHandler.reserveSolveIDsUpTo(solveID);
+        }
+
+        @Override
+        public long reserveSolveID() {
+            return mDBHandler.reserveSolveID();
+        }
+
+        @Override
+        public void write(List<SolveJournal.Entry> entries, boolean isReplaying) {
+            final DatabaseHandler.SolveInserter inserter = mDBHandler.newSolveInserter();
+
+            try {
+                final SQLiteDatabase db = mDBHandler.getWritableDatabase();
+
+                db.beginTransaction();
+                try {
+                    for (SolveJournal.Entry entry : entries) {
+                        write(entry, inserter, isReplaying);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } finally {
+                inserter.close();
+            }
+        }
+
+        private void write(SolveJournal.Entry entry, DatabaseHandler.SolveInserter inserter,
+                           boolean isReplaying) {
+            switch (entry.op) {
+                case OP_ADD:
+                    if (!isReplaying || !mDBHandler.solveIDExists(entry.id)) {
+                        inserter.insert(
+                                entry.id, entry.solve, entry.startLatency, entry.stopLatency);
+                    }
+                    break;
+
+                case OP_UPDATE:
+                    mDBHandler.updateSolve(entry.solve);
+                    break;
+
+                case OP_DELETE:
+                    mDBHandler.deleteSolveByID(entry.id);
+                    break;
+
+                case OP_MOVE_TO_HISTORY:
+                    mDBHandler.moveAllSolvesToHistory(
+                            entry.solve.getPuzzle(), entry.solve.getSubtype());
+                    break;
+
+                case OP_DELETE_SESSION:
+                    mDBHandler.deleteAllFromSession(
+                            entry.solve.getPuzzle(), entry.solve.getSubtype());
+                    break;
+            }
+        }
+
+        @Override
+        public void broadcastTimesModified() {
+            new BroadcastBuilder(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED).broadcast();
+        }
+    }
+}
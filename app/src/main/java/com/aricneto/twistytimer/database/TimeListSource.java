@@ -0,0 +1,397 @@
+package com.aricneto.twistytimer.database;
+
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.aricneto.twistytimer.TwistyTimer;
+import com.aricneto.twistytimer.utils.PuzzleUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_COMMENT;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_DATE;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_DOCID;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_HISTORY;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_ID;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_PENALTY;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_SUBTYPE;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_TIME;
+import static com.aricneto.twistytimer.database.DatabaseHandler.KEY_TYPE;
+import static com.aricneto.twistytimer.database.DatabaseHandler.TABLE_TIMES;
+import static com.aricneto.twistytimer.database.DatabaseHandler.TABLE_TIMES_FTS;
+
+/**
+ * A paged source of the solve times shown in the list of times. Rather than holding a cursor over
+ * every matching solve, the solves are read one page at a time as the list is scrolled. Only the
+ * columns shown by each list item are read: the scramble is not read and the comment is reduced to
+ * a flag that indicates if there is a comment. The full details of a solve are read from the
+ * database when the solve is opened.
+ *
+ * <p>Each page is read by "keyset" pagination: the next page starts after the sort key and ID of
+ * the last solve already read, so reading a page does not become slower as more pages are read,
+ * as it would for an "OFFSET". The solves are sorted by the sort key (the date or time) and then
+ * by ID, in either direction, so that the order is well defined when several solves have the same
+ * sort key.</p>
+ *
+ * <p>When searching the comments, each word of the search text is matched against the start of the
+ * words of the comments using the full-text search index of the comments (see
+ * {@link DatabaseHandler#TABLE_TIMES_FTS}).</p>
+ *
+ * <p>The first page is read by {@link TimeTaskLoader}. Later pages are read in the background when
+ * requested by {@link #loadMoreIfNeeded(int)}. Other than the reading of pages, this class must
+ * only be used on the main thread.</p>
+ */
+public class TimeListSource {
+    /**
+     * Flag to enable debug logging for this class.
+     */
+    private static final boolean DEBUG_ME = false;
+
+    /**
+     * A "tag" to identify this class in log messages.
+     */
+    private static final String TAG = TimeListSource.class.getSimpleName();
+
+    /**
+     * The number of solves read in each page.
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * The number of solves remaining to be shown in the list below which the next page is read.
+     */
+    private static final int PREFETCH_DISTANCE = 30;
+
+    /**
+     * The columns read for each solve. The indices of the columns are given by the {@code COL_*}
+     * constants.
+     */
+    private static final String[] COLUMNS = {
+            KEY_ID, KEY_TIME, KEY_DATE, KEY_PENALTY,
+            "(" + KEY_COMMENT + " IS NOT NULL AND " + KEY_COMMENT + "!='')",
+    };
+
+    private static final int COL_ID = 0;
+    private static final int COL_TIME = 1;
+    private static final int COL_DATE = 2;
+    private static final int COL_PENALTY = 3;
+    private static final int COL_HAS_COMMENT = 4;
+
+    /**
+     * A listener notified when a page of solves is read.
+     */
+    public interface OnPageLoadedListener {
+        /**
+         * Notifies the listener that solves were added to the end of the source.
+         *
+         * @param start The position of the first solve that was added.
+         * @param count The number of solves that were added.
+         */
+        void onPageLoaded(int start, int count);
+    }
+
+    private final String mPuzzleType;
+    private final String mPuzzleSubtype;
+    private final boolean mHistory;
+    private final String mComment;
+    private final String mOrderByKey;
+    private final boolean mIsAscending;
+
+    // The solves read so far.
+    private int mSize;
+    private long[] mIds = new long[PAGE_SIZE];
+    private int[] mTimes = new int[PAGE_SIZE];
+    private long[] mDates = new long[PAGE_SIZE];
+    private int[] mPenalties = new int[PAGE_SIZE];
+    private boolean[] mHasComments = new boolean[PAGE_SIZE];
+
+    private boolean mHasMore = true;
+    private boolean mIsLoading;
+    private boolean mIsClosed;
+    private OnPageLoadedListener mListener;
+
+    /**
+     * Creates a new source of solve times. No solves are read until {@link #loadFirstPage(int)}
+     * is called.
+     *
+     * @param puzzleType    The type of the puzzle of the solves.
+     * @param puzzleSubtype The category (subtype) of the puzzle of the solves.
+     * @param history       {@code true} for the solves in the history of past sessions; or
+     *                      {@code false} for the solves of the current session.
+     * @param comment       The text to search for in the comments of the solves. Each word of the
+     *                      text must match the start of a word in the comment. If empty, the
+     *                      solves are not filtered by their comments.
+     * @param orderByKey    The column by which to sort the solves, either
+     *                      {@link DatabaseHandler#KEY_DATE} or {@link DatabaseHandler#KEY_TIME}.
+     * @param orderByDir    The direction in which to sort the solves, either
+     *                      {@link TimeTaskLoader#DIR_ASC} or {@link TimeTaskLoader#DIR_DESC}.
+     */
+    public TimeListSource(String puzzleType, String puzzleSubtype, boolean history,
+                          String comment, String orderByKey, String orderByDir) {
+        mPuzzleType = puzzleType;
+        mPuzzleSubtype = puzzleSubtype;
+        mHistory = history;
+        mComment = comment;
+        mOrderByKey = KEY_TIME.equals(orderByKey) ? KEY_TIME : KEY_DATE;
+        mIsAscending = TimeTaskLoader.DIR_ASC.equals(orderByDir);
+    }
+
+    /**
+     * Reads the first page of solves. This must be called on a background thread before the
+     * source is used, and must not be called again.
+     *
+     * @param minSize
+     *     The minimum number of solves to read, if that many are available. If the source replaces
+     *     another source from which more than {@link #PAGE_SIZE} solves were shown, reading as many
+     *     solves allows the list to keep its scroll position.
+     */
+    void loadFirstPage(int minSize) {
+        append(readPage(false, 0, 0, Math.max(minSize, PAGE_SIZE)));
+    }
+
+    /**
+     * Reads the next page of solves in the background if the given position is close to the end
+     * of the solves read so far, unless all solves have been read or a page is already being read.
+     * The listener is notified when the page has been read.
+     *
+     * @param position The position of the solve about to be shown in the list.
+     */
+    public void loadMoreIfNeeded(int position) {
+        if (!mHasMore || mIsLoading || mIsClosed || position < mSize - PREFETCH_DISTANCE) {
+            return;
+        }
+
+        final int last = mSize - 1;
+        final long afterKey = KEY_TIME.equals(mOrderByKey) ? mTimes[last] : mDates[last];
+        final long afterId = mIds[last];
+
+        mIsLoading = true;
+
+        new AsyncTask<Void, Void, Page>() {
+            @Override
+            protected Page doInBackground(Void... voids) {
+                return readPage(true, afterKey, afterId, PAGE_SIZE);
+            }
+
+            @Override
+            protected void onPostExecute(Page page) {
+                mIsLoading = false;
+
+                // If the source was replaced while the page was read, the page is not wanted.
+                if (!mIsClosed) {
+                    final int start = mSize;
+
+                    append(page);
+
+                    if (mListener != null && mSize > start) {
+                        mListener.onPageLoaded(start, mSize - start);
+                    }
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Reads a page of solves from the database.
+     *
+     * @param isAfter  {@code true} to read the solves after the given key and ID; or {@code false}
+     *                 to read from the first solve.
+     * @param afterKey The sort key of the last solve already read.
+     * @param afterId  The ID of the last solve already read.
+     * @param limit    The maximum number of solves to read.
+     */
+    private Page readPage(boolean isAfter, long afterKey, long afterId, int limit) {
+        final String cmp = mIsAscending ? ">" : "<";
+        final String dir = mIsAscending ? " ASC" : " DESC";
+        final String match = toPrefixMatchQuery(mComment);
+        // When searching the index of the comments, the unary "+" stops SQLite from using the
+        // index on the puzzle type and category, so it reads only the few solves that match.
+        final String not = match != null ? "+" : "";
+        final StringBuilder selection = new StringBuilder()
+                .append(not).append(KEY_TYPE).append("=? AND ")
+                .append(not).append(KEY_SUBTYPE).append("=? AND ")
+                .append(KEY_HISTORY).append('=').append(mHistory ? 1 : 0).append(" AND ")
+                .append(KEY_PENALTY).append("!=").append(PuzzleUtils.PENALTY_HIDETIME);
+        final List<String> args = new ArrayList<>(6);
+
+        args.add(mPuzzleType);
+        args.add(mPuzzleSubtype);
+
+        if (match != null) {
+            selection.append(" AND ").append(KEY_ID).append(" IN (SELECT ").append(KEY_DOCID)
+                    .append(" FROM ").append(TABLE_TIMES_FTS).append(" WHERE ")
+                    .append(TABLE_TIMES_FTS).append(" MATCH ?)");
+            args.add(match);
+        } else if (!mComment.isEmpty()) {
+            // The search text has no words to match in the index (e.g., it is just punctuation).
+            selection.append(" AND ").append(KEY_COMMENT).append(" LIKE ?");
+            args.add("%" + mComment + "%");
+        }
+
+        if (isAfter) {
+            // Equivalent to "(key, _id) > (afterKey, afterId)" (for "ASC"), but written so that
+            // SQLite can use the range on the sort key to search the index.
+            selection.append(" AND ").append(mOrderByKey).append(cmp).append("=? AND (")
+                    .append(mOrderByKey).append(cmp).append("? OR ")
+                    .append(KEY_ID).append(cmp).append("?)");
+            args.add(Long.toString(afterKey));
+            args.add(Long.toString(afterKey));
+            args.add(Long.toString(afterId));
+        }
+
+        final Cursor cursor = TwistyTimer.getReadableDB().query(TABLE_TIMES, COLUMNS,
+                selection.toString(), args.toArray(new String[0]), null, null,
+                mOrderByKey + dir + ", " + KEY_ID + dir, Integer.toString(limit));
+
+        try {
+            final Page page = new Page(cursor.getCount(), limit);
+
+            for (int i = 0; cursor.moveToNext(); i++) {
+                page.ids[i] = cursor.getLong(COL_ID);
+                page.times[i] = cursor.getInt(COL_TIME);
+                page.dates[i] = cursor.getLong(COL_DATE);
+                page.penalties[i] = cursor.getInt(COL_PENALTY);
+                page.hasComments[i] = cursor.getInt(COL_HAS_COMMENT) != 0;
+            }
+
+            if (DEBUG_ME) Log.d(TAG, "readPage(after=" + isAfter + ", limit=" + limit
+                    + "): read " + page.size + " solves.");
+
+            return page;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Converts search text to an FTS query that matches comments having a word that starts with
+     * each word of the text. For example, "Lucky PLL-skip" becomes "lucky* pll* skip*". Only the
+     * letters and digits of the text are kept, so the text cannot inject FTS query syntax.
+     *
+     * @param text The search text.
+     *
+     * @return The FTS query; or {@code null} if the text has no words.
+     */
+    static String toPrefixMatchQuery(String text) {
+        final StringBuilder query = new StringBuilder(text.length() + 8);
+        boolean isInWord = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c)) {
+                if (!isInWord && query.length() > 0) {
+                    query.append(' ');
+                }
+                // The default FTS tokenizer only folds the case of ASCII letters.
+                query.append(c < 128 ? Character.toLowerCase(c) : c);
+                isInWord = true;
+            } else if (isInWord) {
+                query.append('*');
+                isInWord = false;
+            }
+        }
+
+        if (isInWord) {
+            query.append('*');
+        }
+
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Adds a page of solves to the end of the solves read so far.
+     */
+    private void append(Page page) {
+        final int newSize = mSize + page.size;
+
+        if (newSize > mIds.length) {
+            final int capacity = Math.max(newSize, 2 * mIds.length);
+
+            mIds = Arrays.copyOf(mIds, capacity);
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mDates = Arrays.copyOf(mDates, capacity);
+            mPenalties = Arrays.copyOf(mPenalties, capacity);
+            mHasComments = Arrays.copyOf(mHasComments, capacity);
+        }
+
+        System.arraycopy(page.ids, 0, mIds, mSize, page.size);
+        System.arraycopy(page.times, 0, mTimes, mSize, page.size);
+        System.arraycopy(page.dates, 0, mDates, mSize, page.size);
+        System.arraycopy(page.penalties, 0, mPenalties, mSize, page.size);
+        System.arraycopy(page.hasComments, 0, mHasComments, mSize, page.size);
+
+        mSize = newSize;
+        mHasMore = page.hasMore;
+    }
+
+    /**
+     * Sets the listener to be notified when a page of solves is read.
+     */
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Stops this source from reading any more pages. Any page being read when this is called will
+     * be discarded. This is called when the source is replaced by a new source.
+     */
+    public void close() {
+        mIsClosed = true;
+        mListener = null;
+    }
+
+    /**
+     * Gets the number of solves read so far.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public int getTime(int position) {
+        return mTimes[position];
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    public int getPenalty(int position) {
+        return mPenalties[position];
+    }
+
+    public boolean hasComment(int position) {
+        return mHasComments[position];
+    }
+
+    /**
+     * A page of solves read from the database in the background.
+     */
+    private static class Page {
+        final int size;
+        final boolean hasMore;
+        final long[] ids;
+        final int[] times;
+        final long[] dates;
+        final int[] penalties;
+        final boolean[] hasComments;
+
+        Page(int size, int limit) {
+            this.size = size;
+            // If fewer solves than the limit were read, there are no more to read.
+            this.hasMore = size == limit;
+            ids = new long[size];
+            times = new int[size];
+            dates = new long[size];
+            penalties = new int[size];
+            hasComments = new boolean[size];
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package com.aricneto.twistytimer.database;
 
-import android.database.Cursor;
-
-import androidx.loader.content.CursorLoader;
+import androidx.loader.content.AsyncTaskLoader;
 
 import com.aricneto.twistytimer.TwistyTimer;
-import com.aricneto.twistytimer.utils.PuzzleUtils;
 
-public class TimeTaskLoader extends CursorLoader {
+/**
+ * Loads the first page of the solve times shown in the list of times. The remaining pages are
+ * read by the {@link TimeListSource} as the list is scrolled.
+ */
+public class TimeTaskLoader extends AsyncTaskLoader<TimeListSource> {
 
     public static final String DIR_DESC = "DESC";
     public static final String DIR_ASC = "ASC";
@@ -20,7 +21,14 @@ public class TimeTaskLoader extends CursorLoader {
 
     boolean history = false;
 
-    public TimeTaskLoader(String puzzleType, String puzzleSubtype, boolean history, String comment, String orderByKey, String orderByDir) {
+    /**
+     * The minimum number of solves to load in the first page.
+     */
+    private int minSize;
+
+    private TimeListSource loadedSource;
+
+    public TimeTaskLoader(String puzzleType, String puzzleSubtype, boolean history, String comment, String orderByKey, String orderByDir, int minSize) {
         super(TwistyTimer.getAppContext());
         this.puzzleType = puzzleType;
         this.puzzleSubtype = puzzleSubtype;
@@ -28,17 +36,44 @@ public class TimeTaskLoader extends CursorLoader {
         this.comment = comment;
         this.orderByKey = orderByKey;
         this.orderByDir = orderByDir;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public TimeListSource loadInBackground() {
+        final TimeListSource source = new TimeListSource(
+                puzzleType, puzzleSubtype, history, comment, orderByKey, orderByDir);
+
+        source.loadFirstPage(minSize);
+
+        return source;
+    }
+
+    @Override
+    public void deliverResult(TimeListSource source) {
+        loadedSource = source;
+        super.deliverResult(source);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (loadedSource != null) {
+            deliverResult(loadedSource);
+        }
+        if (takeContentChanged() || loadedSource == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
     }
 
     @Override
-    public Cursor loadInBackground() {
-        return TwistyTimer.getReadableDB().query(DatabaseHandler.TABLE_TIMES, null,
-                DatabaseHandler.KEY_PENALTY + "!=" + PuzzleUtils.PENALTY_HIDETIME + " AND "
-                        + DatabaseHandler.KEY_TYPE + "=?" + " AND "
-                        + DatabaseHandler.KEY_SUBTYPE + "=?" + " AND "
-                        + DatabaseHandler.KEY_COMMENT + " LIKE ?" + " AND "
-                        + DatabaseHandler.KEY_HISTORY + "=" + (history ? 1 : 0),
-                new String[]{puzzleType, puzzleSubtype, "%" + comment + "%"}, null, null,
-                orderByKey + " " + orderByDir, null);
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        loadedSource = null;
     }
 }
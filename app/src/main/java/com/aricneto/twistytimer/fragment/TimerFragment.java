@@ -23,6 +23,7 @@ import android.os.Bundle;
 import android.os.CountDownTimer;
 import android.os.Handler;
 import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -54,7 +55,7 @@ import android.widget.Toast;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
-import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.SolveWriteQueue;
 import com.aricneto.twistytimer.fragment.dialog.AddTimeDialog;
 import com.aricneto.twistytimer.fragment.dialog.BottomSheetDetailDialog;
 import com.aricneto.twistytimer.items.Solve;
@@ -62,6 +63,7 @@ import com.aricneto.twistytimer.layout.ChronometerMilli;
 import com.aricneto.twistytimer.listener.OnBackPressedInFragmentListener;
 import com.aricneto.twistytimer.puzzle.TrainerCase;
 import com.aricneto.twistytimer.puzzle.TrainerScrambler;
+import com.aricneto.twistytimer.solver.PendingTip;
 import com.aricneto.twistytimer.solver.RubiksCubeOptimalCross;
 import com.aricneto.twistytimer.solver.RubiksCubeOptimalXCross;
 import com.aricneto.twistytimer.stats.Statistics;
@@ -71,6 +73,7 @@ import com.aricneto.twistytimer.utils.DefaultPrefs;
 import com.aricneto.twistytimer.utils.Prefs;
 import com.aricneto.twistytimer.utils.PuzzleUtils;
 import com.aricneto.twistytimer.utils.ScrambleGenerator;
+import com.aricneto.twistytimer.utils.ScramblePool;
 import com.aricneto.twistytimer.utils.TTIntent;
 import com.aricneto.twistytimer.utils.ThemeUtils;
 import com.skyfishjy.library.RippleBackground;
@@ -145,6 +148,13 @@ public class
      */
     private static final long HOLD_FOR_START_DELAY = 500L;
 
+    /**
+     * The time in milliseconds to wait for all of the hints to be solved. If some faces are still
+     * being solved after this time, the hints that are ready are shown first and the rest are
+     * added when they are ready.
+     */
+    private static final long HINT_TIME_BUDGET = 1_000L;
+
     private String currentPuzzle;
     private String currentPuzzleCategory;
     private TrainerScrambler.TrainerSubset currentSubset;
@@ -354,13 +364,14 @@ public class
     private final View.OnClickListener buttonClickListener = new View.OnClickListener() {
         @Override
         public void onClick(View view) {
-            final DatabaseHandler dbHandler = TwistyTimer.getDBHandler();
+            final SolveWriteQueue writeQueue = TwistyTimer.getSolveWriteQueue();
 
             // On most of these changes to the current solve, the Statistics and ChartStatistics
-            // need to be updated to reflect the change. It would probably be too complicated to
-            // add facilities to "AverageCalculator" to handle modification of the last added time
-            // or an "undo" facility and then to integrate that into the loaders. Therefore, a full
-            // reload will probably be required.
+            // need to be updated to reflect the change. The changed or deleted solve is parcelled
+            // up in the broadcast, so the "StatisticsLoader" can retract the old time from its
+            // statistics without a full reload. Other receivers may still reload fully. The
+            // changes are written by the write queue, which sends the broadcasts once the changes
+            // are committed, so the main thread is not blocked.
 
             switch (view.getId()) {
                 case R.id.qa_remove:
@@ -370,11 +381,13 @@ public class
                             .negativeText(R.string.delete_dialog_cancel_button)
                             .onPositive((dialog, which) -> {
                                 if (currentSolve != null) { // FIXME: if solve is null, it should just hide the buttons
-                                    dbHandler.deleteSolve(currentSolve);
+                                    writeQueue.deleteSolve(currentSolve);
                                     if (!isRunning)
                                         chronometer.reset(); // Reset to "0.00".
                                     congratsText.setVisibility(View.GONE);
-                                    broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+                                    writeQueue.broadcast(new BroadcastBuilder(
+                                            CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED)
+                                            .deletedSolves(currentSolve.getId()));
                                 }
                                 hideButtons(true, true);
                             })
@@ -383,16 +396,16 @@ public class
                 case R.id.qa_dnf:
                     currentSolve = PuzzleUtils.applyPenalty(currentSolve, PENALTY_DNF);
                     chronometer.setPenalty(PuzzleUtils.PENALTY_DNF);
-                    dbHandler.updateSolve(currentSolve);
+                    writeQueue.updateSolve(currentSolve);
                     hideButtons(true, false);
-                    broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+                    broadcastUpdatedSolve();
                     break;
                 case R.id.qa_plustwo:
                     if (currentPenalty != PENALTY_PLUSTWO) {
                         currentSolve = PuzzleUtils.applyPenalty(currentSolve, PENALTY_PLUSTWO);
                         chronometer.setPenalty(PuzzleUtils.PENALTY_PLUSTWO);
-                        dbHandler.updateSolve(currentSolve);
-                        broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+                        writeQueue.updateSolve(currentSolve);
+                        broadcastUpdatedSolve();
                     }
                     hideButtons(true, false);
                     break;
@@ -401,9 +414,10 @@ public class
                             .title(R.string.add_comment)
                             .input("", "", (dialog12, input) -> {
                                 currentSolve.setComment(input.toString());
-                                dbHandler.updateSolve(currentSolve);
+                                writeQueue.updateSolve(currentSolve);
 
-                                broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_COMMENT_ADDED);
+                                writeQueue.broadcast(new BroadcastBuilder(
+                                        CATEGORY_TIME_DATA_CHANGES, ACTION_COMMENT_ADDED));
                                 Toast.makeText(mContext, getString(R.string.added_comment), Toast.LENGTH_SHORT).show();
                                 hideButtons(false, true);
                             })
@@ -424,9 +438,9 @@ public class
                     // Undo the setting of a DNF or +2 penalty (does not undo a delete or comment).
                     currentSolve = PuzzleUtils.applyPenalty(currentSolve, NO_PENALTY);
                     chronometer.setPenalty(PuzzleUtils.NO_PENALTY);
-                    dbHandler.updateSolve(currentSolve);
+                    writeQueue.updateSolve(currentSolve);
                     hideButtons(false, true);
-                    broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+                    broadcastUpdatedSolve();
                     break;
                 case R.id.scramble_button_reset:
                     broadcast(CATEGORY_UI_INTERACTIONS, ACTION_GENERATE_SCRAMBLE);
@@ -810,7 +824,8 @@ public class
                                 holdHandler.removeCallbacks(holdRunnable);
                             } else {
                                 stopInspectionCountdown();
-                                startChronometer(); // Tool-bar is already hidden and remains so.
+                                // Tool-bar is already hidden and remains so.
+                                startChronometer(motionEvent.getEventTime());
                             }
                             return false;
                     }
@@ -857,7 +872,7 @@ public class
                                 if (!holdEnabled) {
                                     hideToolbar();
                                 }
-                                startChronometer();
+                                startChronometer(motionEvent.getEventTime());
                             }
                             return false;
                     }
@@ -867,7 +882,8 @@ public class
                     // Stop the timer if it has been running for long enough (80 ms) for this not to
                     // be an accidental touch as the user lifted up the touch to start the timer.
                     animationDone = false;
-                    stopChronometer();
+                    // Stop at the time of the touch, not at the time it was handled.
+                    stopChronometer(motionEvent.getEventTime());
                     if (currentPenalty == PuzzleUtils.PENALTY_PLUSTWO) {
                         // If a user has inspection on and went past his inspection time, he has
                         // two extra seconds do start his time, but with a +2 penalty. This penalty
@@ -1019,16 +1035,31 @@ public class
             declareRecordTimes(currentSolve);
         }
 
-        currentSolve.setId(TwistyTimer.getDBHandler().addSolve(currentSolve));
+        if (DEBUG_ME) Log.d(TAG, "addNewSolve(): start latency=" + chronometer.getStartLatency()
+                + " ms, stop latency=" + chronometer.getStopLatency() + " ms");
+
+        // The new solve is written on a background thread, but its ID is given at once, so it can
+        // be changed or deleted straight away.
+        currentSolve.setId(TwistyTimer.getSolveWriteQueue().addSolve(currentSolve,
+                chronometer.getStartLatency(), chronometer.getStopLatency()));
         currentPenalty = NO_PENALTY;
     }
 
     private void broadcastNewSolve() {
         // The receiver might be able to use the new solve and avoid accessing the database, so
-        // parcel it up in the intent.
-        new BroadcastBuilder(CATEGORY_TIME_DATA_CHANGES, ACTION_TIME_ADDED)
-                .solve(currentSolve)
-                .broadcast();
+        // parcel it up in the intent. The broadcast is sent once the solve is written, so a copy
+        // is sent in case the current solve is changed before then.
+        TwistyTimer.getSolveWriteQueue().broadcast(
+                new BroadcastBuilder(CATEGORY_TIME_DATA_CHANGES, ACTION_TIME_ADDED)
+                        .solve(new Solve(currentSolve)));
+    }
+
+    private void broadcastUpdatedSolve() {
+        // As for a new solve, the receiver might be able to apply the change to the current solve
+        // (e.g., a new penalty) without accessing the database.
+        TwistyTimer.getSolveWriteQueue().broadcast(
+                new BroadcastBuilder(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED)
+                        .solve(new Solve(currentSolve)));
     }
 
     /**
@@ -1345,10 +1376,14 @@ public class
 
     /**
      * Starts the chronometer from zero and removes any color highlight.
+     *
+     * @param eventTime
+     *     The time of the touch event that started the chronometer, in the
+     *     {@code SystemClock.uptimeMillis()} time base.
      */
-    private void startChronometer() {
+    private void startChronometer(long eventTime) {
         chronometer.reset(); // Start from "0.00"; do not resume from the previous time.
-        chronometer.start();
+        chronometer.start(eventTime);
         chronometer.setHighlighted(false); // Clear any start cue or hold-for-start highlight.
 
         boolean shouldShowName = TIMER_MODE_TRAINER.equals(currentTimerMode);
@@ -1372,10 +1407,21 @@ public class
     }
 
     /**
-     * Stops the chronometer
+     * Stops the chronometer now.
      */
     private void stopChronometer() {
-        chronometer.stop();
+        stopChronometer(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Stops the chronometer
+     *
+     * @param eventTime
+     *     The time of the touch event that stopped the chronometer, in the
+     *     {@code SystemClock.uptimeMillis()} time base.
+     */
+    private void stopChronometer(long eventTime) {
+        chronometer.stop(eventTime);
         chronometer.setHighlighted(false);
         trainerCaseText.setVisibility(View.GONE);
         isRunning = false;
@@ -1482,8 +1528,17 @@ public class
     private void generateNewScramble() {
         if (scrambleEnabled && currentTimerMode.equals(TIMER_MODE_TIMER)) {
             scrambleGeneratorAsync.cancel(true);
-            scrambleGeneratorAsync = new GenerateScrambleSequence();
-            scrambleGeneratorAsync.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+
+            // Use a ready scramble from the pool, if there is one. Otherwise, generate one now.
+            final String pooledScramble = ScramblePool.poll(currentPuzzle);
+
+            if (pooledScramble != null) {
+                dismissScrambleHint();
+                setScramble(TrainerCase.makeValid("", pooledScramble));
+            } else {
+                scrambleGeneratorAsync = new GenerateScrambleSequence();
+                scrambleGeneratorAsync.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            }
         } else if (currentTimerMode.equals(TIMER_MODE_TRAINER)) {
             TrainerCase tc = TrainerScrambler.generateTrainerCase(getContext(), currentSubset, currentPuzzleCategory);
             setScramble(tc);
@@ -1495,7 +1550,7 @@ public class
     }
 
 
-    private static class GetOptimalCross extends AsyncTask<Void, Void, String> {
+    private static class GetOptimalCross extends AsyncTask<Void, String, String> {
 
         private String scramble;
         private RubiksCubeOptimalCross optimalCross;
@@ -1527,18 +1582,55 @@ public class
 
         @Override
         protected String doInBackground(Void... voids) {
-            String text = "";
-            text += optimalCross.getTip(scramble);
-            if (showHintsXCrossEnabled) {
-                text += "\n\n";
-                text += optimalXCross.getTip(scramble);
+            // The faces are solved in parallel. If they are not all solved within the time budget,
+            // show the hints that are ready, then wait for the rest.
+            final PendingTip cross = optimalCross.getPendingTip(scramble);
+            final PendingTip xCross
+                    = showHintsXCrossEnabled ? optimalXCross.getPendingTip(scramble) : null;
+
+            try {
+                final long deadline = SystemClock.elapsedRealtime() + HINT_TIME_BUDGET;
+                final PendingTip.Text crossText = cross.getText(HINT_TIME_BUDGET);
+                final PendingTip.Text xCrossText = xCross != null
+                        ? xCross.getText(Math.max(0, deadline - SystemClock.elapsedRealtime()))
+                        : null;
+
+                // A section left out of the partial text may finish before it is checked, so
+                // rely on what the partial text left out, not on whether the tip is complete now.
+                if (crossText.isPartial() || (xCrossText != null && xCrossText.isPartial())) {
+                    publishProgress(joinHints(crossText.getText(),
+                            xCrossText != null ? xCrossText.getText() : null));
+                    return joinHints(cross.getText(), xCross != null ? xCross.getText() : null);
+                }
+
+                return joinHints(crossText.getText(),
+                        xCrossText != null ? xCrossText.getText() : null);
+            } catch (InterruptedException e) {
+                // This task was cancelled, as a new scramble was generated.
+                cross.cancel();
+                if (xCross != null) {
+                    xCross.cancel();
+                }
+                return null;
             }
-            return text;
+        }
+
+        private static String joinHints(String crossText, String xCrossText) {
+            return xCrossText != null ? crossText + "\n\n" + xCrossText : crossText;
+        }
+
+        @Override
+        protected void onProgressUpdate(String... partialText) {
+            showHint(partialText[0]);
         }
 
         @Override
         protected void onPostExecute(String text) {
             super.onPostExecute(text);
+            showHint(text);
+        }
+
+        private void showHint(String text) {
             if (!isRunning) {
                 // Set the hint text
                 if(scrambleDialog != null) {
@@ -1549,16 +1641,24 @@ public class
         }
     }
 
+    /**
+     * Dismisses the scramble dialog showing the hints for the previous scramble, as the hints will
+     * not apply to the new scramble.
+     */
+    private void dismissScrambleHint() {
+        if (showHintsEnabled && currentPuzzle.equals(PuzzleUtils.TYPE_333) && scrambleEnabled && scrambleDialog != null) {
+            scrambleDialog.setHintVisibility(View.GONE);
+            scrambleDialog.dismiss();
+        }
+        canShowHint = false;
+    }
+
     private class GenerateScrambleSequence extends AsyncTask<String, Void, String> {
 
         @Override
         protected void onPreExecute() {
             Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
-            if (showHintsEnabled && currentPuzzle.equals(PuzzleUtils.TYPE_333) && scrambleEnabled && scrambleDialog != null) {
-                scrambleDialog.setHintVisibility(View.GONE);
-                scrambleDialog.dismiss();
-            }
-            canShowHint = false;
+            dismissScrambleHint();
             scrambleText.setText(R.string.generating_scramble);
             scrambleText.setCompoundDrawablesWithIntrinsicBounds(0, 0, 0, 0);
             scrambleText.setClickable(false);
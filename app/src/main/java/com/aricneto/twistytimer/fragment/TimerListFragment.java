@@ -7,7 +7,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -45,8 +44,10 @@ import com.aricneto.twistify.BuildConfig;
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
 import com.aricneto.twistytimer.activity.MainActivity;
-import com.aricneto.twistytimer.adapter.TimeCursorAdapter;
+import com.aricneto.twistytimer.adapter.TimeListAdapter;
 import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.SolveWriteQueue;
+import com.aricneto.twistytimer.database.TimeListSource;
 import com.aricneto.twistytimer.database.TimeTaskLoader;
 import com.aricneto.twistytimer.fragment.dialog.AddTimeDialog;
 import com.aricneto.twistytimer.items.Theme;
@@ -69,7 +70,7 @@ import butterknife.Unbinder;
 import static com.aricneto.twistytimer.utils.TTIntent.*;
 
 public class TimerListFragment extends BaseFragment
-        implements LoaderManager.LoaderCallbacks<Cursor>, OnBackPressedInFragmentListener,
+        implements LoaderManager.LoaderCallbacks<TimeListSource>, OnBackPressedInFragmentListener,
         StatisticsCache.StatisticsObserver {
     /**
      * Flag to enable debug logging for this class.
@@ -89,6 +90,12 @@ public class TimerListFragment extends BaseFragment
 
     private static final String SHOWCASE_FAB_ID = "SHOWCASE_FAB_ID";
 
+    /**
+     * The delay in milliseconds after the last change to the search text before the search is
+     * run. This avoids reloading the list for every key typed.
+     */
+    private static final long SEARCH_DELAY = 300;
+
     // True if you want to search history, false if you only want to search session
     boolean         history;
 
@@ -113,7 +120,16 @@ public class TimerListFragment extends BaseFragment
     // Stores the current comment search query
     private String searchComment = "";
 
-    private TimeCursorAdapter timeCursorAdapter;
+    private final Handler searchHandler = new Handler();
+
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reloadList();
+        }
+    };
+
+    private TimeListAdapter timeListAdapter;
 
     /**
      * The most recently notified solve time statistics. These may be used when sharing averages.
@@ -146,9 +162,11 @@ public class TimerListFragment extends BaseFragment
                             .onPositive(new MaterialDialog.SingleButtonCallback() {
                                 @Override
                                 public void onClick(MaterialDialog dialog, DialogAction which) {
-                                    TwistyTimer.getDBHandler().moveAllSolvesToHistory(
-                                            currentPuzzle, currentPuzzleCategory);
-                                    broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MOVED_TO_HISTORY);
+                                    final SolveWriteQueue writeQueue = TwistyTimer.getSolveWriteQueue();
+
+                                    writeQueue.moveAllSolvesToHistory(currentPuzzle, currentPuzzleCategory);
+                                    writeQueue.broadcast(new BroadcastBuilder(
+                                            CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MOVED_TO_HISTORY));
                                 }
                             })
                             .build());
@@ -162,9 +180,11 @@ public class TimerListFragment extends BaseFragment
                             .onPositive(new MaterialDialog.SingleButtonCallback() {
                                 @Override
                                 public void onClick(MaterialDialog dialog, DialogAction which) {
-                                    TwistyTimer.getDBHandler().deleteAllFromSession(
-                                            currentPuzzle, currentPuzzleCategory);
-                                    broadcast(CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED);
+                                    final SolveWriteQueue writeQueue = TwistyTimer.getSolveWriteQueue();
+
+                                    writeQueue.deleteAllFromSession(currentPuzzle, currentPuzzleCategory);
+                                    writeQueue.broadcast(new BroadcastBuilder(
+                                            CATEGORY_TIME_DATA_CHANGES, ACTION_TIMES_MODIFIED));
                                 }
                             })
                             .build());
@@ -292,7 +312,7 @@ public class TimerListFragment extends BaseFragment
             switch (intent.getAction()) {
                 case ACTION_DELETE_SELECTED_TIMES:
                     // Operation will delete times and then broadcast "ACTION_TIMES_MODIFIED".
-                    timeCursorAdapter.deleteAllSelected();
+                    timeListAdapter.deleteAllSelected();
                     break;
                 case ACTION_SCRAMBLE_MODIFIED:
                     // A new scramble was generated
@@ -369,7 +389,8 @@ public class TimerListFragment extends BaseFragment
             @Override
             public void afterTextChanged(Editable s) {
                 searchComment = s.toString();
-                reloadList();
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DELAY);
             }
         });
 
@@ -400,6 +421,7 @@ public class TimerListFragment extends BaseFragment
         if (DEBUG_ME) Log.d(TAG, "onDestroyView()");
         super.onDestroyView();
         mUnbinder.unbind();
+        searchHandler.removeCallbacks(searchRunnable);
         StatisticsCache.getInstance().unregisterObserver(this);
         mRecentStatistics = null;
     }
@@ -457,27 +479,29 @@ public class TimerListFragment extends BaseFragment
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<TimeListSource> onCreateLoader(int i, Bundle bundle) {
         if (DEBUG_ME) Log.d(TAG, "onCreateLoader()");
-        return new TimeTaskLoader(currentPuzzle, currentPuzzleCategory, history, searchComment, orderByKey, orderByDir);
+        // When reloading, load at least as many solves as are already shown, so that the list
+        // keeps its scroll position.
+        return new TimeTaskLoader(currentPuzzle, currentPuzzleCategory, history, searchComment,
+                orderByKey, orderByDir, timeListAdapter.getItemCount());
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> cursorLoader, Cursor cursor) {
+    public void onLoadFinished(Loader<TimeListSource> loader, TimeListSource source) {
         if (DEBUG_ME) Log.d(TAG, "onLoadFinished()");
-        timeCursorAdapter.swapCursor(cursor);
-        recyclerView.getAdapter().notifyDataSetChanged();
-        setEmptyState(cursor);
+        timeListAdapter.swapSource(source);
+        setEmptyState(source);
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> cursorLoader) {
+    public void onLoaderReset(Loader<TimeListSource> loader) {
         if (DEBUG_ME) Log.d(TAG, "onLoaderReset()");
-        timeCursorAdapter.swapCursor(null);
+        timeListAdapter.swapSource(null);
     }
 
-    public void setEmptyState(Cursor cursor) {
-        if (cursor.getCount() == 0) {
+    public void setEmptyState(TimeListSource source) {
+        if (source.size() == 0) {
             nothingHere.setVisibility(View.VISIBLE);
             nothingText.setVisibility(View.VISIBLE);
             if (history) {
@@ -494,7 +518,7 @@ public class TimerListFragment extends BaseFragment
     private void setupRecyclerView() {
         Activity parentActivity = getActivity();
 
-        timeCursorAdapter = new TimeCursorAdapter(getActivity(), null, this);
+        timeListAdapter = new TimeListAdapter(getActivity(), this);
 
         // Set different managers to support different orientations
         StaggeredGridLayoutManager gridLayoutManagerHorizontal =
@@ -508,7 +532,7 @@ public class TimerListFragment extends BaseFragment
         else
             recyclerView.setLayoutManager(gridLayoutManagerHorizontal);
 
-        recyclerView.setAdapter(timeCursorAdapter);
+        recyclerView.setAdapter(timeListAdapter);
     }
 
     private void updateEasterEggs(RelativeLayout root) {
@@ -31,6 +31,7 @@ import android.widget.Toast;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
+import com.aricneto.twistytimer.database.SolveWriteQueue;
 import com.aricneto.twistytimer.items.Solve;
 import com.aricneto.twistytimer.listener.DialogListener;
 import com.aricneto.twistytimer.utils.PuzzleUtils;
@@ -100,12 +101,15 @@ public class AddTimeDialog extends DialogFragment {
                                 mCurrentComment,
                                 false);
 
-                        TwistyTimer.getDBHandler().addSolve(solve);
+                        final SolveWriteQueue writeQueue = TwistyTimer.getSolveWriteQueue();
+
+                        solve.setId(writeQueue.addSolve(solve, -1, -1));
                         // The receiver might be able to use the new solve and avoid
-                        // accessing the database.
-                        new TTIntent.BroadcastBuilder(CATEGORY_UI_INTERACTIONS, ACTION_TIME_ADDED_MANUALLY)
-                                .solve(solve)
-                                .broadcast();
+                        // accessing the database. The broadcast is sent once the solve is
+                        // written.
+                        writeQueue.broadcast(
+                                new TTIntent.BroadcastBuilder(CATEGORY_UI_INTERACTIONS, ACTION_TIME_ADDED_MANUALLY)
+                                        .solve(solve));
 
                         // Generate new scramble
                         broadcast(CATEGORY_UI_INTERACTIONS, ACTION_GENERATE_SCRAMBLE);
@@ -53,6 +53,13 @@ public class ExportImportDialog extends DialogFragment
      */
     public static final int EXIM_FORMAT_BACKUP = 2;
 
+    /**
+     * The file format for compact, binary export of all solve times used to back-up the database.
+     * When importing a back-up, the format of the file is detected automatically, so
+     * {@link #EXIM_FORMAT_BACKUP} is used to import either format.
+     */
+    public static final int EXIM_FORMAT_COMPACT_BACKUP = 3;
+
     private Context mContext;
 
     /**
@@ -82,8 +89,8 @@ public class ExportImportDialog extends DialogFragment
          * directory will be chosen automatically.
          *
          * @param fileFormat
-         *     The solve file format. Must be either {@link #EXIM_FORMAT_EXTERNAL} or
-         *     {@link #EXIM_FORMAT_BACKUP}.
+         *     The solve file format. Must be {@link #EXIM_FORMAT_EXTERNAL},
+         *     {@link #EXIM_FORMAT_BACKUP} or {@link #EXIM_FORMAT_COMPACT_BACKUP}.
          * @param puzzleType
          *     The type of the puzzle whose times will be exported. This is required when
          *     {@code fileFormat} is {@code EXIM_FORMAT_EXTERNAL}. It may be {@code null} if the
@@ -99,6 +106,7 @@ public class ExportImportDialog extends DialogFragment
     private Unbinder mUnbinder;
     //@BindView(R.id.help_button)     View helpButton;
     @BindView(R.id.export_backup)   View exportBackup;
+    @BindView(R.id.export_compact_backup) View exportCompactBackup;
     @BindView(R.id.export_external) View exportExternal;
     @BindView(R.id.import_backup)   View importBackup;
     @BindView(R.id.import_external) View importExternal;
@@ -125,6 +133,11 @@ public class ExportImportDialog extends DialogFragment
                     dismiss();
                     break;
 
+                case R.id.export_compact_backup:
+                    getExImActivity().onExportSolveTimes(EXIM_FORMAT_COMPACT_BACKUP, null, null);
+                    dismiss();
+                    break;
+
                 case R.id.export_external:
                     mIsExport = true;
                     // Select the single puzzle type and category that will be exported. When the
@@ -153,7 +166,8 @@ public class ExportImportDialog extends DialogFragment
                     break;
 
                 case R.id.export_button:
-                    AnimUtils.toggleContentVisibility(exportBackup, exportExternal);
+                    AnimUtils.toggleContentVisibility(
+                            exportBackup, exportCompactBackup, exportExternal);
                     break;
 
                 case R.id.import_button:
@@ -173,6 +187,7 @@ public class ExportImportDialog extends DialogFragment
         mContext = getContext();
 
         exportBackup.setOnClickListener(clickListener);
+        exportCompactBackup.setOnClickListener(clickListener);
         exportExternal.setOnClickListener(clickListener);
         importBackup.setOnClickListener(clickListener);
         importExternal.setOnClickListener(clickListener);
@@ -32,7 +32,7 @@ import android.widget.Toast;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.TwistyTimer;
-import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.SolveWriteQueue;
 import com.aricneto.twistytimer.items.Solve;
 import com.aricneto.twistytimer.listener.DialogListener;
 import com.aricneto.twistytimer.utils.AnimUtils;
@@ -72,7 +72,9 @@ public class TimeDialog extends DialogFragment {
     private View.OnClickListener clickListener = new View.OnClickListener() {
         @Override
         public void onClick(View view) {
-            final DatabaseHandler dbHandler = TwistyTimer.getDBHandler();
+            // The changes are made through the write queue, so they are written after any changes
+            // to the same solve that are still queued, such as from the timer.
+            final SolveWriteQueue writeQueue = TwistyTimer.getSolveWriteQueue();
 
             switch (view.getId()) {
                 case R.id.overflowButton:
@@ -97,21 +99,21 @@ public class TimeDialog extends DialogFragment {
                                     getContext().startActivity(shareIntent);
                                     break;
                                 case R.id.remove:
-                                    dbHandler.deleteSolveByID(mId);
-                                    updateList();
+                                    writeQueue.deleteSolve(mId);
+                                    updateList(true);
                                     break;
                                 case R.id.history_to:
                                     solve.setHistory(true);
                                     Toast.makeText(getContext(), getString(R.string.sent_to_history), Toast.LENGTH_SHORT).show();
-                                    dbHandler.updateSolve(solve);
-                                    updateList();
+                                    writeQueue.updateSolve(solve);
+                                    updateList(false);
                                     dismiss();
                                     break;
                                 case R.id.history_from:
                                     solve.setHistory(false);
                                     Toast.makeText(getContext(), getString(R.string.sent_to_session), Toast.LENGTH_SHORT).show();
-                                    dbHandler.updateSolve(solve);
-                                    updateList();
+                                    writeQueue.updateSolve(solve);
+                                    updateList(false);
                                     dismiss();
                                     break;
                             }
@@ -136,9 +138,9 @@ public class TimeDialog extends DialogFragment {
                                         solve = PuzzleUtils.applyPenalty(solve, PuzzleUtils.PENALTY_DNF);
                                         break;
                                 }
-                                dbHandler.updateSolve(solve);
+                                writeQueue.updateSolve(solve);
                                 // dismiss dialog
-                                updateList();
+                                updateList(false);
                                 return true;
                             })
                             .negativeText(R.string.action_cancel)
@@ -149,9 +151,9 @@ public class TimeDialog extends DialogFragment {
                             .title(R.string.edit_comment)
                             .input("", solve.getComment(), (dialog1, input) -> {
                                 solve.setComment(input.toString());
-                                dbHandler.updateSolve(solve);
+                                writeQueue.updateSolve(solve);
                                 Toast.makeText(getContext(), getString(R.string.added_comment), Toast.LENGTH_SHORT).show();
-                                updateList();
+                                updateList(false);
                             })
                             .inputType(InputType.TYPE_TEXT_FLAG_MULTI_LINE)
                             .positiveText(R.string.action_done)
@@ -246,11 +248,27 @@ public class TimeDialog extends DialogFragment {
         dialogListener = listener;
     }
 
-    private void updateList() {
+    /**
+     * Notifies the listener and any receivers of time data changes that the solve was changed.
+     * The broadcast identifies the solve, so the statistics can be updated without a full reload.
+     *
+     * @param isDeleted
+     *     {@code true} if the solve was deleted; or {@code false} if the solve was updated.
+     */
+    private void updateList(boolean isDeleted) {
+        final TTIntent.BroadcastBuilder builder = new TTIntent.BroadcastBuilder(
+                TTIntent.CATEGORY_TIME_DATA_CHANGES, TTIntent.ACTION_TIMES_MODIFIED);
+
+        if (isDeleted) {
+            builder.deletedSolves(mId);
+        } else {
+            builder.solve(new Solve(solve));
+        }
+        // Sent once the change is committed, so a copy of the solve is sent.
+        TwistyTimer.getSolveWriteQueue().broadcast(builder);
+
         if (dialogListener != null) {
             dialogListener.onUpdateDialog();
-        } else {
-            TTIntent.broadcast(TTIntent.CATEGORY_TIME_DATA_CHANGES, TTIntent.ACTION_TIMES_MODIFIED);
         }
         dismiss();
     }
@@ -2,21 +2,24 @@ package com.aricneto.twistytimer.items;
 
 import android.util.Log;
 
-import com.aricneto.twistytimer.structures.RedBlackTree;
+import com.aricneto.twistytimer.structures.SortedLongList;
 
-import androidx.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import static com.aricneto.twistytimer.stats.AverageCalculator.DNF;
 import static com.aricneto.twistytimer.stats.AverageCalculator.UNKNOWN;
 
 /**
- * Stores a balanced tree, its sum, and its least and greatest times
+ * Stores a sorted list of times, its sum, and its least and greatest times. All values are held
+ * as primitives, so adding and removing times does not box or allocate.
  */
 public class AverageComponent {
-    private Long               sum;
-    private Long               least;
-    private Long               greatest;
-    private RedBlackTree<Long> tree;
+    private long           sum;
+    private long           least;
+    private long           greatest;
+    private SortedLongList tree;
 
     /**
      * This debug flag enables hard-checking every remove to verify that the element being
@@ -31,7 +34,18 @@ public class AverageComponent {
         this.sum = UNKNOWN;
         this.least = UNKNOWN;
         this.greatest = UNKNOWN;
-        this.tree = new RedBlackTree<>();
+        this.tree = new SortedLongList();
+    }
+
+    /**
+     * Creates a component that can hold the given number of times without growing
+     * @param capacity The expected maximum number of times held by this component
+     */
+    public AverageComponent(int capacity) {
+        this.sum = UNKNOWN;
+        this.least = UNKNOWN;
+        this.greatest = UNKNOWN;
+        this.tree = new SortedLongList(capacity);
     }
 
     /**
@@ -54,9 +68,9 @@ public class AverageComponent {
      * @param val The value to be removed
      */
     public void remove(long val) {
-        try {
-            tree.remove(val);
-        } catch (Exception e) {
+        if (!tree.remove(val)) {
+            if (DEBUG)
+                throw new IllegalStateException("Value not found: " + val);
             Log.d("AverageComponent", "Error while trying to remove value: " + val);
         }
         subSum(val);
@@ -98,7 +112,60 @@ public class AverageComponent {
         return sum;
     }
 
-    public RedBlackTree<Long> getTree() {
+    /**
+     * Gets the number of elements in the tree
+     * @return The number of elements in the tree
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Removes all elements, keeping the allocated storage for reuse
+     */
+    public void clear() {
+        tree.clear();
+        sum = UNKNOWN;
+        least = UNKNOWN;
+        greatest = UNKNOWN;
+    }
+
+    /**
+     * Writes the full state of this component, so that it can be restored by {@link #readFrom}
+     * @param out The output to write to
+     * @throws IOException If the state could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(sum);
+        out.writeInt(tree.size());
+        for (int i = 0; i < tree.size(); i++)
+            out.writeLong(tree.get(i));
+    }
+
+    /**
+     * Replaces the state of this component with one written by {@link #writeTo}
+     * @param in The input to read from
+     * @throws IOException If the state could not be read
+     */
+    public void readFrom(DataInput in) throws IOException {
+        clear();
+
+        final long savedSum = in.readLong();
+        final int size = in.readInt();
+
+        if (size < 0)
+            throw new IOException("Invalid size: " + size);
+
+        // The values were written in sorted order, so each add appends without shifting.
+        for (int i = 0; i < size; i++)
+            tree.add(in.readLong());
+
+        // Restore the sum as it was, rather than recalculating it, as a component that has had all
+        // of its times removed keeps a sum of zero rather than "UNKNOWN".
+        sum = savedSum;
+    }
+
+    public SortedLongList getTree() {
         return tree;
     }
 
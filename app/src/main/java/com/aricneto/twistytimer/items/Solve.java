@@ -43,6 +43,16 @@ public class Solve implements Parcelable {
         this.history = history;
     }
 
+    /**
+     * Creates a copy of a solve.
+     *
+     * @param solve The solve to be copied.
+     */
+    public Solve(Solve solve) {
+        this(solve.id, solve.time, solve.puzzle, solve.subtype, solve.date, solve.scramble,
+                solve.penalty, solve.comment, solve.history);
+    }
+
     /**
      * Creates a solve from a {@code Parcel}.
      *
@@ -5,12 +5,19 @@ package com.aricneto.twistytimer.layout;
  */
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Message;
+import android.os.Debug;
 import android.os.SystemClock;
 import androidx.appcompat.widget.AppCompatTextView;
 import android.text.Html;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.RelativeSizeSpan;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.nio.CharBuffer;
 
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.utils.Prefs;
@@ -18,19 +25,37 @@ import com.aricneto.twistytimer.utils.PuzzleUtils;
 
 import static com.aricneto.twistytimer.utils.PuzzleUtils.FORMAT_NO_MILLI;
 import static com.aricneto.twistytimer.utils.PuzzleUtils.FORMAT_SMALL_MILLI;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.MAX_TIME_CHARS;
 import static com.aricneto.twistytimer.utils.PuzzleUtils.NO_PENALTY;
 import static com.aricneto.twistytimer.utils.PuzzleUtils.PENALTY_DNF;
 import static com.aricneto.twistytimer.utils.PuzzleUtils.PENALTY_PLUSTWO;
 import static com.aricneto.twistytimer.utils.PuzzleUtils.convertTimeToString;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.getTimeChars;
 
 /**
  * A chronometer for twisty puzzles of all types. This supports timing in milliseconds, display of
  * the elapsed time to a high resolution (hundredths of a second) or low resolution (whole seconds),
  * addition of standard "+2" and "DNF" penalties, and "hold-for-start" behaviour that can restore a
  * previous time if the hold is cancelled.
+ *
+ * <p>The chronometer can be started and stopped at the time of the input event that caused the
+ * start or stop (see {@link #start(long)} and {@link #stop(long)}), rather than at the time that
+ * the event is handled. Any delay in dispatching the event to the main thread (e.g., if the main
+ * thread is busy with other work when the timer is stopped) is then not added to the recorded
+ * time. That delay is recorded as the "dispatch latency" of the start and stop.</p>
+ *
+ * <p>While running, the elapsed time is updated once for every frame of the display, using a
+ * {@link Choreographer} callback, so each new value is shown as soon as it can be seen. The digits
+ * are formatted into a preallocated array and copied into the same spannable text on every frame,
+ * without parsing any mark-up, so that the layout of the text only needs to be rebuilt when the
+ * number of digits changes. See {@link #renderRunningTime()}.</p>
  */
 public class ChronometerMilli extends AppCompatTextView {
-    @SuppressWarnings("unused")
+    /**
+     * Flag to enable debug logging of the frame times while the chronometer is running.
+     */
+    private static final boolean DEBUG_ME = false;
+
     private static final String TAG = "Chronometer";
 
     /**
@@ -39,18 +64,15 @@ public class ChronometerMilli extends AppCompatTextView {
     private static final long TWO_SECOND_PENALTY_MS = 2_000L;
 
     /**
-     * The number of milliseconds between updates to the displayed of a low-resolution elapsed time.
+     * The text shown for an elapsed time of zero while running.
      */
-    private static final long TICK_TIME_LR = 100L; // 0.1 seconds to avoid jerkiness.
+    private static final char[] ZERO_TIME_CHARS = { '0', '.', '0', '0' };
 
     /**
-     * The number of milliseconds between updates to the displayed of a high-resolution elapsed
-     * time.
+     * The relative size of the fractional seconds, the same as that of {@code <small>} text in
+     * {@link Html#fromHtml(String)}.
      */
-    private static final long TICK_TIME_HR = 30L; // 0.03 seconds (33 fps). 3 times less updates
-    // than 0.01 seconds, but no noticeable visual difference.
-
-    private static final int TICK_WHAT = 2;
+    private static final float SMALL_TEXT_SIZE = 0.8f;
 
     private String hideTimeText;
     private boolean hideTimeEnabled;
@@ -67,6 +89,20 @@ public class ChronometerMilli extends AppCompatTextView {
      */
     private long mStoppedAt;
 
+    /**
+     * The delay (in milliseconds) between the input event that started this chronometer and the
+     * handling of that event. Will be zero if the chronometer has not been started or has been
+     * reset.
+     */
+    private long mStartLatency;
+
+    /**
+     * The delay (in milliseconds) between the input event that stopped this chronometer and the
+     * handling of that event. Will be zero if the chronometer has not been stopped or has been
+     * reset.
+     */
+    private long mStopLatency;
+
     /**
      * The code for additional penalty. Values from {@link PuzzleUtils} are supported.
      */
@@ -101,6 +137,61 @@ public class ChronometerMilli extends AppCompatTextView {
      */
     private int mNormalColor;
 
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mIsRunning) {
+                return;
+            }
+
+            if (DEBUG_ME) {
+                final long startNanos = System.nanoTime();
+
+                renderRunningTime();
+                recordFrame(frameTimeNanos, System.nanoTime() - startNanos);
+            } else {
+                renderRunningTime();
+            }
+
+            mChoreographer.postFrameCallback(this);
+        }
+    };
+
+    /**
+     * The characters of the elapsed time shown while running, and a view of them that can be
+     * copied into {@link #mRunningText} without allocating a string.
+     */
+    private final char[] mTimeChars = new char[MAX_TIME_CHARS];
+    private final CharBuffer mTimeCharBuffer = CharBuffer.wrap(mTimeChars);
+
+    /**
+     * The text that shows the elapsed time while running. The same text is updated in place for
+     * every frame. See {@link #renderRunningTime()}.
+     */
+    private final SpannableStringBuilder mRunningText = new SpannableStringBuilder();
+
+    /**
+     * The span that shows the fractional seconds of {@link #mRunningText} in smaller text.
+     */
+    private final RelativeSizeSpan mSmallSpan = new RelativeSizeSpan(SMALL_TEXT_SIZE);
+
+    /**
+     * The elapsed time shown by {@link #mRunningText}, in units of the resolution at which it is
+     * shown (hundredths of a second or whole seconds).
+     */
+    private long mShownTime;
+    private boolean mIsShownHiRes;
+
+    // Statistics of the frames rendered while running. Only recorded if "DEBUG_ME" is enabled.
+    private int mNumFrames;
+    private long mTotalRenderNanos;
+    private long mMaxRenderNanos;
+    private long mMaxFrameIntervalNanos;
+    private long mLastFrameTimeNanos;
+    private int mAllocCountAtStart;
+
     public ChronometerMilli(Context context) {
         this(context, null, 0);
     }
@@ -125,6 +216,14 @@ public class ChronometerMilli extends AppCompatTextView {
         hideTimeEnabled = Prefs.getBoolean(R.string.pk_hide_time_while_running, false);
         hideTimeText = getContext().getString(R.string.hideTimeText);
 
+        // Set the running-time text as it is, rather than as a copy, so it can be updated in place.
+        setSpannableFactory(new Spannable.Factory() {
+            @Override
+            public Spannable newSpannable(CharSequence source) {
+                return source == mRunningText ? mRunningText : super.newSpannable(source);
+            }
+        });
+
         // The initial state will cause "0.00" to be displayed.
         updateText();
     }
@@ -193,6 +292,41 @@ public class ChronometerMilli extends AppCompatTextView {
         return (mIsStarted ? SystemClock.elapsedRealtime() : mStoppedAt) - mStartedAt;
     }
 
+    /**
+     * Gets the delay between the input event that started this chronometer and the handling of
+     * that event. See {@link #start(long)}.
+     *
+     * @return The dispatch latency of the start in milliseconds.
+     */
+    public long getStartLatency() {
+        return mStartLatency;
+    }
+
+    /**
+     * Gets the delay between the input event that stopped this chronometer and the handling of
+     * that event. See {@link #stop(long)}.
+     *
+     * @return The dispatch latency of the stop in milliseconds.
+     */
+    public long getStopLatency() {
+        return mStopLatency;
+    }
+
+    /**
+     * Gets the delay between an input event and the current time. Input events are stamped with
+     * the system uptime (see {@link android.view.MotionEvent#getEventTime()}), not with the
+     * system elapsed real time used by this chronometer. The two clocks differ only by the time
+     * spent in deep sleep, so the elapsed real time of the event is the current elapsed real time
+     * less this delay.
+     *
+     * @param eventTime The time of the event in the {@link SystemClock#uptimeMillis()} time base.
+     *
+     * @return The delay in milliseconds. This is never negative.
+     */
+    private static long getDispatchLatency(long eventTime) {
+        return Math.max(SystemClock.uptimeMillis() - eventTime, 0L);
+    }
+
     /**
      * Holds the chronometer is a state ready to be started from zero. This will display a zero
      * start time, but, if {@link #cancelHoldForStart()} is called, the previously displayed value
@@ -255,18 +389,32 @@ public class ChronometerMilli extends AppCompatTextView {
         }
     }
 
+    /**
+     * Starts the chronometer at the current time. See {@link #start(long)} for details.
+     */
+    public void start() {
+        start(SystemClock.uptimeMillis());
+    }
+
     /**
      * Starts the chronometer, resuming the recording of the elapsed time from where it left off
      * when it was last stopped. To restart from zero and clear penalties, call {@link #reset()}
      * first. If this chronometer is already started, calling this method will have no effect.
      * This will also exit the "hold-for-start" state if it is active; the displayed text value
      * saved when that state was entered will not be restored.
+     *
+     * @param eventTime
+     *     The time at which the chronometer was started, in the {@link SystemClock#uptimeMillis()}
+     *     time base. This is the time of the input event that started the chronometer (see
+     *     {@link android.view.MotionEvent#getEventTime()}).
      */
-    public void start() {
+    public void start(long eventTime) {
         if (mIsStarted) {
             return;
         }
 
+        mStartLatency = getDispatchLatency(eventTime);
+
         // For some puzzle types, the elapsed time could be long (many minutes, or even hours), so
         // the need to support a "pause" feature during informal timing sessions may be useful.
         // Here, calculate the new "mStartedAt" value and then offset it into the past by the
@@ -274,7 +422,8 @@ public class ChronometerMilli extends AppCompatTextView {
         // such as "reset-start-stop-start-stop-start-stop" to accumulate time as necessary. If
         // already started, "stop-start" is effectively "pause-resume". Do not include any penalty
         // time in the elapsed time offset, it will remain separate.
-        mStartedAt = SystemClock.elapsedRealtime() - getElapsedTimeExcludingPenalties();
+        mStartedAt = SystemClock.elapsedRealtime() - mStartLatency
+                - getElapsedTimeExcludingPenalties();
         mStoppedAt = 0L;
         mIsStarted = true;
 
@@ -285,21 +434,32 @@ public class ChronometerMilli extends AppCompatTextView {
         updateRunning();
     }
 
+    /**
+     * Stops the chronometer at the current time. See {@link #stop(long)} for details.
+     */
+    public void stop() {
+        stop(SystemClock.uptimeMillis());
+    }
+
     /**
      * Stops the chronometer. The elapsed time will no longer be incremented until the chronometer
      * is started again. If this chronometer is already stopped, calling this method will have no
      * effect.
      *
-     * @throws IllegalStateException
-     *     If the chronometer is already started.
+     * @param eventTime
+     *     The time at which the chronometer was stopped, in the {@link SystemClock#uptimeMillis()}
+     *     time base. This is the time of the input event that stopped the chronometer (see
+     *     {@link android.view.MotionEvent#getEventTime()}).
      */
-    public void stop() {
+    public void stop(long eventTime) {
         if (!mIsStarted) {
             return;
         }
 
+        mStopLatency = getDispatchLatency(eventTime);
         mIsStarted = false;
-        mStoppedAt = SystemClock.elapsedRealtime();
+        // The stop cannot be before the start, even if the event time is not valid.
+        mStoppedAt = Math.max(SystemClock.elapsedRealtime() - mStopLatency, mStartedAt);
 
         // Update the text to show the exact elapsed time at this precise moment.
         updateText();
@@ -325,6 +485,8 @@ public class ChronometerMilli extends AppCompatTextView {
 
         mStartedAt = 0L;
         mStoppedAt = 0L;
+        mStartLatency = 0L;
+        mStopLatency = 0L;
         mPenalty = NO_PENALTY;
 
         // If we were holding for a start, stop doing that now and discard any saved text.
@@ -363,6 +525,8 @@ public class ChronometerMilli extends AppCompatTextView {
 
         // Show the new time with the included penalty and the "+" penalty indicator, if needed.
         updateText();
+        // A "DNF" penalty stops the display of the running time.
+        updateRunning();
     }
 
     /**
@@ -384,30 +548,30 @@ public class ChronometerMilli extends AppCompatTextView {
      * the display of the elapsed time. If a "DNF" penalty has been applied, "DNF" will be displayed
      * instead of the elapsed time.
      * </p>
-     *
-     * @return
-     *     {@code true} if the displayed text presented a high-resolution, fractional value for
-     *     the number of seconds, or {@code false} if only whole seconds were shown. This may be
-     *     used to inform the necessary update frequency.
+     * <p>
+     * While the elapsed time is shown and the chronometer is started, the time is rendered by
+     * {@link #renderRunningTime()}.
+     * </p>
      */
-    private synchronized boolean updateText() {
+    private synchronized void updateText() {
+        if (isRunningTimeShown()) {
+            renderRunningTime();
+            return;
+        }
+
         // The displayed elapsed time will include any time penalty. If holding before starting,
         // then assume that the elapsed time will be started at zero and ignore the previously
         // recorded elapsed time and any current penalty.
         String timeText;
-        final boolean isHiRes;
 
         if (mIsStarted && hideTimeEnabled) {
             timeText = hideTimeText;
-            isHiRes = false;
         } else if (!mIsHoldingForStart && mPenalty == PENALTY_DNF) {
             timeText = "DNF";
-            isHiRes = false;
         } else {
             final long elapsedMS = mIsHoldingForStart ? 0L : getElapsedTime();
             final long hours = elapsedMS / (3_600_000L);
-
-            isHiRes = (!mIsStarted || mShowHiRes) && hours == 0;
+            final boolean isHiRes = (!mIsStarted || mShowHiRes) && hours == 0;
 
             if (elapsedMS > 0)
                 timeText = convertTimeToString(elapsedMS, isHiRes ? FORMAT_SMALL_MILLI : FORMAT_NO_MILLI);
@@ -421,8 +585,99 @@ public class ChronometerMilli extends AppCompatTextView {
         }
 
         setText(Html.fromHtml(timeText));
+    }
+
+    /**
+     * Indicates if the elapsed time is shown while the chronometer is started. If it is, the time
+     * is rendered by {@link #renderRunningTime()}.
+     */
+    private boolean isRunningTimeShown() {
+        return mIsStarted && !hideTimeEnabled && mPenalty != PENALTY_DNF;
+    }
+
+    /**
+     * Renders the elapsed time while the chronometer is started. This is called for every frame
+     * while running, so nothing is allocated. The elapsed time is shown to a high resolution
+     * (hundredths of a second) if that preference is enabled, or otherwise in whole seconds, but
+     * always in whole seconds if one hour or longer. Nothing is changed if the time shown at that
+     * resolution is the same as for the previous frame.
+     *
+     * <p>The digits are formatted into {@link #mTimeChars} and copied into {@link #mRunningText},
+     * which is the same instance as the text of this view. If the number of characters has not
+     * changed, only the characters that differ are replaced, in place, so the view is redrawn
+     * without a new layout of the text (the digits of the font all have the same width). If the
+     * number of characters has changed, the text is set again, so the layout of the text and the
+     * automatic size of the text are updated.</p>
+     */
+    private void renderRunningTime() {
+        final long elapsedMS = Math.max(getElapsedTime(), 0L);
+        final boolean isHiRes = mShowHiRes && elapsedMS < 3_600_000L;
+        final long shownTime = isHiRes ? elapsedMS / 10L : elapsedMS / 1_000L;
+        final boolean isShown = getText() == mRunningText;
+
+        if (isShown && shownTime == mShownTime && isHiRes == mIsShownHiRes) {
+            return;
+        }
+
+        mShownTime = shownTime;
+        mIsShownHiRes = isHiRes;
+
+        final int length;
+
+        if (elapsedMS > 0) {
+            length = getTimeChars(
+                    elapsedMS, isHiRes ? FORMAT_SMALL_MILLI : FORMAT_NO_MILLI, mTimeChars);
+        } else {
+            length = ZERO_TIME_CHARS.length;
+            System.arraycopy(ZERO_TIME_CHARS, 0, mTimeChars, 0, length);
+        }
+
+        final int oldLength = mRunningText.length();
+
+        if (isShown && length == oldLength) {
+            int start = 0;
+            int end = length;
 
-        return isHiRes;
+            while (start < end && mRunningText.charAt(start) == mTimeChars[start]) {
+                start++;
+            }
+            while (end > start && mRunningText.charAt(end - 1) == mTimeChars[end - 1]) {
+                end--;
+            }
+            if (start < end) {
+                mRunningText.replace(start, end, mTimeCharBuffer, start, end);
+            }
+            updateSmallSpan(length);
+        } else {
+            if (!isShown) {
+                // Remove the watchers added by this view when the text was last shown, so they are
+                // not notified of changes while another text is shown.
+                mRunningText.clearSpans();
+            }
+            mRunningText.replace(0, oldLength, mTimeCharBuffer, 0, length);
+            updateSmallSpan(length);
+            setText(mRunningText, BufferType.SPANNABLE);
+        }
+    }
+
+    /**
+     * Sets the span that shows the fractional seconds of {@link #mRunningText} in smaller text.
+     * The span is only changed if it does not already cover the fractional seconds.
+     *
+     * @param length The length of the text.
+     */
+    private void updateSmallSpan(int length) {
+        // The fractional seconds are always two digits, if shown.
+        final int start = length - 3;
+
+        if (start >= 0 && mTimeChars[start] == '.') {
+            if (mRunningText.getSpanStart(mSmallSpan) != start
+                    || mRunningText.getSpanEnd(mSmallSpan) != length) {
+                mRunningText.setSpan(mSmallSpan, start, length, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        } else {
+            mRunningText.removeSpan(mSmallSpan);
+        }
     }
 
     @Override
@@ -441,57 +696,84 @@ public class ChronometerMilli extends AppCompatTextView {
 
     /**
      * Updates the running state of this chronometer. The chronometer is "running" if it is in the
-     * started state and is visible. In the "running" state, the display of the current elapsed time
-     * will be updated regularly.
+     * started state, is visible and shows the elapsed time. In the "running" state, the display of
+     * the current elapsed time will be updated for every frame.
      */
     private void updateRunning() {
-        boolean running = mIsVisible && mIsStarted;
+        boolean running = mIsVisible && isRunningTimeShown();
 
         if (running != mIsRunning) {
             // State has changed:
             //
-            //   If the chronometer was not running but has now started running, then kick off a
-            //   chain of messages that will update the display of the elapsed time at regular
-            //   intervals. One message is queued here and then a new message is queued as each
-            //   message is handled by "TimeUpdateHandler.handleMessage".
+            //   If the chronometer was not running but has now started running, then post a frame
+            //   callback that will update the display of the elapsed time. A new callback is
+            //   posted for the next frame as each callback is handled.
             //
             //   If the chronometer was running but has now stopped running, clear "mIsRunning"
-            //   (which causes "TimeUpdateHandler.handleMessage" to break the chain of update
-            //   messages) and then clear any other unhandled "tick" messages from the queue.
+            //   (which causes the frame callback not to post another callback) and then remove
+            //   any callback that is already posted.
             //
-            // If the state has not changed, then things can be left alone: either the message
-            // chain is active and perpetuating itself, or it is inactive.
+            // If the state has not changed, then things can be left alone: either the frame
+            // callbacks are active and perpetuating themselves, or they are inactive.
             mIsRunning = running;
 
             if (mIsRunning) {
-                // Use a very short "tick" time (1 ms) before the very first update.
-                mHandler.sendMessageDelayed(Message.obtain(mHandler, TICK_WHAT, this), 1L);
+                if (DEBUG_ME) startFrameStats();
+                mChoreographer.postFrameCallback(mFrameCallback);
             } else {
-                mHandler.removeMessages(TICK_WHAT);
+                mChoreographer.removeFrameCallback(mFrameCallback);
+                if (DEBUG_ME) logFrameStats();
             }
         }
     }
 
-    private Handler mHandler = new TimeUpdateHandler();
-
-    // "static" handler class to prevent memory leaks.
-    private static final class TimeUpdateHandler extends Handler {
-        public void handleMessage(Message m) {
-            if (m.obj != null) {
-                final ChronometerMilli chronometer = (ChronometerMilli) m.obj;
-
-                // Update the time display before checking if the chronometer is still "running".
-                // This ensures that the time display is up-to-date with the exact elapsed time.
-                //
-                // Adapt the interval between updates to the current resolution of the display
-                // of the seconds value, i.e., update faster if showing 100ths of a second.
-                final long tickTime = chronometer.updateText() ? TICK_TIME_HR : TICK_TIME_LR;
-
-                if (chronometer.mIsRunning) {
-                    // Only chain a new message for the next update if still running.
-                    sendMessageDelayed(Message.obtain(this, TICK_WHAT, chronometer), tickTime);
-                }
-            }
+    /**
+     * Resets the statistics of the frames rendered while running. Allocations are counted on the
+     * main thread, so the number of allocations made while rendering can be reported.
+     */
+    @SuppressWarnings("deprecation")
+    private void startFrameStats() {
+        mNumFrames = 0;
+        mTotalRenderNanos = 0L;
+        mMaxRenderNanos = 0L;
+        mMaxFrameIntervalNanos = 0L;
+        mLastFrameTimeNanos = 0L;
+
+        Debug.startAllocCounting();
+        mAllocCountAtStart = Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Records the statistics of a frame rendered while running.
+     *
+     * @param frameTimeNanos The time of the frame, as given to the frame callback.
+     * @param renderNanos    The time taken to render the elapsed time for the frame.
+     */
+    private void recordFrame(long frameTimeNanos, long renderNanos) {
+        if (mLastFrameTimeNanos != 0L) {
+            mMaxFrameIntervalNanos
+                    = Math.max(mMaxFrameIntervalNanos, frameTimeNanos - mLastFrameTimeNanos);
         }
+        mLastFrameTimeNanos = frameTimeNanos;
+        mNumFrames++;
+        mTotalRenderNanos += renderNanos;
+        mMaxRenderNanos = Math.max(mMaxRenderNanos, renderNanos);
+    }
+
+    /**
+     * Logs the statistics of the frames rendered while running. The number of allocations
+     * includes any made by other work on the main thread, such as drawing the views.
+     */
+    @SuppressWarnings("deprecation")
+    private void logFrameStats() {
+        final int numAllocs = Debug.getThreadAllocCount() - mAllocCountAtStart;
+
+        Debug.stopAllocCounting();
+        Log.d(TAG, "Frames: " + mNumFrames
+                + ", mean render time: " + (mNumFrames > 0 ? mTotalRenderNanos / mNumFrames : 0)
+                + " ns, max render time: " + mMaxRenderNanos
+                + " ns, max frame interval: " + mMaxFrameIntervalNanos / 1_000_000L
+                + " ms, allocations on main thread: " + numAllocs
+                + (mNumFrames > 0 ? " (" + (float) numAllocs / mNumFrames + " per frame)" : ""));
     }
 }
@@ -0,0 +1,211 @@
+package com.aricneto.twistytimer.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tip whose solutions are still being found. The tip is made up of sections, such as the
+ * cross on each face of the cube, and each section needs the solutions of one or more solves. All
+ * of the solves are independent, so they run in parallel on a small, shared pool of worker
+ * threads. The solvers' tables are read-only once they are initialised, so they can be shared by
+ * the workers.
+ *
+ * <p>The text of the tip can be taken before all of the solves are finished. In that case, only
+ * the sections whose solves are finished are included, so a partial tip can be shown while a slow
+ * solve is still running. The sections always appear in the order in which they were added.</p>
+ */
+public class PendingTip {
+    /**
+     * Formats the text of one section of a tip.
+     */
+    interface SectionFormatter {
+        /**
+         * Appends the text of a section to the text of the tip.
+         *
+         * @param tip
+         *     The text of the tip.
+         * @param solutions
+         *     The solutions found by each of the solves of the section, in the order in which the
+         *     solves were added to the section.
+         */
+        void format(StringBuilder tip, List<ArrayList<String[]>> solutions);
+    }
+
+    /**
+     * The text of a tip that was taken before all of its solves may have finished.
+     */
+    public static class Text {
+        private final String mText;
+        private final boolean mIsPartial;
+
+        Text(String text, boolean isPartial) {
+            mText = text;
+            mIsPartial = isPartial;
+        }
+
+        /**
+         * Gets the text of the sections of the tip that were finished in time.
+         *
+         * @return
+         *     The text of the finished sections.
+         */
+        public String getText() {
+            return mText;
+        }
+
+        /**
+         * Indicates if any sections were left out of the text, as their solves were not finished
+         * in time.
+         *
+         * @return
+         *     {@code true} if some sections were left out; or {@code false} if the text is that
+         *     of the whole tip.
+         */
+        public boolean isPartial() {
+            return mIsPartial;
+        }
+    }
+
+    /**
+     * The number of worker threads that run the solves.
+     */
+    private static final int N_WORKERS
+            = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The workers that run the solves of all tips. The threads are stopped when they have been
+     * idle for a while, as tips are only needed once per scramble.
+     */
+    private static final ThreadPoolExecutor sWorkers;
+
+    static {
+        final AtomicInteger nextWorker = new AtomicInteger(1);
+
+        sWorkers = new ThreadPoolExecutor(N_WORKERS, N_WORKERS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    final Thread thread = new Thread(r, "TipSolver-" + nextWorker.getAndIncrement());
+
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        sWorkers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * A section of the tip and the solves that it needs.
+     */
+    private static class Section {
+        final List<Future<ArrayList<String[]>>> solves = new ArrayList<>();
+        final SectionFormatter formatter;
+
+        Section(SectionFormatter formatter) {
+            this.formatter = formatter;
+        }
+    }
+
+    /**
+     * The sections of the tip, in the order in which they are to be shown.
+     */
+    private final List<Section> mSections = new ArrayList<>();
+
+    /**
+     * Adds a section to the end of the tip and starts its solves.
+     *
+     * @param solves
+     *     The solves needed by the section.
+     * @param formatter
+     *     Formats the text of the section when all of its solves are finished.
+     */
+    void addSection(List<Callable<ArrayList<String[]>>> solves, SectionFormatter formatter) {
+        final Section section = new Section(formatter);
+
+        for (Callable<ArrayList<String[]>> solve : solves) {
+            section.solves.add(sWorkers.submit(solve));
+        }
+
+        mSections.add(section);
+    }
+
+    /**
+     * Gets the text of the whole tip, waiting for all of the solves to finish.
+     *
+     * @return
+     *     The text of the tip.
+     *
+     * @throws InterruptedException
+     *     If the calling thread is interrupted while waiting.
+     */
+    public String getText() throws InterruptedException {
+        return getText(-1).getText();
+    }
+
+    /**
+     * Gets the text of the tip, waiting no longer than the given time for the solves to finish.
+     * Sections whose solves are not finished in time are left out of the text. Whether any were
+     * left out is decided by the same checks that build the text, so a section that finishes
+     * just after it was left out is still reported.
+     *
+     * @param timeoutMillis
+     *     The longest time to wait, in milliseconds. If negative, there is no limit.
+     *
+     * @return
+     *     The text of the finished sections of the tip, and whether any sections were left out.
+     *
+     * @throws InterruptedException
+     *     If the calling thread is interrupted while waiting.
+     */
+    public Text getText(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final StringBuilder tip = new StringBuilder();
+        boolean isPartial = false;
+
+        for (Section section : mSections) {
+            final List<ArrayList<String[]>> solutions = new ArrayList<>();
+
+            for (Future<ArrayList<String[]>> solve : section.solves) {
+                try {
+                    if (timeoutMillis < 0) {
+                        solutions.add(solve.get());
+                    } else {
+                        solutions.add(solve.get(
+                                Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                    }
+                } catch (TimeoutException e) {
+                    break;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Solve failed.", e.getCause());
+                }
+            }
+
+            if (solutions.size() == section.solves.size()) {
+                section.formatter.format(tip, solutions);
+            } else {
+                isPartial = true;
+            }
+        }
+
+        return new Text(tip.toString().trim(), isPartial);
+    }
+
+    /**
+     * Cancels any solves of the tip that have not yet started. Solves that are already running
+     * will finish, but their solutions are discarded.
+     */
+    public void cancel() {
+        for (Section section : mSections) {
+            for (Future<ArrayList<String[]>> solve : section.solves) {
+                solve.cancel(false);
+            }
+        }
+
+        sWorkers.purge();
+    }
+}
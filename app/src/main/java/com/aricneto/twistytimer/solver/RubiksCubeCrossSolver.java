@@ -26,6 +26,8 @@ public class RubiksCubeCrossSolver {
     }
 
     // constants
+    private static final int N_MOVES = 18;
+
     private static int N_EDGES_COMBINATIONS = 495;
     private static int N_EDGES_PERMUTATIONS = 24;
     private static int N_EDGES_ORIENTATIONS = 16;
@@ -44,32 +46,32 @@ public class RubiksCubeCrossSolver {
     }
 
     // move tables
-    private static int[][] edgesPermutationMove;
-    private static int[][] edgesOrientationMove;
+    private static short[] edgesPermutationMove;
+    private static short[] edgesOrientationMove;
 
     static {
         // edges permutation
-        edgesPermutationMove = new int[N_EDGES_COMBINATIONS * N_EDGES_PERMUTATIONS][moves.length];
+        edgesPermutationMove = new short[N_EDGES_COMBINATIONS * N_EDGES_PERMUTATIONS * N_MOVES];
         for (int i = 0; i < N_EDGES_COMBINATIONS; i++) {
             for (int j = 0; j < N_EDGES_PERMUTATIONS; j++) {
                 State state = indicesToState(new int[] { i, j, 0 });
-                for (int k = 0; k < moves.length; k++) {
+                for (int k = 0; k < N_MOVES; k++) {
                     int[] indices = stateToIndices(state.multiply(moves[k]));
-                    edgesPermutationMove[i * N_EDGES_PERMUTATIONS + j][k] =
-                            indices[0] * N_EDGES_PERMUTATIONS + indices[1];
+                    edgesPermutationMove[(i * N_EDGES_PERMUTATIONS + j) * N_MOVES + k] =
+                            (short) (indices[0] * N_EDGES_PERMUTATIONS + indices[1]);
                 }
             }
         }
 
         // edges orientation
-        edgesOrientationMove = new int[N_EDGES_COMBINATIONS * N_EDGES_ORIENTATIONS][moves.length];
+        edgesOrientationMove = new short[N_EDGES_COMBINATIONS * N_EDGES_ORIENTATIONS * N_MOVES];
         for (int i = 0; i < N_EDGES_COMBINATIONS; i++) {
             for (int j = 0; j < N_EDGES_ORIENTATIONS; j++) {
                 State state = indicesToState(new int[] { i, 0, j });
-                for (int k = 0; k < moves.length; k++) {
+                for (int k = 0; k < N_MOVES; k++) {
                     int[] indices = stateToIndices(state.multiply(moves[k]));
-                    edgesOrientationMove[i * N_EDGES_ORIENTATIONS + j][k] =
-                            indices[0] * N_EDGES_ORIENTATIONS + indices[2];
+                    edgesOrientationMove[(i * N_EDGES_ORIENTATIONS + j) * N_MOVES + k] =
+                            (short) (indices[0] * N_EDGES_ORIENTATIONS + indices[2]);
                 }
             }
         }
@@ -152,30 +154,30 @@ public class RubiksCubeCrossSolver {
                 edgesOrientation);
     }
 
-    // distance tables
+    // distance tables (packed, see SolverTables)
     private static byte[] edgesPermutationDistance;
     private static byte[] edgesOrientationDistance;
 
     static {
         // edges permutation
-        edgesPermutationDistance = new byte[N_EDGES_COMBINATIONS * N_EDGES_PERMUTATIONS];
-        for (int i = 0; i < edgesPermutationDistance.length; i++) {
-            edgesPermutationDistance[i] = -1;
+        byte[] edgesPermutationDistances = new byte[N_EDGES_COMBINATIONS * N_EDGES_PERMUTATIONS];
+        for (int i = 0; i < edgesPermutationDistances.length; i++) {
+            edgesPermutationDistances[i] = -1;
         }
-        edgesPermutationDistance[goalEdgesPermutation] = 0;
+        edgesPermutationDistances[goalEdgesPermutation] = 0;
 
         int distance = 0;
         int nVisited = 1;
         while (nVisited < N_EDGES_COMBINATIONS * N_EDGES_PERMUTATIONS) {
-            for (int i = 0; i < edgesPermutationDistance.length; i++) {
-                if (edgesPermutationDistance[i] != distance) {
+            for (int i = 0; i < edgesPermutationDistances.length; i++) {
+                if (edgesPermutationDistances[i] != distance) {
                     continue;
                 }
 
-                for (int j = 0; j < edgesPermutationMove[i].length; j++) {
-                    int next = edgesPermutationMove[i][j];
-                    if (edgesPermutationDistance[next] < 0) {
-                        edgesPermutationDistance[next] = (byte) (distance + 1);
+                for (int j = 0; j < N_MOVES; j++) {
+                    int next = edgesPermutationMove[i * N_MOVES + j];
+                    if (edgesPermutationDistances[next] < 0) {
+                        edgesPermutationDistances[next] = (byte) (distance + 1);
                         nVisited++;
                     }
                 }
@@ -184,26 +186,28 @@ public class RubiksCubeCrossSolver {
             distance++;
         }
 
+        edgesPermutationDistance = SolverTables.packDistances(edgesPermutationDistances);
+
 
         // edges orientation
-        edgesOrientationDistance = new byte[N_EDGES_COMBINATIONS * N_EDGES_ORIENTATIONS];
-        for (int i = 0; i < edgesOrientationDistance.length; i++) {
-            edgesOrientationDistance[i] = -1;
+        byte[] edgesOrientationDistances = new byte[N_EDGES_COMBINATIONS * N_EDGES_ORIENTATIONS];
+        for (int i = 0; i < edgesOrientationDistances.length; i++) {
+            edgesOrientationDistances[i] = -1;
         }
-        edgesOrientationDistance[goalEdgesOrientation] = 0;
+        edgesOrientationDistances[goalEdgesOrientation] = 0;
 
         distance = 0;
         nVisited = 1;
         while (nVisited < N_EDGES_COMBINATIONS * N_EDGES_ORIENTATIONS) {
-            for (int i = 0; i < edgesOrientationDistance.length; i++) {
-                if (edgesOrientationDistance[i] != distance) {
+            for (int i = 0; i < edgesOrientationDistances.length; i++) {
+                if (edgesOrientationDistances[i] != distance) {
                     continue;
                 }
 
-                for (int j = 0; j < edgesOrientationMove[i].length; j++) {
-                    int next = edgesOrientationMove[i][j];
-                    if (edgesOrientationDistance[next] < 0) {
-                        edgesOrientationDistance[next] = (byte) (distance + 1);
+                for (int j = 0; j < N_MOVES; j++) {
+                    int next = edgesOrientationMove[i * N_MOVES + j];
+                    if (edgesOrientationDistances[next] < 0) {
+                        edgesOrientationDistances[next] = (byte) (distance + 1);
                         nVisited++;
                     }
                 }
@@ -211,6 +215,8 @@ public class RubiksCubeCrossSolver {
 
             distance++;
         }
+
+        edgesOrientationDistance = SolverTables.packDistances(edgesOrientationDistances);
     }
 
     public static ArrayList<String[]> solve(State state) {
@@ -264,16 +270,24 @@ public class RubiksCubeCrossSolver {
             return;
         }
 
-        if (edgesPermutationDistance[edgesPermutation] > depth ||
-                edgesOrientationDistance[edgesOrientation] > depth) {
+        if (SolverTables.getPackedDistance(edgesPermutationDistance, edgesPermutation) > depth ||
+                SolverTables.getPackedDistance(edgesOrientationDistance, edgesOrientation) > depth) {
             return;
         }
 
-        for (int i = 0; i < moves.length; i++) {
+        // the moves of each face are consecutive in "moves", in groups of three
+        int lastFace = depth < path.length ? path[path.length - depth - 1] / 3 : -1;
+
+        for (int i = 0; i < N_MOVES; i++) {
+            // a solution turning the same face twice in a row cannot be optimal
+            if (i / 3 == lastFace) {
+                continue;
+            }
+
             path[path.length - depth] = i;
             search(
-                    edgesPermutationMove[edgesPermutation][i],
-                    edgesOrientationMove[edgesOrientation][i],
+                    edgesPermutationMove[edgesPermutation * N_MOVES + i],
+                    edgesOrientationMove[edgesOrientation * N_MOVES + i],
                     depth - 1,
                     path,
                     solutions);
@@ -5,7 +5,11 @@ import com.aricneto.twistytimer.solver.RubiksCubeSolver.State;
 import com.aricneto.twistytimer.utils.DefaultPrefs;
 import com.aricneto.twistytimer.utils.Prefs;
 
+import java.util.Collections;
+
 public class RubiksCubeOptimalCross implements Tip {
+    private static final int MAX_COUNT = 3;
+
     private static State x;
     private static State z;
     private String description;
@@ -45,101 +49,79 @@ public class RubiksCubeOptimalCross implements Tip {
 
     @Override
     public String getTip(String scramble) {
-        int maxCount = 3;
-        int count = 0;
+        try {
+            return getPendingTip(scramble).getText();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    /**
+     * Starts finding the optimal crosses for a scramble. The cross on each enabled face is solved
+     * in parallel.
+     *
+     * @param scramble
+     *     The scramble sequence.
+     *
+     * @return
+     *     The tip, which is complete when the crosses on all of the enabled faces are solved.
+     */
+    public PendingTip getPendingTip(String scramble) {
         State state = State.id.applySequence(scramble.split(" "));
 
-        StringBuilder tip = new StringBuilder();
+        PendingTip tip = new PendingTip();
 
         // cross on U
         if (Prefs.getBoolean(R.string.pk_cross_hint_top_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintTopEnabled))) {
-            count = 0; // limit number of algs
-            State stateU =
-                    x.multiply(x).multiply(state).multiply(x).multiply(x);
-            tip.append(String.format(description, "U")).append("\n");
-            for (String[] solution : RubiksCubeCrossSolver.solve(stateU)) {
-                tip.append("  x2 ").append(StringUtils.join(" ", solution)).append('\n');
-                count++;
-                if (count == maxCount)
-                    break;
-            }
-            tip.append("\n");
+            addCross(tip, "U", x.multiply(x).multiply(state).multiply(x).multiply(x), "x2 ");
         }
 
         // cross on D
         if (Prefs.getBoolean(R.string.pk_cross_hint_down_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintDownEnabled))) {
-            count = 0;
-            tip.append(String.format(description, "D")).append("\n");
-            for (String[] solution : RubiksCubeCrossSolver.solve(state)) {
-                tip.append("  ").append(StringUtils.join(" ", solution)).append('\n');
-                count++;
-                if (count == maxCount)
-                    break;
-            }
-            tip.append("\n");
+            addCross(tip, "D", state, "");
         }
 
         // cross on L
         if (Prefs.getBoolean(R.string.pk_cross_hint_left_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintLeftEnabled))) {
-            count = 0;
-            State stateL =
-                    z.multiply(state).multiply(z).multiply(z).multiply(z);
-            tip.append(String.format(description, "L")).append("\n");
-            for (String[] solution : RubiksCubeCrossSolver.solve(stateL)) {
-                tip.append("  z' ").append(StringUtils.join(" ", solution)).append('\n');
-                count++;
-                if (count == maxCount)
-                    break;
-            }
-            tip.append("\n");
+            addCross(tip, "L", z.multiply(state).multiply(z).multiply(z).multiply(z), "z' ");
         }
 
         // cross on R
         if (Prefs.getBoolean(R.string.pk_cross_hint_right_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintRightEnabled))) {
-            count = 0;
-            State stateR =
-                    z.multiply(z).multiply(z).multiply(state).multiply(z);
-            tip.append(String.format(description, "R")).append("\n");
-            for (String[] solution : RubiksCubeCrossSolver.solve(stateR)) {
-                tip.append("  z ").append(StringUtils.join(" ", solution)).append('\n');
-                count++;
-                if (count == maxCount)
-                    break;
-            }
-            tip.append("\n");
+            addCross(tip, "R", z.multiply(z).multiply(z).multiply(state).multiply(z), "z ");
         }
 
         // cross on F
         if (Prefs.getBoolean(R.string.pk_cross_hint_front_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintFrontEnabled))) {
-            count = 0;
-            State stateF =
-                    x.multiply(state).multiply(x).multiply(x).multiply(x);
-            tip.append(String.format(description, "F")).append("\n");
-            for (String[] solution : RubiksCubeCrossSolver.solve(stateF)) {
-                tip.append("  x' ").append(StringUtils.join(" ", solution)).append('\n');
-                count++;
-                if (count == maxCount)
-                    break;
-            }
-            tip.append("\n");
+            addCross(tip, "F", x.multiply(state).multiply(x).multiply(x).multiply(x), "x' ");
         }
 
         // cross on B
         if (Prefs.getBoolean(R.string.pk_cross_hint_back_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintBackEnabled))) {
-            count = 0;
-            State stateB =
-                    x.multiply(x).multiply(x).multiply(state).multiply(x);
-            tip.append(String.format(description, "B")).append("\n");
-            for (String[] solution : RubiksCubeCrossSolver.solve(stateB)) {
-                tip.append("  x ").append(StringUtils.join(" ", solution)).append('\n');
-                count++;
-                if (count == maxCount)
-                    break;
-            }
-            tip.append("\n");
+            addCross(tip, "B", x.multiply(x).multiply(x).multiply(state).multiply(x), "x ");
         }
 
-        return tip.toString().trim();
+        return tip;
+    }
+
+    private void addCross(PendingTip tip, String face, State state, String rotation) {
+        final String prefix = "  " + rotation;
+
+        tip.addSection(
+                Collections.singletonList(() -> RubiksCubeCrossSolver.solve(state)),
+                (text, solutions) -> {
+                    int count = 0; // limit number of algs
+
+                    text.append(String.format(description, face)).append("\n");
+                    for (String[] solution : solutions.get(0)) {
+                        text.append(prefix).append(StringUtils.join(" ", solution)).append('\n');
+                        count++;
+                        if (count == MAX_COUNT)
+                            break;
+                    }
+                    text.append("\n");
+                });
     }
 
     @Override
@@ -6,6 +6,8 @@ import com.aricneto.twistytimer.utils.DefaultPrefs;
 import com.aricneto.twistytimer.utils.Prefs;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class RubiksCubeOptimalXCross implements Tip {
     private static State x;
@@ -55,110 +57,96 @@ public class RubiksCubeOptimalXCross implements Tip {
 
     @Override
     public String getTip(String scramble) {
+        try {
+            return getPendingTip(scramble).getText();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    /**
+     * Starts finding the optimal X-crosses for a scramble. The X-cross for each slot on each
+     * enabled face is solved in parallel.
+     *
+     * @param scramble
+     *     The scramble sequence.
+     *
+     * @return
+     *     The tip, which is complete when the X-crosses on all of the enabled faces are solved.
+     */
+    public PendingTip getPendingTip(String scramble) {
         State state = State.id.applySequence(scramble.split(" "));
 
-        StringBuilder tip = new StringBuilder();
+        PendingTip tip = new PendingTip();
 
 
         // x-cross on U
         if (Prefs.getBoolean(R.string.pk_cross_hint_top_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintTopEnabled))) {
-            State stateU = x.multiply(x).multiply(state).multiply(x).multiply(x);
-            tip.append(String.format(description, "U")).append("\n");
-            tip.append(getOptimalSolutions(stateU, "x2 "));
-            tip.append("\n");
+            addOptimalSolutions(tip, "U", x.multiply(x).multiply(state).multiply(x).multiply(x), "x2 ");
         }
 
         // x-cross on D
         if (Prefs.getBoolean(R.string.pk_cross_hint_down_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintDownEnabled))) {
-            tip.append(String.format(description, "D")).append("\n");
-            tip.append(getOptimalSolutions(state, "")); // state == "stateD"
-            tip.append("\n");
+            addOptimalSolutions(tip, "D", state, ""); // state == "stateD"
         }
 
         // x-cross on L
         if (Prefs.getBoolean(R.string.pk_cross_hint_left_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintLeftEnabled))) {
-            State stateL = z.multiply(state).multiply(z).multiply(z).multiply(z);
-            tip.append(String.format(description, "L")).append("\n");
-            tip.append(getOptimalSolutions(stateL, "z' "));
-            tip.append("\n");
+            addOptimalSolutions(tip, "L", z.multiply(state).multiply(z).multiply(z).multiply(z), "z' ");
         }
 
         // x-cross on R
         if (Prefs.getBoolean(R.string.pk_cross_hint_right_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintRightEnabled))) {
-            State stateR = z.multiply(z).multiply(z).multiply(state).multiply(z);
-            tip.append(String.format(description, "R")).append("\n");
-            tip.append(getOptimalSolutions(stateR, "z "));
-            tip.append("\n");
+            addOptimalSolutions(tip, "R", z.multiply(z).multiply(z).multiply(state).multiply(z), "z ");
         }
 
         // x-cross on F
         if (Prefs.getBoolean(R.string.pk_cross_hint_front_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintFrontEnabled))) {
-            State stateF = x.multiply(state).multiply(x).multiply(x).multiply(x);
-            tip.append(String.format(description, "F")).append("\n");
-            tip.append(getOptimalSolutions(stateF, "x' "));
-            tip.append("\n");
+            addOptimalSolutions(tip, "F", x.multiply(state).multiply(x).multiply(x).multiply(x), "x' ");
         }
 
         // x-cross on B
         if (Prefs.getBoolean(R.string.pk_cross_hint_back_enabled, DefaultPrefs.getBoolean(R.bool.default_crossHintBackEnabled))) {
-            State stateB = x.multiply(x).multiply(x).multiply(state).multiply(x);
-            tip.append(String.format(description, "B")).append("\n");
-            tip.append(getOptimalSolutions(stateB, "x "));
-            tip.append("\n");
+            addOptimalSolutions(tip, "B", x.multiply(x).multiply(x).multiply(state).multiply(x), "x ");
         }
 
-        return tip.toString().trim();
+        return tip;
     }
 
-    private String getOptimalSolutions(State state, String prefix) {
-        int count = 0;
+    private void addOptimalSolutions(PendingTip tip, String face, State state, String prefix) {
+        String[] prefixes = { prefix, prefix + "y ", prefix + "y2 ", prefix + "y' " };
+
+        tip.addSection(
+                Arrays.asList(
+                        // id
+                        () -> RubiksCubeXCrossSolver.solve(state),
+                        // y
+                        () -> RubiksCubeXCrossSolver.solve(y.multiply(y).multiply(y).multiply(state).multiply(y)),
+                        // y2
+                        () -> RubiksCubeXCrossSolver.solve(y.multiply(y).multiply(state).multiply(y).multiply(y)),
+                        // y'
+                        () -> RubiksCubeXCrossSolver.solve(y.multiply(state).multiply(y).multiply(y).multiply(y))),
+                (text, slotSolutions) -> {
+                    text.append(String.format(description, face)).append("\n");
+                    text.append(getOptimalSolutions(slotSolutions, prefixes));
+                    text.append("\n");
+                });
+    }
 
+    private static String getOptimalSolutions(List<ArrayList<String[]>> slotSolutions, String[] slotPrefixes) {
         ArrayList<String> prefixes = new ArrayList<>();
         ArrayList<String[]> solutions = new ArrayList<>();
 
-        // id
-        for (String[] solution : RubiksCubeXCrossSolver.solve(state)) {
-            prefixes.add(prefix);
-            solutions.add(solution);
-            count++;
-            if (count == 2) {
-                break;
-            }
-        }
-
-        // y
-        count = 0;
-        State stateY = y.multiply(y).multiply(y).multiply(state).multiply(y);
-        for (String[] solution : RubiksCubeXCrossSolver.solve(stateY)) {
-            prefixes.add(prefix + "y ");
-            solutions.add(solution);
-            count++;
-            if (count == 2) {
-                break;
-            }
-        }
-
-        // y2
-        count = 0;
-        State stateY2 = y.multiply(y).multiply(state).multiply(y).multiply(y);
-        for (String[] solution : RubiksCubeXCrossSolver.solve(stateY2)) {
-            prefixes.add(prefix + "y2 ");
-            solutions.add(solution);
-            count++;
-            if (count == 2) {
-                break;
-            }
-        }
-
-        // y'
-        count = 0;
-        State stateY3 = y.multiply(state).multiply(y).multiply(y).multiply(y);
-        for (String[] solution : RubiksCubeXCrossSolver.solve(stateY3)) {
-            prefixes.add(prefix + "y' ");
-            solutions.add(solution);
-            count++;
-            if (count == 2) {
-                break;
+        for (int slot = 0; slot < slotSolutions.size(); slot++) {
+            int count = 0;
+            for (String[] solution : slotSolutions.get(slot)) {
+                prefixes.add(slotPrefixes[slot]);
+                solutions.add(solution);
+                count++;
+                if (count == 2) {
+                    break;
+                }
             }
         }
 
@@ -0,0 +1,60 @@
+package com.aricneto.twistytimer.solver;
+
+/**
+ * Packs and unpacks the pruning tables of the cross and X-cross solvers. The distances are packed
+ * as two 4-bit values per byte: the distance at an even index is in the low nibble and the
+ * distance at the next odd index is in the high nibble. This halves the memory held by the tables
+ * once the first hint has been requested.
+ */
+public final class SolverTables {
+    /**
+     * The largest distance that can be stored in a packed pruning table.
+     */
+    public static final int MAX_PACKED_DISTANCE = 15;
+
+    private SolverTables() {
+    }
+
+    /**
+     * Packs the distances of a pruning table, two distances per byte.
+     *
+     * @param distances
+     *     The distances to be packed. Each must be between zero and {@link #MAX_PACKED_DISTANCE}.
+     *
+     * @return
+     *     The packed distances.
+     */
+    static byte[] packDistances(byte[] distances) {
+        final byte[] packed = new byte[(distances.length + 1) / 2];
+
+        for (int i = 0; i < distances.length; i += 2) {
+            final int low = distances[i];
+            final int high = i + 1 < distances.length ? distances[i + 1] : 0;
+
+            if (low < 0 || low > MAX_PACKED_DISTANCE || high < 0 || high > MAX_PACKED_DISTANCE) {
+                throw new IllegalStateException("Distance cannot be packed: " + low + ", " + high);
+            }
+
+            packed[i >> 1] = (byte) (high << 4 | low);
+        }
+
+        return packed;
+    }
+
+    /**
+     * Gets a distance from a packed pruning table.
+     *
+     * @param table
+     *     The packed pruning table.
+     * @param index
+     *     The index of the distance.
+     *
+     * @return
+     *     The distance.
+     */
+    static int getPackedDistance(byte[] table, int index) {
+        final int b = table[index >> 1];
+
+        return (index & 1) == 0 ? b & 0x0F : (b >> 4) & 0x0F;
+    }
+}
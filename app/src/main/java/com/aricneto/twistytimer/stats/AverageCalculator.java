@@ -4,12 +4,11 @@ import android.util.Log;
 
 import com.aricneto.twistytimer.items.AverageComponent;
 import com.aricneto.twistytimer.utils.PuzzleUtils;
-import com.aricneto.twistytimer.utils.StatUtils;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 
 /**
  * Calculates the average time of a number of puzzle solves. Running averages are easily calculated
@@ -73,6 +72,12 @@ public final class AverageCalculator {
      */
     private final int mN;
 
+    /**
+     * The percentage of the solve times trimmed from each end of the sorted times before the
+     * average is calculated.
+     */
+    private final int mTrimPercent;
+
     /**
      * Indicates if averages should be reported as {@link #DNF}s if too many solve times are DNFs.
      * The number of DNFs that constitute "too many" varies with the value of {@link #mN}.
@@ -213,6 +218,7 @@ public final class AverageCalculator {
         }
 
         mN = n;
+        mTrimPercent = trimPercent;
         mTimes = new long[n];
         mDisqualifyDNFs = true;
 
@@ -221,9 +227,11 @@ public final class AverageCalculator {
         mLowerTrimBound = mTrimSize;
         mUpperTrimBound = mN - mTrimSize;
 
-        mUpperTrim = new AverageComponent();
-        mMiddleTrim = new AverageComponent();
-        mLowerTrim = new AverageComponent();
+        // Each trim is pre-sized to hold its share of the "n" times, so that no further
+        // allocation is needed once the calculator is created.
+        mUpperTrim = new AverageComponent(mTrimSize);
+        mMiddleTrim = new AverageComponent(mN - mTrimSize * 2);
+        mLowerTrim = new AverageComponent(mTrimSize);
 
         // As "reset()" needs to be supported to ensure a sane state can be guaranteed before
         // populating statistics from the database, it makes sense to use it to initialise the
@@ -231,6 +239,16 @@ public final class AverageCalculator {
         reset();
     }
 
+    /**
+     * Creates a new calculator for the same "average of <i>n</i>" as this calculator, with the
+     * same trim, but with no solve times added.
+     *
+     * @return The new calculator.
+     */
+    AverageCalculator newEmptyCopy() {
+        return new AverageCalculator(mN, mTrimPercent);
+    }
+
     /**
      * Resets all statistics and averages that have been collected previously.
      */
@@ -247,9 +265,9 @@ public final class AverageCalculator {
         mVarianceDelta2 = 0;
         mVarianceM2 = 0;
 
-        mMiddleTrim = new AverageComponent();
-        mLowerTrim = new AverageComponent();
-        mUpperTrim = new AverageComponent();
+        mMiddleTrim.clear();
+        mLowerTrim.clear();
+        mUpperTrim.clear();
 
         mCurrentSum = UNKNOWN;
         mAllTimeSum = UNKNOWN;
@@ -262,6 +280,97 @@ public final class AverageCalculator {
         mVariance = UNKNOWN;
     }
 
+    /**
+     * Writes the full state of this calculator, so that it can be restored later by
+     * {@link #readFrom(DataInput)} without adding all of the times again.
+     *
+     * @param out The output to which to write the state.
+     *
+     * @throws IOException If the state cannot be written.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        // "mN" and "mTrimSize" are not part of the state, but they are written so that a state
+        // saved with a different configuration (e.g., a changed trim preference) is rejected.
+        out.writeInt(mN);
+        out.writeInt(mTrimSize);
+
+        for (final long time : mTimes) {
+            out.writeLong(time);
+        }
+        out.writeInt(mNext);
+        out.writeInt(mNumSolves);
+        out.writeInt(mNumCurrentDNFs);
+        out.writeInt(mNumAllTimeDNFs);
+
+        out.writeDouble(mMean);
+        out.writeDouble(mVarianceDelta);
+        out.writeDouble(mVarianceDelta2);
+        out.writeDouble(mVarianceM2);
+        out.writeLong(mVariance);
+
+        out.writeLong(mCurrentSum);
+        out.writeLong(mAllTimeSum);
+        out.writeLong(mCurrentBestTime);
+        out.writeLong(mCurrentWorstTime);
+        out.writeLong(mCurrentAverage);
+        out.writeLong(mAllTimeBestTime);
+        out.writeLong(mAllTimeWorstTime);
+        out.writeLong(mAllTimeBestAverage);
+
+        mLowerTrim.writeTo(out);
+        mMiddleTrim.writeTo(out);
+        mUpperTrim.writeTo(out);
+    }
+
+    /**
+     * Replaces the state of this calculator with a state previously written by
+     * {@link #writeTo(DataOutput)}. Times added afterwards give the same results as if they had
+     * been added to the calculator that wrote the state.
+     *
+     * @param in The input from which to read the state.
+     *
+     * @throws IOException
+     *     If the state cannot be read, or if it was written by a calculator with a different
+     *     value of "n" or a different trim size. The state of this calculator is undefined if
+     *     this exception is thrown, so it should be reset.
+     */
+    void readFrom(DataInput in) throws IOException {
+        final int n = in.readInt();
+        final int trimSize = in.readInt();
+
+        if (n != mN || trimSize != mTrimSize) {
+            throw new IOException("Saved state for n=" + n + ", trim=" + trimSize
+                                  + " does not match n=" + mN + ", trim=" + mTrimSize);
+        }
+
+        for (int i = 0; i < mN; i++) {
+            mTimes[i] = in.readLong();
+        }
+        mNext = in.readInt();
+        mNumSolves = in.readInt();
+        mNumCurrentDNFs = in.readInt();
+        mNumAllTimeDNFs = in.readInt();
+
+        mMean = in.readDouble();
+        mVarianceDelta = in.readDouble();
+        mVarianceDelta2 = in.readDouble();
+        mVarianceM2 = in.readDouble();
+        mVariance = in.readLong();
+
+        mCurrentSum = in.readLong();
+        mAllTimeSum = in.readLong();
+        mCurrentBestTime = in.readLong();
+        mCurrentWorstTime = in.readLong();
+        mCurrentAverage = in.readLong();
+        mAllTimeBestTime = in.readLong();
+        mAllTimeWorstTime = in.readLong();
+        mAllTimeBestAverage = in.readLong();
+
+        mLowerTrim.readFrom(in);
+        mMiddleTrim.readFrom(in);
+        mUpperTrim.readFrom(in);
+    }
+
     /**
      * Gets the number of solve times that are included in the average. This is inclusive of any
      * times, such as the best and worst times, that are excluded when calculating the truncated
@@ -323,8 +432,8 @@ public final class AverageCalculator {
                     mTimes[mNext] = time;
 
                     // Sort mTimes
-                    List<Long> sortedTimes = new ArrayList<>(StatUtils.asList(mTimes));
-                    Collections.sort(sortedTimes);
+                    final long[] sortedTimes = mTimes.clone();
+                    Arrays.sort(sortedTimes);
 
                     // Distribute the sorted times into the trims
                     int count = 0;
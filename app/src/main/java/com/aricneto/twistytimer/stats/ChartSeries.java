@@ -0,0 +1,341 @@
+package com.aricneto.twistytimer.stats;
+
+import java.util.Arrays;
+
+/**
+ * A series of points for a chart that is held at several levels of detail, so that a chart of a
+ * long history of solve times is only given about as many points as it can show at its current
+ * zoom level. The points must be added in ascending order of their X-values.
+ *
+ * <p>Level zero holds every point. Each higher level divides the points into buckets of four times
+ * as many consecutive points as the level below and keeps the points with the lowest and highest
+ * Y-values in each bucket. The peaks and troughs of the series are therefore drawn at every level.
+ * The buckets are updated as each point is added, so the levels are ready as soon as the last
+ * point has been added. A point may also be "pinned", such as a new best time. A pinned point is
+ * included at every level, so a marker drawn at that point is always on the line.</p>
+ */
+class ChartSeries {
+    /**
+     * The number of bits by which the index of a point is shifted to find its bucket at the next
+     * level. Each bucket at one level covers four buckets at the level below.
+     */
+    private static final int LEVEL_SHIFT = 2;
+
+    /**
+     * The number of levels of detail, including level zero. The buckets at the highest level each
+     * cover 65,536 points.
+     */
+    private static final int NUM_LEVELS = 9;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private float[] mXs = new float[INITIAL_CAPACITY];
+    private float[] mYs = new float[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * The indices of the points with the lowest and highest Y-values in each bucket at each level.
+     * The arrays at index zero are not used, as level zero has no buckets.
+     */
+    private final int[][] mMins = new int[NUM_LEVELS][];
+    private final int[][] mMaxs = new int[NUM_LEVELS][];
+
+    /**
+     * The indices of the points with the lowest and highest Y-values in the series. These are
+     * always selected, so the range of the Y-axis does not change when other points are selected.
+     */
+    private int mMinIndex;
+    private int mMaxIndex;
+
+    /**
+     * The indices of the pinned points, in ascending order.
+     */
+    private int[] mPinned = new int[INITIAL_CAPACITY];
+    private int mNumPinned;
+
+    /**
+     * Creates a new, empty series.
+     */
+    ChartSeries() {
+        for (int level = 1; level < NUM_LEVELS; level++) {
+            mMins[level] = new int[INITIAL_CAPACITY];
+            mMaxs[level] = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Adds a point to the end of the series.
+     *
+     * @param x        The X-value of the point. Must not be less than that of the previous point.
+     * @param y        The Y-value of the point.
+     * @param isPinned {@code true} if the point must be selected at every level of detail.
+     */
+    void add(float x, float y, boolean isPinned) {
+        final int index = mSize;
+
+        if (index == mXs.length) {
+            mXs = Arrays.copyOf(mXs, index * 2);
+            mYs = Arrays.copyOf(mYs, index * 2);
+        }
+        mXs[index] = x;
+        mYs[index] = y;
+        mSize++;
+
+        for (int level = 1; level < NUM_LEVELS; level++) {
+            final int bucket = index >> (LEVEL_SHIFT * level);
+            final int[] mins = mMins[level];
+            final int[] maxs = mMaxs[level];
+
+            if (index == bucket << (LEVEL_SHIFT * level)) {
+                // The first point in a new bucket.
+                if (bucket == mins.length) {
+                    mMins[level] = Arrays.copyOf(mins, bucket * 2);
+                    mMaxs[level] = Arrays.copyOf(maxs, bucket * 2);
+                }
+                mMins[level][bucket] = index;
+                mMaxs[level][bucket] = index;
+            } else {
+                if (y < mYs[mins[bucket]]) {
+                    mins[bucket] = index;
+                }
+                if (y > mYs[maxs[bucket]]) {
+                    maxs[bucket] = index;
+                }
+            }
+        }
+
+        if (index == 0 || y < mYs[mMinIndex]) {
+            mMinIndex = index;
+        }
+        if (index == 0 || y > mYs[mMaxIndex]) {
+            mMaxIndex = index;
+        }
+
+        if (isPinned) {
+            if (mNumPinned == mPinned.length) {
+                mPinned = Arrays.copyOf(mPinned, mNumPinned * 2);
+            }
+            mPinned[mNumPinned++] = index;
+        }
+    }
+
+    /**
+     * Gets the number of points in the series.
+     *
+     * @return The number of points.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets the X-value of a point.
+     *
+     * @param index The index of the point, from zero to one less than {@link #size()}.
+     *
+     * @return The X-value of the point.
+     */
+    float getX(int index) {
+        return mXs[index];
+    }
+
+    /**
+     * Gets the Y-value of a point.
+     *
+     * @param index The index of the point, from zero to one less than {@link #size()}.
+     *
+     * @return The Y-value of the point.
+     */
+    float getY(int index) {
+        return mYs[index];
+    }
+
+    /**
+     * Selects the points to be given to a chart that shows the given range of X-values in detail.
+     * The points in the range (and the nearest point on either side of it) are selected from the
+     * finest level of detail that has no more than {@code maxPoints} points in that range. The
+     * points outside of the range are selected from the finest level that has no more than
+     * {@code maxPoints} points in the whole series, so that the line extends to both ends of the
+     * X-axis. The first and last points, the points with the lowest and highest Y-values and all
+     * pinned points are always selected.
+     *
+     * @param fromX     The lowest X-value of the range to be shown in detail.
+     * @param toX       The highest X-value of the range to be shown in detail.
+     * @param maxPoints The maximum number of points to select for the range and for the rest of
+     *                  the series, not counting those points that are always selected.
+     *
+     * @return The indices of the selected points, in ascending order.
+     */
+    int[] select(float fromX, float toX, int maxPoints) {
+        if (mSize == 0) {
+            return new int[0];
+        }
+
+        // Include the points just outside the range, so the line runs to the edges of the chart.
+        final int first = Math.max(0, lowerBound(fromX) - 1);
+        final int end = Math.max(first + 1, Math.min(mSize, upperBound(toX) + 1));
+        final int fineLevel = getLevel(first, end, maxPoints);
+        final int coarseLevel = getLevel(0, mSize, maxPoints);
+
+        final IndexList selected = new IndexList(2 * maxPoints + mNumPinned + 4);
+
+        selected.add(0);
+        selected.add(mSize - 1);
+        selected.add(mMinIndex);
+        selected.add(mMaxIndex);
+        selected.addAll(mPinned, mNumPinned);
+
+        if (fineLevel >= coarseLevel) {
+            // The whole series is no more detailed than the range needs.
+            selectLevel(0, mSize, coarseLevel, selected);
+        } else {
+            // Align the range to whole buckets, so the points at its edges are selected in the
+            // same way at the same level, whatever the range.
+            final int shift = LEVEL_SHIFT * fineLevel;
+            final int fineStart = (first >> shift) << shift;
+            final int fineEnd = Math.min(mSize, (((end - 1) >> shift) + 1) << shift);
+
+            selectLevel(0, fineStart, coarseLevel, selected);
+            selectLevel(fineStart, fineEnd, fineLevel, selected);
+            selectLevel(fineEnd, mSize, coarseLevel, selected);
+        }
+
+        return selected.toSortedUniqueArray();
+    }
+
+    /**
+     * Selects the points in a range of indices from a level of detail. Where a bucket is only
+     * partly in the range, only its points that are in the range are selected.
+     */
+    private void selectLevel(int start, int end, int level, IndexList selected) {
+        if (start >= end) {
+            return;
+        }
+
+        if (level == 0) {
+            for (int index = start; index < end; index++) {
+                selected.add(index);
+            }
+            return;
+        }
+
+        final int shift = LEVEL_SHIFT * level;
+        final int[] mins = mMins[level];
+        final int[] maxs = mMaxs[level];
+
+        for (int bucket = start >> shift, last = (end - 1) >> shift; bucket <= last; bucket++) {
+            final int min = mins[bucket];
+            final int max = maxs[bucket];
+
+            if (min >= start && min < end) {
+                selected.add(min);
+            }
+            if (max >= start && max < end) {
+                selected.add(max);
+            }
+        }
+    }
+
+    /**
+     * Gets the finest level of detail that has no more than the given number of points in a range
+     * of indices. If every level has more points, the coarsest level is returned.
+     */
+    private static int getLevel(int start, int end, int maxPoints) {
+        if (end - start <= maxPoints) {
+            return 0;
+        }
+
+        for (int level = 1; level < NUM_LEVELS; level++) {
+            final int shift = LEVEL_SHIFT * level;
+            final int numBuckets = ((end - 1) >> shift) - (start >> shift) + 1;
+
+            if (2 * numBuckets <= maxPoints) {
+                return level;
+            }
+        }
+
+        return NUM_LEVELS - 1;
+    }
+
+    /**
+     * Gets the index of the first point whose X-value is not less than the given value, or
+     * {@link #size()} if there is no such point.
+     */
+    private int lowerBound(float x) {
+        int low = 0;
+        int high = mSize;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+
+            if (mXs[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the index of the first point whose X-value is greater than the given value, or
+     * {@link #size()} if there is no such point.
+     */
+    private int upperBound(float x) {
+        int low = 0;
+        int high = mSize;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+
+            if (mXs[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * A list of the indices of selected points, which may be added in any order and more than
+     * once.
+     */
+    private static class IndexList {
+        private int[] mIndices;
+        private int mCount;
+
+        IndexList(int capacity) {
+            mIndices = new int[capacity];
+        }
+
+        void add(int index) {
+            if (mCount == mIndices.length) {
+                mIndices = Arrays.copyOf(mIndices, mCount * 2);
+            }
+            mIndices[mCount++] = index;
+        }
+
+        void addAll(int[] indices, int count) {
+            for (int i = 0; i < count; i++) {
+                add(indices[i]);
+            }
+        }
+
+        int[] toSortedUniqueArray() {
+            Arrays.sort(mIndices, 0, mCount);
+
+            int numUnique = 0;
+
+            for (int i = 0; i < mCount; i++) {
+                if (numUnique == 0 || mIndices[i] != mIndices[numUnique - 1]) {
+                    mIndices[numUnique++] = mIndices[i];
+                }
+            }
+
+            return Arrays.copyOf(mIndices, numUnique);
+        }
+    }
+}
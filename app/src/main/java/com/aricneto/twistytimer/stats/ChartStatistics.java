@@ -1,6 +1,7 @@
 package com.aricneto.twistytimer.stats;
 
 import android.graphics.Color;
+import android.view.MotionEvent;
 
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.utils.Prefs;
@@ -12,12 +13,17 @@ import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.IValueFormatter;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
 import com.github.mikephil.charting.utils.ViewPortHandler;
 
 import org.joda.time.LocalDate;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.aricneto.twistytimer.stats.AverageCalculator.DNF;
 import static com.aricneto.twistytimer.stats.AverageCalculator.UNKNOWN;
 import static com.aricneto.twistytimer.stats.AverageCalculator.tr;
@@ -114,6 +120,12 @@ public class ChartStatistics {
      */
     private static final int DS_AVG_0 = 2;
 
+    /**
+     * The minimum number of points of each series of times given to the chart for the range shown
+     * in detail. More points are given if the chart is wide enough to show them.
+     */
+    private static final int MIN_DETAIL_POINTS = 300;
+
     /**
      * The collection of statistics that are required to support the calculation of any number of
      * average-of-N lines in the graph.
@@ -152,6 +164,18 @@ public class ChartStatistics {
     // of charts in the future, so the field is "mChartData", not "mLineData".
     private LineData mChartData;
 
+    /**
+     * The series of all solve times. The points of this series that are given to the data set at
+     * {@link #DS_ALL} depend on the range of the chart that is shown.
+     */
+    private ChartSeries mAllTimes;
+
+    /**
+     * The series of average-of-N times for each "N", in the same order as {@link #mNsOfAverages}.
+     * The points given to the main AoN data sets depend on the range of the chart that is shown.
+     */
+    private ChartSeries[] mAoNTimes;
+
     /**
      * The current X-index for the solve time added to the chart.
      */
@@ -266,6 +290,13 @@ public class ChartStatistics {
         // each data set in the chart data. Just create a new one instead.
         mChartData = new LineData();
 
+        // New series, not cleared ones, as the previous series may still be shown by a chart.
+        mAllTimes = new ChartSeries();
+        mAoNTimes = new ChartSeries[mNsOfAverages.length];
+        for (int nIndex = 0; nIndex < mNsOfAverages.length; nIndex++) {
+            mAoNTimes[nIndex] = new ChartSeries();
+        }
+
         // The order in which the data sets are added is important to ensure that "DS_ALL", etc.
         // remain meaningful.
         addMainDataSets(mChartData, mChartStyle.getAllTimesLabel(), mChartStyle.getAllTimesColor(),
@@ -480,11 +511,24 @@ public class ChartStatistics {
         // their values. Therefore, the maximum count needs to be about 3 times higher than the
         // number of solve times that would give rise to the number of "best" times that could have
         // their values shown without much visual overlap.
+        //
+        // The level-of-detail series (see below) keep the number of visible points in proportion
+        // to the width of the chart, not to the number of times, so a large history of times
+        // does not add to the visible count.
         chart.setMaxVisibleValueCount(2_000);
         // Use a custom renderer to draw the values of the best times *below* their data points.
         //chart.setRenderer(new OffsetValuesLineChartRenderer(chart, BEST_TIME_VALUES_Y_OFFSET_DP));
 
+        // The chart is only given the points of the all-times and AoN series that it can show at
+        // its current zoom level. The points are selected again when the chart is zoomed or
+        // panned. The listener holds the current series, so it is not affected by a later reset.
+        final LevelOfDetailListener lodListener
+                = new LevelOfDetailListener(chart, mChartData, mAllTimes, mAoNTimes);
+
+        lodListener.selectPoints(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
         chart.setData(mChartData);
+        chart.setOnChartGestureListener(lodListener);
+        lodListener.update(true);
     }
 
     /**
@@ -547,12 +591,16 @@ public class ChartStatistics {
         mStatistics.addTime(time, true); // May throw IAE.
 
         if (time != DNF) {
-            mChartData.addEntry(new Entry(mXIndex, time / 1_000f), DS_ALL);
+            final boolean isNewBest = time < mBestTime;
+
+            // A new best time is pinned, so the main line passes through the best-times marker at
+            // every level of detail.
+            mAllTimes.add(mXIndex, time / 1_000f, isNewBest);
             isEntryAdded = true;
 
             // Only update the recorded best time if it changes. The result should be a line that
             // traces (if lucky) a staircase descending from left to right (never rising).
-            if (time < mBestTime) {
+            if (isNewBest) {
                 mBestTime = time;
                 mChartData.addEntry(new Entry(mXIndex, mBestTime / 1_000f), DS_BEST);
             }
@@ -569,27 +617,31 @@ public class ChartStatistics {
                 final int aonDSIndex = DS_AVG_0 + 2 * nIndex;
                 final float aonYValue = averageTime / 1_000f;
 
-                mChartData.addEntry(new Entry(mXIndex, aonYValue), aonDSIndex);
-                isEntryAdded = true;
-
                 // Just keep a single entry in each data set for each best AoN; it will be rendered
                 // as a single circle that is coincident with the main AoN line and its value will
                 // be drawn. There is no line charting the *progression* of best AoN times.
                 final LineDataSet bestAoNDS
                         = (LineDataSet) mChartData.getDataSetByIndex(aonDSIndex + 1);
+                final boolean isNewBestAoN;
 
                 if (bestAoNDS.getEntryCount() > 0) { // Should be 0 or 1, nothing more.
                     final Entry oldEntry = bestAoNDS.getEntryForIndex(0); // Not an X-index.
 
-                    if (aonYValue < oldEntry.getY()) {
+                    isNewBestAoN = aonYValue < oldEntry.getY();
+                    if (isNewBestAoN) {
                         // A new best AoN time! Replace the old one with this new one.
                         bestAoNDS.removeEntry(oldEntry);
                         bestAoNDS.addEntry(new Entry(mXIndex, aonYValue));
                     }
                 } else {
                     // This is the first AoN time, so just add it as the best (and only) AoN time.
+                    isNewBestAoN = true;
                     bestAoNDS.addEntry(new Entry(mXIndex, aonYValue));
                 }
+
+                // Pin each new best AoN time, so the best AoN marker is always on the AoN line.
+                mAoNTimes[nIndex].add(mXIndex, aonYValue, isNewBestAoN);
+                isEntryAdded = true;
             }
         }
 
@@ -691,6 +743,130 @@ public class ChartStatistics {
         return mMainShowDiscreteLineset;
     }
 
+    /**
+     * A listener for the zooming and panning of the chart that gives the main data sets the points
+     * of their series that are needed to show the visible range. The points for the visible range,
+     * and for the same width on either side of it, are given at a level of detail that matches the
+     * chart width. The rest of each series is given at a coarse level of detail, so the chart can
+     * still be panned to any point. The points are only selected again when the visible range
+     * leaves the detailed range, or when the chart is zoomed in far enough to show more detail.
+     */
+    private static class LevelOfDetailListener implements OnChartGestureListener {
+        private final LineChart mChart;
+        private final LineData mChartData;
+        private final ChartSeries mAllTimes;
+        private final ChartSeries[] mAoNTimes;
+
+        /**
+         * The range of X-values that was last given to the chart in detail, and the width of the
+         * range that was visible at that time.
+         */
+        private float mDetailFromX;
+        private float mDetailToX;
+        private float mDetailVisibleWidth;
+
+        LevelOfDetailListener(LineChart chart, LineData chartData, ChartSeries allTimes,
+                              ChartSeries[] aoNTimes) {
+            mChart = chart;
+            mChartData = chartData;
+            mAllTimes = allTimes;
+            mAoNTimes = aoNTimes;
+        }
+
+        /**
+         * Selects the points for the visible range of the chart again if the range is not already
+         * shown in enough detail.
+         *
+         * @param isForced {@code true} to select the points even if the range is shown in detail.
+         */
+        void update(boolean isForced) {
+            final float lowX = mChart.getLowestVisibleX();
+            final float highX = mChart.getHighestVisibleX();
+            final float width = highX - lowX;
+
+            if (!isForced && lowX >= mDetailFromX && highX <= mDetailToX
+                    && width * 2f > mDetailVisibleWidth) {
+                return;
+            }
+
+            mDetailVisibleWidth = width;
+            selectPoints(lowX - width, highX + width);
+
+            mChartData.notifyDataChanged();
+            mChart.notifyDataSetChanged();
+            mChart.invalidate();
+        }
+
+        /**
+         * Gives the main data sets the points of their series for a range shown in detail.
+         */
+        void selectPoints(float fromX, float toX) {
+            // The detailed range is three times the visible width, with up to two points (the
+            // lowest and highest times) for every two pixels of the visible width.
+            final int maxPoints = Math.max(MIN_DETAIL_POINTS,
+                    (int) (3f * mChart.getViewPortHandler().contentWidth()));
+
+            mDetailFromX = fromX;
+            mDetailToX = toX;
+
+            setEntries(DS_ALL, mAllTimes, fromX, toX, maxPoints);
+            for (int nIndex = 0; nIndex < mAoNTimes.length; nIndex++) {
+                setEntries(DS_AVG_0 + 2 * nIndex, mAoNTimes[nIndex], fromX, toX, maxPoints);
+            }
+        }
+
+        private void setEntries(int dataSetIndex, ChartSeries series, float fromX, float toX,
+                                int maxPoints) {
+            final int[] selected = series.select(fromX, toX, maxPoints);
+            final List<Entry> entries = new ArrayList<>(selected.length);
+
+            for (int index : selected) {
+                entries.add(new Entry(series.getX(index), series.getY(index)));
+            }
+
+            ((LineDataSet) mChartData.getDataSetByIndex(dataSetIndex)).setValues(entries);
+        }
+
+        @Override
+        public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+            update(false);
+        }
+
+        @Override
+        public void onChartTranslate(MotionEvent me, float dX, float dY) {
+            update(false);
+        }
+
+        @Override
+        public void onChartGestureStart(MotionEvent me,
+                                        ChartTouchListener.ChartGesture lastPerformedGesture) {
+        }
+
+        @Override
+        public void onChartGestureEnd(MotionEvent me,
+                                      ChartTouchListener.ChartGesture lastPerformedGesture) {
+            // The chart applies each zoom or pan after notifying it, so check the final range.
+            update(false);
+        }
+
+        @Override
+        public void onChartLongPressed(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartDoubleTapped(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartSingleTapped(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX,
+                                 float velocityY) {
+        }
+    }
+
     /**
      * A formatter for time values displayed beside points in the chart. This converts the stored
      * values (in seconds) to the normal representation.
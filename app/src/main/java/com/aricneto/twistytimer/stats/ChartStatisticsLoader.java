@@ -6,7 +6,10 @@ import android.content.Intent;
 import android.os.SystemClock;
 import android.util.Log;
 
-import com.aricneto.twistytimer.TwistyTimer;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+
+import com.aricneto.twistytimer.database.DatabaseHandler;
 import com.aricneto.twistytimer.items.Solve;
 import com.aricneto.twistytimer.utils.PuzzleUtils;
 import com.aricneto.twistytimer.utils.TTIntent;
@@ -86,6 +89,12 @@ public class ChartStatisticsLoader extends AsyncTaskLoader<Wrapper<ChartStatisti
      */
     private BroadcastReceiver mTimeDataChangedReceiver;
 
+    /**
+     * The signal used to cancel the load that is running in the background, or {@code null} if
+     * no load is running. Access must be synchronized on this loader.
+     */
+    private CancellationSignal mCancellationSignal;
+
     /**
      * A broadcast receiver that is notified of changes to the solve time data.
      */
@@ -378,14 +387,37 @@ public class ChartStatisticsLoader extends AsyncTaskLoader<Wrapper<ChartStatisti
         long startTime = 0L;
         if (DEBUG_ME) { Log.d(TAG, "loadInBackground"); startTime = SystemClock.elapsedRealtime(); }
 
-        // This is a full, clean load, so clear out the results from the previous load.
-        mChartStats.reset();
+        final CancellationSignal signal;
 
-        // TODO: Add support for cancellation: add a call-back to "populateChartStatistics", so
-        // it can poll the cancellation status as it iterates over the solves it reads from the
-        // database.
-        TwistyTimer.getDBHandler().populateChartStatistics(
-                mPuzzleType, mPuzzleSubtype, mChartStats);
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            signal = mCancellationSignal = new CancellationSignal();
+        }
+
+        try {
+            // This is a full, clean load, so clear out the results from the previous load.
+            mChartStats.reset();
+
+            // If the "StatisticsLoader" is loading at the same time, the solves are read from the
+            // database only once and shared between both loaders.
+            final ChartStatistics chartStats = mChartStats;
+
+            SolveLoadPipeline.load(mPuzzleType, mPuzzleSubtype,
+                    chartStats.isForCurrentSessionOnly(), DatabaseHandler.ALL_DATES,
+                    (id, time, date, isForCurrentSession) -> chartStats.addTime(time, date),
+                    signal);
+        } catch (OperationCanceledException e) {
+            if (DEBUG_ME) Log.d(TAG, "  Load of ChartStatistics cancelled.");
+            // The chart statistics are incomplete, so they must be loaded again when next needed.
+            mLoadedData = Wrapper.wrap(null);
+            throw e;
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
 
         if (DEBUG_ME)
             Log.d(TAG, String.format("  Loaded ChartStatistics in %,d ms.",
@@ -397,4 +429,19 @@ public class ChartStatisticsLoader extends AsyncTaskLoader<Wrapper<ChartStatisti
         // "LoaderManager" into doing what is expected.
         return mLoadedData = Wrapper.wrap(mChartStats); // Old content may have been null.
     }
+
+    /**
+     * Cancels the load that is running in the background, so that it stops reading from the
+     * database at the next opportunity.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
 }
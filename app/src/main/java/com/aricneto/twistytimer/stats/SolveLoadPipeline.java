@@ -0,0 +1,518 @@
+package com.aricneto.twistytimer.stats;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+
+import com.aricneto.twistytimer.TwistyTimer;
+import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.DatabaseHandler.SolveConsumer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * <p>
+ * Shares a single read of the solves for a puzzle type and subtype between all of the loaders
+ * that need them at the same time. When the statistics tab is shown, the {@link StatisticsLoader}
+ * and the {@link ChartStatisticsLoader} are started together (and restarted together when the
+ * puzzle changes, or after unspecified changes to the solves), and would otherwise each read the
+ * full history of solves from the database.
+ * </p>
+ * <p>
+ * The first loader to call {@link #load} starts a "pass" that reads the solves from the database
+ * on its own thread. Any loader that calls {@code load} for the same puzzle while that pass is
+ * still reading joins the pass instead of reading the solves again. The solves are given to the
+ * consumer of the loader that started the pass as they are read, without being kept. The pass
+ * hands them to each joining loader's thread in small chunks of compact primitive arrays, and
+ * that thread gives them to its own consumer. Its call to {@code load} returns when the pass is
+ * complete. A loader can only join a pass that reads all of the solves it needs. For example, a
+ * loader that needs the solves from all sessions cannot join a pass that reads only the current
+ * session.
+ * </p>
+ * <p>
+ * A joining loader must also be given the solves read before it joined, so a pass keeps the
+ * first few thousand solves it reads. Once it has read more than that, no more loaders may join
+ * it and the kept solves are discarded. This is enough for loaders that are started together. A
+ * loader started later reads the solves itself.
+ * </p>
+ * <p>
+ * Each loader can cancel its own call to {@code load}. The pass stops reading from the database
+ * only when every loader sharing it has been cancelled. Until then, the thread that started the
+ * pass keeps reading the solves for the other loaders, but no longer gives them to its own
+ * consumer.
+ * </p>
+ */
+public final class SolveLoadPipeline {
+    /**
+     * Flag to enable debug logging from this class.
+     */
+    private static final boolean DEBUG_ME = false;
+
+    /**
+     * A "tag" used to identify this class as the source of log messages.
+     */
+    private static final String TAG = SolveLoadPipeline.class.getSimpleName();
+
+    /**
+     * The passes that are currently reading solves from the database. The key identifies the
+     * puzzle type and subtype. Access must be synchronized on this map.
+     */
+    private static final Map<String, Pass> sPasses = new HashMap<>();
+
+    /**
+     * The source that reads the solves from the database.
+     */
+    private static final SolveSource DATABASE_SOURCE
+            = (puzzleType, puzzleSubtype, isForCurrentSessionOnly, sinceDate, consumer, signal)
+                -> TwistyTimer.getDBHandler().readSolves(puzzleType, puzzleSubtype,
+                        isForCurrentSessionOnly, sinceDate, consumer, signal, null);
+
+    /**
+     * The source of the solves read by each new pass. This is only changed by tests.
+     */
+    private static volatile SolveSource sSource = DATABASE_SOURCE;
+
+    /**
+     * A source of the solves read by a pass. The solves must be given to the consumer in
+     * ascending order of date, as they are by
+     * {@link DatabaseHandler#readSolves(String, String, boolean, long, SolveConsumer,
+     * CancellationSignal, DatabaseHandler.ProgressListener)}.
+     */
+    interface SolveSource {
+        /**
+         * Reads the solves for a puzzle type and subtype, giving each one to the consumer.
+         *
+         * @throws OperationCanceledException
+         *     If the read was cancelled.
+         */
+        void readSolves(String puzzleType, String puzzleSubtype, boolean isForCurrentSessionOnly,
+                        long sinceDate, SolveConsumer consumer, CancellationSignal signal);
+    }
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private SolveLoadPipeline() {
+    }
+
+    /**
+     * Sets the source of the solves read by any pass started after this call.
+     *
+     * @param source
+     *     The source of the solves, or {@code null} to read them from the database.
+     */
+    static void setSolveSource(@Nullable SolveSource source) {
+        sSource = source != null ? source : DATABASE_SOURCE;
+    }
+
+    /**
+     * Loads the solves for a puzzle type and subtype into a consumer, sharing the read of the
+     * solves from the database with any other consumer that is being loaded at the same time.
+     * This method blocks until all of the solves have been given to the consumer, so it must be
+     * called from a background thread.
+     *
+     * @param puzzleType
+     *     The name of the puzzle type.
+     * @param puzzleSubtype
+     *     The name of the puzzle subtype.
+     * @param isForCurrentSessionOnly
+     *     {@code true} if the consumer only needs the solves in the current session; or
+     *     {@code false} if it needs the solves from all past and current sessions.
+     * @param sinceDate
+     *     The consumer only needs the solves dated after this date. Use
+     *     {@link DatabaseHandler#ALL_DATES} if all solves are needed.
+     * @param consumer
+     *     The consumer of the solves. Only the solves it needs are given to it, in ascending
+     *     order of date.
+     * @param signal
+     *     A signal to cancel the load, or {@code null} if it cannot be cancelled.
+     *
+     * @throws OperationCanceledException
+     *     If the load was cancelled. The consumer may have been given some of the solves.
+     */
+    public static void load(String puzzleType, String puzzleSubtype,
+                            boolean isForCurrentSessionOnly, long sinceDate,
+                            SolveConsumer consumer, @Nullable CancellationSignal signal) {
+        final String key = puzzleType + '\u0000' + puzzleSubtype;
+        final Registration registration
+                = new Registration(consumer, isForCurrentSessionOnly, sinceDate, signal);
+        Pass pass;
+        boolean isJoined;
+
+        synchronized (sPasses) {
+            pass = sPasses.get(key);
+            isJoined = pass != null && pass.join(registration);
+
+            if (!isJoined) {
+                // If there is an incompatible pass, it is left to finish on its own.
+                pass = new Pass(registration);
+                sPasses.put(key, pass);
+            }
+        }
+
+        final Pass finalPass = pass;
+
+        if (signal != null) {
+            // Called at once if the signal is already cancelled.
+            signal.setOnCancelListener(() -> finalPass.onCancel(registration));
+        }
+
+        try {
+            if (isJoined) {
+                // Even if the running pass finishes before now, it still has all of the solves.
+                if (DEBUG_ME) Log.d(TAG, "Joining running pass for " + key);
+                pass.consume(registration, key);
+            } else {
+                read(sSource, puzzleType, puzzleSubtype, isForCurrentSessionOnly, sinceDate,
+                        pass, key);
+            }
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+
+        // The pass may have completed for the sake of other consumers.
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    /**
+     * Reads the solves for a pass from the source on the thread that started the pass.
+     */
+    private static void read(SolveSource source, String puzzleType, String puzzleSubtype,
+                             boolean isForCurrentSessionOnly, long sinceDate,
+                             Pass pass, String key) {
+        try {
+            source.readSolves(puzzleType, puzzleSubtype, isForCurrentSessionOnly, sinceDate,
+                    pass, pass.mReadSignal);
+            pass.finish(null);
+        } catch (RuntimeException e) {
+            pass.finish(e);
+            throw e;
+        } finally {
+            synchronized (sPasses) {
+                if (sPasses.get(key) == pass) {
+                    sPasses.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single read of the solves for a puzzle type and subtype. The thread that started the
+     * pass gives each solve to its own consumer as it is read. Consumers that join the pass are
+     * given the same solves on their own threads, so the work of each consumer is still done in
+     * parallel, just as if each had read the solves itself.
+     */
+    private static class Pass implements SolveConsumer {
+        /**
+         * The maximum number of chunks of solves, from the start of the read, that are kept so
+         * that a consumer that joins the pass can be given them. Once more chunks have been read,
+         * no consumers may join the pass.
+         */
+        private static final int MAX_REPLAY_CHUNKS = 16;
+
+        /**
+         * The maximum number of chunks waiting to be given to a consumer that joined the pass.
+         * When a consumer has this many chunks waiting, the read waits for it to catch up.
+         */
+        private static final int MAX_QUEUED_CHUNKS = 16;
+
+        /**
+         * The consumer of the thread that started the pass.
+         */
+        private final Registration mOwner;
+
+        /**
+         * The consumers that joined the pass. Access must be synchronized on this pass.
+         */
+        private final List<Registration> mJoiners = new ArrayList<>();
+
+        /**
+         * The signal that cancels the read of the solves once every consumer has been cancelled.
+         */
+        private final CancellationSignal mReadSignal = new CancellationSignal();
+
+        /**
+         * Indicates if every consumer has been cancelled, so no more consumers may join the pass.
+         * Access must be synchronized on this pass.
+         */
+        private boolean mIsReadCanceled;
+
+        /**
+         * All of the chunks read so far, or {@code null} if too many have been read for any more
+         * consumers to join the pass. Access must be synchronized on this pass.
+         */
+        private List<Chunk> mReplay = new ArrayList<>();
+
+        /**
+         * The chunk of solves that is being filled, or {@code null} if none is needed, or no
+         * solves have been added to it yet. Access must be synchronized on this pass.
+         */
+        private Chunk mChunk;
+
+        /**
+         * Indicates if the pass has finished, so no more solves will be read. Access must be
+         * synchronized on this pass.
+         */
+        private boolean mIsFinished;
+
+        /**
+         * The exception that stopped the pass, or {@code null} if it completed normally. Access
+         * must be synchronized on this pass.
+         */
+        private RuntimeException mFailure;
+
+        Pass(Registration owner) {
+            mOwner = owner;
+        }
+
+        /**
+         * Adds a consumer to this pass if the pass will read all of the solves the consumer needs.
+         *
+         * @return {@code true} if the consumer joined this pass; or {@code false} if it cannot.
+         */
+        synchronized boolean join(Registration registration) {
+            if (mIsFinished || mIsReadCanceled || mReplay == null
+                    || (!registration.mIsForCurrentSessionOnly && mOwner.mIsForCurrentSessionOnly)
+                    || registration.mSinceDate < mOwner.mSinceDate) {
+                return false;
+            }
+
+            // The solves in the chunk being filled are given to the consumer when it is full.
+            registration.mQueue.addAll(mReplay);
+            mJoiners.add(registration);
+            return true;
+        }
+
+        /**
+         * Notifies this pass that a consumer has been cancelled. The consumer stops waiting for
+         * solves and, if no other consumer still needs the solves, the read is cancelled.
+         */
+        void onCancel(Registration registration) {
+            synchronized (this) {
+                // Wake a joined consumer, so that it can stop waiting, and the read, if it is
+                // waiting for that consumer to catch up.
+                notifyAll();
+
+                if (!mOwner.isCanceled()) {
+                    return;
+                }
+                for (final Registration joiner : mJoiners) {
+                    if (!joiner.isCanceled()) {
+                        return;
+                    }
+                }
+                mIsReadCanceled = true;
+            }
+
+            // Cancelled without holding the lock, as cancelling runs the listeners of the read.
+
+            if (DEBUG_ME) Log.d(TAG, "All consumers cancelled. Cancelling read.");
+            mReadSignal.cancel();
+        }
+
+        @Override
+        public void addSolve(long id, long time, long date, boolean isForCurrentSession) {
+            synchronized (this) {
+                // Once no consumer can join and none has joined, the solves are not kept at all.
+                if (mReplay != null || !mJoiners.isEmpty()) {
+                    if (mChunk == null) {
+                        mChunk = new Chunk();
+                    }
+                    mChunk.add(id, time, date, isForCurrentSession);
+
+                    if (mChunk.isFull()) {
+                        publishChunk();
+                    }
+                }
+            }
+
+            if (!mOwner.isCanceled()) {
+                mOwner.addSolve(id, time, date, isForCurrentSession);
+            }
+        }
+
+        /**
+         * Hands the chunk being filled to the consumers that joined this pass and keeps it for
+         * any consumers that may still join. If a consumer has too many chunks waiting, this
+         * waits for it to catch up. Must be called while synchronized on this pass.
+         *
+         * @throws IllegalStateException
+         *     If the thread was interrupted.
+         */
+        private void publishChunk() {
+            final Chunk chunk = mChunk;
+
+            mChunk = null;
+
+            if (mReplay != null) {
+                if (mReplay.size() < MAX_REPLAY_CHUNKS) {
+                    mReplay.add(chunk);
+                } else {
+                    if (DEBUG_ME) Log.d(TAG, "Too many solves read. No more consumers may join.");
+                    mReplay = null;
+                }
+            }
+
+            // A consumer that joins while this waits already has the chunk in its replay.
+            for (final Registration joiner : new ArrayList<>(mJoiners)) {
+                while (joiner.mQueue.size() >= MAX_QUEUED_CHUNKS && !joiner.isCanceled()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted waiting for a consumer.", e);
+                    }
+                }
+
+                if (joiner.isCanceled()) {
+                    joiner.mQueue.clear();
+                } else {
+                    joiner.mQueue.add(chunk);
+                }
+            }
+
+            notifyAll();
+        }
+
+        /**
+         * Marks this pass as finished and wakes the consumers that joined it.
+         *
+         * @param failure
+         *     The exception that stopped the pass, or {@code null} if it completed normally.
+         */
+        synchronized void finish(RuntimeException failure) {
+            if (failure == null && mChunk != null) {
+                publishChunk();
+            }
+
+            mIsFinished = true;
+            mFailure = failure;
+            mReplay = null;
+            mChunk = null;
+            notifyAll();
+        }
+
+        /**
+         * Gives all of the solves read by this pass to a consumer that joined it, waiting for
+         * more solves to be read until the pass is finished.
+         *
+         * @throws OperationCanceledException
+         *     If the consumer was cancelled.
+         * @throws IllegalStateException
+         *     If the pass did not complete normally, or if the thread was interrupted.
+         */
+        void consume(Registration registration, String key) {
+            while (true) {
+                final Chunk chunk;
+
+                synchronized (this) {
+                    while (registration.mQueue.isEmpty() && !mIsFinished
+                            && !registration.isCanceled()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException(
+                                    "Interrupted waiting for solves: " + key, e);
+                        }
+                    }
+
+                    if (registration.isCanceled()) {
+                        throw new OperationCanceledException();
+                    }
+                    if (mFailure != null) {
+                        throw new IllegalStateException("Failed to read solves: " + key, mFailure);
+                    }
+
+                    chunk = registration.mQueue.poll();
+
+                    if (chunk == null) {
+                        return; // Finished and all solves were consumed.
+                    }
+
+                    // Wake the read, if it is waiting for this consumer to catch up.
+                    notifyAll();
+                }
+
+                for (int i = 0; i < chunk.mSize; i++) {
+                    registration.addSolve(chunk.mIDs[i], chunk.mTimes[i], chunk.mDates[i],
+                            chunk.mIsForCurrentSession[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A chunk of the solves read by a pass, held in compact primitive arrays. Values are never
+     * changed once the chunk is full, or once the pass has finished.
+     */
+    private static class Chunk {
+        /**
+         * The number of solves in a full chunk.
+         */
+        private static final int CAPACITY = 256;
+
+        private final long[] mIDs = new long[CAPACITY];
+        private final long[] mTimes = new long[CAPACITY];
+        private final long[] mDates = new long[CAPACITY];
+        private final boolean[] mIsForCurrentSession = new boolean[CAPACITY];
+        private int mSize;
+
+        void add(long id, long time, long date, boolean isForCurrentSession) {
+            mIDs[mSize] = id;
+            mTimes[mSize] = time;
+            mDates[mSize] = date;
+            mIsForCurrentSession[mSize] = isForCurrentSession;
+            mSize++;
+        }
+
+        boolean isFull() {
+            return mSize == CAPACITY;
+        }
+    }
+
+    /**
+     * A consumer of the solves read by a pass, with the filters for the solves it needs.
+     */
+    private static class Registration {
+        private final SolveConsumer mConsumer;
+        private final boolean mIsForCurrentSessionOnly;
+        private final long mSinceDate;
+        private final CancellationSignal mSignal;
+
+        /**
+         * The chunks of solves waiting to be given to the consumer, if it joined a pass. Access
+         * must be synchronized on that pass.
+         */
+        private final Queue<Chunk> mQueue = new ArrayDeque<>();
+
+        Registration(SolveConsumer consumer, boolean isForCurrentSessionOnly, long sinceDate,
+                     CancellationSignal signal) {
+            mConsumer = consumer;
+            mIsForCurrentSessionOnly = isForCurrentSessionOnly;
+            mSinceDate = sinceDate;
+            mSignal = signal;
+        }
+
+        boolean isCanceled() {
+            return mSignal != null && mSignal.isCanceled();
+        }
+
+        void addSolve(long id, long time, long date, boolean isForCurrentSession) {
+            if (date > mSinceDate && (isForCurrentSession || !mIsForCurrentSessionOnly)) {
+                mConsumer.addSolve(id, time, date, isForCurrentSession);
+            }
+        }
+    }
+}
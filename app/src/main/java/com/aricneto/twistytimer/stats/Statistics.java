@@ -3,6 +3,13 @@ package com.aricneto.twistytimer.stats;
 import com.aricneto.twistify.R;
 import com.aricneto.twistytimer.utils.Prefs;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -23,6 +30,13 @@ import static com.aricneto.twistytimer.stats.AverageCalculator.tr;
  * @author damo
  */
 public class Statistics {
+    /**
+     * The version of the format written by {@link #toSnapshot()}. Snapshots written with any other
+     * version are rejected by {@link #restoreSnapshot(byte[])}. Increment this if the format of
+     * the snapshot, or the state of {@link AverageCalculator}, changes.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+
     /**
      * The average calculators for averages of times across all sessions. The calculators are keyed
      * by the number of times used to calculate the average.
@@ -61,6 +75,62 @@ public class Statistics {
      */
     private AverageCalculator mOneSessionAC;
 
+    /**
+     * The number of solves in each half of the journal of recent solves. Solves can only be
+     * retracted by {@link #removeSolves(long...)} or {@link #updateSolve(long, long, boolean)} if
+     * they are still in the journal, which holds at least this many of the most recent solves
+     * added by {@link #addSolve(long, long, boolean)}, and at most twice this many.
+     */
+    private static final int JOURNAL_WINDOW = 1_000;
+
+    /**
+     * The IDs of the solves in the journal, in the order in which the solves were added. May be
+     * {@code null} if no solves have been journaled.
+     */
+    private long[] mJournalIDs;
+
+    /**
+     * The times of the solves in the journal. {@link AverageCalculator#DNF} may be a time.
+     */
+    private long[] mJournalTimes;
+
+    /**
+     * The flags indicating which solves in the journal are for the current session.
+     */
+    private boolean[] mJournalIsForCurrentSession;
+
+    /**
+     * The number of solves in the journal.
+     */
+    private int mJournalSize;
+
+    /**
+     * A snapshot of these statistics from before the first solve in the journal was added. If
+     * {@code null}, the first solve was added to statistics that had just been reset.
+     */
+    private byte[] mJournalBase;
+
+    /**
+     * A snapshot of these statistics from before the solve at index {@link #JOURNAL_WINDOW} in the
+     * journal was added. This is used to replay only the second half of the journal, and becomes
+     * the new {@link #mJournalBase} when the first half of the journal is discarded. May be
+     * {@code null} if the journal does not (yet) have that many solves.
+     */
+    private byte[] mJournalMidBase;
+
+    /**
+     * Indicates if the journal accounts for every solve added to these statistics since the last
+     * reset or restored snapshot. If a time is added with {@link #addTime(long, boolean)}, no
+     * solve ID is known, so no solves can be retracted until the statistics are reset.
+     */
+    private boolean mIsJournalValid = true;
+
+    /**
+     * Indicates if these statistics are a preview of the session statistics created by
+     * {@link #newSessionPreview()}. Times are only added to the session statistics of a preview.
+     */
+    private boolean mIsSessionPreview;
+
     /**
      * Percent to trim off each end
      */
@@ -142,11 +212,44 @@ public class Statistics {
         return stats;
     }
 
+    /**
+     * Creates a new, empty set of statistics with the same average calculators as these
+     * statistics, for a preview of the statistics for the current session. Loading the statistics
+     * for all sessions can take a while if there are many solves, but the solves for the current
+     * session alone can be loaded quickly and presented while the rest are loaded. Times added to the preview are only added to the session statistics. The all-time
+     * statistics of the preview remain empty and report no solves.
+     *
+     * @return The empty preview of the session statistics.
+     */
+    public Statistics newSessionPreview() {
+        final Statistics preview = new Statistics();
+
+        for (final AverageCalculator allTimeAC : mAllTimeACs.values()) {
+            preview.putAverageOf(allTimeAC.newEmptyCopy(), false);
+        }
+
+        for (final AverageCalculator sessionAC : mSessionACs.values()) {
+            preview.putAverageOf(sessionAC.newEmptyCopy(), true);
+        }
+
+        preview.mIsSessionPreview = true;
+
+        return preview;
+    }
+
     /**
      * Resets all statistics and averages that have been collected previously. The average-of-N
      * calculators and time frequencies are reset, but the average-of-N calculators are not removed.
      */
     public void reset() {
+        resetAverages();
+        clearJournal(null);
+    }
+
+    /**
+     * Resets the average-of-N calculators and time frequencies, but not the journal.
+     */
+    private void resetAverages() {
         for (final AverageCalculator allTimeAC : mAllTimeACs.values()) {
             allTimeAC.reset();
         }
@@ -159,6 +262,106 @@ public class Statistics {
         mSessionTimeFreqs.clear();
     }
 
+    /**
+     * Captures the full state of these statistics, including the state of every average
+     * calculator and the time frequencies. The snapshot can be restored later with
+     * {@link #restoreSnapshot(byte[])} to avoid adding every solve time again.
+     *
+     * @return The snapshot of these statistics.
+     */
+    public byte[] toSnapshot() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(SNAPSHOT_VERSION);
+            writeCalculators(out, mAllTimeACs);
+            writeCalculators(out, mSessionACs);
+            writeFrequencies(out, mAllTimeTimeFreqs);
+            writeFrequencies(out, mSessionTimeFreqs);
+            out.flush();
+        } catch (IOException e) {
+            // Not expected when writing to a byte array.
+            throw new IllegalStateException("Failed to write statistics snapshot.", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores the state of these statistics from a snapshot created by {@link #toSnapshot()}.
+     * The snapshot must have been created from statistics with the same set of average
+     * calculators (i.e., by the same factory method and with the same trim preferences).
+     *
+     * @param snapshot The snapshot to be restored.
+     *
+     * @return
+     *     {@code true} if the snapshot was restored; or {@code false} if it was not compatible
+     *     with these statistics. If {@code false}, these statistics will have been reset.
+     */
+    public boolean restoreSnapshot(byte[] snapshot) {
+        try {
+            readSnapshot(snapshot);
+        } catch (IOException e) {
+            // Wrong version or configuration, or a truncated or corrupted snapshot.
+            reset();
+            return false;
+        }
+
+        // Solves added from now on can be retracted by replaying them on top of this snapshot.
+        clearJournal(snapshot);
+        return true;
+    }
+
+    private void readSnapshot(byte[] snapshot) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+
+        if (in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Snapshot has a different version.");
+        }
+
+        readCalculators(in, mAllTimeACs);
+        readCalculators(in, mSessionACs);
+        readFrequencies(in, mAllTimeTimeFreqs);
+        readFrequencies(in, mSessionTimeFreqs);
+    }
+
+    private static void writeCalculators(DataOutput out, Map<Integer, AverageCalculator> acs)
+            throws IOException {
+        // Write in order of "N", so that the iteration order of the "HashMap" does not matter.
+        out.writeInt(acs.size());
+        for (final Integer n : new TreeSet<>(acs.keySet())) {
+            acs.get(n).writeTo(out);
+        }
+    }
+
+    private static void readCalculators(DataInput in, Map<Integer, AverageCalculator> acs)
+            throws IOException {
+        if (in.readInt() != acs.size()) {
+            throw new IOException("Snapshot has a different number of calculators.");
+        }
+        for (final Integer n : new TreeSet<>(acs.keySet())) {
+            acs.get(n).readFrom(in); // Checks that "n" and the trim size match.
+        }
+    }
+
+    private static void writeFrequencies(DataOutput out, TreeMap<Long, Integer> freqs)
+            throws IOException {
+        out.writeInt(freqs.size());
+        for (final Map.Entry<Long, Integer> freq : freqs.entrySet()) {
+            out.writeLong(freq.getKey());
+            out.writeInt(freq.getValue());
+        }
+    }
+
+    private static void readFrequencies(DataInput in, TreeMap<Long, Integer> freqs)
+            throws IOException {
+        freqs.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            freqs.put(in.readLong(), in.readInt());
+        }
+    }
+
     /**
      * Indicates if all of the solve time averages required are across the current session only. If
      * only times for the current session are required, a more efficient approach may be taken to
@@ -221,7 +424,15 @@ public class Statistics {
      *     If {@code n} is not greater than zero.
      */
     private void addAverageOf(int n, int trimPercent, boolean isForCurrentSessionOnly) {
-        final AverageCalculator ac = new AverageCalculator(n, trimPercent);
+        putAverageOf(new AverageCalculator(n, trimPercent), isForCurrentSessionOnly);
+    }
+
+    /**
+     * Adds a calculator for the "average of <i>n</i>" solve times, replacing any calculator
+     * previously added for the same value of <i>n</i> and {@code isForCurrentSessionOnly}.
+     */
+    private void putAverageOf(AverageCalculator ac, boolean isForCurrentSessionOnly) {
+        final int n = ac.getN();
 
         if (isForCurrentSessionOnly) {
             mSessionACs.put(n, ac);
@@ -272,9 +483,247 @@ public class Statistics {
      *     If the time is not greater than zero and is not {@code DNF}.
      */
     public void addTime(long time, boolean isForCurrentSession) throws IllegalArgumentException {
+        // Without a solve ID, this time could never be retracted, so neither can any other.
+        if (mIsJournalValid) {
+            clearJournal(null);
+            mIsJournalValid = false;
+        }
+
+        addTimeToAverages(time, isForCurrentSession);
+    }
+
+    /**
+     * Records a solve time for a saved solve. This is the same as
+     * {@link #addTime(long, boolean)}, except that the solve ID is recorded in a journal of recent
+     * solves. As long as the solve remains in that journal, its time can be changed, or it can be
+     * removed, without the need to add all of the solve times again.
+     *
+     * @param id
+     *     The ID of the solve. Solves must be added in the order in which they are stored in the
+     *     database, which is the order of their dates.
+     * @param time
+     *     The solve time in milliseconds, or {@link AverageCalculator#DNF}.
+     * @param isForCurrentSession
+     *     {@code true} if the solve was added during the current session; or {@code false} if
+     *     the solve was added in a previous session.
+     *
+     * @throws IllegalArgumentException
+     *     If the time is not greater than zero and is not {@code DNF}.
+     */
+    public void addSolve(long id, long time, boolean isForCurrentSession)
+            throws IllegalArgumentException {
+        if (!mIsJournalValid) {
+            addTimeToAverages(time, isForCurrentSession);
+            return;
+        }
+
+        if (mJournalIDs == null) {
+            mJournalIDs = new long[JOURNAL_WINDOW * 2];
+            mJournalTimes = new long[JOURNAL_WINDOW * 2];
+            mJournalIsForCurrentSession = new boolean[JOURNAL_WINDOW * 2];
+        } else if (mJournalSize == JOURNAL_WINDOW * 2) {
+            // Discard the older half of the journal. Those solves can no longer be retracted.
+            mJournalBase = mJournalMidBase;
+            System.arraycopy(mJournalIDs, JOURNAL_WINDOW, mJournalIDs, 0, JOURNAL_WINDOW);
+            System.arraycopy(mJournalTimes, JOURNAL_WINDOW, mJournalTimes, 0, JOURNAL_WINDOW);
+            System.arraycopy(mJournalIsForCurrentSession, JOURNAL_WINDOW,
+                    mJournalIsForCurrentSession, 0, JOURNAL_WINDOW);
+            mJournalSize = JOURNAL_WINDOW;
+        }
+
+        if (mJournalSize == JOURNAL_WINDOW) {
+            mJournalMidBase = toSnapshot();
+        }
+
+        addTimeToAverages(time, isForCurrentSession);
+
+        mJournalIDs[mJournalSize] = id;
+        mJournalTimes[mJournalSize] = time;
+        mJournalIsForCurrentSession[mJournalSize] = isForCurrentSession;
+        mJournalSize++;
+    }
+
+    /**
+     * Removes the times of solves that were added by {@link #addSolve(long, long, boolean)}. The
+     * statistics are rolled back to a snapshot taken before the earliest of the removed solves was
+     * added and the later solves in the journal are added again. This is only possible if all of
+     * the solves are still in the journal of recent solves.
+     *
+     * @param ids The IDs of the solves to be removed.
+     *
+     * @return
+     *     {@code true} if the solves were removed; or {@code false} if any of the solves are not
+     *     in the journal, in which case nothing is changed and all solve times will need to be
+     *     added again to reflect the removal.
+     */
+    public boolean removeSolves(long... ids) {
+        int firstIndex = mJournalSize;
+
+        for (final long id : ids) {
+            final int index = indexOfJournaledSolve(id);
+
+            if (index < 0) {
+                return false;
+            }
+            firstIndex = Math.min(firstIndex, index);
+        }
+
+        // Compact the journal, keeping only the solves that were not removed.
+        int size = firstIndex;
+
+        for (int i = firstIndex; i < mJournalSize; i++) {
+            if (!contains(ids, mJournalIDs[i])) {
+                mJournalIDs[size] = mJournalIDs[i];
+                mJournalTimes[size] = mJournalTimes[i];
+                mJournalIsForCurrentSession[size] = mJournalIsForCurrentSession[i];
+                size++;
+            }
+        }
+        mJournalSize = size;
+
+        replayJournal(firstIndex);
+        return true;
+    }
+
+    /**
+     * Changes the time of a solve that was added by {@link #addSolve(long, long, boolean)}, or
+     * changes whether it is counted as a solve for the current session. The change is applied as
+     * described for {@link #removeSolves(long...)}.
+     *
+     * @param id
+     *     The ID of the solve to be changed.
+     * @param time
+     *     The new solve time in milliseconds, or {@link AverageCalculator#DNF}.
+     * @param isForCurrentSession
+     *     {@code true} if the solve is now for the current session; or {@code false} if it is now
+     *     in the history of past sessions.
+     *
+     * @return
+     *     {@code true} if the solve was changed, or was already up to date; or {@code false} if
+     *     the solve is not in the journal, in which case nothing is changed.
+     */
+    public boolean updateSolve(long id, long time, boolean isForCurrentSession) {
+        final int index = indexOfJournaledSolve(id);
+
+        if (index < 0) {
+            return false;
+        }
+
+        if (mJournalTimes[index] == time
+                && mJournalIsForCurrentSession[index] == isForCurrentSession) {
+            // Probably only the comment was changed.
+            return true;
+        }
+
+        mJournalTimes[index] = time;
+        mJournalIsForCurrentSession[index] = isForCurrentSession;
+
+        replayJournal(index);
+        return true;
+    }
+
+    /**
+     * Moves all times from the current session to the history of past sessions. The session
+     * averages and time frequencies are reset, but the all-time averages are not affected, as
+     * they already include the times from the current session.
+     */
+    public void moveSessionToHistory() {
+        for (final AverageCalculator sessionAC : mSessionACs.values()) {
+            sessionAC.reset();
+        }
+        mSessionTimeFreqs.clear();
+
+        if (mIsJournalValid) {
+            // The journaled solves are now all history solves, but the snapshot before them still
+            // has the old session averages, so a replay would bring them back. Start afresh.
+            clearJournal(toSnapshot());
+        }
+    }
+
+    /**
+     * Empties the journal of recent solves.
+     *
+     * @param base
+     *     A snapshot of the current state of these statistics, or {@code null} if they have just
+     *     been reset.
+     */
+    private void clearJournal(byte[] base) {
+        mJournalSize = 0;
+        mJournalBase = base;
+        mJournalMidBase = null;
+        mIsJournalValid = true;
+    }
+
+    private int indexOfJournaledSolve(long id) {
+        if (mIsJournalValid) {
+            // Search from the end, as the most recent solves are the most likely to change.
+            for (int i = mJournalSize - 1; i >= 0; i--) {
+                if (mJournalIDs[i] == id) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (final long candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Restores the most recent snapshot that precedes a change to the journal and adds the times
+     * of the journaled solves from that point on again.
+     *
+     * @param firstChanged The index of the first solve in the journal that was changed or removed.
+     */
+    private void replayJournal(int firstChanged) {
+        int start = 0;
+
+        try {
+            if (firstChanged >= JOURNAL_WINDOW && mJournalMidBase != null) {
+                // Only the second half of the journal is affected.
+                readSnapshot(mJournalMidBase);
+                start = JOURNAL_WINDOW;
+            } else if (mJournalBase != null) {
+                readSnapshot(mJournalBase);
+                mJournalMidBase = null;
+            } else {
+                resetAverages();
+                mJournalMidBase = null;
+            }
+        } catch (IOException e) {
+            // Not expected, as the snapshots were created by these statistics.
+            throw new IllegalStateException("Failed to restore statistics snapshot.", e);
+        }
+
+        for (int i = start; i < mJournalSize; i++) {
+            if (i == JOURNAL_WINDOW && mJournalMidBase == null) {
+                mJournalMidBase = toSnapshot();
+            }
+            addTimeToAverages(mJournalTimes[i], mJournalIsForCurrentSession[i]);
+        }
+    }
+
+    /**
+     * Adds a solve time to all of the average calculators and time frequencies.
+     */
+    private void addTimeToAverages(long time, boolean isForCurrentSession)
+            throws IllegalArgumentException {
+        // A session preview has no all-time statistics, so its all-time averages stay empty.
+        final boolean isForAllTime = !mIsSessionPreview;
+
         // "time" is validated on the first call to "AverageCalculator.addTime".
-        for (final AverageCalculator allTimeAC : mAllTimeACs.values()) {
-            allTimeAC.addTime(time);
+        if (isForAllTime) {
+            for (final AverageCalculator allTimeAC : mAllTimeACs.values()) {
+                allTimeAC.addTime(time);
+            }
         }
 
         if (isForCurrentSession) {
@@ -287,8 +736,10 @@ public class Statistics {
         final long timeForFreq = time == DNF ? DNF : (time - time % 1_000);
         Integer oldFreq;
 
-        oldFreq = mAllTimeTimeFreqs.get(timeForFreq);
-        mAllTimeTimeFreqs.put(timeForFreq, oldFreq == null ? 1 : oldFreq + 1);
+        if (isForAllTime) {
+            oldFreq = mAllTimeTimeFreqs.get(timeForFreq);
+            mAllTimeTimeFreqs.put(timeForFreq, oldFreq == null ? 1 : oldFreq + 1);
+        }
 
         if (isForCurrentSession) {
             oldFreq = mSessionTimeFreqs.get(timeForFreq);
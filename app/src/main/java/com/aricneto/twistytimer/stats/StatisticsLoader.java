@@ -3,12 +3,17 @@ package com.aricneto.twistytimer.stats;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
 import androidx.loader.content.AsyncTaskLoader;
 import android.util.Log;
 import android.widget.Toast;
 
 import com.aricneto.twistytimer.TwistyTimer;
+import com.aricneto.twistytimer.database.DatabaseHandler;
 import com.aricneto.twistytimer.items.Solve;
 import com.aricneto.twistytimer.utils.PuzzleUtils;
 import com.aricneto.twistytimer.utils.TTIntent;
@@ -50,6 +55,14 @@ import static com.aricneto.twistytimer.utils.TTIntent.broadcast;
  * from the previous one delivered. Creating a new {@code Wrapper} instance around the same
  * {@code Statistics} instance for each delivery works around that behaviour.
  * </p>
+ * <p>
+ * If all solves must be read from the database (e.g., when loading for the first time, or after
+ * older solves were changed), a preview of the statistics is delivered first. The preview holds
+ * only the statistics for the current session, which can be read quickly; its all-time statistics
+ * are empty. The full statistics are delivered when they have been loaded. A load that is still
+ * running is cancelled if the loader is reset or a new load is forced, as happens when the puzzle
+ * is changed quickly.
+ * </p>
  *
  * @author damo
  */
@@ -93,6 +106,17 @@ public class StatisticsLoader extends AsyncTaskLoader<Wrapper<Statistics>> {
      */
     private BroadcastReceiver mTimeDataChangedReceiver;
 
+    /**
+     * The signal used to cancel the load that is running in the background, or {@code null} if
+     * no load is running. Access must be synchronized on this loader.
+     */
+    private CancellationSignal mCancellationSignal;
+
+    /**
+     * A handler used to deliver the preview of the session statistics on the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
     /**
      * A broadcast receiver that is notified of changes to the solve time data.
      */
@@ -131,18 +155,29 @@ public class StatisticsLoader extends AsyncTaskLoader<Wrapper<Statistics>> {
                     break;
 
                 case ACTION_TIMES_MODIFIED:
-                case ACTION_TIMES_MOVED_TO_HISTORY:
-                    // If times were moved to the history or other unspecified modifications were
-                    // made (e.g., deletions, changes to penalties, etc.), then "mStatistics"
-                    // cannot be simply updated. A full re-load will be needed.
+                    // If the intent identifies a deleted or updated solve (e.g., a new penalty),
+                    // the old time can be retracted from "mStatistics" if it was added recently.
+                    // If other unspecified modifications were made, or if the solve is too old,
+                    // then "mStatistics" cannot be simply updated. A full re-load will be needed.
                     //
                     // NOTE: The default implementation of "onContentChanged" will only force a
                     // re-load if the loader is currently started (i.e., in use by a live fragment).
                     // If the loader is not started, a reload will not occur until the next time it
                     // is restarted (which might never happen). The test of "takeContentChanged()"
                     // in "onStartLoading" picks up on any such deferred reloading task.
-                    if (DEBUG_ME) Log.d(TAG, "  Unknown changes or history toggle. Will reload!");
-                    mLoader.onContentChanged();
+                    if (!mLoader.deliverRetractionResult(intent)) {
+                        if (DEBUG_ME) Log.d(TAG, "  Unknown or old changes. Will reload!");
+                        mLoader.onContentChanged();
+                    }
+                    break;
+
+                case ACTION_TIMES_MOVED_TO_HISTORY:
+                    // The all-time statistics already include the session times, so only the
+                    // session statistics need to be cleared.
+                    if (!mLoader.deliverMovedToHistoryResult()) {
+                        if (DEBUG_ME) Log.d(TAG, "  History toggle. Will reload!");
+                        mLoader.onContentChanged();
+                    }
                     break;
 
                 // Switching between the history of all times and the session times does
@@ -206,16 +241,55 @@ public class StatisticsLoader extends AsyncTaskLoader<Wrapper<Statistics>> {
             final Solve solve = TTIntent.getSolve(intent);
 
             if (solve != null) {
-                if (solve.getPenalty() == PuzzleUtils.PENALTY_DNF) {
-                    mStatistics.addDNF(true);
-                } else {
-                    mStatistics.addTime(solve.getTime(), true);
-                }
-
-                mLoadedData = mLoadedData.rewrap(); // See explanation in "loadInBackground".
+                // Add by solve ID, so that the time can be retracted if the solve is changed.
+                mStatistics.addSolve(solve.getId(), getStatisticsTime(solve), true);
 
                 if (DEBUG_ME) Log.d(TAG, "  Delivering quick update to statistics!");
-                deliverResult(mLoadedData); // Will trigger "onLoadFinished" in Fragment/Activity.
+                deliverUpdatedResult();
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Attempts a quick update of the statistics without resorting to a full read of the database
+     * when solves have been deleted or updated. The intent must identify the changed solves and
+     * those solves must have been added recently enough for their times to be retracted from
+     * the statistics.
+     *
+     * @param intent
+     *     The intent that may contain the IDs of deleted solves, or the new state of an updated
+     *     solve.
+     *
+     * @return
+     *     {@code true} if the changes were applied to the statistics directly, avoiding the need
+     *     for a full database re-load; or {@code false} if a full database reload will still be
+     *     required to update the statistics.
+     */
+    private boolean deliverRetractionResult(Intent intent) {
+        if (!mLoadedData.isEmpty()) {
+            final long[] deletedIDs = TTIntent.getDeletedSolveIDs(intent);
+            final Solve solve = TTIntent.getSolve(intent);
+            final boolean isUpdated;
+
+            if (deletedIDs != null) {
+                isUpdated = mStatistics.removeSolves(deletedIDs);
+            } else if (solve != null
+                    && solve.getPenalty() != PuzzleUtils.PENALTY_HIDETIME
+                    && mPuzzleType.equals(solve.getPuzzle())
+                    && mPuzzleSubtype.equals(solve.getSubtype())) {
+                isUpdated = mStatistics.updateSolve(
+                        solve.getId(), getStatisticsTime(solve), !solve.isHistory());
+            } else {
+                isUpdated = false;
+            }
+
+            if (isUpdated) {
+                if (DEBUG_ME) Log.d(TAG, "  Delivering retraction update to statistics!");
+                deliverUpdatedResult();
 
                 return true;
             }
@@ -224,6 +298,47 @@ public class StatisticsLoader extends AsyncTaskLoader<Wrapper<Statistics>> {
         return false;
     }
 
+    /**
+     * Attempts a quick update of the statistics without resorting to a full read of the database
+     * when all solves in the current session have been moved to the history of all sessions.
+     *
+     * @return
+     *     {@code true} if the session statistics were cleared directly, avoiding the need for a
+     *     full database re-load; or {@code false} if no statistics have been loaded yet.
+     */
+    private boolean deliverMovedToHistoryResult() {
+        if (!mLoadedData.isEmpty()) {
+            mStatistics.moveSessionToHistory();
+
+            if (DEBUG_ME) Log.d(TAG, "  Delivering history update to statistics!");
+            deliverUpdatedResult();
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Delivers the statistics after they were updated without a full read of the database.
+     */
+    private void deliverUpdatedResult() {
+        mLoadedData = mLoadedData.rewrap(); // See explanation in "loadInBackground".
+        deliverResult(mLoadedData); // Will trigger "onLoadFinished" in Fragment/Activity.
+    }
+
+    /**
+     * Gets the time of a solve as it is recorded in the statistics.
+     *
+     * @param solve The solve.
+     *
+     * @return The solve time, or {@link AverageCalculator#DNF} if the solve is a DNF.
+     */
+    private static long getStatisticsTime(Solve solve) {
+        return solve.getPenalty() == PuzzleUtils.PENALTY_DNF
+                ? AverageCalculator.DNF : solve.getTime();
+    }
+
     /**
      * Starts loading the statistics from the database. If statistics were previously loaded, they
      * will be re-delivered. If the statistics that were so delivered are out of date, or if no
@@ -289,12 +404,44 @@ public class StatisticsLoader extends AsyncTaskLoader<Wrapper<Statistics>> {
         long startTime = 0L;
         if (DEBUG_ME) { Log.d(TAG, "loadInBackground"); startTime = SystemClock.elapsedRealtime(); }
 
-        // This is a full, clean load, so clear out the results from the previous load.
-        mStatistics.reset();
+        final CancellationSignal signal;
+
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            signal = mCancellationSignal = new CancellationSignal();
+        }
+
+        try {
+            // This is a full, clean load, so clear out the results from the previous load. The
+            // saved snapshot of the statistics is restored and only solves added since it was
+            // saved are read, unless the snapshot was invalidated by changes to older solves.
+            mStatistics.reset();
 
-        // TODO: Add support for cancellation: add a call-back to "populateStatistics", so it can
-        // poll the cancellation status as it iterates over the solves it reads from the database.
-        TwistyTimer.getDBHandler().populateStatistics(mPuzzleType, mPuzzleSubtype, mStatistics);
+            final DatabaseHandler.StatisticsLoad load = TwistyTimer.getDBHandler()
+                    .beginStatisticsLoad(mPuzzleType, mPuzzleSubtype, mStatistics);
+
+            if (load.getSinceDate() == DatabaseHandler.ALL_DATES
+                    && !mStatistics.isForCurrentSessionOnly()) {
+                deliverSessionPreview(signal);
+            }
+
+            // If the "ChartStatisticsLoader" is loading at the same time, the solves are read from
+            // the database only once and shared between both loaders.
+            SolveLoadPipeline.load(mPuzzleType, mPuzzleSubtype,
+                    mStatistics.isForCurrentSessionOnly(), load.getSinceDate(), load, signal);
+            load.finish();
+        } catch (OperationCanceledException e) {
+            if (DEBUG_ME) Log.d(TAG, "  Load of Statistics cancelled.");
+            // The statistics are incomplete, so they must be loaded again when next required.
+            mLoadedData = Wrapper.wrap(null);
+            throw e;
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
 
         if (DEBUG_ME) {
             Log.d(TAG, String.format("  Loaded Statistics in %,d ms.",
@@ -310,4 +457,46 @@ public class StatisticsLoader extends AsyncTaskLoader<Wrapper<Statistics>> {
         // "LoaderManager" into doing what is expected.
         return mLoadedData = Wrapper.wrap(mStatistics); // Old content may have been null.
     }
+
+    /**
+     * Cancels the load that is running in the background, so that it stops reading from the
+     * database at the next opportunity.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Reads the solves for the current session into a preview of the statistics and delivers the
+     * preview on the main thread. This is called from the background thread before all solves
+     * are read, so that the session statistics can be presented without waiting for them.
+     *
+     * @param signal
+     *     The signal that cancels the current load. The preview is not delivered if the load
+     *     is cancelled before the preview reaches the main thread.
+     */
+    private void deliverSessionPreview(final CancellationSignal signal) {
+        final Statistics preview = mStatistics.newSessionPreview();
+
+        TwistyTimer.getDBHandler().readSolves(mPuzzleType, mPuzzleSubtype,
+                true, DatabaseHandler.ALL_DATES,
+                (id, time, date, isForCurrentSession) -> preview.addTime(time, true),
+                signal, null);
+
+        // The full statistics are delivered by a later message to the main thread, so they will
+        // always replace this preview.
+        mMainHandler.post(() -> {
+            if (isStarted() && !signal.isCanceled()) {
+                if (DEBUG_ME) Log.d(TAG, "  Delivering preview of session Statistics.");
+                deliverResult(Wrapper.wrap(preview));
+            }
+        });
+    }
 }
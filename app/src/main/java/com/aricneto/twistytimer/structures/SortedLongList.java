@@ -0,0 +1,225 @@
+package com.aricneto.twistytimer.structures;
+
+import java.util.Arrays;
+
+/**
+ * A sorted multiset of primitive {@code long} values, backed by a single array. This is an
+ * order-statistic structure: the element at any rank can be read in constant time with
+ * {@link #get(int)}, and the rank of any value found in logarithmic time with {@link #rank(long)}.
+ * <p>
+ * Unlike {@link RedBlackTree}, values are never boxed and no node objects are created. Inserts and
+ * removals binary-search for their position and shift the tail of the array, so they are linear
+ * in the worst case, but for the sizes used by the average calculators (at most a few thousand
+ * elements) a single {@code System.arraycopy} is far cheaper than allocating, rebalancing and
+ * later collecting tree nodes. Once the backing array has grown to its working size, no further
+ * allocation takes place.
+ */
+public class SortedLongList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] values;
+    private int    size;
+
+    /**
+     * Creates a new, empty list with a default initial capacity.
+     */
+    public SortedLongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty list.
+     *
+     * @param initialCapacity
+     *     The number of values that can be held before the backing array needs to grow. Callers
+     *     that know the working size up front should pass it here, so that no allocation takes
+     *     place after construction.
+     */
+    public SortedLongList(int initialCapacity) {
+        values = new long[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * Adds a value. The list may contain multiple equal values.
+     *
+     * @param value The value to add.
+     */
+    public void add(long value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+
+        // Insert after any equal values, so that equal values keep their insertion order.
+        final int index = upperBound(value);
+
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Removes one occurrence of a value.
+     *
+     * @param value The value to remove.
+     * @return {@code true} if the value was found and removed; {@code false} if it was not present.
+     */
+    public boolean remove(long value) {
+        final int index = lowerBound(value);
+
+        if (index == size || values[index] != value)
+            return false;
+
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Removes the value at the given rank.
+     *
+     * @param index The rank of the value to remove (zero is the least value).
+     * @return The value that was removed.
+     * @throws IndexOutOfBoundsException If the index is not within {@code [0, size())}.
+     */
+    public long removeAt(int index) {
+        checkIndex(index);
+
+        final long value = values[index];
+
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Gets the value at the given rank.
+     *
+     * @param index The rank of the value (zero is the least value).
+     * @return The value at that rank.
+     * @throws IndexOutOfBoundsException If the index is not within {@code [0, size())}.
+     */
+    public long get(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Gets the number of values that are strictly less than the given value. If the value is
+     * present, this is the rank of its first occurrence.
+     *
+     * @param value The value to look up.
+     * @return The rank of the value.
+     */
+    public int rank(long value) {
+        return lowerBound(value);
+    }
+
+    /**
+     * Indicates if the list contains the given value.
+     *
+     * @param value The value to look up.
+     * @return {@code true} if at least one occurrence of the value is present.
+     */
+    public boolean contains(long value) {
+        final int index = lowerBound(value);
+
+        return index < size && values[index] == value;
+    }
+
+    /**
+     * Gets the smallest value in the list.
+     *
+     * @return The smallest value.
+     * @throws IndexOutOfBoundsException If the list is empty.
+     */
+    public long getLeast() {
+        return get(0);
+    }
+
+    /**
+     * Gets the greatest value in the list.
+     *
+     * @return The greatest value.
+     * @throws IndexOutOfBoundsException If the list is empty.
+     */
+    public long getGreatest() {
+        return get(size - 1);
+    }
+
+    /**
+     * Gets the number of values in the list, counting each occurrence of equal values.
+     *
+     * @return The number of values in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all values. The backing array is kept, so the list can be refilled without
+     * allocation.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the values into a new array, in ascending order.
+     *
+     * @return A new array holding the values of this list.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Gets the index of the first value that is greater than or equal to the given value.
+     */
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+
+            if (values[mid] < value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Gets the index of the first value that is strictly greater than the given value.
+     */
+    private int upperBound(long value) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+
+            if (values[mid] <= value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("[");
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(values[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
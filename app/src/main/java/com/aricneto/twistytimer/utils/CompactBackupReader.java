@@ -0,0 +1,314 @@
+package com.aricneto.twistytimer.utils;
+
+import com.aricneto.twistytimer.items.Solve;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.FLAG_DEFLATE;
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.MAGIC;
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.MAX_BLOCK_SIZE;
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.MAX_DICTIONARY_SIZE;
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.UTF_8;
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.VERSION;
+
+/**
+ * Reads solve times from a file in the compact, binary back-up format written by
+ * {@link CompactBackupWriter}. Only one block of solves is held in memory at a time. As for the
+ * text back-up format, all of the solves are read as being in the history of past sessions.
+ */
+public class CompactBackupReader implements SolveReader {
+    /**
+     * The size of the input buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum length of a string in bytes. A longer string indicates that the file is not
+     * valid, and could otherwise cause the application to run out of memory.
+     */
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    private final CountingInputStream mCountingIn;
+    private final InputStream mIn;
+
+    /**
+     * The decompressor, or {@code null} if the file is not compressed.
+     */
+    private final Inflater mInflater;
+
+    /**
+     * The moves in the dictionary of scramble moves, in order of their indices.
+     */
+    private final List<String> mDictionary = new ArrayList<>();
+
+    /**
+     * A buffer for the bytes of strings.
+     */
+    private byte[] mStringBytes = new byte[256];
+
+    // The solves of the current block.
+    private String mType;
+    private String mSubtype;
+    private int mBlockSize;
+    private int mNextIndex;
+    private boolean mIsEnd;
+    private final int[] mTimes = new int[MAX_BLOCK_SIZE];
+    private final long[] mDates = new long[MAX_BLOCK_SIZE];
+    private final int[] mPenalties = new int[MAX_BLOCK_SIZE];
+    private final String[] mScrambles = new String[MAX_BLOCK_SIZE];
+    private final String[] mComments = new String[MAX_BLOCK_SIZE];
+
+    /**
+     * Creates a new reader for a compact back-up file and reads the header of the file.
+     *
+     * @param in
+     *     The stream from which to read the file. It is closed when this reader is closed.
+     *
+     * @throws IOException
+     *     If the header cannot be read, or if it is not the header of a compact back-up file of a
+     *     supported version.
+     */
+    public CompactBackupReader(InputStream in) throws IOException {
+        mCountingIn = new CountingInputStream(in);
+
+        final InputStream buffered = new BufferedInputStream(mCountingIn, BUFFER_SIZE);
+        final int magic = readByte(buffered) << 24 | readByte(buffered) << 16
+                | readByte(buffered) << 8 | readByte(buffered);
+        final int version = readByte(buffered);
+        final int flags = readByte(buffered);
+
+        if (magic != MAGIC) {
+            throw new IOException("Not a compact back-up file.");
+        }
+        if (version > VERSION) {
+            throw new IOException("Unsupported compact back-up version: " + version);
+        }
+
+        if ((flags & FLAG_DEFLATE) != 0) {
+            mInflater = new Inflater();
+            mIn = new BufferedInputStream(
+                    new InflaterInputStream(buffered, mInflater), BUFFER_SIZE);
+        } else {
+            mInflater = null;
+            mIn = buffered;
+        }
+    }
+
+    /**
+     * Indicates if a stream holds a compact back-up file. The stream is reset to its current
+     * position after its first few bytes are checked.
+     *
+     * @param in
+     *     The stream to be checked. It must support {@code mark} and {@code reset}.
+     *
+     * @return
+     *     {@code true} if the stream starts with the "magic" number of a compact back-up file;
+     *     or {@code false} if it does not (e.g., if it is a text back-up file).
+     *
+     * @throws IOException
+     *     If the stream cannot be read.
+     */
+    public static boolean isCompactBackup(InputStream in) throws IOException {
+        in.mark(4);
+
+        try {
+            int magic = 0;
+
+            for (int i = 0; i < 4; i++) {
+                final int b = in.read();
+
+                if (b == -1) {
+                    return false;
+                }
+                magic = magic << 8 | b;
+            }
+
+            return magic == MAGIC;
+        } finally {
+            in.reset();
+        }
+    }
+
+    @Override
+    public Solve next() throws IOException {
+        while (mNextIndex == mBlockSize) {
+            if (mIsEnd || !readBlock()) {
+                return null;
+            }
+        }
+
+        final int i = mNextIndex++;
+
+        return new Solve(mTimes[i], mType, mSubtype, mDates[i], mScrambles[i], mPenalties[i],
+                mComments[i], true);
+    }
+
+    /**
+     * Reads the next block of solves.
+     *
+     * @return
+     *     {@code true} if a block was read; or {@code false} if the end of the file was reached.
+     */
+    private boolean readBlock() throws IOException {
+        final long size = readVarint();
+
+        if (size == 0) {
+            mIsEnd = true;
+            return false;
+        }
+        if (size > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid block size: " + size);
+        }
+
+        mBlockSize = (int) size;
+        mNextIndex = 0;
+        mType = readString();
+        mSubtype = readString();
+
+        for (int i = 0; i < mBlockSize; i++) {
+            mTimes[i] = (int) unZigZag(readVarint());
+        }
+
+        long date = 0;
+
+        for (int i = 0; i < mBlockSize; i++) {
+            date += unZigZag(readVarint());
+            mDates[i] = date;
+        }
+
+        for (int i = 0; i < mBlockSize; i++) {
+            mPenalties[i] = (int) unZigZag(readVarint());
+        }
+
+        for (int i = 0; i < mBlockSize; i++) {
+            mScrambles[i] = readScramble();
+        }
+
+        for (int i = 0; i < mBlockSize; i++) {
+            mComments[i] = readString();
+        }
+
+        return true;
+    }
+
+    private String readScramble() throws IOException {
+        final long numMoves = readVarint() - 1;
+
+        if (numMoves < 0) {
+            return null;
+        }
+
+        final StringBuilder scramble = new StringBuilder();
+
+        for (long i = 0; i < numMoves; i++) {
+            final long index = readVarint();
+            final String move;
+
+            if (index == 0) {
+                move = readString();
+
+                if (move == null) {
+                    throw new IOException("Invalid scramble move.");
+                }
+                if (mDictionary.size() < MAX_DICTIONARY_SIZE) {
+                    mDictionary.add(move);
+                }
+            } else if (index <= mDictionary.size()) {
+                move = mDictionary.get((int) index - 1);
+            } else {
+                throw new IOException("Invalid scramble move index: " + index);
+            }
+
+            if (i > 0) {
+                scramble.append(' ');
+            }
+            scramble.append(move);
+        }
+
+        return scramble.toString();
+    }
+
+    private String readString() throws IOException {
+        final long length = readVarint() - 1;
+
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length: " + length);
+        }
+
+        if (mStringBytes.length < length) {
+            mStringBytes = new byte[(int) length];
+        }
+
+        for (int offset = 0; offset < length; ) {
+            final int count = mIn.read(mStringBytes, offset, (int) length - offset);
+
+            if (count == -1) {
+                throw new EOFException();
+            }
+            offset += count;
+        }
+
+        return new String(mStringBytes, 0, (int) length, UTF_8);
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte(mIn);
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Invalid variable-length integer.");
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        final int b = in.read();
+
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public int getNumParseErrors() {
+        // A file that is not valid cannot be read any further, so "next()" throws an exception.
+        return 0;
+    }
+
+    @Override
+    public long getNumBytesRead() {
+        return mCountingIn.getCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mIn.close();
+        } finally {
+            if (mInflater != null) {
+                mInflater.end();
+            }
+        }
+    }
+}
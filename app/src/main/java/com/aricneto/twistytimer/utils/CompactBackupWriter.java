@@ -0,0 +1,276 @@
+package com.aricneto.twistytimer.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes all solve times to a file in the compact, binary back-up format. This holds the same
+ * details as the text back-up format written by {@link SolveCsvWriter}, but is much smaller and
+ * faster to read. The solves are written as they are given, so the whole back-up is never held in
+ * memory. The file is read by {@link CompactBackupReader}.
+ *
+ * <p>The file starts with a header: the "magic" number {@link #MAGIC} (four bytes, big-endian),
+ * the {@link #VERSION} of the format and a byte of flags. If {@link #FLAG_DEFLATE} is set, the rest
+ * of the file is compressed with DEFLATE. The rest of the file is a sequence of blocks, each
+ * holding up to {@link #MAX_BLOCK_SIZE} solves of one puzzle type and category, and ends with an
+ * empty block. Each block has the number of solves, the puzzle type and category, and then one
+ * column for each detail of the solves: the times, the dates (each as the difference from the
+ * previous date), the penalties, the scrambles and the comments.</p>
+ *
+ * <p>Numbers are written as variable-length integers (seven bits per byte, least significant
+ * first), using "zig-zag" encoding for signed values. Strings are written as their length in UTF-8
+ * bytes plus one, followed by the bytes, or as zero if the string is {@code null}. Scrambles are
+ * split into the moves separated by spaces. A scramble is written as its number of moves plus one,
+ * or as zero if it is {@code null}, followed by the moves. Each move is written as its index in a
+ * dictionary of the moves seen so far plus one, or, if not yet in the dictionary, as zero followed
+ * by the move as a string. A new move is then added to the dictionary, unless it already holds
+ * {@link #MAX_DICTIONARY_SIZE} moves.</p>
+ */
+public class CompactBackupWriter implements Closeable {
+    /**
+     * The "magic" number at the start of every compact back-up file ("TTBK" in ASCII).
+     */
+    static final int MAGIC = 0x5454424B;
+
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The flag that indicates that the blocks of the file are compressed with DEFLATE.
+     */
+    static final int FLAG_DEFLATE = 1;
+
+    /**
+     * The maximum number of solves in each block.
+     */
+    static final int MAX_BLOCK_SIZE = 1_024;
+
+    /**
+     * The maximum number of moves in the dictionary of scramble moves.
+     */
+    static final int MAX_DICTIONARY_SIZE = 4_096;
+
+    /**
+     * The character set of the strings.
+     */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The size of the output buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream mOut;
+
+    /**
+     * The compressor, or {@code null} if the file is not compressed.
+     */
+    private final Deflater mDeflater;
+
+    /**
+     * The indices of the moves in the dictionary of scramble moves.
+     */
+    private final Map<String, Integer> mDictionary = new HashMap<>();
+
+    // The solves of the current block.
+    private String mType;
+    private String mSubtype;
+    private int mBlockSize;
+    private final int[] mTimes = new int[MAX_BLOCK_SIZE];
+    private final long[] mDates = new long[MAX_BLOCK_SIZE];
+    private final int[] mPenalties = new int[MAX_BLOCK_SIZE];
+    private final String[] mScrambles = new String[MAX_BLOCK_SIZE];
+    private final String[] mComments = new String[MAX_BLOCK_SIZE];
+
+    /**
+     * Creates a new writer for a compact back-up file and writes the header of the file.
+     *
+     * @param out
+     *     The stream to which to write the file. It is closed when this writer is closed.
+     * @param compress
+     *     {@code true} to compress the file with DEFLATE; or {@code false} if it should not be
+     *     compressed.
+     *
+     * @throws IOException
+     *     If the header cannot be written.
+     */
+    public CompactBackupWriter(OutputStream out, boolean compress) throws IOException {
+        final OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+
+        buffered.write(MAGIC >>> 24);
+        buffered.write(MAGIC >>> 16);
+        buffered.write(MAGIC >>> 8);
+        buffered.write(MAGIC);
+        buffered.write(VERSION);
+        buffered.write(compress ? FLAG_DEFLATE : 0);
+
+        if (compress) {
+            mDeflater = new Deflater(Deflater.BEST_COMPRESSION);
+            mOut = new BufferedOutputStream(
+                    new DeflaterOutputStream(buffered, mDeflater), BUFFER_SIZE);
+        } else {
+            mDeflater = null;
+            mOut = buffered;
+        }
+    }
+
+    /**
+     * Writes a solve. Solves are best given in order of puzzle type, category and then date, as
+     * a new block is started whenever the puzzle type or category changes.
+     *
+     * @throws IOException
+     *     If the solve cannot be written.
+     */
+    public void writeSolve(String puzzleType, String category, int time, long date,
+                           String scramble, int penalty, String comment) throws IOException {
+        if (mBlockSize == MAX_BLOCK_SIZE
+                || (mBlockSize > 0 && !(equals(puzzleType, mType) && equals(category, mSubtype)))) {
+            writeBlock();
+        }
+
+        mType = puzzleType;
+        mSubtype = category;
+        mTimes[mBlockSize] = time;
+        mDates[mBlockSize] = date;
+        mPenalties[mBlockSize] = penalty;
+        mScrambles[mBlockSize] = scramble;
+        mComments[mBlockSize] = comment;
+        mBlockSize++;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Writes the current block and starts a new, empty block.
+     */
+    private void writeBlock() throws IOException {
+        final int size = mBlockSize;
+
+        writeVarint(mOut, size);
+        writeString(mOut, mType);
+        writeString(mOut, mSubtype);
+
+        for (int i = 0; i < size; i++) {
+            writeVarint(mOut, zigZag(mTimes[i]));
+        }
+
+        long previousDate = 0;
+
+        for (int i = 0; i < size; i++) {
+            writeVarint(mOut, zigZag(mDates[i] - previousDate));
+            previousDate = mDates[i];
+        }
+
+        for (int i = 0; i < size; i++) {
+            writeVarint(mOut, zigZag(mPenalties[i]));
+        }
+
+        for (int i = 0; i < size; i++) {
+            writeScramble(mScrambles[i]);
+            mScrambles[i] = null;
+        }
+
+        for (int i = 0; i < size; i++) {
+            writeString(mOut, mComments[i]);
+            mComments[i] = null;
+        }
+
+        mBlockSize = 0;
+    }
+
+    private void writeScramble(String scramble) throws IOException {
+        if (scramble == null) {
+            writeVarint(mOut, 0);
+            return;
+        }
+
+        int numMoves = 1;
+
+        for (int i = scramble.indexOf(' '); i != -1; i = scramble.indexOf(' ', i + 1)) {
+            numMoves++;
+        }
+
+        writeVarint(mOut, numMoves + 1);
+
+        for (int start = 0; start <= scramble.length(); ) {
+            int end = scramble.indexOf(' ', start);
+
+            if (end == -1) {
+                end = scramble.length();
+            }
+
+            final String move = scramble.substring(start, end);
+            final Integer index = mDictionary.get(move);
+
+            if (index != null) {
+                writeVarint(mOut, index + 1);
+            } else {
+                writeVarint(mOut, 0);
+                writeString(mOut, move);
+
+                if (mDictionary.size() < MAX_DICTIONARY_SIZE) {
+                    mDictionary.put(move, mDictionary.size());
+                }
+            }
+
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Writes any remaining solves and the end of the file, and closes the file.
+     *
+     * @throws IOException
+     *     If the solves cannot be written, or the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mBlockSize > 0) {
+                writeBlock();
+            }
+            writeVarint(mOut, 0);
+        } finally {
+            mOut.close();
+
+            if (mDeflater != null) {
+                // "DeflaterOutputStream" only releases a compressor that it created itself.
+                mDeflater.end();
+            }
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+        } else {
+            final byte[] bytes = value.getBytes(UTF_8);
+
+            writeVarint(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+}
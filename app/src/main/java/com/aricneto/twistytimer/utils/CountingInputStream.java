@@ -0,0 +1,60 @@
+package com.aricneto.twistytimer.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that counts the bytes read from another stream, so that the progress of an
+ * import can be reported.
+ */
+class CountingInputStream extends FilterInputStream {
+    private long mCount;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Gets the number of bytes read (or skipped) so far.
+     *
+     * @return The number of bytes.
+     */
+    long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+
+        if (b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        final int count = super.read(buffer, offset, length);
+
+        if (count > 0) {
+            mCount += count;
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long count = super.skip(n);
+
+        mCount += count;
+        return count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Bytes read again after a "reset()" would be counted twice.
+        return false;
+    }
+}
@@ -28,6 +28,12 @@ public final class ExportImportUtils {
      */
     private static final String BACKUP_FILE_NAME_TEMPLATE = "Backup_%s" + FILE_NAME_EXT;
 
+    /**
+     * The file name template for compact back-up files. There is one string placeholder for the
+     * time-stamp.
+     */
+    private static final String COMPACT_BACKUP_FILE_NAME_TEMPLATE = "Backup_%s.ttbk";
+
     /**
      * The characters that might be problematic if used in file names on some filesystems. Most
      * common filesystems allows most of these characters, but some command shells, file managers,
@@ -88,6 +94,17 @@ public final class ExportImportUtils {
         return String.format(BACKUP_FILE_NAME_TEMPLATE, getFileTimeStamp());
     }
 
+    /**
+     * Gets the file name to create when exporting all solve times in the compact back-up format.
+     * The file name will include a time-stamp. See
+     * {@link #getExternalFileNameForExport(String, String)} for a caution about time-stamp
+     *
+     * @return The file name to use when exporting the solve times.
+     */
+    public static String getCompactBackupFileNameForExport() {
+        return String.format(COMPACT_BACKUP_FILE_NAME_TEMPLATE, getFileTimeStamp());
+    }
+
     /**
      * Gets the file name to create when exporting solve times in the "external" format. The file
      * name will include the puzzle type and category.
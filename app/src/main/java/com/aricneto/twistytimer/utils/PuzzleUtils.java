@@ -13,11 +13,8 @@ import com.aricneto.twistytimer.solver.StringUtils;
 import com.aricneto.twistytimer.stats.AverageCalculator;
 import com.aricneto.twistytimer.stats.Statistics;
 
-import org.joda.time.Period;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.PeriodFormatter;
-import org.joda.time.format.PeriodFormatterBuilder;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -59,6 +56,23 @@ public class PuzzleUtils {
     public static final int FORMAT_LARGE = 3;
     // --                                    --
 
+    /**
+     * The size of a {@code char} array that can hold any time formatted by
+     * {@link #getTimeChars(long, int, char[])}.
+     */
+    public static final int MAX_TIME_CHARS = 32;
+
+    /**
+     * A string builder for each thread in which {@link #convertTimeToString(long, int)} formats
+     * times, so that a new builder is not needed for every time.
+     */
+    private static final ThreadLocal<StringBuilder> sTimeBuilder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(32);
+        }
+    };
+
     public PuzzleUtils() {
     }
 
@@ -165,34 +179,54 @@ public class PuzzleUtils {
         if (time == 0)
             return "--";
 
-        Period period = new Period(time);
-        PeriodFormatterBuilder periodFormatterBuilder = new PeriodFormatterBuilder();
+        final StringBuilder formattedString = sTimeBuilder.get();
+
+        formattedString.setLength(0);
+
+        return appendTime(formattedString, time, format).toString();
+    }
+
+    /**
+     * Appends a duration value in milliseconds to a string builder, in the same form as
+     * {@link #convertTimeToString(long, int)}. Nothing else is allocated, so this can be used
+     * when formatting many times, such as when exporting solves.
+     *
+     * @param sb
+     *     The string builder to which to append the time.
+     * @param time
+     *     The time in milliseconds. The number of hours must fit in an {@code int}.
+     * @param format
+     *     The format. See the {@code FORMAT_*} constants.
+     *
+     * @return
+     *     The given string builder.
+     */
+    public static StringBuilder appendTime(StringBuilder sb, long time, int format) {
+        if (time == TIME_DNF)
+            return sb.append("DNF");
+        if (time == 0)
+            return sb.append("--");
 
-        StringBuilder formattedString = new StringBuilder();
+        // The fields are truncated towards zero, so each field of a negative time is negative.
+        // Hours and minutes are left out if they are zero, even if hours are shown and minutes are
+        // not, as Joda's "PeriodFormatter" did before.
+        final long hours = time / 3_600_000;
+        final long minutes = time / 60_000 % 60;
+        final long seconds = time / 1_000 % 60;
 
+        if (hours != 0)
+            sb.append(hours).append("h ");
 
-        // PeriodFormatter ignores appends (and suffixes) if time is not enough to convert.
-        // If the time ir smaller than 10_000 milliseconds (10 seconds), do not pad it with
-        // a zero
-        PeriodFormatter periodFormatter;
+        if (format == FORMAT_LARGE)
+            return sb.append(minutes).append('m');
 
-        if (format == FORMAT_LARGE) {
-            periodFormatter = periodFormatterBuilder
-                    .appendHours().appendSuffix("h ")
-                    .printZeroAlways()
-                    .appendMinutes().appendSuffix("m")
-                    .toFormatter();
-        } else {
-            periodFormatter = periodFormatterBuilder
-                    .appendHours().appendSuffix("h ")
-                    .appendMinutes().appendSuffix(":")
-                    .printZeroAlways()
-                    .minimumPrintedDigits(time < (10_000) ? 1 : 2)
-                    .appendSeconds()
-                    .toFormatter();
-        }
+        if (minutes != 0)
+            sb.append(minutes).append(':');
 
-        formattedString.append(period.toString(periodFormatter));
+        // If the time is smaller than 10_000 milliseconds (10 seconds), do not pad it with a zero
+        if (time >= 10_000 && seconds < 10)
+            sb.append('0');
+        sb.append(seconds);
 
         // Restrict millis to 2 digits
         long millis = time % 1000;
@@ -202,20 +236,121 @@ public class PuzzleUtils {
         // Append millis
         switch (format) {
             case FORMAT_DEFAULT:
-                formattedString.append(".");
-                formattedString.append(millis >= 10 ? millis : "0" + millis);
+                sb.append('.');
+                appendMillis(sb, millis);
                 break;
             case FORMAT_SMALL_MILLI:
-                formattedString.append("<small>.");
-                formattedString.append(millis >= 10 ? millis : "0" + millis);
-                formattedString.append("</small>");
+                sb.append("<small>.");
+                appendMillis(sb, millis);
+                sb.append("</small>");
                 break;
             case FORMAT_NO_MILLI:
             default:
                 break;
         }
 
-        return formattedString.toString();
+        return sb;
+    }
+
+    private static void appendMillis(StringBuilder sb, long millis) {
+        if (millis < 10)
+            sb.append('0');
+        sb.append(millis);
+    }
+
+    /**
+     * Formats a duration value in milliseconds into an array of characters, in the same form as
+     * {@link #convertTimeToString(long, int)}. Nothing is allocated, so this can be used to update
+     * the display of a running timer on every frame. As the characters cannot hold any mark-up,
+     * {@link #FORMAT_SMALL_MILLI} is formatted in the same form as {@link #FORMAT_DEFAULT}; the
+     * caller can style the fractional part of the seconds, which starts at the last {@code '.'}.
+     *
+     * @param time
+     *     The time in milliseconds. The number of hours must fit in an {@code int}.
+     * @param format
+     *     The format. See the {@code FORMAT_*} constants.
+     * @param dest
+     *     The array into which to format the time. It must hold at least {@link #MAX_TIME_CHARS}
+     *     characters.
+     *
+     * @return
+     *     The number of characters of the formatted time, starting at index zero of {@code dest}.
+     */
+    public static int getTimeChars(long time, int format, char[] dest) {
+        if (time == TIME_DNF)
+            return putChars(dest, 0, "DNF");
+        if (time == 0)
+            return putChars(dest, 0, "--");
+
+        // The same fields as "appendTime". See the comments there.
+        final long hours = time / 3_600_000;
+        final long minutes = time / 60_000 % 60;
+        final long seconds = time / 1_000 % 60;
+        int pos = 0;
+
+        if (hours != 0)
+            pos = putChars(dest, putLong(dest, pos, hours), "h ");
+
+        if (format == FORMAT_LARGE) {
+            pos = putLong(dest, pos, minutes);
+            dest[pos++] = 'm';
+            return pos;
+        }
+
+        if (minutes != 0) {
+            pos = putLong(dest, pos, minutes);
+            dest[pos++] = ':';
+        }
+
+        if (time >= 10_000 && seconds < 10)
+            dest[pos++] = '0';
+        pos = putLong(dest, pos, seconds);
+
+        long millis = time % 1000;
+        if (millis >= 10)
+            millis /= 10;
+
+        if (format == FORMAT_DEFAULT || format == FORMAT_SMALL_MILLI) {
+            dest[pos++] = '.';
+            if (millis < 10)
+                dest[pos++] = '0';
+            pos = putLong(dest, pos, millis);
+        }
+
+        return pos;
+    }
+
+    private static int putChars(char[] dest, int pos, String chars) {
+        chars.getChars(0, chars.length(), dest, pos);
+        return pos + chars.length();
+    }
+
+    /**
+     * Puts the decimal digits of a value (and its sign, if negative) into an array of characters.
+     *
+     * @return The index in {@code dest} that follows the last digit.
+     */
+    private static int putLong(char[] dest, int pos, long value) {
+        if (value < 0) {
+            dest[pos++] = '-';
+        } else {
+            // The digits are put in from the least significant, so work with the negative value,
+            // as not every negative value has a positive counterpart.
+            value = -value;
+        }
+
+        int end = pos;
+
+        for (long v = value; v <= -10; v /= 10) {
+            end++;
+        }
+
+        for (int i = end; i >= pos; i--) {
+            dest[i] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+
+        return end + 1;
     }
 
     /**
@@ -349,18 +484,16 @@ public class PuzzleUtils {
             return null;
         }
 
-        final StringBuilder s = new StringBuilder(convertTimeToString(tr(average), PuzzleUtils.FORMAT_DEFAULT));
+        final StringBuilder s = new StringBuilder();
 
-        s.append(" = ");
+        appendTime(s, tr(average), PuzzleUtils.FORMAT_DEFAULT).append(" = ");
 
         for (int i = 0; i < n; i++) {
-            final String time = convertTimeToString(tr(times[i]), PuzzleUtils.FORMAT_DEFAULT);
-
             // The best and worst indices may be -1, but that is OK: they just will not be marked.
             if (i == aoN.getBestTimeIndex() || i == aoN.getWorstTimeIndex()) {
-                s.append('(').append(time).append(')');
+                appendTime(s.append('('), tr(times[i]), PuzzleUtils.FORMAT_DEFAULT).append(')');
             } else {
-                s.append(time);
+                appendTime(s, tr(times[i]), PuzzleUtils.FORMAT_DEFAULT);
             }
 
             if (i < n - 1) {
@@ -570,9 +703,7 @@ public class PuzzleUtils {
 
             // Iteration order starts with DNF and then goes by increasing time.
             for (Long time : timeFreqs.keySet()) {
-                histogram
-                        .append('\n')
-                        .append(convertTimeToString(tr(time), FORMAT_NO_MILLI))
+                appendTime(histogram.append('\n'), tr(time), FORMAT_NO_MILLI)
                         .append(": ")
                         .append(convertToBars(timeFreqs.get(time))); // frequency value.
             }
@@ -1,8 +1,10 @@
 package com.aricneto.twistytimer.utils;
 
 import android.content.SharedPreferences;
+import android.graphics.Picture;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PictureDrawable;
+import android.util.LruCache;
 
 import com.aricneto.twistytimer.puzzle.NbyNCubePuzzle;
 import com.caverock.androidsvg.SVG;
@@ -10,6 +12,9 @@ import com.caverock.androidsvg.SVGParseException;
 
 import net.gnehzr.tnoodle.scrambles.InvalidScrambleException;
 import net.gnehzr.tnoodle.scrambles.Puzzle;
+import net.gnehzr.tnoodle.svglite.Color;
+
+import java.util.HashMap;
 
 import puzzle.ClockPuzzle;
 import puzzle.FourByFourCubePuzzle;
@@ -24,9 +29,27 @@ import puzzle.TwoByTwoCubePuzzle;
  * Util for generating and drawing scrambles
  */
 public class ScrambleGenerator {
+    /**
+     * The maximum number of rendered scramble images to keep in the cache. This is enough for the
+     * scrambles in the scramble pools of a few puzzle types.
+     */
+    private static final int IMAGE_CACHE_SIZE = 32;
+
+    /**
+     * The rendered scramble images, shared by all generators. The key is made up of the puzzle
+     * type, the color scheme and the scramble, so an image is rendered again if the colors are
+     * changed. A {@code Picture} only records the drawing operations, so it is much smaller than
+     * a bitmap and can be drawn at any size.
+     */
+    private static final LruCache<String, Picture> sImageCache = new LruCache<>(IMAGE_CACHE_SIZE);
+
     private Puzzle puzzle;
     private String puzzleType;
 
+    // The color scheme most recently parsed by "puzzle" and the text from which it was parsed.
+    private String colorSchemeText;
+    private HashMap<String, Color> colorScheme;
+
     public ScrambleGenerator(String type) {
         puzzleType = type;
         switch (type) {
@@ -73,8 +96,9 @@ public class ScrambleGenerator {
         return puzzle;
     }
 
-    public void setPuzzle(Puzzle puzzle) {
+    public synchronized void setPuzzle(Puzzle puzzle) {
         this.puzzle = puzzle;
+        colorScheme = null;
     }
 
     /**
@@ -85,6 +109,74 @@ public class ScrambleGenerator {
      */
 
     public Drawable generateImageFromScramble(SharedPreferences sp, String scramble) {
+        final Picture picture = renderScramble(sp, scramble);
+
+        return picture != null ? new PictureDrawable(picture) : null;
+    }
+
+    /**
+     * Renders the image of a scramble, so that it is already in the cache when the scramble is
+     * shown. This is used for scrambles that are generated in advance.
+     */
+    public void prerenderScramble(SharedPreferences sp, String scramble) {
+        renderScramble(sp, scramble);
+    }
+
+    /**
+     * Gets the image of a scramble from the cache, or renders it if it is not in the cache.
+     * Rendering needs the SVG drawn by Tnoodle to be written as text and then parsed by AndroidSVG
+     * (which has no way to build its document from Tnoodle's elements), so this is only done once
+     * for each scramble and color scheme.
+     */
+    private Picture renderScramble(SharedPreferences sp, String scramble) {
+        if (scramble == null)
+            return null;
+
+        final String schemeText = getColorSchemeText(sp);
+        final String key = puzzleType + '|' + schemeText + '|' + scramble;
+        Picture picture = sImageCache.get(key);
+
+        if (picture == null) {
+            String cubeImg = null;
+
+            synchronized (this) {
+                try {
+                    cubeImg = puzzle.drawScramble(scramble, getColorScheme(schemeText)).toString();
+                } catch (InvalidScrambleException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            if (cubeImg != null) {
+                try {
+                    picture = SVG.getFromString(cubeImg).renderToPicture();
+                    sImageCache.put(key, picture);
+                } catch (SVGParseException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return picture;
+    }
+
+    /**
+     * Gets the color scheme, parsing it only if it has changed since it was last parsed. The
+     * caller must hold the lock on this generator.
+     */
+    private HashMap<String, Color> getColorScheme(String schemeText) {
+        if (colorScheme == null || !schemeText.equals(colorSchemeText)) {
+            colorScheme = puzzle.parseColorScheme(schemeText);
+            colorSchemeText = schemeText;
+        }
+
+        return colorScheme;
+    }
+
+    /**
+     * Gets the color scheme from the preferences, in the form expected by Tnoodle.
+     */
+    private String getColorSchemeText(SharedPreferences sp) {
         // Getting the color scheme
         String top;
         String left;
@@ -110,23 +202,6 @@ public class ScrambleGenerator {
             down = sp.getString("cubeDown", "FDD835");
         }
 
-        String cubeImg = null;
-        Drawable pic = null;
-
-        try {
-            cubeImg = puzzle.drawScramble(scramble, puzzle.parseColorScheme(back + "," + down + "," + front + "," + left + "," + right + "," + top)).toString();
-        } catch (InvalidScrambleException e) {
-            e.printStackTrace();
-        }
-
-        if (cubeImg != null) {
-            try {
-                pic = new PictureDrawable(SVG.getFromString(cubeImg).renderToPicture());
-            } catch (SVGParseException e) {
-                e.printStackTrace();
-            }
-        }
-
-        return pic;
+        return back + "," + down + "," + front + "," + left + "," + right + "," + top;
     }
 }
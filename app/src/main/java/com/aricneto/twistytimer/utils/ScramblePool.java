@@ -0,0 +1,292 @@
+package com.aricneto.twistytimer.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.aricneto.twistify.R;
+import com.aricneto.twistytimer.TwistyTimer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A pool of ready scrambles for each puzzle type. Generating a scramble for the larger puzzles
+ * (e.g., 4x4x4 to 7x7x7, Megaminx and Square-1) can take long enough that the "generating
+ * scramble" progress indicator would be shown between solves. Instead, a small number of
+ * scrambles is generated in advance for each puzzle type, so that a new scramble can be taken from
+ * the pool as soon as it is needed.
+ *
+ * <p>Each time a scramble is taken, the pool for that puzzle type is refilled on a single,
+ * low-priority background thread. The size of each pool is set by the
+ * {@link R.string#pk_scramble_pool_size} preference; a size of zero disables the pool. The pooled
+ * scrambles are saved to a private preferences file, so they are still available when the
+ * application is next started. The image of each pooled scramble is also rendered in advance (see
+ * {@link ScrambleGenerator}), although the images are not saved.</p>
+ *
+ * <p>The hit rate (the fraction of requests served from the pool) and the mean time taken to
+ * generate each scramble during a refill are recorded, so the pool size can be tuned.</p>
+ */
+public final class ScramblePool {
+    /**
+     * Flag to enable debug logging for this class.
+     */
+    private static final boolean DEBUG_ME = false;
+
+    /**
+     * A "tag" to identify this class in log messages.
+     */
+    private static final String TAG = ScramblePool.class.getSimpleName();
+
+    /**
+     * The name of the preferences file in which the pooled scrambles are saved. The key for each
+     * pool is the puzzle type and the value is a JSON array of the scrambles.
+     */
+    private static final String PREFS_NAME = "scramble_pool";
+
+    /**
+     * The pooled scrambles for each puzzle type, oldest first. Pools are loaded from the
+     * preferences file when first needed. Guarded by the class lock.
+     */
+    private static final Map<String, ArrayDeque<String>> sPools = new HashMap<>();
+
+    /**
+     * The puzzle types for which a refill is currently queued or running. Guarded by the class
+     * lock.
+     */
+    private static final Set<String> sRefilling = new HashSet<>();
+
+    /**
+     * The scramble generators for each puzzle type. These are only used on the refill thread.
+     */
+    private static final Map<String, ScrambleGenerator> sGenerators = new HashMap<>();
+
+    /**
+     * The single background thread that refills the pools.
+     */
+    private static final ExecutorService sRefillExecutor = Executors.newSingleThreadExecutor(
+            r -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "ScramblePool"));
+
+    // Metrics. Guarded by the class lock.
+    private static int sNumHits;
+    private static int sNumMisses;
+    private static int sNumGenerated;
+    private static long sTotalGenerateTime;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private ScramblePool() {
+    }
+
+    /**
+     * Takes a ready scramble from the pool for a puzzle type and starts refilling that pool in
+     * the background. This does not block while scrambles are generated.
+     *
+     * @param puzzleType
+     *     The puzzle type (one of the {@code PuzzleUtils.TYPE_*} constants).
+     *
+     * @return
+     *     The scramble; or {@code null} if the pool is empty, in which case the caller must
+     *     generate the scramble itself.
+     */
+    @Nullable
+    public static synchronized String poll(String puzzleType) {
+        final String scramble = getPool(puzzleType).pollFirst();
+
+        if (scramble != null) {
+            sNumHits++;
+            save(puzzleType);
+        } else {
+            sNumMisses++;
+        }
+
+        if (DEBUG_ME) Log.d(TAG, "poll(" + puzzleType + "): hit=" + (scramble != null)
+                + ", hit rate=" + getHitRate() + ", mean refill latency="
+                + getMeanRefillLatency() + " ms");
+
+        refill(puzzleType);
+
+        return scramble;
+    }
+
+    /**
+     * Starts refilling the pool for a puzzle type in the background, unless it is already full
+     * or is already being refilled.
+     *
+     * @param puzzleType
+     *     The puzzle type (one of the {@code PuzzleUtils.TYPE_*} constants).
+     */
+    public static synchronized void refill(final String puzzleType) {
+        if (getPool(puzzleType).size() < getCapacity() && sRefilling.add(puzzleType)) {
+            sRefillExecutor.execute(() -> fill(puzzleType));
+        }
+    }
+
+    /**
+     * Gets the fraction of the requests for scrambles that were served from the pools since the
+     * application was started.
+     *
+     * @return
+     *     The hit rate, from zero to one; or zero if no scrambles have been requested.
+     */
+    public static synchronized float getHitRate() {
+        final int numRequests = sNumHits + sNumMisses;
+
+        return numRequests > 0 ? (float) sNumHits / numRequests : 0f;
+    }
+
+    /**
+     * Gets the mean time taken to generate a scramble when refilling the pools since the
+     * application was started.
+     *
+     * @return
+     *     The mean time in milliseconds; or zero if no scrambles have been generated.
+     */
+    public static synchronized long getMeanRefillLatency() {
+        return sNumGenerated > 0 ? sTotalGenerateTime / sNumGenerated : 0L;
+    }
+
+    /**
+     * Generates scrambles until the pool for a puzzle type is full. This runs on the refill
+     * thread. The lock is not held while a scramble is generated, so scrambles can still be taken
+     * from the pool in the meantime.
+     */
+    private static void fill(String puzzleType) {
+        ScrambleGenerator generator = sGenerators.get(puzzleType);
+
+        if (generator == null) {
+            generator = new ScrambleGenerator(puzzleType);
+            sGenerators.put(puzzleType, generator);
+        }
+
+        try {
+            // Scrambles saved when the application was last used have no images yet.
+            final String[] pooled;
+
+            synchronized (ScramblePool.class) {
+                pooled = getPool(puzzleType).toArray(new String[0]);
+            }
+
+            for (String scramble : pooled) {
+                prerenderImage(generator, scramble);
+            }
+
+            while (true) {
+                synchronized (ScramblePool.class) {
+                    if (getPool(puzzleType).size() >= getCapacity()) {
+                        return;
+                    }
+                }
+
+                final long startTime = SystemClock.elapsedRealtime();
+                final String scramble = generator.getPuzzle().generateScramble();
+                final long generateTime = SystemClock.elapsedRealtime() - startTime;
+
+                prerenderImage(generator, scramble);
+
+                synchronized (ScramblePool.class) {
+                    getPool(puzzleType).addLast(scramble);
+                    save(puzzleType);
+                    sNumGenerated++;
+                    sTotalGenerateTime += generateTime;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Could not generate a scramble for the pool: " + puzzleType, e);
+        } finally {
+            synchronized (ScramblePool.class) {
+                sRefilling.remove(puzzleType);
+            }
+        }
+    }
+
+    /**
+     * Renders the image of a pooled scramble into the image cache, if scramble images are shown,
+     * so that it does not need to be rendered when the scramble is taken from the pool.
+     */
+    private static void prerenderImage(ScrambleGenerator generator, String scramble) {
+        if (Prefs.getBoolean(R.string.pk_show_scramble_image, true)) {
+            generator.prerenderScramble(Prefs.getPrefs(), scramble);
+        }
+    }
+
+    /**
+     * Gets the maximum number of scrambles to keep in the pool for each puzzle type.
+     */
+    private static int getCapacity() {
+        return Prefs.getInt(R.string.pk_scramble_pool_size,
+                Prefs.getDefaultIntValue(R.integer.defaultScramblePoolSize));
+    }
+
+    /**
+     * Gets the preferences file in which the pooled scrambles are saved.
+     */
+    private static SharedPreferences getPoolPrefs() {
+        return TwistyTimer.getAppContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Gets the pool for a puzzle type, loading the saved scrambles if the pool has not yet been
+     * used. If the pool is larger than its capacity (e.g., if the capacity was reduced), the
+     * excess scrambles are discarded. The caller must hold the class lock.
+     */
+    private static ArrayDeque<String> getPool(String puzzleType) {
+        ArrayDeque<String> pool = sPools.get(puzzleType);
+
+        if (pool == null) {
+            pool = new ArrayDeque<>();
+            sPools.put(puzzleType, pool);
+
+            try {
+                final JSONArray scrambles
+                        = new JSONArray(getPoolPrefs().getString(puzzleType, "[]"));
+
+                for (int i = 0; i < scrambles.length(); i++) {
+                    pool.addLast(scrambles.getString(i));
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Could not load the saved scrambles: " + puzzleType, e);
+            }
+        }
+
+        final int capacity = getCapacity();
+
+        if (pool.size() > capacity) {
+            while (pool.size() > capacity) {
+                pool.pollLast();
+            }
+            save(puzzleType);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Saves the pool for a puzzle type. The caller must hold the class lock.
+     */
+    private static void save(String puzzleType) {
+        final JSONArray scrambles = new JSONArray();
+
+        for (String scramble : sPools.get(puzzleType)) {
+            scrambles.put(scramble);
+        }
+
+        getPoolPrefs().edit().putString(puzzleType, scrambles.toString()).apply();
+    }
+}
@@ -0,0 +1,163 @@
+package com.aricneto.twistytimer.utils;
+
+import android.util.Log;
+
+import com.aricneto.twistytimer.fragment.dialog.ExportImportDialog;
+import com.aricneto.twistytimer.items.Solve;
+import com.opencsv.CSVReader;
+
+import org.joda.time.DateTime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.UTF_8;
+
+/**
+ * Reads solve times from a file in one of the formats written by {@link SolveCsvWriter}. The
+ * solves are parsed one at a time as the file is read, so the whole file is never held in memory.
+ * Rows that cannot be parsed are skipped and counted.
+ */
+public class SolveCsvReader implements SolveReader {
+    /**
+     * Flag to enable debug logging for this class.
+     */
+    private static final boolean DEBUG_ME = false;
+
+    /**
+     * A "tag" to identify this class in log messages.
+     */
+    private static final String TAG = SolveCsvReader.class.getSimpleName();
+
+    private final int mFileFormat;
+    private final String mPuzzleType;
+    private final String mPuzzleCategory;
+    private final CountingInputStream mIn;
+    private final CSVReader mCsvReader;
+
+    /**
+     * The date given to "external" solves that have no valid date.
+     */
+    private final long mNow = DateTime.now().getMillis();
+
+    private boolean mIsHeaderRead;
+    private int mNumParseErrors;
+
+    /**
+     * Creates a new reader for solve times.
+     *
+     * @param in
+     *     The stream from which to read the solve times. It is closed when this reader is closed.
+     * @param fileFormat
+     *     The solve file format, must be {@link ExportImportDialog#EXIM_FORMAT_EXTERNAL}, or
+     *     {@link ExportImportDialog#EXIM_FORMAT_BACKUP}.
+     * @param puzzleType
+     *     The type of the puzzle of the solves. This is required when {@code fileFormat} is
+     *     {@code EXIM_FORMAT_EXTERNAL}. For {@code EXIM_FORMAT_BACKUP}, it may be {@code null},
+     *     as it will not be used.
+     * @param puzzleCategory
+     *     The category (subtype) of the puzzle of the solves. Required when {@code fileFormat} is
+     *     {@code EXIM_FORMAT_EXTERNAL}. For {@code EXIM_FORMAT_BACKUP}, it may be {@code null},
+     *     as it will not be used.
+     */
+    public SolveCsvReader(InputStream in, int fileFormat, String puzzleType,
+                          String puzzleCategory) {
+        mFileFormat = fileFormat;
+        mPuzzleType = puzzleType;
+        mPuzzleCategory = puzzleCategory;
+        mIn = new CountingInputStream(in);
+        mCsvReader = new CSVReader(
+                new BufferedReader(new InputStreamReader(mIn, UTF_8)), ';', '"', true);
+    }
+
+    @Override
+    public Solve next() throws IOException {
+        String[] line;
+
+        if (mFileFormat == ExportImportDialog.EXIM_FORMAT_BACKUP) {
+            if (!mIsHeaderRead) {
+                // throw away the header
+                mCsvReader.readNext();
+                mIsHeaderRead = true;
+            }
+
+            while ((line = mCsvReader.readNext()) != null) {
+                try {
+                    return new Solve(
+                            Integer.parseInt(line[2]), line[0], line[1], Long.parseLong(line[3]),
+                            line[4], Integer.parseInt(line[5]), line[6], true);
+                } catch (Exception e) {
+                    mNumParseErrors++;
+                }
+            }
+        } else if (mFileFormat == ExportImportDialog.EXIM_FORMAT_EXTERNAL) {
+            while ((line = mCsvReader.readNext()) != null) {
+                final Solve solve = line.length <= 4 ? parseExternalSolve(line) : null;
+
+                if (solve != null) {
+                    return solve;
+                }
+                mNumParseErrors++;
+            }
+        } else {
+            throw new IOException("Unknown import file format: " + mFileFormat);
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses a row of the "external" format.
+     *
+     * @return
+     *     The solve; or {@code null} if the row cannot be parsed.
+     */
+    private Solve parseExternalSolve(String[] line) {
+        try {
+            if (DEBUG_ME) Log.d(TAG, "time: " + line[0]);
+
+            int time = PuzzleUtils.parseTime(line[0]);
+            String scramble = "";
+            long date = mNow;
+            int penalty = PuzzleUtils.NO_PENALTY;
+
+            if (line.length >= 2) {
+                scramble = line[1];
+            }
+            if (line.length >= 3) {
+                try {
+                    date = DateTime.parse(line[2]).getMillis();
+                } catch (Exception e) {
+                    // "date" remains equal to "now".
+                    if (DEBUG_ME) Log.d(TAG, "Invalid date: " + line[2], e);
+                }
+            }
+            // Optional fourth field (index 3) may contain "DNF". If it is
+            // something else, ignore it.
+            if (line.length >= 4 && "DNF".equals(line[3])) {
+                penalty = PuzzleUtils.PENALTY_DNF;
+            }
+
+            return new Solve(time, mPuzzleType, mPuzzleCategory, date, scramble, penalty, "", true);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int getNumParseErrors() {
+        return mNumParseErrors;
+    }
+
+    @Override
+    public long getNumBytesRead() {
+        return mIn.getCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mCsvReader.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.aricneto.twistytimer.utils;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static com.aricneto.twistytimer.utils.CompactBackupWriter.UTF_8;
+
+/**
+ * Writes solve times to a file in one of the export formats. Each row is encoded into a single
+ * reusable string builder and written through a large buffer, so exporting many solves does not
+ * create several strings for every solve or write to the file for every row.
+ *
+ * <p>The "back-up" format has a header row and then one row for each solve with all of its
+ * details. The "external" format has one row for each solve with its time, scramble, date and
+ * an optional "DNF" field, and is intended to be imported into other timer applications. In both
+ * formats, fields are quoted with double quotes and separated by semicolons. Quotes within the
+ * fields are not escaped. The file is encoded in UTF-8.</p>
+ */
+public class SolveCsvWriter implements Closeable {
+    /**
+     * The header row of the "back-up" format.
+     */
+    private static final String BACKUP_HEADER
+            = "Puzzle,Category,Time(millis),Date(millis),Scramble,Penalty,Comment\n";
+
+    /**
+     * The size of the output buffer in characters.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The buffered writer to which the rows are written.
+     */
+    private final Writer mOut;
+
+    /**
+     * The builder into which each row is encoded before it is written.
+     */
+    private final StringBuilder mRow = new StringBuilder(256);
+
+    /**
+     * The characters of each row, copied from {@link #mRow} to be written.
+     */
+    private char[] mChars = new char[256];
+
+    /**
+     * The formatter for the dates of the "external" format. This is the ISO 8601 format with the
+     * offset of the default time zone, as created by {@code DateTime.toString()}.
+     */
+    private final DateTimeFormatter mDateFormatter
+            = ISODateTimeFormat.dateTime().withZone(DateTimeZone.getDefault());
+
+    /**
+     * Creates a new writer for solve times.
+     *
+     * @param out
+     *     The stream to which to write the solve times. It is closed when this writer is closed.
+     */
+    public SolveCsvWriter(OutputStream out) {
+        mOut = new BufferedWriter(new OutputStreamWriter(out, UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the header row of the "back-up" format.
+     *
+     * @throws IOException
+     *     If the row cannot be written.
+     */
+    public void writeBackupHeader() throws IOException {
+        mOut.write(BACKUP_HEADER);
+    }
+
+    /**
+     * Writes a solve in the "back-up" format. Any {@code null} values are written as "null".
+     *
+     * @throws IOException
+     *     If the row cannot be written.
+     */
+    public void writeBackupSolve(String puzzleType, String category, int time, long date,
+                                 String scramble, int penalty, String comment) throws IOException {
+        final StringBuilder row = mRow;
+
+        row.setLength(0);
+        row.append('"').append(puzzleType)
+                .append("\";\"").append(category)
+                .append("\";\"").append(time)
+                .append("\";\"").append(date)
+                .append("\";\"").append(scramble)
+                .append("\";\"").append(penalty)
+                .append("\";\"").append(comment)
+                .append("\"\n");
+
+        writeRow(row);
+    }
+
+    /**
+     * Writes a solve in the "external" format.
+     *
+     * @throws IOException
+     *     If the row cannot be written.
+     */
+    public void writeExternalSolve(int time, String scramble, long date, boolean isDNF)
+            throws IOException {
+        final StringBuilder row = mRow;
+
+        row.setLength(0);
+        row.append('"');
+        PuzzleUtils.appendTime(row, time, PuzzleUtils.FORMAT_DEFAULT);
+        row.append("\";\"").append(scramble).append("\";\"");
+        mDateFormatter.printTo(row, date);
+        row.append('"');
+
+        // Add optional "DNF" in fourth field.
+        if (isDNF) {
+            row.append(";\"DNF\"");
+        }
+
+        row.append('\n');
+
+        writeRow(row);
+    }
+
+    private void writeRow(StringBuilder row) throws IOException {
+        // "Writer.append(CharSequence)" would create a string of the row, so copy the characters.
+        final int length = row.length();
+
+        if (mChars.length < length) {
+            mChars = new char[Math.max(length, 2 * mChars.length)];
+        }
+
+        row.getChars(0, length, mChars, 0);
+        mOut.write(mChars, 0, length);
+    }
+
+    /**
+     * Writes any buffered rows and closes the file.
+     *
+     * @throws IOException
+     *     If the rows cannot be written, or the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mOut.close();
+    }
+}
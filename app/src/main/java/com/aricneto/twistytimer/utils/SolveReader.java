@@ -0,0 +1,37 @@
+package com.aricneto.twistytimer.utils;
+
+import com.aricneto.twistytimer.items.Solve;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads solve times one at a time from an imported file.
+ */
+public interface SolveReader extends Closeable {
+    /**
+     * Reads the next solve from the file. Solves that cannot be parsed are skipped.
+     *
+     * @return
+     *     The next solve; or {@code null} if there are no more solves in the file.
+     *
+     * @throws IOException
+     *     If the file cannot be read or is not valid.
+     */
+    Solve next() throws IOException;
+
+    /**
+     * Gets the number of solves that could not be parsed so far.
+     *
+     * @return The number of parse errors.
+     */
+    int getNumParseErrors();
+
+    /**
+     * Gets the number of bytes read from the file so far. The file may be read ahead of the
+     * solves that have been parsed, so this is only suitable for reporting progress.
+     *
+     * @return The number of bytes read.
+     */
+    long getNumBytesRead();
+}
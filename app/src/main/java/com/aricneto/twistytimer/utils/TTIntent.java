@@ -88,6 +88,12 @@ public final class TTIntent {
      * times (bulk import), deleting selected times, or changing the penalties, comments, history
      * status or other properties of one or more times. A full refresh of any displayed time data
      * may be required.
+     * <p>
+     * If the modification is known, the intent may describe it, allowing receivers to apply the
+     * change without a full refresh: {@link #EXTRA_SOLVE} holds the new state of a single solve
+     * that was updated, and {@link #EXTRA_DELETED_SOLVE_IDS} holds the IDs of solves that were
+     * deleted. If neither extra is present, the modifications are unspecified.
+     * </p>
      */
     public static final String ACTION_TIMES_MODIFIED = ACTION_PREFIX + "TIMES_MODIFIED";
 
@@ -212,6 +218,11 @@ public final class TTIntent {
      */
     public static final String EXTRA_SOLVE = EXTRA_PREFIX + "SOLVE";
 
+    /**
+     * The name of an intent extra that can be used to record the IDs of deleted solves.
+     */
+    public static final String EXTRA_DELETED_SOLVE_IDS = EXTRA_PREFIX + "DELETED_SOLVE_IDS";
+
     /**
      * The name of an intent extra that can be used to record a scramble
      */
@@ -449,6 +460,16 @@ public final class TTIntent {
         return solve == null ? null : (Solve) solve;
     }
 
+    /**
+     * Gets the IDs of the deleted solves specified in an intent extra.
+     *
+     * @param intent The intent from which to get the solve IDs.
+     * @return The solve IDs, or {@code null} if the intent does not specify any deleted solves.
+     */
+    public static long[] getDeletedSolveIDs(Intent intent) {
+        return intent.getLongArrayExtra(EXTRA_DELETED_SOLVE_IDS);
+    }
+
     /**
      * Gets the scramble specified in an intent extra.
      *
@@ -564,6 +585,23 @@ public final class TTIntent {
             return this;
         }
 
+        /**
+         * Sets an optional extra that identifies the solves that were deleted by the action of the
+         * intent that will be broadcast. The receiver can call
+         * {@link TTIntent#getDeletedSolveIDs(Intent)} to retrieve the solve IDs from the intent.
+         *
+         * @param solveIDs The IDs of the deleted solves to be added to the broadcast intent.
+         *
+         * @return {@code this} broadcast builder, allowing method calls to be chained.
+         */
+        public BroadcastBuilder deletedSolves(long... solveIDs) {
+            if (solveIDs != null) {
+                mIntent.putExtra(EXTRA_DELETED_SOLVE_IDS, solveIDs);
+            }
+
+            return this;
+        }
+
         /**
          * Sets an optional extra that identifies a scramble string related to the action of the intent
          * that will be broadcast. The receiver can call {@link TTIntent#getScramble(Intent)} to
@@ -0,0 +1,88 @@
+package com.aricneto.twistytimer.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the queries that read the solves for the statistics are served by the covering
+ * indices of the times table, without a temporary sort. The plans are checked with SQLite on the
+ * JVM, which chooses the same plans as Android's SQLite when there are no statistics on the
+ * tables, as is the case in the application.
+ */
+public class DatabaseIndexTestCase {
+    private Connection mConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        final Statement statement = mConnection.createStatement();
+
+        try {
+            statement.execute(DatabaseHandler.CREATE_TABLE_TIMES);
+            statement.execute(DatabaseHandler.CREATE_INDEX_TIMES_SESSION);
+            statement.execute(DatabaseHandler.CREATE_INDEX_TIMES_DATE);
+        } finally {
+            statement.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mConnection.close();
+    }
+
+    /**
+     * Gets the query plan of a query for each chunk of solves read by
+     * {@link DatabaseHandler#readSolves}, one line for each step.
+     */
+    private String getQueryPlan(String sql) throws SQLException {
+        final PreparedStatement statement
+                = mConnection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+        final StringBuilder plan = new StringBuilder();
+
+        try {
+            statement.setString(1, "333");
+            statement.setString(2, "Normal");
+            statement.setLong(3, DatabaseHandler.ALL_DATES);
+
+            final ResultSet steps = statement.executeQuery();
+
+            while (steps.next()) {
+                plan.append(steps.getString("detail")).append('\n');
+            }
+            steps.close();
+        } finally {
+            statement.close();
+        }
+
+        return plan.toString();
+    }
+
+    @Test
+    public void testAllTimeQueryUsesDateIndex() throws Exception {
+        final String plan = getQueryPlan(DatabaseHandler.getReadSolvesChunkSQL(false));
+
+        assertTrue(plan, plan.contains("USING COVERING INDEX idx_times_date"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void testCurrentSessionQueryUsesSessionIndex() throws Exception {
+        final String plan = getQueryPlan(DatabaseHandler.getReadSolvesChunkSQL(true));
+
+        assertTrue(plan, plan.contains("USING COVERING INDEX idx_times_session"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+}
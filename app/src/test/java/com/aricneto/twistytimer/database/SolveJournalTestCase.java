@@ -0,0 +1,141 @@
+package com.aricneto.twistytimer.database;
+
+import com.aricneto.twistytimer.items.Solve;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static com.aricneto.twistytimer.database.SolveJournal.OP_ADD;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_DELETE;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_UPDATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the journal of changes to solves written by {@link SolveJournal}.
+ */
+public class SolveJournalTestCase {
+    private static File createJournalFile() throws Exception {
+        final File file = File.createTempFile("solve_journal", null);
+
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        return file;
+    }
+
+    private static SolveJournal.Entry add(long id, int time, String comment) {
+        return new SolveJournal.Entry(OP_ADD, id,
+                new Solve(id, time, "333", "Normal", 1_500_000_000_000L + id, "R U R' U'", 0,
+                        comment, false), 12, 3);
+    }
+
+    private static void assertEntryEquals(SolveJournal.Entry expected, SolveJournal.Entry actual) {
+        assertEquals(expected.op, actual.op);
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.startLatency, actual.startLatency);
+        assertEquals(expected.stopLatency, actual.stopLatency);
+
+        if (expected.solve == null) {
+            assertNull(actual.solve);
+        } else {
+            assertEquals(expected.solve.getId(), actual.solve.getId());
+            assertEquals(expected.solve.getTime(), actual.solve.getTime());
+            assertEquals(expected.solve.getPuzzle(), actual.solve.getPuzzle());
+            assertEquals(expected.solve.getSubtype(), actual.solve.getSubtype());
+            assertEquals(expected.solve.getDate(), actual.solve.getDate());
+            assertEquals(expected.solve.getScramble(), actual.solve.getScramble());
+            assertEquals(expected.solve.getPenalty(), actual.solve.getPenalty());
+            assertEquals(expected.solve.getComment(), actual.solve.getComment());
+            assertEquals(expected.solve.isHistory(), actual.solve.isHistory());
+        }
+    }
+
+    @Test
+    public void testAppendAndRead() throws Exception {
+        final File file = createJournalFile();
+        final SolveJournal journal = new SolveJournal(file);
+        final SolveJournal.Entry[] entries = {
+                add(41, 12_340, ""),
+                new SolveJournal.Entry(OP_UPDATE, 41,
+                        new Solve(41, 14_340, "333", "Normal", 0L, null, 1, "ção ✓ 魔方", true),
+                        -1, -1),
+                new SolveJournal.Entry(OP_DELETE, 41, null, -1, -1),
+                add(42, 9_870, null),
+        };
+
+        assertEquals(0, journal.read().size());
+
+        for (SolveJournal.Entry entry : entries) {
+            journal.append(entry);
+        }
+
+        // A new journal on the same file reads what the old one appended, as after a restart.
+        final List<SolveJournal.Entry> read = new SolveJournal(file).read();
+
+        assertEquals(entries.length, read.size());
+        for (int i = 0; i < entries.length; i++) {
+            assertEntryEquals(entries[i], read.get(i));
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final File file = createJournalFile();
+        final SolveJournal journal = new SolveJournal(file);
+
+        journal.append(add(1, 10_000, "a"));
+        journal.append(add(2, 20_000, "b"));
+        journal.clear();
+        assertEquals(0, journal.read().size());
+
+        // Records appended after clearing are written at the start of the file.
+        journal.append(add(3, 30_000, "c"));
+        assertEquals(1, journal.read().size());
+        assertEquals(3, journal.read().get(0).id);
+        journal.close();
+
+        // A journal that has not been opened deletes the file.
+        new SolveJournal(file).clear();
+        assertTrue(!file.exists());
+    }
+
+    @Test
+    public void testPartialRecordIsIgnored() throws Exception {
+        final File file = createJournalFile();
+        final SolveJournal journal = new SolveJournal(file);
+
+        journal.append(add(1, 10_000, "first"));
+        journal.append(add(2, 20_000, "second"));
+        journal.close();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        // Cut the last record short, as if the write of the record had not finished.
+        raf.setLength(raf.length() - 5);
+        raf.close();
+
+        List<SolveJournal.Entry> read = new SolveJournal(file).read();
+
+        assertEquals(1, read.size());
+        assertEntryEquals(add(1, 10_000, "first"), read.get(0));
+
+        // Corrupt the contents of the first record, so its checksum does not match.
+        final RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+
+        corrupt.seek(20);
+        final int b = corrupt.read();
+        corrupt.seek(20);
+        corrupt.write(b ^ 0xFF);
+        corrupt.close();
+
+        read = new SolveJournal(file).read();
+        assertEquals(0, read.size());
+    }
+}
@@ -0,0 +1,418 @@
+package com.aricneto.twistytimer.database;
+
+import com.aricneto.twistytimer.items.Solve;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.aricneto.twistytimer.database.SolveJournal.OP_ADD;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_DELETE;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_DELETE_SESSION;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_MOVE_TO_HISTORY;
+import static com.aricneto.twistytimer.database.SolveJournal.OP_UPDATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the order, retries and journal of the changes written by {@link SolveWriteQueue}. The
+ * changes are written to a store that records them, rather than to a database.
+ */
+public class SolveWriteQueueTestCase {
+    /**
+     * The longest time to wait for the writer thread, in seconds.
+     */
+    private static final long TIMEOUT = 10;
+
+    private final List<SolveWriteQueue> mQueues = new ArrayList<>();
+
+    /**
+     * A store that records the changes written to it and keeps the set of solve IDs that would be
+     * in the database. Writes can be made to fail or to wait.
+     */
+    private static class RecordingStore implements SolveWriteQueue.Store {
+        /**
+         * The changes and broadcasts, in the order in which they were written or sent.
+         */
+        final List<String> mRecords = new ArrayList<>();
+
+        final Set<Long> mSolveIDs = new HashSet<>();
+        long mLastSolveID = -1;
+
+        /**
+         * Counted down when the first write is started.
+         */
+        final CountDownLatch mWriteStarted = new CountDownLatch(1);
+
+        /**
+         * Awaited by each write before it is made.
+         */
+        CountDownLatch mWriteReleased = new CountDownLatch(0);
+
+        /**
+         * The number of writes that will fail before a write succeeds.
+         */
+        int mNumFailures;
+        int mNumWrites;
+
+        final CountDownLatch mTimesModified = new CountDownLatch(1);
+
+        RecordingStore(long... solveIDs) {
+            for (long id : solveIDs) {
+                mSolveIDs.add(id);
+            }
+        }
+
+        @Override
+        public synchronized void reserveSolveIDsUpTo(long solveID) {
+            long lastSolveID = solveID;
+
+            for (long id : mSolveIDs) {
+                lastSolveID = Math.max(lastSolveID, id);
+            }
+            mLastSolveID = lastSolveID;
+        }
+
+        @Override
+        public synchronized long reserveSolveID() {
+            assertTrue("IDs must be read first.", mLastSolveID >= 0);
+            return ++mLastSolveID;
+        }
+
+        @Override
+        public void write(List<SolveJournal.Entry> entries, boolean isReplaying) {
+            mWriteStarted.countDown();
+            await(mWriteReleased);
+
+            synchronized (this) {
+                mNumWrites++;
+                if (mNumFailures > 0) {
+                    mNumFailures--;
+                    // Not an "SQLException", as is thrown when a closed database is used.
+                    throw new IllegalStateException("The database is closed.");
+                }
+
+                for (SolveJournal.Entry entry : entries) {
+                    final String prefix = isReplaying ? "replay " : "";
+
+                    switch (entry.op) {
+                        case OP_ADD:
+                            assertEquals(entry.id, entry.solve.getId());
+                            if (!isReplaying || !mSolveIDs.contains(entry.id)) {
+                                mSolveIDs.add(entry.id);
+                                mRecords.add(prefix + "add " + entry.id);
+                            }
+                            break;
+                        case OP_UPDATE:
+                            mRecords.add(prefix + "update " + entry.solve.getId()
+                                    + " " + entry.solve.getComment());
+                            break;
+                        case OP_DELETE:
+                            mSolveIDs.remove(entry.id);
+                            mRecords.add(prefix + "delete " + entry.id);
+                            break;
+                        case OP_MOVE_TO_HISTORY:
+                            mRecords.add(prefix + "history " + entry.solve.getPuzzle()
+                                    + "/" + entry.solve.getSubtype());
+                            break;
+                        case OP_DELETE_SESSION:
+                            mRecords.add(prefix + "clear " + entry.solve.getPuzzle()
+                                    + "/" + entry.solve.getSubtype());
+                            break;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized void broadcastTimesModified() {
+            mRecords.add("times modified");
+            mTimesModified.countDown();
+        }
+
+        synchronized List<String> getRecords() {
+            return new ArrayList<>(mRecords);
+        }
+
+        synchronized void record(String record) {
+            mRecords.add(record);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue("Timed out.", latch.await(TIMEOUT, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File createJournalFile() throws Exception {
+        final File file = File.createTempFile("solve_journal", null);
+
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        return file;
+    }
+
+    private static Solve newSolve(String comment) {
+        return new Solve(12_340, "333", "Normal", 1_500_000_000_000L, "R U R' U'", 0, comment,
+                false);
+    }
+
+    private SolveWriteQueue newQueue(RecordingStore store, File journalFile) {
+        final SolveWriteQueue queue = new SolveWriteQueue(store, journalFile);
+
+        mQueues.add(queue);
+
+        return queue;
+    }
+
+    /**
+     * Creates a store that waits until the given latch is counted down before the largest solve
+     * ID can be read, as when the database is slow to be opened.
+     */
+    private static RecordingStore newSlowStore(final CountDownLatch opened, long... solveIDs) {
+        return new RecordingStore(solveIDs) {
+            @Override
+            public void reserveSolveIDsUpTo(long solveID) {
+                await(opened);
+                super.reserveSolveIDsUpTo(solveID);
+            }
+        };
+    }
+
+    /**
+     * Waits until all of the changes queued before this is called have been written and the new
+     * solves are given reserved IDs.
+     */
+    private static void awaitWritten(SolveWriteQueue queue) {
+        final CountDownLatch sent = new CountDownLatch(1);
+
+        queue.broadcast(new Runnable() {
+            @Override
+            public void run() {
+                sent.countDown();
+            }
+        });
+        await(sent);
+    }
+
+    /**
+     * Queues a broadcast that is recorded by the store and waits until it is sent.
+     */
+    private static void broadcastAndWait(SolveWriteQueue queue, final RecordingStore store,
+                                         final String name) {
+        final CountDownLatch sent = new CountDownLatch(1);
+
+        queue.broadcast(new Runnable() {
+            @Override
+            public void run() {
+                store.record(name);
+                sent.countDown();
+            }
+        });
+        await(sent);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (SolveWriteQueue queue : mQueues) {
+            queue.quit();
+        }
+    }
+
+    @Test
+    public void testChangesAreWrittenInOrder() throws Exception {
+        final RecordingStore store = new RecordingStore(1, 2, 3);
+        final SolveWriteQueue queue = newQueue(store, createJournalFile());
+        final Solve first = newSolve("first");
+
+        awaitWritten(queue);
+        first.setId(queue.addSolve(first, 12, 3));
+        first.setComment("changed");
+        queue.updateSolve(first);
+        // The queued update is a copy, so this change is not written.
+        first.setComment("not written");
+        queue.broadcast(new Runnable() {
+            @Override
+            public void run() {
+                store.record("added");
+            }
+        });
+        final long secondID = queue.addSolve(newSolve("second"), -1, -1);
+        queue.deleteSolve(first);
+        queue.moveAllSolvesToHistory("333", "Normal");
+        queue.deleteAllFromSession("333", "OH");
+        broadcastAndWait(queue, store, "done");
+
+        assertEquals(4, first.getId());
+        assertEquals(5, secondID);
+        assertEquals(Arrays.asList(
+                "add 4", "update 4 changed", "added",
+                "add 5", "delete 4", "history 333/Normal", "clear 333/OH", "done"),
+                store.getRecords());
+    }
+
+    @Test
+    public void testAddDoesNotWaitForDatabase() throws Exception {
+        final CountDownLatch opened = new CountDownLatch(1);
+        final RecordingStore store = newSlowStore(opened, 10);
+        final SolveWriteQueue queue = newQueue(store, createJournalFile());
+
+        // The store has not yet been opened, so provisional IDs are given to the new solves.
+        final Solve first = newSolve("first");
+
+        first.setId(queue.addSolve(first, -1, -1));
+        first.setComment("changed");
+        queue.updateSolve(first);
+
+        final long secondID = queue.addSolve(newSolve("second"), -1, -1);
+
+        queue.deleteSolve(secondID);
+
+        assertEquals(-2, first.getId());
+        assertEquals(-3, secondID);
+        assertEquals(0, store.getRecords().size());
+
+        // Once opened, the solves are written with reserved IDs, in the order in which they were
+        // added, and the changes queued with the provisional IDs are applied to those solves.
+        opened.countDown();
+        broadcastAndWait(queue, store, "done");
+
+        assertEquals(13, queue.addSolve(newSolve("third"), -1, -1));
+        broadcastAndWait(queue, store, "done again");
+
+        assertEquals(Arrays.asList(
+                "add 11", "update 11 changed", "add 12", "delete 12", "done", "add 13",
+                "done again"),
+                store.getRecords());
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() throws Exception {
+        final RecordingStore store = new RecordingStore();
+
+        store.mNumFailures = 2;
+
+        final SolveWriteQueue queue = newQueue(store, createJournalFile());
+
+        queue.addSolve(newSolve("first"), -1, -1);
+        broadcastAndWait(queue, store, "done");
+
+        // The writer thread is not ended by the exceptions, so later changes are still written.
+        queue.addSolve(newSolve("second"), -1, -1);
+        broadcastAndWait(queue, store, "done again");
+
+        assertEquals(4, store.mNumWrites);
+        assertEquals(Arrays.asList("add 1", "done", "add 2", "done again"), store.getRecords());
+    }
+
+    @Test
+    public void testJournalIsRewrittenWhenWriteIsGivenUp() throws Exception {
+        final File journalFile = createJournalFile();
+        // The store is opened once all of the changes are queued, so they are written together.
+        final CountDownLatch opened = new CountDownLatch(1);
+        final RecordingStore store = newSlowStore(opened, 1);
+
+        // Every attempt at writing the batch fails, so it is given up, but the journal is then
+        // written again.
+        store.mNumFailures = 3;
+
+        final SolveWriteQueue queue = newQueue(store, journalFile);
+        final Solve solve = newSolve("first");
+
+        solve.setId(queue.addSolve(solve, -1, -1));
+        solve.setComment("changed");
+        queue.updateSolve(solve);
+        queue.broadcast(new Runnable() {
+            @Override
+            public void run() {
+                store.record("not sent");
+            }
+        });
+        opened.countDown();
+        await(store.mTimesModified);
+        broadcastAndWait(queue, store, "done");
+
+        assertEquals(4, store.mNumWrites);
+        assertEquals(Arrays.asList(
+                "replay add 2", "replay update 2 changed", "times modified", "done"),
+                store.getRecords());
+        // The journal is cleared once it is committed.
+        assertEquals(0, new SolveJournal(journalFile).read().size());
+    }
+
+    @Test
+    public void testChangesAreJournaledBeforeTheyAreWritten() throws Exception {
+        final File journalFile = createJournalFile();
+        final RecordingStore store = new RecordingStore();
+
+        store.mWriteReleased = new CountDownLatch(1);
+
+        final SolveWriteQueue queue = newQueue(store, journalFile);
+
+        queue.addSolve(newSolve("first"), 12, 3);
+        await(store.mWriteStarted);
+
+        // If the process ended now, the change would be written from the journal.
+        final List<SolveJournal.Entry> entries = new SolveJournal(journalFile).read();
+
+        assertEquals(1, entries.size());
+        assertEquals(OP_ADD, entries.get(0).op);
+        assertEquals(1, entries.get(0).id);
+        assertEquals("first", entries.get(0).solve.getComment());
+        assertEquals(12, entries.get(0).startLatency);
+
+        store.mWriteReleased.countDown();
+        broadcastAndWait(queue, store, "done");
+
+        assertEquals(Arrays.asList("add 1", "done"), store.getRecords());
+        assertEquals(0, new SolveJournal(journalFile).read().size());
+    }
+
+    @Test
+    public void testJournalIsReplayedAfterCrash() throws Exception {
+        final File journalFile = createJournalFile();
+        final SolveJournal journal = new SolveJournal(journalFile);
+
+        // The process ended after solve 6 was committed, but before solve 7 was committed and
+        // before the journal was cleared.
+        journal.append(new SolveJournal.Entry(OP_ADD, 6, new Solve(6, 12_340, "333", "Normal",
+                0L, "", 0, "sixth", false), -1, -1));
+        journal.append(new SolveJournal.Entry(OP_UPDATE, 6, new Solve(6, 12_340, "333", "Normal",
+                0L, "", 0, "changed", false), -1, -1));
+        journal.append(new SolveJournal.Entry(OP_ADD, 7, new Solve(7, 12_340, "333", "Normal",
+                0L, "", 0, "seventh", false), -1, -1));
+        journal.append(new SolveJournal.Entry(OP_DELETE, 7, null, -1, -1));
+        journal.close();
+
+        final RecordingStore store = new RecordingStore(1, 2, 3, 4, 5, 6);
+        final SolveWriteQueue queue = newQueue(store, journalFile);
+
+        awaitWritten(queue);
+
+        // Solve 7 is not in the database once the journal is replayed, but its ID was reserved,
+        // so it is not given to a new solve.
+        final long id = queue.addSolve(newSolve("eighth"), -1, -1);
+
+        broadcastAndWait(queue, store, "done");
+
+        assertEquals(8, id);
+        assertEquals(Arrays.asList(
+                "replay update 6 changed", "replay add 7", "replay delete 7", "times modified",
+                "add 8", "done"),
+                store.getRecords());
+        assertEquals(0, new SolveJournal(journalFile).read().size());
+    }
+}
@@ -0,0 +1,86 @@
+package com.aricneto.twistytimer.solver;
+
+import com.aricneto.twistytimer.solver.RubiksCubeSolver.State;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the solutions found by {@link RubiksCubeCrossSolver} and {@link RubiksCubeXCrossSolver}
+ * for fixed scrambles. The expected solutions, and their order, are those that were found by the
+ * solvers before their move and distance tables were flattened and packed.
+ */
+public class CrossSolversTestCase {
+    private static final String[] SCRAMBLES = {
+            "R2 L' D B L2 R2 U' F2 B R B' R D U F2 U2 R2 U' D2 B' U' D' L' U B",
+            "R D R2 U2 F D' U F U2 R2 D' U' B F D2 B U' F2 D2 L2 F U2 R D2 F",
+            "B' F2 U' F' R D2 B R2 L U D' L' U' B' U2 R2 L2 D2 B R2 D R2 L2 D2 L",
+            "B' U D' F U R L2 U' L R2 D B2 L2 U R' D2 F' D2 B' F2",
+            "R' U L2 D B D U R' F2 R D2 R2 L2 U2 F2 R2 L2 F2 B L",
+            "B D U2 R' U' B2 U2 F L R B2 F'",
+            "U"
+    };
+
+    /**
+     * The solutions of the cross on D for each of the {@link #SCRAMBLES}.
+     */
+    private static final String[][] CROSS_SOLUTIONS = {
+            { "D F' R' F' B2", "D F' R' B2 F'", "D F' B2 R' F'" },
+            { "D' F' L D' F2 B", "D' F' L D' B F2", "F L' U L2 B2 R" },
+            { "D' R' D2 F D L'", "B2 R D' B' R2 D'" },
+            { "U B' D' B' L' D2 B", "U2 L R2 F B L' D'", "U2 L R2 B L' F D'" },
+            { "U2 R U' L2 B' R", "U2 R U' B' L2 R", "U2 R U' B' R L2" },
+            { "U2 L' R2 F' B L D'", "U2 L' R2 B F' L D'", "U2 L' F' R2 B L D'" },
+            { "" }
+    };
+
+    /**
+     * The solutions of the X-cross on D for each of the {@link #SCRAMBLES}.
+     */
+    private static final String[][] X_CROSS_SOLUTIONS = {
+            { "U F L' R2 F' U L' D", "U F R2 L' F' U L' D" },
+            { "F' R2 D R D F2 L" },
+            { "D B R' D2 F R D L", "L' R D B' R2 U2 L2 D'" },
+            { "D F' L U' D2 B' L D R'", "D F' L D2 U' B' L D R'" },
+            { "U L2 R2 B U R2 D L' D'", "U R2 L2 B U R2 D L' D'" },
+            { "U D2 R F D B2 D2 R' B", "U D2 R F D B2 D2 B R'" },
+            { "" }
+    };
+
+    /**
+     * Gets the solutions as move sequences separated by spaces, in the same order.
+     */
+    private static List<String> join(ArrayList<String[]> solutions) {
+        final List<String> sequences = new ArrayList<>();
+
+        for (String[] solution : solutions) {
+            sequences.add(StringUtils.join(" ", solution));
+        }
+        return sequences;
+    }
+
+    @Test
+    public void testCrossSolutions() throws Exception {
+        for (int i = 0; i < SCRAMBLES.length; i++) {
+            final State state = State.id.applySequence(SCRAMBLES[i].split(" "));
+
+            assertEquals(SCRAMBLES[i], Arrays.asList(CROSS_SOLUTIONS[i]),
+                    join(RubiksCubeCrossSolver.solve(state)));
+        }
+    }
+
+    @Test
+    public void testXCrossSolutions() throws Exception {
+        for (int i = 0; i < SCRAMBLES.length; i++) {
+            final State state = State.id.applySequence(SCRAMBLES[i].split(" "));
+
+            assertEquals(SCRAMBLES[i], Arrays.asList(X_CROSS_SOLUTIONS[i]),
+                    join(RubiksCubeXCrossSolver.solve(state)));
+        }
+    }
+}
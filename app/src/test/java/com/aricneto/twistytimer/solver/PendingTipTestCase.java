@@ -0,0 +1,72 @@
+package com.aricneto.twistytimer.solver;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the partial and full text of a {@link PendingTip}.
+ */
+public class PendingTipTestCase {
+    /**
+     * Creates a solve that finishes with a single solution once the latch is released.
+     */
+    private static List<Callable<ArrayList<String[]>>> solve(
+            final String solution, final CountDownLatch latch) {
+        return Collections.<Callable<ArrayList<String[]>>>singletonList(() -> {
+            latch.await();
+
+            final ArrayList<String[]> solutions = new ArrayList<>();
+
+            solutions.add(new String[] { solution });
+            return solutions;
+        });
+    }
+
+    private static void addSection(PendingTip tip, String solution, CountDownLatch latch) {
+        tip.addSection(solve(solution, latch),
+                (text, solutions) -> text.append(solutions.get(0).get(0)[0]).append('\n'));
+    }
+
+    @Test
+    public void testFinishedTipIsNotPartial() throws Exception {
+        final CountDownLatch done = new CountDownLatch(0);
+        final PendingTip tip = new PendingTip();
+
+        addSection(tip, "U: R", done);
+        addSection(tip, "D: L", done);
+
+        final PendingTip.Text text = tip.getText(10_000);
+
+        assertEquals("U: R\nD: L", text.getText());
+        assertFalse(text.isPartial());
+    }
+
+    @Test
+    public void testSectionLeftOutIsReportedAfterItFinishes() throws Exception {
+        final CountDownLatch done = new CountDownLatch(0);
+        final CountDownLatch slow = new CountDownLatch(1);
+        final PendingTip tip = new PendingTip();
+
+        addSection(tip, "U: R", done);
+        addSection(tip, "D: L", slow);
+
+        final PendingTip.Text text = tip.getText(50);
+
+        // The slow section finishes after the partial text was taken. The partial text must
+        // still report that it left that section out.
+        slow.countDown();
+
+        assertEquals("U: R", text.getText());
+        assertTrue(text.isPartial());
+        assertEquals("U: R\nD: L", tip.getText());
+    }
+}
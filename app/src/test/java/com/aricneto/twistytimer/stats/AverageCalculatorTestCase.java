@@ -4,6 +4,12 @@ import com.aricneto.twistytimer.stats.AverageCalculator.AverageOfN;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 
 import static com.aricneto.twistytimer.stats.AverageCalculator.DNF;
@@ -828,6 +834,141 @@ public class AverageCalculatorTestCase {
         assertEquals(56666, aoN.getAverage());
     }
 
+    /**
+     * Checks the trim sums against a brute-force sort of each window of "n" times, for random
+     * times that include DNFs and many duplicates.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTrimsMatchSortedWindow() throws Exception {
+        final Random random = new Random(42);
+
+        for (int n : new int[] { 5, 12, 50, 100 }) {
+            for (int trimPercent : new int[] { 5, 10, 20 }) {
+                final AverageCalculator ac = new AverageCalculator(n, trimPercent);
+                final int trimSize = (int) Math.ceil(n * (trimPercent / 100f));
+                final long[] times = new long[n * 20];
+
+                for (int i = 0; i < times.length; i++)
+                    times[i] = random.nextInt(50) == 0 ? DNF : 10_000 + random.nextInt(100) * 10;
+
+                for (int i = 0; i < times.length; i++) {
+                    ac.addTime(times[i]);
+
+                    if (i + 1 < n)
+                        continue;
+
+                    final long[] window = Arrays.copyOfRange(times, i + 1 - n, i + 1);
+                    Arrays.sort(window);
+
+                    final AverageOfN aoN = ac.getAverageOfN();
+                    final String msg = "n=" + n + ", trim=" + trimPercent + "%, i=" + i;
+
+                    assertEquals(msg, sumOf(window, 0, trimSize), orZero(aoN.getmLowerTrimSum()));
+                    assertEquals(msg, sumOf(window, trimSize, n - trimSize),
+                                 orZero(aoN.getmMiddleTrimSum()));
+                    assertEquals(msg, sumOf(window, n - trimSize, n), orZero(aoN.getmUpperTrimSum()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a calculator restored from a saved state gives the same results as the
+     * calculator that saved it, for all times added afterwards.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteAndReadState() throws Exception {
+        final Random random = new Random(7);
+
+        for (int n : new int[] { 1, 3, 5, 12, 100 }) {
+            final AverageCalculator original = new AverageCalculator(n, 10);
+            final long[] times = new long[n * 10];
+
+            for (int i = 0; i < times.length; i++)
+                times[i] = random.nextInt(20) == 0 ? DNF : 10_000 + random.nextInt(5_000);
+
+            for (int split : new int[] { 0, n / 2, n, times.length / 2 }) {
+                original.reset();
+                for (int i = 0; i < split; i++)
+                    original.addTime(times[i]);
+
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                original.writeTo(new DataOutputStream(bytes));
+
+                final AverageCalculator restored = new AverageCalculator(n, 10);
+                restored.addTimes(30_000, DNF); // Should be overwritten by the saved state.
+                restored.readFrom(new DataInputStream(
+                        new ByteArrayInputStream(bytes.toByteArray())));
+
+                for (int i = split; i < times.length; i++) {
+                    original.addTime(times[i]);
+                    restored.addTime(times[i]);
+
+                    final String msg = "n=" + n + ", split=" + split + ", i=" + i;
+                    final AverageOfN expected = original.getAverageOfN();
+                    final AverageOfN actual = restored.getAverageOfN();
+
+                    assertEquals(msg, original.getCurrentAverage(), restored.getCurrentAverage());
+                    assertEquals(msg, original.getBestAverage(), restored.getBestAverage());
+                    assertEquals(msg, original.getBestTime(), restored.getBestTime());
+                    assertEquals(msg, original.getWorstTime(), restored.getWorstTime());
+                    assertEquals(msg, original.getNumSolves(), restored.getNumSolves());
+                    assertEquals(msg, original.getNumDNFSolves(), restored.getNumDNFSolves());
+                    assertEquals(msg, original.getTotalTime(), restored.getTotalTime());
+                    assertEquals(msg, original.getMeanTime(), restored.getMeanTime());
+                    assertEquals(msg, original.getStandardDeviation(),
+                                 restored.getStandardDeviation());
+                    assertArrayEquals(msg, expected.getTimes(), actual.getTimes());
+                    assertEquals(msg, expected.getmLowerTrimSum(), actual.getmLowerTrimSum());
+                    assertEquals(msg, expected.getmMiddleTrimSum(), actual.getmMiddleTrimSum());
+                    assertEquals(msg, expected.getmUpperTrimSum(), actual.getmUpperTrimSum());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadStateRejectsDifferentConfiguration() throws Exception {
+        final AverageCalculator ac = new AverageCalculator(50, 5);
+        ac.addTimes(1000, 2000, 3000);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ac.writeTo(new DataOutputStream(bytes));
+
+        try {
+            new AverageCalculator(50, 10).readFrom(
+                    new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("Expected an exception when the trim size is different.");
+        } catch (IOException ignore) {
+            // This is expected.
+        }
+
+        try {
+            new AverageCalculator(100, 5).readFrom(
+                    new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("Expected an exception when 'n' is different.");
+        } catch (IOException ignore) {
+            // This is expected.
+        }
+    }
+
+    private static long sumOf(long[] sorted, int from, int to) {
+        long sum = 0;
+
+        for (int i = from; i < to; i++)
+            if (sorted[i] != DNF)
+                sum += sorted[i];
+        return sum;
+    }
+
+    private static long orZero(long sum) {
+        return sum == UNKNOWN ? 0L : sum;
+    }
+
     private Random rand            = new Random(0);
     private long[] mLargeTestTimes = rand.longs(1_000_000, 25_000, 30_000).toArray();
 
@@ -0,0 +1,127 @@
+package com.aricneto.twistytimer.stats;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the selection of points at different levels of detail from a {@link ChartSeries}.
+ */
+public class ChartSeriesTestCase {
+    /**
+     * Creates a series of random times. Each new best time is pinned, as it is for the chart of
+     * all times.
+     */
+    private static ChartSeries createSeries(int size) {
+        final ChartSeries series = new ChartSeries();
+        final Random random = new Random(42);
+        float best = Float.MAX_VALUE;
+
+        for (int i = 0; i < size; i++) {
+            final float time = 8f + random.nextFloat() * 20f;
+
+            series.add(i, time, time < best);
+            best = Math.min(best, time);
+        }
+
+        return series;
+    }
+
+    private static void assertSortedAndUnique(int[] indices) {
+        for (int i = 1; i < indices.length; i++) {
+            assertTrue(indices[i - 1] < indices[i]);
+        }
+    }
+
+    private static boolean contains(int[] indices, int index) {
+        for (int i : indices) {
+            if (i == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testSmallSeriesIsNotReduced() throws Exception {
+        final ChartSeries series = createSeries(500);
+        final int[] selected = series.select(0f, 499f, 1_000);
+
+        assertEquals(500, selected.length);
+        for (int i = 0; i < selected.length; i++) {
+            assertEquals(i, selected[i]);
+        }
+
+        assertEquals(0, new ChartSeries().select(0f, 10f, 1_000).length);
+    }
+
+    @Test
+    public void testWholeSeriesIsReduced() throws Exception {
+        final int size = 100_000;
+        final ChartSeries series = createSeries(size);
+        final int[] selected = series.select(0f, size - 1, 1_000);
+
+        assertSortedAndUnique(selected);
+        assertTrue(selected.length < 1_100);
+        assertEquals(0, selected[0]);
+        assertEquals(size - 1, selected[selected.length - 1]);
+
+        // The lowest and highest times are always selected, as are all of the best times.
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        float best = Float.MAX_VALUE;
+
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, series.getY(i));
+            max = Math.max(max, series.getY(i));
+
+            if (series.getY(i) < best) {
+                best = series.getY(i);
+                assertTrue("Best time at " + i + " not selected.", contains(selected, i));
+            }
+        }
+
+        float selectedMin = Float.MAX_VALUE;
+        float selectedMax = -Float.MAX_VALUE;
+
+        for (int index : selected) {
+            selectedMin = Math.min(selectedMin, series.getY(index));
+            selectedMax = Math.max(selectedMax, series.getY(index));
+        }
+
+        assertEquals(min, selectedMin, 0f);
+        assertEquals(max, selectedMax, 0f);
+    }
+
+    @Test
+    public void testZoomedRangeIsShownInFullDetail() throws Exception {
+        final int size = 100_000;
+        final ChartSeries series = createSeries(size);
+        final int[] selected = series.select(40_000f, 40_800f, 1_000);
+
+        assertSortedAndUnique(selected);
+
+        // Every point in the range and the points on either side of it are selected.
+        for (int i = 39_999; i <= 40_801; i++) {
+            assertTrue("Point " + i + " not selected.", contains(selected, i));
+        }
+
+        // The rest of the series is reduced, but still runs to both ends of the X-axis.
+        assertEquals(0, selected[0]);
+        assertEquals(size - 1, selected[selected.length - 1]);
+        assertTrue(selected.length < 801 + 1_100);
+    }
+
+    @Test
+    public void testRangeBeyondSeries() throws Exception {
+        final ChartSeries series = createSeries(10_000);
+        final int[] selected = series.select(20_000f, 30_000f, 100);
+
+        assertSortedAndUnique(selected);
+        assertEquals(0, selected[0]);
+        assertEquals(9_999, selected[selected.length - 1]);
+    }
+}
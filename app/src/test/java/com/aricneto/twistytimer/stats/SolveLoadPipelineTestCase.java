@@ -0,0 +1,295 @@
+package com.aricneto.twistytimer.stats;
+
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+
+import com.aricneto.twistytimer.database.DatabaseHandler;
+import com.aricneto.twistytimer.database.DatabaseHandler.SolveConsumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sharing of a read of the solves between loaders by {@link SolveLoadPipeline}. The
+ * solves are read from a source that generates them and can pause part way through the read,
+ * rather than from a database.
+ */
+public class SolveLoadPipelineTestCase {
+    /**
+     * The longest time to wait for a loader thread, in seconds.
+     */
+    private static final long TIMEOUT = 10;
+
+    /**
+     * The number of solves generated by the source. This is many more than a pass keeps for the
+     * loaders that join it, or than it queues for a loader that is slow to take them.
+     */
+    private static final int NUM_SOLVES = 20000;
+
+    /**
+     * The number of solves the source reads before it pauses. This is few enough that a loader
+     * may still join the pass.
+     */
+    private static final int PAUSE_AT = 1000;
+
+    /**
+     * A source that generates {@link #NUM_SOLVES} solves. The solve at index {@code i} has an ID
+     * of {@code i} and a date of {@code i + 1}, and every third solve is in the current session.
+     * The source pauses before it reads the solve at {@link #PAUSE_AT} until it is resumed, and
+     * checks for cancellation before it reads each solve.
+     */
+    private static class PausingSource implements SolveLoadPipeline.SolveSource {
+        final AtomicInteger mNumReads = new AtomicInteger();
+        final AtomicInteger mNumSolvesRead = new AtomicInteger();
+        final CountDownLatch mPaused = new CountDownLatch(1);
+        final CountDownLatch mResumed = new CountDownLatch(1);
+
+        @Override
+        public void readSolves(String puzzleType, String puzzleSubtype,
+                               boolean isForCurrentSessionOnly, long sinceDate,
+                               SolveConsumer consumer, CancellationSignal signal) {
+            mNumReads.incrementAndGet();
+
+            for (int i = 0; i < NUM_SOLVES; i++) {
+                if (i == PAUSE_AT) {
+                    mPaused.countDown();
+                    await(mResumed);
+                }
+                signal.throwIfCanceled();
+                mNumSolvesRead.incrementAndGet();
+
+                final long date = i + 1;
+                final boolean isForCurrentSession = i % 3 == 0;
+
+                if (date > sinceDate && (isForCurrentSession || !isForCurrentSessionOnly)) {
+                    consumer.addSolve(i, 1000 + i, date, isForCurrentSession);
+                }
+            }
+        }
+    }
+
+    /**
+     * A thread that loads the solves, recording the IDs of the solves it is given and the
+     * exception thrown by the load, if any.
+     */
+    private static class Loader extends Thread implements SolveConsumer {
+        final boolean mIsForCurrentSessionOnly;
+        final long mSinceDate;
+        final CancellationSignal mSignal;
+        final List<Long> mSolveIDs = new ArrayList<>();
+
+        /**
+         * Awaited by the consumer before it takes the first solve.
+         */
+        CountDownLatch mConsumeReleased = new CountDownLatch(0);
+
+        volatile RuntimeException mFailure;
+
+        Loader(boolean isForCurrentSessionOnly, long sinceDate, CancellationSignal signal) {
+            mIsForCurrentSessionOnly = isForCurrentSessionOnly;
+            mSinceDate = sinceDate;
+            mSignal = signal;
+        }
+
+        @Override
+        public void run() {
+            try {
+                SolveLoadPipeline.load("333", "Normal", mIsForCurrentSessionOnly, mSinceDate,
+                        this, mSignal);
+            } catch (RuntimeException e) {
+                mFailure = e;
+            }
+        }
+
+        @Override
+        public void addSolve(long id, long time, long date, boolean isForCurrentSession) {
+            if (mSolveIDs.isEmpty()) {
+                await(mConsumeReleased);
+            }
+            mSolveIDs.add(id);
+        }
+
+        void finish() throws Exception {
+            join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+            assertFalse("Loader did not finish.", isAlive());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue("Timed out.", latch.await(TIMEOUT, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Waits until a thread is waiting. A loader waits only for solves, for a slower loader to
+     * catch up, for the source to resume, or for its consumer to be released. Of these, only the
+     * last two wait with a timeout.
+     *
+     * @param isTimed
+     *     {@code true} if a wait with a timeout is also accepted.
+     */
+    private static void awaitWaiting(Thread thread, boolean isTimed) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+
+        while (thread.getState() != Thread.State.WAITING
+                && !(isTimed && thread.getState() == Thread.State.TIMED_WAITING)) {
+            assertTrue("Timed out.", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Gets the IDs of the generated solves a loader with the given filters should be given.
+     */
+    private static List<Long> expectedIDs(boolean isForCurrentSessionOnly, long sinceDate,
+                                          int numSolves) {
+        final List<Long> ids = new ArrayList<>();
+
+        for (int i = 0; i < numSolves; i++) {
+            if (i + 1 > sinceDate && (i % 3 == 0 || !isForCurrentSessionOnly)) {
+                ids.add((long) i);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Starts a loader that reads the solves and a second loader that joins it while the source
+     * is paused.
+     */
+    private static void startPaused(PausingSource source, Loader owner, Loader joiner)
+            throws Exception {
+        SolveLoadPipeline.setSolveSource(source);
+        owner.start();
+        await(source.mPaused);
+        joiner.start();
+        awaitWaiting(joiner, true);
+    }
+
+    @After
+    public void tearDown() {
+        SolveLoadPipeline.setSolveSource(null);
+    }
+
+    @Test
+    public void testLateJoinerIsGivenSolvesReadBeforeItJoined() throws Exception {
+        final PausingSource source = new PausingSource();
+        final Loader owner = new Loader(false, DatabaseHandler.ALL_DATES, null);
+        final Loader joiner = new Loader(true, 500, null);
+
+        startPaused(source, owner, joiner);
+        source.mResumed.countDown();
+        owner.finish();
+        joiner.finish();
+
+        assertNull(owner.mFailure);
+        assertNull(joiner.mFailure);
+        assertEquals(1, source.mNumReads.get());
+        assertEquals(expectedIDs(false, DatabaseHandler.ALL_DATES, NUM_SOLVES), owner.mSolveIDs);
+        assertEquals(expectedIDs(true, 500, NUM_SOLVES), joiner.mSolveIDs);
+    }
+
+    @Test
+    public void testIncompatibleLoaderReadsSolvesItself() throws Exception {
+        final PausingSource source = new PausingSource();
+        final Loader owner = new Loader(true, DatabaseHandler.ALL_DATES, null);
+        final Loader other = new Loader(false, DatabaseHandler.ALL_DATES, null);
+
+        // The second loader needs solves from past sessions that the first does not read, so
+        // it starts its own read and pauses at the same point.
+        startPaused(source, owner, other);
+        assertEquals(2, source.mNumReads.get());
+        source.mResumed.countDown();
+        owner.finish();
+        other.finish();
+
+        assertNull(owner.mFailure);
+        assertNull(other.mFailure);
+        assertEquals(expectedIDs(true, DatabaseHandler.ALL_DATES, NUM_SOLVES), owner.mSolveIDs);
+        assertEquals(expectedIDs(false, DatabaseHandler.ALL_DATES, NUM_SOLVES), other.mSolveIDs);
+    }
+
+    @Test
+    public void testSlowJoinerHoldsBackTheRead() throws Exception {
+        final PausingSource source = new PausingSource();
+        final Loader owner = new Loader(false, DatabaseHandler.ALL_DATES, null);
+        final Loader joiner = new Loader(false, DatabaseHandler.ALL_DATES, null);
+
+        joiner.mConsumeReleased = new CountDownLatch(1);
+        startPaused(source, owner, joiner);
+        source.mResumed.countDown();
+
+        // The joiner stops at its first solve, so the read stops once the joiner has as many
+        // chunks queued as it may have. The pass then holds far fewer than all of the solves.
+        awaitWaiting(owner, false);
+        final int numSolvesRead = source.mNumSolvesRead.get();
+
+        Thread.sleep(50);
+        assertEquals(numSolvesRead, source.mNumSolvesRead.get());
+        assertTrue(numSolvesRead < NUM_SOLVES / 2);
+        assertTrue(owner.isAlive());
+
+        joiner.mConsumeReleased.countDown();
+        owner.finish();
+        joiner.finish();
+
+        assertNull(owner.mFailure);
+        assertNull(joiner.mFailure);
+        assertEquals(1, source.mNumReads.get());
+        assertEquals(expectedIDs(false, DatabaseHandler.ALL_DATES, NUM_SOLVES), owner.mSolveIDs);
+        assertEquals(expectedIDs(false, DatabaseHandler.ALL_DATES, NUM_SOLVES), joiner.mSolveIDs);
+    }
+
+    @Test
+    public void testCancelledOwnerKeepsReadingForJoiner() throws Exception {
+        final PausingSource source = new PausingSource();
+        final Loader owner = new Loader(false, DatabaseHandler.ALL_DATES, new CancellationSignal());
+        final Loader joiner = new Loader(false, DatabaseHandler.ALL_DATES, new CancellationSignal());
+
+        startPaused(source, owner, joiner);
+        owner.mSignal.cancel();
+        source.mResumed.countDown();
+        owner.finish();
+        joiner.finish();
+
+        assertTrue(owner.mFailure instanceof OperationCanceledException);
+        assertNull(joiner.mFailure);
+        assertEquals(1, source.mNumReads.get());
+        assertEquals(NUM_SOLVES, source.mNumSolvesRead.get());
+        assertEquals(expectedIDs(false, DatabaseHandler.ALL_DATES, PAUSE_AT), owner.mSolveIDs);
+        assertEquals(expectedIDs(false, DatabaseHandler.ALL_DATES, NUM_SOLVES), joiner.mSolveIDs);
+    }
+
+    @Test
+    public void testCancellingEveryLoaderStopsTheRead() throws Exception {
+        final PausingSource source = new PausingSource();
+        final Loader owner = new Loader(false, DatabaseHandler.ALL_DATES, new CancellationSignal());
+        final Loader joiner = new Loader(true, DatabaseHandler.ALL_DATES, new CancellationSignal());
+
+        startPaused(source, owner, joiner);
+        joiner.mSignal.cancel();
+        owner.mSignal.cancel();
+        source.mResumed.countDown();
+        owner.finish();
+        joiner.finish();
+
+        assertTrue(owner.mFailure instanceof OperationCanceledException);
+        assertTrue(joiner.mFailure instanceof OperationCanceledException);
+        assertEquals(1, source.mNumReads.get());
+        assertEquals(PAUSE_AT, source.mNumSolvesRead.get());
+    }
+}
@@ -0,0 +1,186 @@
+package com.aricneto.twistytimer.stats;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.aricneto.twistytimer.stats.AverageCalculator.DNF;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the retraction of solves from {@link Statistics}. Each retraction is checked by comparing
+ * a snapshot of the statistics to a snapshot of new statistics to which only the remaining solves
+ * were added, as a full reload from the database would do.
+ */
+public class StatisticsTestCase {
+    /**
+     * A solve as added to the statistics.
+     */
+    private static class TestSolve {
+        final long id;
+        long time;
+        boolean isForCurrentSession;
+
+        TestSolve(long id, long time, boolean isForCurrentSession) {
+            this.id = id;
+            this.time = time;
+            this.isForCurrentSession = isForCurrentSession;
+        }
+    }
+
+    /**
+     * Creates a list of solves with random times. Every tenth solve is a DNF and the first half
+     * of the solves are not in the current session. Enough solves are created to ensure that the
+     * oldest solves are no longer in the journal.
+     */
+    private static List<TestSolve> createSolves(int count) {
+        final Random random = new Random(0);
+        final List<TestSolve> solves = new ArrayList<>();
+
+        for (int i = 1; i <= count; i++) {
+            solves.add(new TestSolve(i, i % 10 == 0 ? DNF : 10_000 + random.nextInt(5_000),
+                    i > count / 2));
+        }
+
+        return solves;
+    }
+
+    private static Statistics load(List<TestSolve> solves) {
+        final Statistics stats = Statistics.newCurrentSessionAveragesChartStatistics();
+
+        for (final TestSolve solve : solves) {
+            stats.addSolve(solve.id, solve.time, solve.isForCurrentSession);
+        }
+
+        return stats;
+    }
+
+    private static TestSolve find(List<TestSolve> solves, long id) {
+        for (final TestSolve solve : solves) {
+            if (solve.id == id) {
+                return solve;
+            }
+        }
+
+        throw new IllegalArgumentException("No solve with ID " + id);
+    }
+
+    @Test
+    public void testRemoveSolves() throws Exception {
+        final List<TestSolve> solves = createSolves(2_500);
+        final Statistics stats = load(solves);
+
+        // The most recent solve, then one from each half of the journal.
+        for (final long[] ids : new long[][] { { 2_500 }, { 2_400, 2_100 }, { 1_500 } }) {
+            assertTrue(stats.removeSolves(ids));
+            for (final long id : ids) {
+                solves.remove(find(solves, id));
+            }
+            assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+        }
+
+        // A solve cannot be removed twice.
+        assertFalse(stats.removeSolves(2_500));
+        assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+    }
+
+    @Test
+    public void testUpdateSolve() throws Exception {
+        final List<TestSolve> solves = createSolves(2_500);
+        final Statistics stats = load(solves);
+
+        // Change a penalty, clear a DNF and then move a solve from the session to the history.
+        assertTrue(stats.updateSolve(2_499, DNF, true));
+        find(solves, 2_499).time = DNF;
+        assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+
+        assertTrue(stats.updateSolve(1_200, 12_345, false));
+        find(solves, 1_200).time = 12_345;
+        assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+
+        assertTrue(stats.updateSolve(2_000, 11_111, false));
+        find(solves, 2_000).time = 11_111;
+        find(solves, 2_000).isForCurrentSession = false;
+        assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+
+        // Solves added later are still journaled correctly after an update.
+        solves.add(new TestSolve(2_501, 9_000, true));
+        stats.addSolve(2_501, 9_000, true);
+        assertTrue(stats.removeSolves(2_501, 1_999));
+        solves.remove(find(solves, 2_501));
+        solves.remove(find(solves, 1_999));
+        assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+    }
+
+    @Test
+    public void testOldSolvesCannotBeRetracted() throws Exception {
+        final List<TestSolve> solves = createSolves(2_500);
+        final Statistics stats = load(solves);
+        final byte[] expected = stats.toSnapshot();
+
+        // Only the most recent 1,500 solves remain in the journal.
+        assertFalse(stats.removeSolves(1_000));
+        assertFalse(stats.removeSolves(2_500, 1_000)); // Nothing is removed if any are missing.
+        assertFalse(stats.updateSolve(1, 10_000, true));
+        assertArrayEquals(expected, stats.toSnapshot());
+
+        // Times added without a solve ID cannot be retracted, so nothing else can be either.
+        stats.addTime(10_000, true);
+        assertFalse(stats.removeSolves(2_500));
+
+        // After a reset, the journal starts again.
+        stats.reset();
+        stats.addSolve(1, 10_000, true);
+        assertTrue(stats.removeSolves(1));
+        assertEquals(0, stats.getSessionNumSolves());
+    }
+
+    @Test
+    public void testRestoreSnapshotAndMoveSessionToHistory() throws Exception {
+        final List<TestSolve> solves = createSolves(100);
+        final Statistics stats = Statistics.newCurrentSessionAveragesChartStatistics();
+
+        // Solves added after a snapshot is restored can be retracted.
+        assertTrue(stats.restoreSnapshot(load(solves).toSnapshot()));
+        solves.add(new TestSolve(101, 9_000, true));
+        stats.addSolve(101, 9_000, true);
+        assertFalse(stats.removeSolves(100));
+        assertTrue(stats.removeSolves(101));
+        solves.remove(find(solves, 101));
+        assertArrayEquals(load(solves).toSnapshot(), stats.toSnapshot());
+
+        // The session is cleared, and earlier solves can no longer be retracted.
+        stats.addSolve(102, 9_000, true);
+        stats.moveSessionToHistory();
+        assertEquals(0, stats.getSessionNumSolves());
+        assertFalse(stats.removeSolves(102));
+    }
+
+    @Test
+    public void testSessionPreview() throws Exception {
+        final Statistics stats = Statistics.newAllTimeStatistics();
+        final Statistics preview = stats.newSessionPreview();
+
+        for (final TestSolve solve : createSolves(200)) {
+            stats.addSolve(solve.id, solve.time, solve.isForCurrentSession);
+            preview.addTime(solve.time, solve.isForCurrentSession);
+        }
+
+        // The session statistics are complete, but times are not added to all-time statistics.
+        assertEquals(100, preview.getSessionNumSolves());
+        assertEquals(stats.getSessionMeanTime(), preview.getSessionMeanTime());
+        assertEquals(stats.getAverageOf(12, true).getCurrentAverage(),
+                preview.getAverageOf(12, true).getCurrentAverage());
+        assertEquals(stats.getAverageOf(100, true).getBestAverage(),
+                preview.getAverageOf(100, true).getBestAverage());
+        assertEquals(stats.getSessionTimeFrequencies(), preview.getSessionTimeFrequencies());
+        assertEquals(0, preview.getAllTimeNumSolves());
+        assertEquals(AverageCalculator.UNKNOWN, preview.getAllTimeBestTime());
+        assertFalse(preview.isForCurrentSessionOnly());
+    }
+}
@@ -0,0 +1,110 @@
+package com.aricneto.twistytimer.structures;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link SortedLongList} class. The list replaced {@link RedBlackTree} as the structure
+ * backing the average calculator trims, so most tests check that both structures stay identical
+ * under the same sequence of operations.
+ */
+public class SortedLongListTestCase {
+    @Test
+    public void testEmpty() throws Exception {
+        final SortedLongList list = new SortedLongList();
+
+        assertEquals(0, list.size());
+        assertFalse(list.contains(0));
+        assertFalse(list.remove(0));
+        assertEquals(0, list.toArray().length);
+
+        try {
+            list.getLeast();
+            fail("Expected an exception when the list is empty.");
+        } catch (IndexOutOfBoundsException ignore) {
+            // This is expected.
+        }
+    }
+
+    @Test
+    public void testDuplicatesAndRanks() throws Exception {
+        final SortedLongList list = new SortedLongList(2);
+
+        list.add(30);
+        list.add(10);
+        list.add(20);
+        list.add(10);
+        list.add(Integer.MAX_VALUE); // DNF
+
+        assertArrayEquals(new long[] { 10, 10, 20, 30, Integer.MAX_VALUE }, list.toArray());
+        assertEquals(10, list.getLeast());
+        assertEquals(Integer.MAX_VALUE, list.getGreatest());
+        assertEquals(0, list.rank(10));
+        assertEquals(2, list.rank(20));
+        assertEquals(3, list.rank(25));
+        assertEquals(20, list.get(2));
+
+        assertTrue(list.remove(10));
+        assertTrue(list.contains(10));
+        assertTrue(list.remove(10));
+        assertFalse(list.contains(10));
+        assertFalse(list.remove(10));
+        assertEquals(30, list.removeAt(1));
+        assertArrayEquals(new long[] { 20, Integer.MAX_VALUE }, list.toArray());
+
+        list.clear();
+        assertEquals(0, list.size());
+    }
+
+    /**
+     * Replays the same random sequence of adds and removes against this list and a
+     * {@link RedBlackTree}, checking after every step that both hold the same values.
+     */
+    @Test
+    public void testMatchesRedBlackTree() throws Exception {
+        final Random random = new Random(0);
+        final SortedLongList list = new SortedLongList();
+        final RedBlackTree<Long> tree = new RedBlackTree<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            // A narrow range of values ensures plenty of duplicates.
+            final long value = 1_000 + random.nextInt(200);
+
+            if (tree.size() == 0 || random.nextInt(3) > 0) {
+                list.add(value);
+                assertTrue(tree.add(value));
+            } else if (random.nextBoolean()) {
+                // Remove a value that is present, mimicking the average calculator.
+                final long present = list.get(random.nextInt(list.size()));
+
+                assertTrue(list.remove(present));
+                assertEquals(Long.valueOf(present), tree.remove(present));
+            } else {
+                assertEquals(tree.contains(value), list.remove(value));
+                tree.remove(value);
+            }
+
+            assertEquals(tree.size(), list.size());
+            if (tree.size() > 0) {
+                assertEquals((long) tree.getLeast(), list.getLeast());
+                assertEquals((long) tree.getGreatest(), list.getGreatest());
+            }
+        }
+
+        // Drain both structures from the least value upwards to compare their full contents.
+        while (tree.size() > 0) {
+            final long least = tree.getLeast();
+
+            assertEquals(least, list.removeAt(0));
+            tree.remove(least);
+        }
+        assertEquals(0, list.size());
+    }
+}
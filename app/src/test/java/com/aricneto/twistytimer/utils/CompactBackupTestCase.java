@@ -0,0 +1,242 @@
+package com.aricneto.twistytimer.utils;
+
+import com.aricneto.twistytimer.fragment.dialog.ExportImportDialog;
+import com.aricneto.twistytimer.items.Solve;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the compact back-up format written by {@link CompactBackupWriter} and read by
+ * {@link CompactBackupReader}.
+ */
+public class CompactBackupTestCase {
+    private static final String[] TYPES = { "333", "222", "444", "skewb", "sq1" };
+    private static final String[] CATEGORIES = { "Normal", "OH", "Blindfolded" };
+    private static final String[] MOVES
+            = { "R", "R'", "R2", "U", "U'", "U2", "F", "F'", "F2", "Rw", "Uw2", "/", "(1,0)" };
+    private static final String[] COMMENTS = { "", "PB!", "Lucky \"skip\"", "ção ✓ 魔方", null };
+
+    /**
+     * Creates solves of several puzzle types and categories, in the order of
+     * {@code DatabaseHandler.getAllSolvesByPuzzle()}.
+     */
+    private static List<Solve> createSolves(int numSolves, long seed) {
+        final Random random = new Random(seed);
+        final List<Solve> solves = new ArrayList<>(numSolves);
+        long date = 1_400_000_000_000L;
+
+        for (String type : TYPES) {
+            for (String category : CATEGORIES) {
+                for (int i = 0; i < numSolves / (TYPES.length * CATEGORIES.length); i++) {
+                    final StringBuilder scramble = new StringBuilder();
+
+                    for (int m = 0, n = random.nextInt(30); m < n; m++) {
+                        if (m > 0) {
+                            scramble.append(' ');
+                        }
+                        scramble.append(MOVES[random.nextInt(MOVES.length)]);
+                    }
+
+                    date += random.nextInt(600_000);
+                    solves.add(new Solve(
+                            random.nextInt(120_000), type, category,
+                            // Dates are usually increasing, but need not be.
+                            random.nextInt(20) == 0 ? date - random.nextInt(1_000_000) : date,
+                            random.nextInt(50) == 0 ? null : scramble.toString(),
+                            random.nextInt(3), COMMENTS[random.nextInt(COMMENTS.length)], true));
+                }
+            }
+        }
+
+        return solves;
+    }
+
+    /**
+     * Creates solves whose details can all be held in the text back-up format, which writes
+     * {@code null} values as "null" and does not escape quotes.
+     */
+    private static List<Solve> createTextSolves(int numSolves, long seed) {
+        final List<Solve> solves = new ArrayList<>(numSolves);
+
+        for (Solve solve : createSolves(numSolves, seed)) {
+            solves.add(new Solve(solve.getTime(), solve.getPuzzle(), solve.getSubtype(),
+                    solve.getDate(), solve.getScramble() == null ? "" : solve.getScramble(),
+                    solve.getPenalty(),
+                    solve.getComment() == null ? "" : solve.getComment().replace("\"", ""), true));
+        }
+
+        return solves;
+    }
+
+    private static byte[] write(List<Solve> solves, boolean compress) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CompactBackupWriter writer = new CompactBackupWriter(out, compress);
+
+        for (Solve solve : solves) {
+            writer.writeSolve(solve.getPuzzle(), solve.getSubtype(), solve.getTime(),
+                    solve.getDate(), solve.getScramble(), solve.getPenalty(), solve.getComment());
+        }
+        writer.close();
+
+        return out.toByteArray();
+    }
+
+    private static List<Solve> read(byte[] bytes) throws IOException {
+        final List<Solve> solves = new ArrayList<>();
+        final CompactBackupReader reader
+                = new CompactBackupReader(new ByteArrayInputStream(bytes));
+        Solve solve;
+
+        while ((solve = reader.next()) != null) {
+            solves.add(solve);
+        }
+
+        assertNull(reader.next());
+        assertEquals(bytes.length, reader.getNumBytesRead());
+        reader.close();
+
+        return solves;
+    }
+
+    private static byte[] writeText(List<Solve> solves) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SolveCsvWriter writer = new SolveCsvWriter(out);
+
+        writer.writeBackupHeader();
+        for (Solve solve : solves) {
+            writer.writeBackupSolve(solve.getPuzzle(), solve.getSubtype(), solve.getTime(),
+                    solve.getDate(), solve.getScramble(), solve.getPenalty(), solve.getComment());
+        }
+        writer.close();
+
+        return out.toByteArray();
+    }
+
+    private static List<Solve> readText(byte[] bytes) throws IOException {
+        final List<Solve> solves = new ArrayList<>();
+        final SolveCsvReader reader = new SolveCsvReader(new ByteArrayInputStream(bytes),
+                ExportImportDialog.EXIM_FORMAT_BACKUP, null, null);
+        Solve solve;
+
+        while ((solve = reader.next()) != null) {
+            solves.add(solve);
+        }
+
+        assertEquals(0, reader.getNumParseErrors());
+        reader.close();
+
+        return solves;
+    }
+
+    private static void assertSolvesEqual(List<Solve> expected, List<Solve> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            final Solve e = expected.get(i);
+            final Solve a = actual.get(i);
+
+            assertEquals(e.getPuzzle(), a.getPuzzle());
+            assertEquals(e.getSubtype(), a.getSubtype());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getDate(), a.getDate());
+            assertEquals(e.getScramble(), a.getScramble());
+            assertEquals(e.getPenalty(), a.getPenalty());
+            assertEquals(e.getComment(), a.getComment());
+            assertTrue(a.isHistory());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final List<Solve> solves = createSolves(10_000, 42);
+
+        assertSolvesEqual(solves, read(write(solves, true)));
+        assertSolvesEqual(solves, read(write(solves, false)));
+    }
+
+    @Test
+    public void testEmptyAndEdgeCases() throws Exception {
+        assertSolvesEqual(new ArrayList<Solve>(), read(write(new ArrayList<Solve>(), true)));
+
+        final List<Solve> solves = new ArrayList<>();
+
+        solves.add(new Solve(0, null, null, 0L, "", 0, "", true));
+        solves.add(new Solve(Integer.MAX_VALUE, "333", "Normal", Long.MAX_VALUE, " R  U ",
+                Integer.MIN_VALUE, null, true));
+        solves.add(new Solve(-1, "333", "Normal", Long.MIN_VALUE, "R", -1, "x", true));
+
+        assertSolvesEqual(solves, read(write(solves, true)));
+        assertSolvesEqual(solves, read(write(solves, false)));
+    }
+
+    @Test
+    public void testSameSolvesAsTextBackup() throws Exception {
+        final List<Solve> solves = createTextSolves(10_000, 11);
+        final List<Solve> fromText = readText(writeText(solves));
+
+        // Both formats must give back the same solves that were exported.
+        assertSolvesEqual(solves, fromText);
+        assertSolvesEqual(fromText, read(write(solves, true)));
+        assertSolvesEqual(fromText, read(write(solves, false)));
+    }
+
+    @Test
+    public void testSmallerThanTextBackup() throws Exception {
+        final List<Solve> solves = createSolves(10_000, 7);
+        final byte[] text = writeText(solves);
+
+        assertTrue(write(solves, false).length < text.length / 2);
+        assertTrue(write(solves, true).length < write(solves, false).length);
+    }
+
+    @Test
+    public void testDetectFormat() throws Exception {
+        final byte[] compact = write(createSolves(100, 1), true);
+        final ByteArrayInputStream in = new ByteArrayInputStream(compact);
+
+        assertTrue(CompactBackupReader.isCompactBackup(in));
+        // The stream must be reset, so the file can still be read.
+        assertEquals(100 / (TYPES.length * CATEGORIES.length) * TYPES.length * CATEGORIES.length,
+                read(compact).size());
+        assertEquals(compact.length, in.available());
+
+        assertFalse(CompactBackupReader.isCompactBackup(new ByteArrayInputStream(
+                "Puzzle,Category,Time(millis)\n".getBytes("UTF-8"))));
+        assertFalse(CompactBackupReader.isCompactBackup(new ByteArrayInputStream(new byte[2])));
+
+        try {
+            new CompactBackupReader(new ByteArrayInputStream(new byte[6]));
+            fail("Expected an exception for a file that is not a compact back-up.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        final byte[] compact = write(createSolves(1_000, 3), false);
+        final byte[] truncated = new byte[compact.length / 2];
+
+        System.arraycopy(compact, 0, truncated, 0, truncated.length);
+
+        try {
+            read(truncated);
+            fail("Expected an exception for a truncated file.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
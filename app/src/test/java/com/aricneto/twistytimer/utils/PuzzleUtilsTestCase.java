@@ -0,0 +1,129 @@
+package com.aricneto.twistytimer.utils;
+
+import org.joda.time.Period;
+import org.joda.time.format.PeriodFormatter;
+import org.joda.time.format.PeriodFormatterBuilder;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aricneto.twistytimer.utils.PuzzleUtils.FORMAT_DEFAULT;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.FORMAT_LARGE;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.FORMAT_NO_MILLI;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.FORMAT_SMALL_MILLI;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.MAX_TIME_CHARS;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.appendTime;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.convertTimeToString;
+import static com.aricneto.twistytimer.utils.PuzzleUtils.getTimeChars;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the formatting of times by {@link PuzzleUtils#convertTimeToString(long, int)} and
+ * {@link PuzzleUtils#getTimeChars(long, int, char[])} against the implementation based on Joda's
+ * {@code PeriodFormatter} that they replaced.
+ */
+public class PuzzleUtilsTestCase {
+    private static final int[] FORMATS
+            = { FORMAT_DEFAULT, FORMAT_SMALL_MILLI, FORMAT_NO_MILLI, FORMAT_LARGE };
+
+    private static final char[] sChars = new char[MAX_TIME_CHARS];
+
+    /**
+     * The implementation of {@code convertTimeToString} that used Joda's {@code PeriodFormatter}.
+     */
+    private static String convertTimeToStringWithJoda(long time, int format) {
+        if (time == PuzzleUtils.TIME_DNF)
+            return "DNF";
+        if (time == 0)
+            return "--";
+
+        final Period period = new Period(time);
+        final PeriodFormatterBuilder periodFormatterBuilder = new PeriodFormatterBuilder();
+        final StringBuilder formattedString = new StringBuilder();
+        final PeriodFormatter periodFormatter;
+
+        if (format == FORMAT_LARGE) {
+            periodFormatter = periodFormatterBuilder
+                    .appendHours().appendSuffix("h ")
+                    .printZeroAlways()
+                    .appendMinutes().appendSuffix("m")
+                    .toFormatter();
+        } else {
+            periodFormatter = periodFormatterBuilder
+                    .appendHours().appendSuffix("h ")
+                    .appendMinutes().appendSuffix(":")
+                    .printZeroAlways()
+                    .minimumPrintedDigits(time < (10_000) ? 1 : 2)
+                    .appendSeconds()
+                    .toFormatter();
+        }
+
+        formattedString.append(period.toString(periodFormatter));
+
+        long millis = time % 1000;
+        if (millis >= 10)
+            millis /= 10;
+
+        switch (format) {
+            case FORMAT_DEFAULT:
+                formattedString.append(".");
+                formattedString.append(millis >= 10 ? millis : "0" + millis);
+                break;
+            case FORMAT_SMALL_MILLI:
+                formattedString.append("<small>.");
+                formattedString.append(millis >= 10 ? millis : "0" + millis);
+                formattedString.append("</small>");
+                break;
+            case FORMAT_NO_MILLI:
+            default:
+                break;
+        }
+
+        return formattedString.toString();
+    }
+
+    private static void assertFormattedLikeJoda(long time) {
+        for (int format : FORMATS) {
+            final String expected = convertTimeToStringWithJoda(time, format);
+
+            assertEquals("time=" + time + ", format=" + format,
+                    expected, convertTimeToString(time, format));
+            assertEquals("time=" + time + ", format=" + format,
+                    "x" + expected, appendTime(new StringBuilder("x"), time, format).toString());
+
+            // The characters have no mark-up, so small milliseconds are formatted as the default.
+            assertEquals("time=" + time + ", format=" + format,
+                    convertTimeToStringWithJoda(
+                            time, format == FORMAT_SMALL_MILLI ? FORMAT_DEFAULT : format),
+                    new String(sChars, 0, getTimeChars(time, format, sChars)));
+        }
+    }
+
+    @Test
+    public void testEveryMillisecondUpToThreeMinutes() throws Exception {
+        // Covers every combination of milliseconds, padding and seconds, including negative times.
+        for (long time = -70_000; time <= 180_000; time++) {
+            assertFormattedLikeJoda(time);
+        }
+    }
+
+    @Test
+    public void testLongTimes() throws Exception {
+        // Every minute boundary, and the milliseconds on each side of it, for two days.
+        for (long time = 60_000; time <= 2 * 24 * 3_600_000L; time += 60_000) {
+            assertFormattedLikeJoda(time - 1);
+            assertFormattedLikeJoda(time);
+            assertFormattedLikeJoda(time + 1);
+        }
+
+        // Random times up to the largest number of hours that Joda could format.
+        final Random random = new Random(0);
+
+        for (int i = 0; i < 100_000; i++) {
+            final long time = (long) (random.nextDouble() * Integer.MAX_VALUE * 3_600_000L);
+
+            assertFormattedLikeJoda(time);
+            assertFormattedLikeJoda(-time);
+        }
+    }
+}
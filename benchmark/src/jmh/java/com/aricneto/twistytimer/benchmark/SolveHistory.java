@@ -0,0 +1,61 @@
+package com.aricneto.twistytimer.benchmark;
+
+import com.aricneto.twistytimer.stats.AverageCalculator;
+
+import java.util.Random;
+
+/**
+ * Creates synthetic histories of solve times for the benchmarks. The histories are generated from
+ * a fixed seed, so every run of a benchmark works on the same solve times.
+ */
+public final class SolveHistory {
+    /**
+     * The seed for the random solve times.
+     */
+    private static final long SEED = 20_151_124L;
+
+    /**
+     * The mean of the random solve times in milliseconds.
+     */
+    private static final double MEAN_TIME = 15_000.0;
+
+    /**
+     * The standard deviation of the random solve times in milliseconds.
+     */
+    private static final double STD_DEVIATION = 3_000.0;
+
+    /**
+     * The shortest random solve time in milliseconds.
+     */
+    private static final long MIN_TIME = 1_000L;
+
+    private SolveHistory() {
+    }
+
+    /**
+     * Creates a history of solve times, in the order in which the solves were added.
+     *
+     * @param numSolves
+     *     The number of solves in the history.
+     * @param dnfPercent
+     *     The percentage of solves (approximately) that are DNFs.
+     *
+     * @return
+     *     The solve times in milliseconds. DNF solves are recorded as {@link AverageCalculator#DNF}.
+     */
+    public static long[] newTimes(int numSolves, int dnfPercent) {
+        final Random random = new Random(SEED);
+        final long[] times = new long[numSolves];
+
+        for (int i = 0; i < numSolves; i++) {
+            if (random.nextInt(100) < dnfPercent) {
+                times[i] = AverageCalculator.DNF;
+            } else {
+                times[i] = Math.max(MIN_TIME,
+                        Math.round(MEAN_TIME + random.nextGaussian() * STD_DEVIATION));
+            }
+        }
+
+        return times;
+    }
+}
@@ -0,0 +1,100 @@
+package com.aricneto.twistytimer.solver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversions between the cube coordinates and their indices, which are used
+ * heavily when the solvers build their tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IndexMappingBenchmark {
+    /**
+     * The number of inputs for each conversion. This must be a power of two.
+     */
+    private static final int NUM_INPUTS = 1_024;
+
+    private byte[][] mCornersPermutations;
+
+    private byte[][] mEdgesOrientations;
+
+    private boolean[][] mEdgesCombinations;
+
+    private int[] mCornersPermutationIndices;
+
+    private int[] mEdgesOrientationIndices;
+
+    private int[] mEdgesCombinationIndices;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(20_151_124L);
+
+        mCornersPermutations = new byte[NUM_INPUTS][];
+        mEdgesOrientations = new byte[NUM_INPUTS][];
+        mEdgesCombinations = new boolean[NUM_INPUTS][];
+        mCornersPermutationIndices = new int[NUM_INPUTS];
+        mEdgesOrientationIndices = new int[NUM_INPUTS];
+        mEdgesCombinationIndices = new int[NUM_INPUTS];
+
+        for (int i = 0; i < NUM_INPUTS; i++) {
+            mCornersPermutationIndices[i]
+                    = random.nextInt(RubiksCubeSolver.N_CORNERS_PERMUTATIONS);
+            mEdgesOrientationIndices[i] = random.nextInt(RubiksCubeSolver.N_EDGES_ORIENTATIONS);
+            mEdgesCombinationIndices[i] = random.nextInt(RubiksCubeSolver.N_E_EDGES_COMBINATIONS);
+
+            mCornersPermutations[i]
+                    = IndexMapping.indexToPermutation(mCornersPermutationIndices[i], 8);
+            mEdgesOrientations[i]
+                    = IndexMapping.indexToZeroSumOrientation(mEdgesOrientationIndices[i], 2, 12);
+            mEdgesCombinations[i]
+                    = IndexMapping.indexToCombination(mEdgesCombinationIndices[i], 4, 12);
+        }
+    }
+
+    private int next() {
+        return mNext++ & (NUM_INPUTS - 1);
+    }
+
+    @Benchmark
+    public int permutationToIndex() {
+        return IndexMapping.permutationToIndex(mCornersPermutations[next()]);
+    }
+
+    @Benchmark
+    public byte[] indexToPermutation() {
+        return IndexMapping.indexToPermutation(mCornersPermutationIndices[next()], 8);
+    }
+
+    @Benchmark
+    public int zeroSumOrientationToIndex() {
+        return IndexMapping.zeroSumOrientationToIndex(mEdgesOrientations[next()], 2);
+    }
+
+    @Benchmark
+    public byte[] indexToZeroSumOrientation() {
+        return IndexMapping.indexToZeroSumOrientation(mEdgesOrientationIndices[next()], 2, 12);
+    }
+
+    @Benchmark
+    public int combinationToIndex() {
+        return IndexMapping.combinationToIndex(mEdgesCombinations[next()], 4);
+    }
+
+    @Benchmark
+    public boolean[] indexToCombination() {
+        return IndexMapping.indexToCombination(mEdgesCombinationIndices[next()], 4, 12);
+    }
+}
@@ -0,0 +1,90 @@
+package com.aricneto.twistytimer.solver;
+
+import com.aricneto.twistytimer.solver.RubiksCubeSolver.State;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to find the optimal crosses and X-crosses for random-move scrambles.
+ * The solvers build their move and pruning tables in static initializers, which run once in the
+ * set-up, so only the searches are measured.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SolverBenchmark {
+    /**
+     * The number of scrambles. This must be a power of two.
+     */
+    private static final int NUM_SCRAMBLES = 64;
+
+    /**
+     * The number of moves in each scramble.
+     */
+    private static final int SCRAMBLE_LENGTH = 25;
+
+    private static final String[] FACES = { "U", "D", "L", "R", "F", "B" };
+
+    private static final String[] SUFFIXES = { "", "2", "'" };
+
+    private State[] mStates;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(20_151_124L);
+
+        mStates = new State[NUM_SCRAMBLES];
+        for (int i = 0; i < NUM_SCRAMBLES; i++) {
+            mStates[i] = State.id.applySequence(newScramble(random));
+        }
+
+        // Build the tables before the first measurement.
+        RubiksCubeCrossSolver.solve(mStates[0]);
+        RubiksCubeXCrossSolver.solve(mStates[0]);
+    }
+
+    /**
+     * Creates a random-move scramble in which no face is turned twice in succession.
+     */
+    private static String[] newScramble(Random random) {
+        final String[] scramble = new String[SCRAMBLE_LENGTH];
+        int lastFace = -1;
+
+        for (int i = 0; i < SCRAMBLE_LENGTH; i++) {
+            int face;
+            do {
+                face = random.nextInt(FACES.length);
+            } while (face == lastFace);
+
+            scramble[i] = FACES[face] + SUFFIXES[random.nextInt(SUFFIXES.length)];
+            lastFace = face;
+        }
+
+        return scramble;
+    }
+
+    private State nextState() {
+        return mStates[mNext++ & (NUM_SCRAMBLES - 1)];
+    }
+
+    @Benchmark
+    public ArrayList<String[]> crossSolve() {
+        return RubiksCubeCrossSolver.solve(nextState());
+    }
+
+    @Benchmark
+    public ArrayList<String[]> xCrossSolve() {
+        return RubiksCubeXCrossSolver.solve(nextState());
+    }
+}
@@ -0,0 +1,58 @@
+package com.aricneto.twistytimer.stats;
+
+import com.aricneto.twistytimer.benchmark.SolveHistory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to add a full history of solve times to an {@link AverageCalculator},
+ * as is done for each average when the statistics are loaded from the database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AverageCalculatorBenchmark {
+    /**
+     * The percentage of the times trimmed from each end, as used by the default statistics.
+     */
+    private static final int TRIM_PERCENT = 5;
+
+    @Param({ "5", "12", "100", "1000" })
+    public int n;
+
+    @Param({ "0", "5", "50" })
+    public int dnfPercent;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int numSolves;
+
+    private long[] mTimes;
+
+    private AverageCalculator mCalculator;
+
+    @Setup
+    public void setUp() {
+        mTimes = SolveHistory.newTimes(numSolves, dnfPercent);
+        mCalculator = new AverageCalculator(n, TRIM_PERCENT);
+    }
+
+    @Benchmark
+    public long addTime() {
+        mCalculator.reset();
+
+        for (final long time : mTimes) {
+            mCalculator.addTime(time);
+        }
+
+        return mCalculator.getBestAverage();
+    }
+}
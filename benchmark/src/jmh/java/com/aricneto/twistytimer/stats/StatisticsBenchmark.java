@@ -0,0 +1,73 @@
+package com.aricneto.twistytimer.stats;
+
+import com.aricneto.twistytimer.benchmark.SolveHistory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to add a full history of solve times to the statistics shown on the
+ * statistics tab ({@link Statistics#newAllTimeStatistics()}), as is done when the statistics are
+ * loaded from the database without a saved snapshot. The most recent tenth of the solves are in
+ * the current session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StatisticsBenchmark {
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int numSolves;
+
+    @Param({ "5" })
+    public int dnfPercent;
+
+    private long[] mTimes;
+
+    private int mFirstSessionSolve;
+
+    private Statistics mStatistics;
+
+    @Setup
+    public void setUp() {
+        mTimes = SolveHistory.newTimes(numSolves, dnfPercent);
+        mFirstSessionSolve = numSolves - numSolves / 10;
+        mStatistics = Statistics.newAllTimeStatistics();
+    }
+
+    /**
+     * Adds the times without solve IDs, so no journal of recent solves is kept.
+     */
+    @Benchmark
+    public long addTime() {
+        mStatistics.reset();
+
+        for (int i = 0; i < mTimes.length; i++) {
+            mStatistics.addTime(mTimes[i], i >= mFirstSessionSolve);
+        }
+
+        return mStatistics.getAllTimeMeanTime();
+    }
+
+    /**
+     * Adds the times with solve IDs, as the statistics loader does, so the most recent solves are
+     * journaled and can be retracted later.
+     */
+    @Benchmark
+    public long addSolve() {
+        mStatistics.reset();
+
+        for (int i = 0; i < mTimes.length; i++) {
+            mStatistics.addSolve(i + 1, mTimes[i], i >= mFirstSessionSolve);
+        }
+
+        return mStatistics.getAllTimeMeanTime();
+    }
+}
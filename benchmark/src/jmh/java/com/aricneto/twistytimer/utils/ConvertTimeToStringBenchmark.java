@@ -0,0 +1,56 @@
+package com.aricneto.twistytimer.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the formatting of solve times by {@link PuzzleUtils#convertTimeToString(long, int)},
+ * which is called for every row of the history list and every label on the timer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConvertTimeToStringBenchmark {
+    /**
+     * The number of times to format. This must be a power of two.
+     */
+    private static final int NUM_TIMES = 1_024;
+
+    /**
+     * The longest times, in milliseconds, in each band of random times: under ten seconds, under
+     * a minute, under an hour and under a day.
+     */
+    private static final int[] MAX_TIMES = { 10_000, 60_000, 3_600_000, 86_400_000 };
+
+    @Param({ "" + PuzzleUtils.FORMAT_DEFAULT, "" + PuzzleUtils.FORMAT_SMALL_MILLI,
+            "" + PuzzleUtils.FORMAT_NO_MILLI, "" + PuzzleUtils.FORMAT_LARGE })
+    public int format;
+
+    private long[] mTimes;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(20_151_124L);
+
+        mTimes = new long[NUM_TIMES];
+        for (int i = 0; i < NUM_TIMES; i++) {
+            mTimes[i] = 1 + random.nextInt(MAX_TIMES[i % MAX_TIMES.length]);
+        }
+    }
+
+    @Benchmark
+    public String convertTimeToString() {
+        return PuzzleUtils.convertTimeToString(mTimes[mNext++ & (NUM_TIMES - 1)], format);
+    }
+}
@@ -0,0 +1,20 @@
+package com.aricneto.twistytimer.utils;
+
+import com.aricneto.twistytimer.benchmark.AppResources;
+
+/**
+ * Replaces the app's access to the shared preferences for the app classes copied into the
+ * benchmarks. There are no saved preferences, so the default values are always used.
+ */
+public final class Prefs {
+    private Prefs() {
+    }
+
+    public static int getDefaultIntValue(int res) {
+        return AppResources.getInteger(res);
+    }
+
+    public static int getInt(int prefKeyResID, int defaultValue) {
+        return defaultValue;
+    }
+}